@@ -0,0 +1,100 @@
+/**
+ * Copyright 2026 Telefonica Investigación y Desarrollo, S.A.U
+ *
+ * This file is part of fiware-cygnus (FIWARE project).
+ *
+ * fiware-cygnus is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * fiware-cygnus is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with fiware-cygnus. If not, see
+ * http://www.gnu.org/licenses/.
+ *
+ * For those usages not covered by the GNU Affero General Public License please contact with iot_support at tid dot es
+ */
+package com.telefonica.iot.cygnus.aggregation;
+
+import com.google.gson.JsonElement;
+import com.telefonica.iot.cygnus.benchmarks.NGSIFixtures;
+import com.telefonica.iot.cygnus.interceptors.NGSIEvent;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the aggregation of a batch of NGSI events by NGSIGenericColumnAggregator and NGSIGenericRowAggregator,
+ * as the SQL-like sinks do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NGSIGenericAggregatorBenchmark {
+
+    @Param({"1", "10", "100"})
+    private int numEvents;
+
+    @Param({"5", "50"})
+    private int numAttributes;
+
+    private ArrayList<NGSIEvent> events;
+
+    /**
+     * Sets up the NGSI events.
+     */
+    @Setup
+    public void setup() {
+        events = NGSIFixtures.createNGSIEvents(numEvents, numAttributes);
+    } // setup
+
+    /**
+     * Benchmarks the column aggregation of the batch.
+     * @return The aggregation, in order it is not dead code
+     */
+    @Benchmark
+    public LinkedHashMap<String, ArrayList<JsonElement>> columnAggregate() {
+        return aggregate(new NGSIGenericColumnAggregator());
+    } // columnAggregate
+
+    /**
+     * Benchmarks the row aggregation of the batch.
+     * @return The aggregation, in order it is not dead code
+     */
+    @Benchmark
+    public LinkedHashMap<String, ArrayList<JsonElement>> rowAggregate() {
+        return aggregate(new NGSIGenericRowAggregator());
+    } // rowAggregate
+
+    private LinkedHashMap<String, ArrayList<JsonElement>> aggregate(NGSIGenericAggregator aggregator) {
+        aggregator.setService(NGSIFixtures.SERVICE);
+        aggregator.setServicePathForData(NGSIFixtures.SERVICE_PATH);
+        aggregator.setServicePathForNaming(NGSIFixtures.SERVICE_PATH);
+        aggregator.setEntityType(NGSIFixtures.ENTITY_TYPE);
+        aggregator.setEnableUTCRecvTime(true);
+        aggregator.setAttrMetadataStore(true);
+        aggregator.initialize(events.get(0));
+
+        for (NGSIEvent event : events) {
+            aggregator.aggregate(event);
+        } // for
+
+        return aggregator.getAggregationToPersist();
+    } // aggregate
+
+} // NGSIGenericAggregatorBenchmark
@@ -0,0 +1,112 @@
+/**
+ * Copyright 2026 Telefonica Investigación y Desarrollo, S.A.U
+ *
+ * This file is part of fiware-cygnus (FIWARE project).
+ *
+ * fiware-cygnus is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * fiware-cygnus is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with fiware-cygnus. If not, see
+ * http://www.gnu.org/licenses/.
+ *
+ * For those usages not covered by the GNU Affero General Public License please contact with iot_support at tid dot es
+ */
+package com.telefonica.iot.cygnus.backends.sql;
+
+import com.google.gson.JsonElement;
+import com.telefonica.iot.cygnus.aggregation.NGSIGenericAggregator;
+import com.telefonica.iot.cygnus.aggregation.NGSIGenericColumnAggregator;
+import com.telefonica.iot.cygnus.backends.sql.Enum.SQLInstance;
+import com.telefonica.iot.cygnus.benchmarks.NGSIFixtures;
+import com.telefonica.iot.cygnus.interceptors.NGSIEvent;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the building of the SQL insert and upsert queries by SQLQueryUtils, given the column aggregation of a
+ * batch of NGSI events.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SQLQueryUtilsBenchmark {
+
+    private static final String TABLE_NAME = "room";
+    private static final String TABLE_SUFFIX = "_last_data";
+    private static final String SCHEMA = "smartcity";
+    private static final String UNIQUE_KEY = "entityId";
+    private static final String TIMESTAMP_KEY = "recvTime";
+    private static final String TIMESTAMP_FORMAT = "YYYY-MM-DD HH24:MI:SS.MS";
+
+    @Param({"1", "10", "100"})
+    private int numEvents;
+
+    @Param({"5", "50"})
+    private int numAttributes;
+
+    @Param({"MYSQL", "POSTGRESQL"})
+    private SQLInstance sqlInstance;
+
+    private LinkedHashMap<String, ArrayList<JsonElement>> aggregation;
+
+    /**
+     * Sets up the aggregation, as the SQL sinks do.
+     */
+    @Setup
+    public void setup() {
+        ArrayList<NGSIEvent> events = NGSIFixtures.createNGSIEvents(numEvents, numAttributes);
+        NGSIGenericAggregator aggregator = new NGSIGenericColumnAggregator();
+        aggregator.setService(NGSIFixtures.SERVICE);
+        aggregator.setServicePathForData(NGSIFixtures.SERVICE_PATH);
+        aggregator.setServicePathForNaming(NGSIFixtures.SERVICE_PATH);
+        aggregator.setEntityType(NGSIFixtures.ENTITY_TYPE);
+        aggregator.setAttrMetadataStore(true);
+        aggregator.initialize(events.get(0));
+
+        for (NGSIEvent event : events) {
+            aggregator.aggregate(event);
+        } // for
+
+        aggregation = aggregator.getAggregationToPersist();
+    } // setup
+
+    /**
+     * Benchmarks the building of the insert query.
+     * @return The query, in order it is not dead code
+     */
+    @Benchmark
+    public StringBuffer sqlInsertQuery() {
+        return SQLQueryUtils.sqlInsertQuery(aggregation, TABLE_NAME, sqlInstance, SCHEMA, SCHEMA, true);
+    } // sqlInsertQuery
+
+    /**
+     * Benchmarks the building of the upsert queries, the aggregation being the last data as well.
+     * @return The queries, in order they are not dead code
+     */
+    @Benchmark
+    public ArrayList<StringBuffer> sqlUpsertQuery() {
+        return SQLQueryUtils.sqlUpsertQuery(aggregation, aggregation,
+                new LinkedHashMap<String, ArrayList<JsonElement>>(), TABLE_NAME, TABLE_SUFFIX, UNIQUE_KEY,
+                TIMESTAMP_KEY, TIMESTAMP_FORMAT, sqlInstance, SCHEMA, SCHEMA, true);
+    } // sqlUpsertQuery
+
+} // SQLQueryUtilsBenchmark
@@ -0,0 +1,214 @@
+/**
+ * Copyright 2026 Telefonica Investigación y Desarrollo, S.A.U
+ *
+ * This file is part of fiware-cygnus (FIWARE project).
+ *
+ * fiware-cygnus is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * fiware-cygnus is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with fiware-cygnus. If not, see
+ * http://www.gnu.org/licenses/.
+ *
+ * For those usages not covered by the GNU Affero General Public License please contact with iot_support at tid dot es
+ */
+package com.telefonica.iot.cygnus.benchmarks;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.telefonica.iot.cygnus.containers.NotifyContextRequest.ContextElement;
+import com.telefonica.iot.cygnus.interceptors.NGSIEvent;
+import com.telefonica.iot.cygnus.management.PatternTypeAdapter;
+import com.telefonica.iot.cygnus.utils.CommonConstants;
+import com.telefonica.iot.cygnus.utils.NGSIConstants;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Realistic fixtures for the benchmarks: notifications and NGSI events about entities of type Room, having attributes
+ * of several types (numbers, texts, booleans and geolocations), each one with a TimeInstant metadata.
+ */
+public final class NGSIFixtures {
+
+    public static final String SERVICE = "smartcity";
+    public static final String SERVICE_PATH = "/gardens";
+    public static final String ENTITY_TYPE = "Room";
+    public static final long RECV_TIME_TS = 1461136795801L;
+    private static final String TIME_INSTANT = "2016-04-20T07:19:55.801Z";
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(Pattern.class, new PatternTypeAdapter())
+            .create();
+
+    /**
+     * Constructor. Utility classes should not have a public or default constructor.
+     */
+    private NGSIFixtures() {
+    } // NGSIFixtures
+
+    /**
+     * Gets the id of the i-th entity.
+     * @param i
+     * @return The id of the i-th entity
+     */
+    public static String getEntityId(int i) {
+        return ENTITY_TYPE + i;
+    } // getEntityId
+
+    /**
+     * Gets the name of the j-th attribute.
+     * @param j
+     * @return The name of the j-th attribute
+     */
+    public static String getAttributeName(int j) {
+        switch (j % 4) {
+            case 0:
+                return "temperature" + j;
+            case 1:
+                return "status" + j;
+            case 2:
+                return "occupied" + j;
+            default:
+                return "location" + j;
+        } // switch
+    } // getAttributeName
+
+    /**
+     * Creates a NGSIv2 notification, in normalized format, about the given number of entities, each one having the
+     * given number of attributes.
+     * @param numEntities
+     * @param numAttributes
+     * @return A NGSIv2 notification
+     */
+    public static String createNotification(int numEntities, int numAttributes) {
+        StringBuilder sb = new StringBuilder("{\"subscriptionId\":\"51c0ac9ed714fb3b37d7d5a8\",\"data\":[");
+
+        for (int i = 0; i < numEntities; i++) {
+            if (i > 0) {
+                sb.append(',');
+            } // if
+
+            sb.append("{\"id\":\"").append(getEntityId(i)).append("\",\"type\":\"").append(ENTITY_TYPE).append('"');
+
+            for (int j = 0; j < numAttributes; j++) {
+                sb.append(",\"").append(getAttributeName(j)).append("\":{\"type\":\"").append(getAttributeType(j))
+                        .append("\",\"value\":").append(getAttributeValue(i, j))
+                        .append(",\"metadata\":{\"TimeInstant\":{\"type\":\"DateTime\",\"value\":\"")
+                        .append(TIME_INSTANT).append("\"}}}");
+            } // for
+
+            sb.append('}');
+        } // for
+
+        return sb.append("]}").toString();
+    } // createNotification
+
+    /**
+     * Creates a context element for the i-th entity, having the given number of attributes.
+     * @param i
+     * @param numAttributes
+     * @return A context element
+     */
+    public static ContextElement createContextElement(int i, int numAttributes) {
+        StringBuilder sb = new StringBuilder("{\"id\":\"").append(getEntityId(i))
+                .append("\",\"type\":\"").append(ENTITY_TYPE).append("\",\"isPattern\":\"false\",\"attributes\":[");
+
+        for (int j = 0; j < numAttributes; j++) {
+            if (j > 0) {
+                sb.append(',');
+            } // if
+
+            sb.append("{\"name\":\"").append(getAttributeName(j)).append("\",\"type\":\"").append(getAttributeType(j))
+                    .append("\",\"value\":").append(getAttributeValue(i, j))
+                    .append(",\"metadatas\":[{\"name\":\"TimeInstant\",\"type\":\"DateTime\",\"value\":\"")
+                    .append(TIME_INSTANT).append("\"}]}");
+        } // for
+
+        sb.append("]}");
+        return GSON.fromJson(sb.toString(), ContextElement.class);
+    } // createContextElement
+
+    /**
+     * Creates NGSI events, as NGSIRestHandler would create them, for the given number of entities, each one having
+     * the given number of attributes.
+     * @param numEvents
+     * @param numAttributes
+     * @return A list of NGSI events
+     */
+    public static ArrayList<NGSIEvent> createNGSIEvents(int numEvents, int numAttributes) {
+        ArrayList<NGSIEvent> events = new ArrayList<>(numEvents);
+
+        for (int i = 0; i < numEvents; i++) {
+            HashMap<String, String> headers = new HashMap<>();
+            headers.put(CommonConstants.HEADER_FIWARE_SERVICE, SERVICE);
+            headers.put(CommonConstants.HEADER_FIWARE_SERVICE_PATH, SERVICE_PATH);
+            headers.put(CommonConstants.HEADER_CORRELATOR_ID, "bd3d2ad1-0c5e-4f0c-8a8e-3b8b1a9b1b" + i);
+            headers.put(NGSIConstants.FLUME_HEADER_TRANSACTION_ID, "bd3d2ad1-0c5e-4f0c-8a8e-3b8b1a9b1b" + i);
+            headers.put(NGSIConstants.FLUME_HEADER_TIMESTAMP, Long.toString(RECV_TIME_TS + i));
+            headers.put(NGSIConstants.FLUME_HEADER_MAPPED_SERVICE, SERVICE);
+            headers.put(NGSIConstants.FLUME_HEADER_MAPPED_SERVICE_PATH, SERVICE_PATH);
+            events.add(new NGSIEvent(headers, null, createContextElement(i, numAttributes), null));
+        } // for
+
+        return events;
+    } // createNGSIEvents
+
+    /**
+     * Creates name mappings renaming the service, the service path, the Room entities and half of their attributes.
+     * The other half of the attributes is not mapped.
+     * @param numAttributes
+     * @return The Json string of the name mappings
+     */
+    public static String createNameMappings(int numAttributes) {
+        StringBuilder sb = new StringBuilder("{\"serviceMappings\":[{\"originalService\":\"")
+                .append(SERVICE).append("\",\"newService\":\"new_").append(SERVICE)
+                .append("\",\"servicePathMappings\":[{\"originalServicePath\":\"/.*\",\"newServicePath\":\"/new")
+                .append("\",\"entityMappings\":[{\"originalEntityId\":\"(").append(ENTITY_TYPE)
+                .append(")([0-9]*)\",\"originalEntityType\":\"").append(ENTITY_TYPE)
+                .append("\",\"newEntityId\":\"new_$1$2\",\"newEntityType\":\"new_").append(ENTITY_TYPE)
+                .append("\",\"attributeMappings\":[");
+
+        for (int j = 0; j < numAttributes; j += 2) {
+            if (j > 0) {
+                sb.append(',');
+            } // if
+
+            sb.append("{\"originalAttributeName\":\"").append(getAttributeName(j))
+                    .append("\",\"originalAttributeType\":\"").append(getAttributeType(j))
+                    .append("\",\"newAttributeName\":\"new_").append(getAttributeName(j))
+                    .append("\",\"newAttributeType\":\"").append(getAttributeType(j)).append("\"}");
+        } // for
+
+        return sb.append("]}]}]}]}").toString();
+    } // createNameMappings
+
+    private static String getAttributeType(int j) {
+        switch (j % 4) {
+            case 0:
+                return "Number";
+            case 1:
+                return "Text";
+            case 2:
+                return "Boolean";
+            default:
+                return "geo:json";
+        } // switch
+    } // getAttributeType
+
+    private static String getAttributeValue(int i, int j) {
+        switch (j % 4) {
+            case 0:
+                return Double.toString(20 + (i * 31 + j) % 150 / 10.0);
+            case 1:
+                return "\"status of " + getEntityId(i) + " is OK\"";
+            case 2:
+                return (i + j) % 2 == 0 ? "true" : "false";
+            default:
+                return "{\"type\":\"Point\",\"coordinates\":[-3.6" + i + ",40.4" + j + "]}";
+        } // switch
+    } // getAttributeValue
+
+} // NGSIFixtures
@@ -0,0 +1,132 @@
+/**
+ * Copyright 2026 Telefonica Investigación y Desarrollo, S.A.U
+ *
+ * This file is part of fiware-cygnus (FIWARE project).
+ *
+ * fiware-cygnus is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * fiware-cygnus is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with fiware-cygnus. If not, see
+ * http://www.gnu.org/licenses/.
+ *
+ * For those usages not covered by the GNU Affero General Public License please contact with iot_support at tid dot es
+ */
+package com.telefonica.iot.cygnus.handlers;
+
+import com.telefonica.iot.cygnus.benchmarks.NGSIFixtures;
+import com.telefonica.iot.cygnus.utils.CommonConstants;
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks NGSIRestHandler.getEvents, i.e. the checking of the headers and the parsing of the notification into
+ * NGSI events.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NGSIRestHandlerBenchmark {
+
+    @Param({"1", "10", "100"})
+    private int numEntities;
+
+    @Param({"5", "50"})
+    private int numAttributes;
+
+    private NGSIRestHandler handler;
+    private String notification;
+    private Map<String, String> headers;
+
+    /**
+     * Sets up the handler and the notification.
+     */
+    @Setup
+    public void setup() {
+        handler = new NGSIRestHandler();
+        handler.configure(new Context());
+        notification = NGSIFixtures.createNotification(numEntities, numAttributes);
+        headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.put(CommonConstants.HTTP_HEADER_CONTENT_TYPE, "application/json; charset=utf-8");
+        headers.put(CommonConstants.HEADER_FIWARE_SERVICE, NGSIFixtures.SERVICE);
+        headers.put(CommonConstants.HEADER_FIWARE_SERVICE_PATH, NGSIFixtures.SERVICE_PATH);
+        headers.put(CommonConstants.HEADER_CORRELATOR_ID, "bd3d2ad1-0c5e-4f0c-8a8e-3b8b1a9b1b00");
+        headers.put(CommonConstants.HEADER_NGSI_VERSION, "normalized");
+    } // setup
+
+    /**
+     * Benchmarks the creation of the NGSI events for a notification.
+     * @return The NGSI events, in order they are not dead code
+     * @throws Exception
+     */
+    @Benchmark
+    public List<Event> getEvents() throws Exception {
+        return handler.getEvents(createRequest());
+    } // getEvents
+
+    /**
+     * Creates a notification request. A dynamic proxy is used instead of a mock, since mocking frameworks add an
+     * overhead not related to the benchmarked code; this also isolates the benchmark from the Servlet API version.
+     * @return A notification request
+     */
+    private HttpServletRequest createRequest() {
+        return (HttpServletRequest) Proxy.newProxyInstance(HttpServletRequest.class.getClassLoader(),
+                new Class<?>[] {HttpServletRequest.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        switch (method.getName()) {
+                            case "getHeaderNames":
+                                return Collections.enumeration(headers.keySet());
+                            case "getHeader":
+                                return headers.get(((String) args[0]).toLowerCase(Locale.ENGLISH));
+                            case "getMethod":
+                                return "POST";
+                            case "getRequestURI":
+                                return "/notify";
+                            case "getContentLength":
+                                return notification.length();
+                            case "getReader":
+                                return new BufferedReader(new StringReader(notification));
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            case "equals":
+                                return proxy == args[0];
+                            case "toString":
+                                return "POST /notify";
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        } // switch
+                    } // invoke
+                });
+    } // createRequest
+
+} // NGSIRestHandlerBenchmark
@@ -0,0 +1,87 @@
+/**
+ * Copyright 2026 Telefonica Investigación y Desarrollo, S.A.U
+ *
+ * This file is part of fiware-cygnus (FIWARE project).
+ *
+ * fiware-cygnus is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * fiware-cygnus is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with fiware-cygnus. If not, see
+ * http://www.gnu.org/licenses/.
+ *
+ * For those usages not covered by the GNU Affero General Public License please contact with iot_support at tid dot es
+ */
+package com.telefonica.iot.cygnus.interceptors;
+
+import com.telefonica.iot.cygnus.benchmarks.NGSIFixtures;
+import com.telefonica.iot.cygnus.containers.NotifyContextRequest.ContextElement;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang3.tuple.ImmutableTriple;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks NGSINameMappingsInterceptor.doMap, with and without the cache of resolutions. The mapped context
+ * elements are about a set of different entities, as the notifications of a real subscription are.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NGSINameMappingsInterceptorBenchmark {
+
+    private static final int NUM_ENTITIES = 100;
+
+    @Param({"5", "50"})
+    private int numAttributes;
+
+    @Param({"0", "10000"})
+    private int cacheSize;
+
+    private NGSINameMappingsInterceptor interceptor;
+    private ContextElement[] contextElements;
+    private int next;
+
+    /**
+     * Sets up the interceptor and the context elements.
+     */
+    @Setup
+    public void setup() {
+        interceptor = new NGSINameMappingsInterceptor(null, false, cacheSize);
+        interceptor.loadNameMappings(NGSIFixtures.createNameMappings(numAttributes));
+        contextElements = new ContextElement[NUM_ENTITIES];
+
+        for (int i = 0; i < NUM_ENTITIES; i++) {
+            contextElements[i] = NGSIFixtures.createContextElement(i, numAttributes);
+        } // for
+
+        next = 0;
+    } // setup
+
+    /**
+     * Benchmarks the mapping of a context element.
+     * @return The mapped service, service path and context element, in order they are not dead code
+     */
+    @Benchmark
+    public ImmutableTriple<String, String, ContextElement> doMap() {
+        ContextElement contextElement = contextElements[next];
+        next = (next + 1) % NUM_ENTITIES;
+        return interceptor.doMap(NGSIFixtures.SERVICE, NGSIFixtures.SERVICE_PATH, contextElement);
+    } // doMap
+
+} // NGSINameMappingsInterceptorBenchmark
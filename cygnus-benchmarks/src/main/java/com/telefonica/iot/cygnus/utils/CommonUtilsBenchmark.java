@@ -0,0 +1,74 @@
+/**
+ * Copyright 2026 Telefonica Investigación y Desarrollo, S.A.U
+ *
+ * This file is part of fiware-cygnus (FIWARE project).
+ *
+ * fiware-cygnus is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * fiware-cygnus is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with fiware-cygnus. If not, see
+ * http://www.gnu.org/licenses/.
+ *
+ * For those usages not covered by the GNU Affero General Public License please contact with iot_support at tid dot es
+ */
+package com.telefonica.iot.cygnus.utils;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks CommonUtils.getHumanReadable, invoked by the aggregators once per NGSI event, and
+ * CommonUtils.getTimeInstantFromString, invoked once per timestamp attribute and TimeInstant metadata.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommonUtilsBenchmark {
+
+    @Param({"true", "false"})
+    private boolean addUTC;
+
+    private long ts = 1461136795801L;
+
+    private final String[] timestamps = {"2016-04-20T07:19:55.801Z", "2016-04-20T07:19:55Z",
+        "2016-04-20 07:19:55.801", "2016-04-20T07:19:55.801234+02:00"};
+
+    private int timestampIndex = 0;
+
+    /**
+     * Benchmarks the human readable version of a timestamp. The timestamp changes from invocation to invocation, as
+     * the reception times do.
+     * @return The human readable timestamp, in order it is not dead code
+     */
+    @Benchmark
+    public String getHumanReadable() {
+        return CommonUtils.getHumanReadable(ts++, addUTC);
+    } // getHumanReadable
+
+    /**
+     * Benchmarks the parsing of timestamps, rotating among the supported formats.
+     * @return The parsed timestamp, in order it is not dead code
+     */
+    @Benchmark
+    public Long getTimeInstantFromString() {
+        timestampIndex = (timestampIndex + 1) % timestamps.length;
+        return CommonUtils.getTimeInstantFromString(timestamps[timestampIndex]);
+    } // getTimeInstantFromString
+
+} // CommonUtilsBenchmark
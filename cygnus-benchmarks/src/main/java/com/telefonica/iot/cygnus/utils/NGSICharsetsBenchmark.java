@@ -0,0 +1,111 @@
+/**
+ * Copyright 2026 Telefonica Investigación y Desarrollo, S.A.U
+ *
+ * This file is part of fiware-cygnus (FIWARE project).
+ *
+ * fiware-cygnus is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * fiware-cygnus is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with fiware-cygnus. If not, see
+ * http://www.gnu.org/licenses/.
+ *
+ * For those usages not covered by the GNU Affero General Public License please contact with iot_support at tid dot es
+ */
+package com.telefonica.iot.cygnus.utils;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the NGSICharsets encodings used by the sinks when building the names of the destinations, e.g. tables,
+ * collections or HDFS files. Each invocation encodes a set of typical services, service paths, entity IDs and
+ * entity types, some of them containing characters requiring encoding.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NGSICharsetsBenchmark {
+
+    private final String[] names = {
+        "smartcity",
+        "/gardens",
+        "/gardens/north_area",
+        "Room1",
+        "urn:ngsi-ld:Room:Madrid.Building-3:Floor_2:Room.101",
+        "WeatherObserved",
+        "Señal tráfico Castellana #42",
+        "TEMPERATURE_sensor-0001"
+    };
+
+    /**
+     * Benchmarks the PostgreSQL encoding.
+     * @param blackhole
+     */
+    @Benchmark
+    public void encodePostgreSQL(Blackhole blackhole) {
+        for (String name : names) {
+            blackhole.consume(NGSICharsets.encodePostgreSQL(name));
+        } // for
+    } // encodePostgreSQL
+
+    /**
+     * Benchmarks the MySQL encoding.
+     * @param blackhole
+     */
+    @Benchmark
+    public void encodeMySQL(Blackhole blackhole) {
+        for (String name : names) {
+            blackhole.consume(NGSICharsets.encodeMySQL(name));
+        } // for
+    } // encodeMySQL
+
+    /**
+     * Benchmarks the HDFS encoding.
+     * @param blackhole
+     */
+    @Benchmark
+    public void encodeHDFS(Blackhole blackhole) {
+        for (String name : names) {
+            blackhole.consume(NGSICharsets.encodeHDFS(name, false));
+        } // for
+    } // encodeHDFS
+
+    /**
+     * Benchmarks the MongoDB collection encoding.
+     * @param blackhole
+     */
+    @Benchmark
+    public void encodeMongoDBCollection(Blackhole blackhole) {
+        for (String name : names) {
+            blackhole.consume(NGSICharsets.encodeMongoDBCollection(name));
+        } // for
+    } // encodeMongoDBCollection
+
+    /**
+     * Benchmarks the CKAN encoding.
+     * @param blackhole
+     */
+    @Benchmark
+    public void encodeCKAN(Blackhole blackhole) {
+        for (String name : names) {
+            blackhole.consume(NGSICharsets.encodeCKAN(name));
+        } // for
+    } // encodeCKAN
+
+} // NGSICharsetsBenchmark
@@ -22,6 +22,7 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -313,6 +314,18 @@ public class Feature {
         }
     }
 
+    /**
+     * Elimina el OBJECTID del GIS de la entidad, p.ej. para volver a añadirla a la capa.
+     */
+    public void removeObjectId() {
+        Iterator<Entry<String, Object>> it = attributes.entrySet().iterator();
+
+        while (it.hasNext()) {
+            if (OBJECTID_FIELDNAME.equalsIgnoreCase(it.next().getKey())) {
+                it.remove();
+            }
+        }
+    }
 
     /**
      * Retorna el GLOBALID del GIS de la entidad.
@@ -21,7 +21,9 @@ package com.telefonica.iot.cygnus.backends.arcgis.restutils;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.net.SocketException;
@@ -47,6 +49,9 @@ public class ArcgisFeatureTable {
     public static final int DELETE_ACTION = 2;
     public static final int ADD_UPDATE_ACTION = 3;
 
+    public static final int DEFAULT_OBJECT_ID_CACHE_SIZE = 10000;
+    public static final long DEFAULT_OBJECT_ID_CACHE_TTL = 3600000;
+
     private int batchAction = ADD_ACTION;
     private String uniqueField = null;
 
@@ -66,6 +71,17 @@ public class ArcgisFeatureTable {
 
     private RestFeatureTable arcGISFeatureTable;
 
+    // Known ObjectIds by uniqueField value, in order to not query the table for each batch
+    private int objectIdCacheSize = DEFAULT_OBJECT_ID_CACHE_SIZE;
+    private long objectIdCacheTTL = DEFAULT_OBJECT_ID_CACHE_TTL;
+    private final Map<String, CachedObjectId> objectIdCache = Collections.synchronizedMap(
+            new LinkedHashMap<String, CachedObjectId>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedObjectId> eldest) {
+                    return size() > objectIdCacheSize;
+                }
+            });
+
     /**
      * 
      */
@@ -77,6 +93,17 @@ public class ArcgisFeatureTable {
         arcGISFeatureTable = null;
     }
 
+    /**
+     * Constructor for an already connected table. It is protected since it is only used in the tests.
+     * 
+     * @param arcGISFeatureTable
+     */
+    protected ArcgisFeatureTable(RestFeatureTable arcGISFeatureTable) {
+        this();
+        this.arcGISFeatureTable = arcGISFeatureTable;
+        this.connected = true;
+    }
+
     /**
      * Constructor.
      * 
@@ -128,6 +155,40 @@ public class ArcgisFeatureTable {
         this.uniqueField = uniqueField;
     }
 
+    /**
+     * @return the maximum number of ObjectIds kept in the cache
+     */
+    public int getObjectIdCacheSize() {
+        return objectIdCacheSize;
+    }
+
+    /**
+     * @param objectIdCacheSize
+     *            the maximum number of ObjectIds kept in the cache, 0 disables the cache
+     */
+    public void setObjectIdCacheSize(int objectIdCacheSize) {
+        this.objectIdCacheSize = objectIdCacheSize;
+
+        if (objectIdCacheSize <= 0) {
+            objectIdCache.clear();
+        }
+    }
+
+    /**
+     * @return the time (in milliseconds) a cached ObjectId is valid
+     */
+    public long getObjectIdCacheTTL() {
+        return objectIdCacheTTL;
+    }
+
+    /**
+     * @param objectIdCacheTTL
+     *            the time (in milliseconds) a cached ObjectId is valid
+     */
+    public void setObjectIdCacheTTL(long objectIdCacheTTL) {
+        this.objectIdCacheTTL = objectIdCacheTTL;
+    }
+
     /**
      * Add Feature to batch.
      * 
@@ -249,6 +310,7 @@ public class ArcgisFeatureTable {
     }
 
     /**
+     * Features whose ObjectId is cached are directly updated; the table is queried only for the rest of them.
      * 
      * @param featureArray
      * @param uniqueField
@@ -257,12 +319,31 @@ public class ArcgisFeatureTable {
             throws ArcgisException {
         clearResults();
         if (featureArray != null && featureArray.size() > 0) {
-            String keyList = getUniqueFieldList(featureArray, uniqueField);
-            String whereClause = uniqueField + " IN (" + keyList + ")";
+            List<Feature> unknownFeatures = new ArrayList<Feature>();
 
-            List<Feature> foundFeatures = queryFeatures(whereClause);
-            splitFeatureListIfExists(featureArray, foundFeatures, updateBatch, addBatch,
-                    uniqueField);
+            for (Feature feature : featureArray) {
+                Integer oid = getCachedObjectId(getUniqueFieldValue(feature, uniqueField));
+
+                if (oid != null) {
+                    feature.setObjectId(oid);
+                    updateBatch.add(feature);
+                } else {
+                    unknownFeatures.add(feature);
+                }
+            }
+
+            LOGGER.debug("addUpdateFeatures: " + (featureArray.size() - unknownFeatures.size())
+                    + " ObjectIds found in cache, " + unknownFeatures.size() + " to be queried");
+
+            if (unknownFeatures.size() > 0) {
+                String keyList = getUniqueFieldList(unknownFeatures, uniqueField);
+                String whereClause = uniqueField + " IN (" + keyList + ")";
+
+                List<Feature> foundFeatures = queryFeatures(whereClause);
+                cacheObjectIds(foundFeatures, uniqueField);
+                splitFeatureListIfExists(unknownFeatures, foundFeatures, updateBatch, addBatch,
+                        uniqueField);
+            }
         }
 
         if (addBatch.size() >= batchSize) {
@@ -287,11 +368,10 @@ public class ArcgisFeatureTable {
      * @return
      */
     protected List<Feature> removeDuplicates(List<Feature> featureList, String uniqueField) {
-        List<Feature> resultList = new ArrayList<Feature>();
-        Map<String, String> processedList = new HashMap<String, String>();
+        // A re-put key keeps the position of its first occurrence, but the last occurrence is stored
+        Map<String, Feature> processedList = new LinkedHashMap<String, Feature>();
 
-        for (int i = 0; i < featureList.size(); i++) {
-            Feature feature = featureList.get(i);
+        for (Feature feature : featureList) {
             Map<String, Object> attributes = feature.getAttributes();
             String uniqueFieldValue = "";
 
@@ -299,31 +379,10 @@ public class ArcgisFeatureTable {
                 uniqueFieldValue = "" + attributes.get(uniqueField);
             }
 
-            if (!processedList.containsKey(uniqueFieldValue)) {
-                // Register key as processed
-                processedList.put(uniqueFieldValue, uniqueField);
-
-                // search for the last occurrence and use it
-                for (int j = i + 1; j < featureList.size(); j++) {
-                    Feature feature2 = featureList.get(j);
-                    Map<String, Object> attributes2 = feature2.getAttributes();
-                    String uniqueFieldValue2 = "";
-
-                    if (attributes2.containsKey(uniqueField)) {
-                        uniqueFieldValue2 = "" + attributes2.get(uniqueField);
-                    }
-
-                    if (uniqueFieldValue.equals(uniqueFieldValue2)) {
-                        feature = feature2;
-                    }
-                }
-                // insert the last occurrence of given feature into result list
-                resultList.add(feature);
-
-            }
+            processedList.put(uniqueFieldValue, feature);
         }
 
-        return resultList;
+        return new ArrayList<Feature>(processedList.values());
     }
 
     /**
@@ -376,49 +435,142 @@ public class ArcgisFeatureTable {
             List<Feature> serverFeatures, List<Feature> existentFeatures, List<Feature> newFeatures,
             String uniqueField) throws ArcgisException {
 
-        for (Feature feature : featureArray) {
-            boolean found = false;
-            String featureId = null;
-            if (feature.getAttributes().containsKey(uniqueField)) {
-                featureId = feature.getAttributes().get(uniqueField).toString();
+        // Index the server features by uniqueField value, first occurrence remains
+        Map<String, Feature> serverFeaturesById = new HashMap<String, Feature>();
+
+        if (serverFeatures != null) {
+            for (Feature serverFeature : serverFeatures) {
+                String serverFeatureId = getUniqueFieldValue(serverFeature, uniqueField);
+                if (serverFeatureId != null && !serverFeaturesById.containsKey(serverFeatureId)) {
+                    serverFeaturesById.put(serverFeatureId, serverFeature);
+                }
             }
+        }
 
-            int i = 0;
-            if (serverFeatures != null) {
-                while (!found && i < serverFeatures.size()) {
-                    Feature serverFeature = serverFeatures.get(i);
-                    String serverFeatureId = null;
-                    if ( serverFeature.getAttributes().containsKey(uniqueField)) {
-                        serverFeatureId = serverFeature.getAttributes().get(uniqueField).toString();
-                    }
-                    if (featureId.equalsIgnoreCase(serverFeatureId)) {
-                        found = true;
-                        Integer oid = serverFeature.getObjectId();
-                        LOGGER.debug("retrieved ObjectId: " + oid + " from feature " + serverFeatureId);
-                        if (!oid.equals(-1)) {
-                            feature.setObjectId(oid);
-                        } else {
-                            Integer gid = serverFeature.getGlobalId();
-                            if (!gid.equals(-1)) {
-                                LOGGER.info(" GlobalId " + gid + " found in serverFeature " + serverFeatureId);
-                                feature.setGlobalId(gid);
-                            } else {
-                                LOGGER.warn("None ObjectId neither GlobalId were found in serverFeature " + serverFeatureId);
-                                feature.setObjectId(oid);
-                            }
-                        }
-                        existentFeatures.add(feature);
+        for (Feature feature : featureArray) {
+            String featureId = getUniqueFieldValue(feature, uniqueField);
+            Feature serverFeature = featureId == null ? null : serverFeaturesById.get(featureId);
+
+            if (serverFeature != null) {
+                Integer oid = serverFeature.getObjectId();
+                LOGGER.debug("retrieved ObjectId: " + oid + " from feature " + featureId);
+                if (!oid.equals(-1)) {
+                    feature.setObjectId(oid);
+                } else {
+                    Integer gid = serverFeature.getGlobalId();
+                    if (!gid.equals(-1)) {
+                        LOGGER.info(" GlobalId " + gid + " found in serverFeature " + featureId);
+                        feature.setGlobalId(gid);
+                    } else {
+                        LOGGER.warn("None ObjectId neither GlobalId were found in serverFeature " + featureId);
+                        feature.setObjectId(oid);
                     }
-                    i++;
                 }
+                existentFeatures.add(feature);
+            } else {
+                newFeatures.add(feature);
             }
+        }
+    }
 
-            if (!found) {
-                newFeatures.add(feature);
+    /**
+     * Gets the uniqueField value of a feature, as compared against the server features (case insensitive).
+     * 
+     * @param feature
+     * @param uniqueField
+     * @return the value, null if the feature has not such a field
+     */
+    protected String getUniqueFieldValue(Feature feature, String uniqueField) {
+        Object value = uniqueField == null ? null : feature.getAttributes().get(uniqueField);
+
+        if (value == null) {
+            return null;
+        }
+
+        return value.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Gets a cached ObjectId.
+     * 
+     * @param uniqueFieldValue
+     * @return the ObjectId, null if not cached or expired
+     */
+    protected Integer getCachedObjectId(String uniqueFieldValue) {
+        if (uniqueFieldValue == null || objectIdCacheSize <= 0) {
+            return null;
+        }
+
+        CachedObjectId cached = objectIdCache.get(uniqueFieldValue);
+
+        if (cached == null) {
+            return null;
+        } else if (cached.expiration < System.currentTimeMillis()) {
+            objectIdCache.remove(uniqueFieldValue);
+            return null;
+        } else {
+            return cached.objectId;
+        }
+    }
+
+    /**
+     * Caches the ObjectIds of the given features, if any.
+     * 
+     * @param featureList
+     * @param uniqueField
+     * @throws ArcgisException
+     */
+    private void cacheObjectIds(List<Feature> featureList, String uniqueField) throws ArcgisException {
+        if (featureList == null || objectIdCacheSize <= 0) {
+            return;
+        }
+
+        for (Feature feature : featureList) {
+            cacheObjectId(getUniqueFieldValue(feature, uniqueField), feature.getObjectId());
+        }
+    }
+
+    /**
+     * Caches an ObjectId.
+     * 
+     * @param uniqueFieldValue
+     * @param objectId
+     */
+    private void cacheObjectId(String uniqueFieldValue, Integer objectId) {
+        if (uniqueFieldValue != null && objectId != null && !objectId.equals(-1) && objectIdCacheSize > 0) {
+            objectIdCache.put(uniqueFieldValue,
+                    new CachedObjectId(objectId, System.currentTimeMillis() + objectIdCacheTTL));
+        }
+    }
+
+    /**
+     * Removes the cached ObjectIds of the given features, since they may be no longer valid.
+     * 
+     * @param featureList
+     */
+    private void invalidateObjectIds(List<Feature> featureList) {
+        if (uniqueField == null || objectIdCache.isEmpty()) {
+            return;
+        }
+
+        for (Feature feature : featureList) {
+            String uniqueFieldValue = getUniqueFieldValue(feature, uniqueField);
+
+            if (uniqueFieldValue != null) {
+                objectIdCache.remove(uniqueFieldValue);
             }
         }
     }
 
+    /**
+     * Returns how many ObjectIds are cached.
+     * 
+     * @return
+     */
+    protected int objectIdsCached() {
+        return objectIdCache.size();
+    }
+
     /**
      * Clear both result lists, success and error entities and error flags.
      * 
@@ -547,10 +699,25 @@ public class ArcgisFeatureTable {
                     try {
                         switch (action) {
                         case ADD_ACTION:
-                            arcGISFeatureTable.addFeatureList(featureList);
+                            List<Integer> objectIds = arcGISFeatureTable.addFeatureList(featureList);
+                            if (uniqueField != null) {
+                                for (int i = 0; i < sizeList; i++) {
+                                    cacheObjectId(getUniqueFieldValue(featureList.get(i), uniqueField),
+                                            objectIds.get(i));
+                                }
+                            }
                             break;
                         case UPDATE_ACTION:
-                            arcGISFeatureTable.updateFeatureList(featureList);
+                            List<Integer> updatedIds = arcGISFeatureTable.updateFeatureList(featureList);
+                            List<Feature> failedFeatures = new ArrayList<Feature>();
+                            for (int i = 0; i < sizeList; i++) {
+                                if (Integer.valueOf(-1).equals(updatedIds.get(i))) {
+                                    failedFeatures.add(featureList.get(i));
+                                }
+                            }
+                            if (failedFeatures.size() > 0) {
+                                retryFailedUpdates(failedFeatures);
+                            }
                             break;
                         default:
                             LOGGER.error("commitFeatures: Invalid Action");
@@ -558,6 +725,7 @@ public class ArcgisFeatureTable {
                         }
                     } catch (ArcgisException e) {
                         LOGGER.error(e.getMessage());
+                        invalidateObjectIds(featureList);
                         setError(new Exception(e.getMessage()));
                     }
 
@@ -575,6 +743,53 @@ public class ArcgisFeatureTable {
         }
     }
 
+    /**
+     * Features not successfully updated (e.g. since their cached ObjectId was deleted from the table by a third
+     * party, or since the whole update was rolled back) are removed from the ObjectId cache and queried again; the
+     * ones still existing are updated with their current ObjectId, and the rest of them are added again.
+     * 
+     * @param failedFeatures
+     * @throws ArcgisException
+     */
+    private void retryFailedUpdates(List<Feature> failedFeatures) throws ArcgisException {
+        LOGGER.warn("Arcgis: " + failedFeatures.size() + " features could not be updated");
+        invalidateObjectIds(failedFeatures);
+
+        if (batchAction != ADD_UPDATE_ACTION || uniqueField == null) {
+            throw new ArcgisException(failedFeatures.size() + " features could not be updated");
+        }
+
+        String whereClause = uniqueField + " IN (" + getUniqueFieldList(failedFeatures, uniqueField) + ")";
+        List<Feature> foundFeatures = arcGISFeatureTable.getFeatureList(whereClause);
+        cacheObjectIds(foundFeatures, uniqueField);
+        List<Feature> existentFeatures = new ArrayList<Feature>();
+        List<Feature> newFeatures = new ArrayList<Feature>();
+        splitFeatureListIfExists(failedFeatures, foundFeatures, existentFeatures, newFeatures, uniqueField);
+
+        if (existentFeatures.size() > 0) {
+            List<Integer> updatedIds = arcGISFeatureTable.updateFeatureList(existentFeatures);
+
+            if (updatedIds.contains(-1)) {
+                invalidateObjectIds(existentFeatures);
+                throw new ArcgisException("Features could not be updated after querying their ObjectIds");
+            }
+        }
+
+        if (newFeatures.size() > 0) {
+            LOGGER.info("Arcgis: adding again " + newFeatures.size() + " features not found in the table");
+
+            for (Feature feature : newFeatures) {
+                feature.removeObjectId();
+            }
+
+            List<Integer> objectIds = arcGISFeatureTable.addFeatureList(newFeatures);
+
+            for (int i = 0; i < newFeatures.size(); i++) {
+                cacheObjectId(getUniqueFieldValue(newFeatures.get(i), uniqueField), objectIds.get(i));
+            }
+        }
+    }
+
     /**
      * 
      * @return
@@ -727,4 +942,17 @@ public class ArcgisFeatureTable {
         return this.connected;
     }
 
+    /**
+     * ObjectId known for a uniqueField value, and when it expires.
+     */
+    private static class CachedObjectId {
+        private final int objectId;
+        private final long expiration;
+
+        CachedObjectId(int objectId, long expiration) {
+            this.objectId = objectId;
+            this.expiration = expiration;
+        }
+    }
+
 }
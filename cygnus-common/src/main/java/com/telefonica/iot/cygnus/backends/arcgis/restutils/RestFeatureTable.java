@@ -62,6 +62,9 @@ public class RestFeatureTable extends CredentialRestApi {
     private static final String UNIQUE_ID_FIELD_TAG = "uniqueIdField";
     private static final String UPDATE_FEATURES_TAG = "updateFeatures";
     private static final String ADD_FEATURES_TAG = "addFeatures";
+    private static final String RESULTS_TAG = "Results";
+    private static final String OBJECT_ID_TAG = "objectId";
+    private static final String SUCCESS_TAG = "success";
     
     private static final String OBJECT_IDS_PARAM = "objectIds";
     private static final String RETURN_DELETE_RESULTS_PARAM = "returnDeleteResults";
@@ -251,9 +254,10 @@ public class RestFeatureTable extends CredentialRestApi {
      * Añade una lista de entidades/features a la capa.
      * 
      * @param featureList
+     * @return the ObjectIds of the features, in the same order, -1 if unsuccessful, null if not returned by the server
      * @throws ArcgisException
      */
-    public void sendFeatureList(List<Feature> featureList, String action) throws ArcgisException {
+    public List<Integer> sendFeatureList(List<Feature> featureList, String action) throws ArcgisException {
         LOGGER.debug(action + " feature list(" + featureList.size() + "), into Feature table: "
                 + serviceUrl);
 
@@ -277,6 +281,9 @@ public class RestFeatureTable extends CredentialRestApi {
         LOGGER.debug("Response code: " + response.getResponseCode() + "\t response body: " + response.getBody());
 
         checkResponse(response);
+
+        return objectIdsFromJson(response.getBody(), action.replace("Features", RESULTS_TAG),
+                featureList.size());
     }
 
     /**
@@ -297,13 +304,15 @@ public class RestFeatureTable extends CredentialRestApi {
      * Añade una lista de entidad/feature a la capa.
      * 
      * @param feature
+     * @return the ObjectIds of the added features, in the same order, -1 if unsuccessful, null if not returned by
+     *         the server
      * @throws ArcgisException
      */
-    public void addFeatureList(List<Feature> featureList) throws ArcgisException {
+    public List<Integer> addFeatureList(List<Feature> featureList) throws ArcgisException {
         LOGGER.debug(
                 "Adding feature List (" + featureList.size() + ") to Feature table: " + serviceUrl);
 
-        sendFeatureList(featureList, ADD_FEATURES_TAG);
+        return sendFeatureList(featureList, ADD_FEATURES_TAG);
     }
 
     /**
@@ -324,13 +333,15 @@ public class RestFeatureTable extends CredentialRestApi {
      * Actualiza una lista de entidades/features en la capa.
      * 
      * @param feature
+     * @return the ObjectIds of the updated features, in the same order, -1 if not successfully updated, null if
+     *         not returned by the server
      * @throws ArcgisException
      */
-    public void updateFeatureList(List<Feature> featureList) throws ArcgisException {
+    public List<Integer> updateFeatureList(List<Feature> featureList) throws ArcgisException {
         LOGGER.debug(
                 "Adding feature list (" + featureList.size() + ") to Feature table: " + serviceUrl);
 
-        sendFeatureList(featureList, UPDATE_FEATURES_TAG);
+        return sendFeatureList(featureList, UPDATE_FEATURES_TAG);
     }
 
     /**
@@ -557,6 +568,53 @@ public class RestFeatureTable extends CredentialRestApi {
         return result;
     }
 
+    /**
+     * Gets the ObjectIds from an edit response like {"addResults":[{"objectId":1,"success":true}, ...]}. Only the
+     * results explicitly marked as unsuccessful are considered failed; the missing or unparsable results are unknown,
+     * thus they are given as null and the server is trusted about them.
+     * 
+     * @param responseJson
+     * @param resultsTag
+     * @param size
+     * @return the ObjectIds, -1 for the unsuccessful results, null for the missing ones
+     */
+    protected List<Integer> objectIdsFromJson(String responseJson, String resultsTag, int size) {
+        List<Integer> objectIds = new ArrayList<Integer>(size);
+
+        try {
+            JsonParser parser = new JsonParser();
+            JsonElement node = parser.parse(responseJson).getAsJsonObject().get(resultsTag);
+
+            if (node != null && node.isJsonArray()) {
+                for (JsonElement jsonElement : node.getAsJsonArray()) {
+                    JsonObject result = jsonElement.getAsJsonObject();
+
+                    if (result.has(SUCCESS_TAG) && !result.get(SUCCESS_TAG).getAsBoolean()) {
+                        objectIds.add(-1);
+                    } else if (result.has(OBJECT_ID_TAG)) {
+                        objectIds.add(result.get(OBJECT_ID_TAG).getAsInt());
+                    } else {
+                        objectIds.add(null);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.debug("Can't get ObjectIds from Json response, " + e.getMessage());
+            objectIds.clear();
+        }
+
+        if (objectIds.size() < size) {
+            LOGGER.warn((size - objectIds.size()) + " of " + size + " " + resultsTag
+                    + " missing in the response, assuming they were successful");
+        }
+
+        while (objectIds.size() < size) {
+            objectIds.add(null);
+        }
+
+        return objectIds;
+    }
+
     /**
      * 
      * @param responseJson
@@ -43,4 +43,9 @@ public interface DynamoDBBackend {
      */
     void putItems(String tableName, ArrayList<Item> aggregation) throws Exception;
     
+    /**
+     * Releases resources.
+     */
+    void close();
+    
 } // DynamoDBBackend
@@ -32,8 +32,23 @@ import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
 import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
 import com.amazonaws.services.dynamodbv2.model.KeyType;
 import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
+import com.amazonaws.services.dynamodbv2.model.ResourceInUseException;
+import com.amazonaws.services.dynamodbv2.model.ResourceNotFoundException;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.telefonica.iot.cygnus.errors.CygnusPersistenceError;
 import com.telefonica.iot.cygnus.log.CygnusLogger;
+import com.telefonica.iot.cygnus.utils.CommonUtils;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  *
@@ -43,6 +58,28 @@ public class DynamoDBBackendImpl implements DynamoDBBackend {
     
     private static final CygnusLogger LOGGER = new CygnusLogger(DynamoDBBackendImpl.class);
     private DynamoDB dynamoDB;
+    private final Set<String> knownTables;
+    private int writeMaxRetries;
+    private long writeRetryInterval;
+    private ExecutorService writeExecutor;
+    
+    /**
+     * Maximum number of items of a BatchWriteItem request.
+     */
+    public static final int MAX_BATCH_WRITE_ITEMS = 25;
+    
+    /**
+     * Default maximum number of retries regarding the unprocessed items of a BatchWriteItem request.
+     */
+    public static final int DEFAULT_WRITE_MAX_RETRIES = 5;
+    
+    /**
+     * Default milliseconds before the first retry regarding the unprocessed items, doubled at each retry.
+     */
+    public static final long DEFAULT_WRITE_RETRY_INTERVAL = 100;
+    
+    // Maximum milliseconds between two retries regarding the unprocessed items
+    private static final long MAX_WRITE_RETRY_INTERVAL = 10000;
     
     /**
      * Constructor.
@@ -55,7 +92,61 @@ public class DynamoDBBackendImpl implements DynamoDBBackend {
         AmazonDynamoDBClient client = new AmazonDynamoDBClient(awsCredentials);
         client.setRegion(Region.getRegion(Regions.fromName(region)));
         dynamoDB = new DynamoDB(client);
+        knownTables = ConcurrentHashMap.newKeySet();
+        writeMaxRetries = DEFAULT_WRITE_MAX_RETRIES;
+        writeRetryInterval = DEFAULT_WRITE_RETRY_INTERVAL;
+        writeExecutor = null;
     } // DynamoDBBackendImpl
+    
+    /**
+     * Sets the options regarding the BatchWriteItem requests.
+     * @param maxInFlight Maximum number of concurrent requests (chunks of up to 25 items) per aggregation
+     * @param maxRetries Maximum number of retries regarding the unprocessed items of a request
+     * @param retryInterval Milliseconds before the first retry regarding the unprocessed items, doubled at each retry
+     */
+    public void setWriteOptions(int maxInFlight, int maxRetries, long retryInterval) {
+        this.writeMaxRetries = maxRetries;
+        this.writeRetryInterval = retryInterval;
+        
+        if (writeExecutor != null) {
+            writeExecutor.shutdown();
+            writeExecutor = null;
+        } // if
+        
+        if (maxInFlight > 1) {
+            writeExecutor = Executors.newFixedThreadPool(maxInFlight, new ThreadFactory() {
+                private final AtomicInteger writerCount = new AtomicInteger();
+                
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread writer = new Thread(r, "dynamodb-batch-writer-" + writerCount.incrementAndGet());
+                    writer.setDaemon(true);
+                    return writer;
+                } // newThread
+            });
+        } // if
+    } // setWriteOptions
+    
+    /**
+     * Releases resources, i.e. stops the batch writers and shuts down the DynamoDB client.
+     */
+    @Override
+    public void close() {
+        if (writeExecutor != null) {
+            writeExecutor.shutdown();
+            writeExecutor = null;
+        } // if
+        
+        dynamoDB.shutdown();
+    } // close
+    
+    /**
+     * Gets the batch writers. It is protected since it is only used by the tests.
+     * @return
+     */
+    protected ExecutorService getWriteExecutor() {
+        return writeExecutor;
+    } // getWriteExecutor
 
     /**
      * Gets the dynamo DB object. It is protected since it is only used by the tests.
@@ -73,8 +164,19 @@ public class DynamoDBBackendImpl implements DynamoDBBackend {
         this.dynamoDB = dynamoDB;
     } // setDynamoDB
     
+    /**
+     * Creates a table in DynamoDB, given its name, if not known to exist. The tables known to exist are remembered,
+     * thus DynamoDB is not reached for them.
+     * @param tableName Table name
+     * @param primaryKey Primary key for the table
+     * @throws Exception
+     */
     @Override
     public void createTable(String tableName, String primaryKey) throws Exception {
+        if (knownTables.contains(tableName)) {
+            return;
+        } // if
+        
         try {
             // Create the key schema for the given primary key
             ArrayList<KeySchemaElement> keySchema = new ArrayList<KeySchemaElement>();
@@ -104,22 +206,117 @@ public class DynamoDBBackendImpl implements DynamoDBBackend {
             // Wait until the table is active
             LOGGER.debug("Waiting until the DynamoDB table " + tableName + " becomes active");
             table.waitForActive();
+            knownTables.add(tableName);
+        } catch (ResourceInUseException e) {
+            LOGGER.debug("The DynamoDB table " + tableName + " already exists");
+            knownTables.add(tableName);
         } catch (Exception e) {
             LOGGER.error("Error while creating the DynamoDB table " + tableName
                     + ". Details=" + e.getMessage());
         } // try catch
     } // createTable
     
+    /**
+     * Puts an aggregation of items, by means of BatchWriteItem requests of up to 25 items (chunks). If several
+     * requests are allowed to be in flight, the chunks are concurrently put. The unprocessed items of each request
+     * are retried with exponential backoff; an exception is thrown if any item cannot be put.
+     * @param tableName
+     * @param aggregation
+     * @throws Exception
+     */
     @Override
     public void putItems(String tableName, ArrayList<Item> aggregation) throws Exception {
+        ArrayList<List<Item>> chunks = new ArrayList<>();
+        
+        for (int i = 0; i < aggregation.size(); i += MAX_BATCH_WRITE_ITEMS) {
+            chunks.add(aggregation.subList(i, Math.min(i + MAX_BATCH_WRITE_ITEMS, aggregation.size())));
+        } // for
+        
+        ExecutorService executor = writeExecutor;
+        
         try {
-            TableWriteItems tableWriteItems = new TableWriteItems(tableName);
-            tableWriteItems.withItemsToPut(aggregation);
-            BatchWriteItemOutcome outcome = dynamoDB.batchWriteItem(tableWriteItems);
+            if (executor == null || chunks.size() <= 1) {
+                for (List<Item> chunk : chunks) {
+                    putChunk(tableName, chunk);
+                } // for
+                
+                return;
+            } // if
+            
+            List<Future<Void>> futures = new ArrayList<>();
+            
+            for (final List<Item> chunk : chunks) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        putChunk(tableName, chunk);
+                        return null;
+                    } // call
+                }));
+            } // for
+            
+            // wait for all the requests, the first error (if any) is thrown
+            CommonUtils.waitForAll(futures);
         } catch (Exception e) {
             LOGGER.error("Error while putting a batch of items in the table " + tableName
                     + ". Details=" + e.getMessage());
+            throw e;
         } // try catch
     } // putItems
     
+    /**
+     * Puts a chunk of up to 25 items by means of a single BatchWriteItem request, retrying its unprocessed items
+     * (e.g. because of throttling) with exponential backoff.
+     * @param tableName
+     * @param chunk
+     * @throws Exception
+     */
+    private void putChunk(String tableName, List<Item> chunk) throws Exception {
+        BatchWriteItemOutcome outcome;
+        
+        try {
+            outcome = dynamoDB.batchWriteItem(new TableWriteItems(tableName).withItemsToPut(chunk));
+        } catch (ResourceNotFoundException e) {
+            // The table may not exist anymore, thus it is created again the next time
+            knownTables.remove(tableName);
+            throw e;
+        } // try catch
+        
+        Map<String, List<WriteRequest>> unprocessedItems = outcome.getUnprocessedItems();
+        int retries = 0;
+        
+        while (unprocessedItems != null && !unprocessedItems.isEmpty()) {
+            if (retries == writeMaxRetries) {
+                throw new CygnusPersistenceError("Data insertion error", "UnprocessedItems",
+                        getNumItems(unprocessedItems) + " items could not be put in the table " + tableName
+                        + " after " + retries + " retries");
+            } // if
+            
+            long interval = Math.min(writeRetryInterval << Math.min(retries, 30), MAX_WRITE_RETRY_INTERVAL);
+            LOGGER.debug(getNumItems(unprocessedItems) + " unprocessed items in the table " + tableName
+                    + ", retrying in " + interval + " ms");
+            
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw e;
+            } // try catch
+            
+            outcome = dynamoDB.batchWriteItemUnprocessed(unprocessedItems);
+            unprocessedItems = outcome.getUnprocessedItems();
+            retries++;
+        } // while
+    } // putChunk
+    
+    private int getNumItems(Map<String, List<WriteRequest>> items) {
+        int numItems = 0;
+        
+        for (List<WriteRequest> writeRequests : items.values()) {
+            numItems += writeRequests.size();
+        } // for
+        
+        return numItems;
+    } // getNumItems
+    
 } // DynamoDBBackendImpl
@@ -25,6 +25,11 @@ import com.telefonica.iot.cygnus.backends.http.JsonResponse;
 import com.telefonica.iot.cygnus.errors.CygnusPersistenceError;
 import com.telefonica.iot.cygnus.errors.CygnusRuntimeError;
 import com.telefonica.iot.cygnus.log.CygnusLogger;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
@@ -35,8 +40,11 @@ import java.util.Map;
 import javax.xml.bind.DatatypeConverter;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.Header;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.message.BasicHeader;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
 
 /**
  * Implementation of Elasticsearch Backend.
@@ -45,7 +53,22 @@ import org.apache.http.message.BasicHeader;
  */
 public class ElasticsearchBackendImpl extends HttpBackend implements ElasticsearchBackend {
     private static final CygnusLogger LOGGER = new CygnusLogger(ElasticsearchBackendImpl.class);
+    /**
+     * Default maximum size in bytes of the payload of a single _bulk request.
+     */
+    public static final int DEFAULT_BULK_MAX_BYTES = 5242880;
+    private static final ThreadLocal<BulkBuffer> BUFFERS = new ThreadLocal<BulkBuffer>() {
+        @Override
+        protected BulkBuffer initialValue() {
+            return new BulkBuffer();
+        } // initialValue
+    };
+    private static final ThreadLocal<MessageDigest> DIGESTS = new ThreadLocal<>();
     private final String charSet;
+    private int bulkMaxBytes;
+    private int bulkMaxRetries;
+    private long bulkRetryInterval;
+
     /**
      * Constructor.
      *
@@ -59,10 +82,29 @@ public class ElasticsearchBackendImpl extends HttpBackend implements Elasticsear
     public ElasticsearchBackendImpl(String elasticsearchHost, String elasticsearchPort, boolean ssl, int maxConns, int maxConnsPerRoute, String charSet) {
         super(elasticsearchHost, elasticsearchPort, ssl, false, null, null, null, null, maxConns, maxConnsPerRoute);
         this.charSet = charSet;
+        this.bulkMaxBytes = DEFAULT_BULK_MAX_BYTES;
+        this.bulkMaxRetries = 0;
+        this.bulkRetryInterval = 1000;
     } // ElasticsearchBackendImpl
 
+    /**
+     * Sets the options of the _bulk requests.
+     *
+     * @param bulkMaxBytes maximum size in bytes of the payload of a single request, larger data is split
+     * @param bulkMaxRetries number of retries of the documents rejected with a retriable status (429 or 5xx)
+     * @param bulkRetryInterval milliseconds to wait before the first retry, the next ones wait longer
+     */
+    public void setBulkOptions(int bulkMaxBytes, int bulkMaxRetries, long bulkRetryInterval) {
+        this.bulkMaxBytes = bulkMaxBytes;
+        this.bulkMaxRetries = bulkMaxRetries;
+        this.bulkRetryInterval = bulkRetryInterval;
+    } // setBulkOptions
+
     /**
      * store data to Elasticsearch using REST API.
+     * The data is sent within as many _bulk requests as needed for not exceeding the maximum payload size, and the
+     * documents rejected with a retriable status are retried. If some documents cannot be finally inserted, an error
+     * is thrown.
      *
      * @param index index name of Elasticsearch, not {@code null}
      * @param type type name of Elasticsearch, not {@code null}
@@ -93,7 +135,7 @@ public class ElasticsearchBackendImpl extends HttpBackend implements Elasticsear
      *       }
      *     }
      *   ]
-     * @return response of {@code doRequest}
+     * @return response of {@code doRequest} regarding the last request
      * @throws com.telefonica.iot.cygnus.errors.CygnusPersistenceError
      * @throws com.telefonica.iot.cygnus.errors.CygnusRuntimeError
      */
@@ -102,40 +144,243 @@ public class ElasticsearchBackendImpl extends HttpBackend implements Elasticsear
         if (StringUtils.isBlank(index) || StringUtils.isBlank(type) || data == null) {
             throw new CygnusPersistenceError("invalid arguments (index=" + index + ", type=" + type + ", data=" + data + ")");
         } // if
-        String relativeURL = "/" + index + "/" + type + "/_bulk";
 
-        String jsonLines = "";
-        StringEntity entity;
+        for (Map<String, String> elem : data) {
+            if (StringUtils.isBlank(elem.get("data")) || StringUtils.isBlank(elem.get("recvTimeTs"))) {
+                throw new CygnusPersistenceError("invalid data format (data=" + data + ")");
+            } // if
+        } // for
+
+        Charset charset;
+
         try {
-            for (Map<String, String> elem : data) {
-                String edata = elem.get("data");
-                String erecvTimeTs = elem.get("recvTimeTs");
-                if (StringUtils.isBlank(edata) || StringUtils.isBlank(erecvTimeTs)) {
-                    throw new CygnusPersistenceError("invalid data format (data=" + data + ")");
-                }
-                byte[] bytes = MessageDigest.getInstance("MD5").digest(edata.getBytes(StandardCharsets.UTF_8));
-                String hash = DatatypeConverter.printHexBinary(bytes);
-                jsonLines += String.format("{\"index\":{\"_id\":\"%s-%s\"}}\n", erecvTimeTs, hash);
-                jsonLines += String.format("%s\n", edata);
-            } // for
-            entity = new StringEntity(jsonLines, Charset.forName(charSet));
+            charset = Charset.forName(charSet);
+            getDigest();
         } catch (NoSuchAlgorithmException e) {
             throw new CygnusPersistenceError("Could not create id (data=" + data + "), rootCause=" + e.toString() + ")");
         } catch (IllegalArgumentException e) {
             throw new CygnusPersistenceError("Could not create StringEntity (data=" + data + ", charSet=" + charSet + ", rootCause=" + e.toString() + ")");
         } // try-catch
-        LOGGER.debug("bulk insert (index=" + index + ", type=" + type + ", jsonLines=" + jsonLines + ")");
+
+        String relativeURL = "/" + index + "/" + type + "/_bulk";
+        List<Map<String, String>> pending = data;
+        JsonResponse response = null;
+        List<String> rejections = new ArrayList<>();
+
+        for (int retry = 0;; retry++) {
+            List<Map<String, String>> failed = new ArrayList<>();
+            int from = 0;
+
+            // Send the pending documents, at least one (maybe empty) request is done
+            do {
+                BulkBuffer buffer = BUFFERS.get();
+                buffer.reset();
+                int to = from;
+
+                while (to < pending.size() && (to == from || buffer.size() < bulkMaxBytes)) {
+                    appendDocument(buffer, pending.get(to), charset);
+                    to++;
+                } // while
+
+                List<Map<String, String>> sent = pending.subList(from, to);
+                response = sendBulk(relativeURL, index, type, buffer, charset);
+
+                if (response.getStatusCode() == 200) {
+                    LOGGER.debug("Successfully bulk inserted (index=" + index + ", type=" + type + ", documents="
+                            + sent.size() + ")");
+                    getFailedDocuments(response, sent, failed, rejections);
+                } else if (isRetriable(response.getStatusCode()) && retry < bulkMaxRetries) {
+                    failed.addAll(sent);
+                } else {
+                    throw new CygnusPersistenceError("Could not insert (index=" + index + ", type=" + type
+                            + ", jsonLines=" + buffer.asString(charset) + ")");
+                } // if else
+
+                from = to;
+            } while (from < pending.size());
+
+            if (failed.isEmpty()) {
+                break;
+            } else if (retry >= bulkMaxRetries) {
+                throw new CygnusPersistenceError("Could not insert " + failed.size() + " documents after "
+                        + retry + " retries (index=" + index + ", type=" + type + ")");
+            } // if else if
+
+            LOGGER.warn("Some documents were not inserted, retrying them (index=" + index + ", type=" + type
+                    + ", documents=" + failed.size() + ", retry=" + (retry + 1) + ")");
+
+            try {
+                Thread.sleep(bulkRetryInterval * (retry + 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CygnusPersistenceError("Interrupted while retrying the not inserted documents (index="
+                        + index + ", type=" + type + ")");
+            } // try catch
+
+            pending = failed;
+        } // for
+
+        if (!rejections.isEmpty()) {
+            throw new CygnusPersistenceError("Could not insert " + rejections.size() + " documents (index=" + index
+                    + ", type=" + type + ", reason=" + rejections.get(0) + ")");
+        } // if
+
+        return response;
+    } // bulkInsert
+
+    private JsonResponse sendBulk(String relativeURL, String index, String type, BulkBuffer buffer, Charset charset)
+        throws CygnusPersistenceError, CygnusRuntimeError {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("bulk insert (index=" + index + ", type=" + type + ", jsonLines=" + buffer.asString(charset)
+                    + ")");
+        } // if
 
         ArrayList<Header> headers = new ArrayList<Header>();
         headers.add(new BasicHeader("Content-type", "application/json"));
         headers.add(new BasicHeader("Accept", "application/json"));
+        return doRequest("POST", relativeURL, true, headers, new BulkEntity(buffer, charset));
+    } // sendBulk
+
+    /**
+     * Appends a document to the payload of a _bulk request. Its id is made of its reception time and the hash of its
+     * content, thus inserting it again overwrites it.
+     *
+     * @param buffer
+     * @param elem
+     * @param charset
+     */
+    private void appendDocument(BulkBuffer buffer, Map<String, String> elem, Charset charset) {
+        String edata = elem.get("data");
+        String hash;
+
+        try {
+            hash = DatatypeConverter.printHexBinary(getDigest().digest(edata.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // this cannot happen, the digest was already got
+            throw new IllegalStateException(e);
+        } // try catch
 
-        JsonResponse response = doRequest("POST", relativeURL, true, headers, entity);
-        if (response.getStatusCode() == 200) {
-            LOGGER.debug("Successfully bulk inserted (index=" + index + ", type=" + type + ", jsonLines=" + jsonLines + ")");
-            return response;
-        } else {
-            throw new CygnusPersistenceError("Could not insert (index=" + index + ", type=" + type + ", jsonLines=" + jsonLines + ")");
+        buffer.append("{\"index\":{\"_id\":\"", charset);
+        buffer.append(elem.get("recvTimeTs"), charset);
+        buffer.append("-", charset);
+        buffer.append(hash, charset);
+        buffer.append("\"}}\n", charset);
+        buffer.append(edata, charset);
+        buffer.append("\n", charset);
+    } // appendDocument
+
+    /**
+     * Gets the documents whose insertion failed within the response of a _bulk request. The ones failed with a
+     * retriable status are added to the list of documents to be retried, the reasons of the other ones are added to
+     * the list of rejections.
+     *
+     * @param response
+     * @param sent the documents sent within the request, in the same order
+     * @param failed the list where adding the documents to be retried
+     * @param rejections the list where adding the reasons of the not retriable failures
+     */
+    private void getFailedDocuments(JsonResponse response, List<Map<String, String>> sent,
+            List<Map<String, String>> failed, List<String> rejections) {
+        JSONObject jsonObject = response.getJsonObject();
+
+        if (jsonObject == null || !Boolean.TRUE.equals(jsonObject.get("errors"))
+                || !(jsonObject.get("items") instanceof JSONArray)) {
+            return;
         } // if
-    } // bulkInsert
-} // ElasticsearchBackendImpl
\ No newline at end of file
+
+        JSONArray items = (JSONArray) jsonObject.get("items");
+
+        for (int i = 0; i < items.size() && i < sent.size(); i++) {
+            JSONObject item = (JSONObject) items.get(i);
+
+            if (item.isEmpty()) {
+                continue;
+            } // if
+
+            JSONObject result = (JSONObject) item.values().iterator().next();
+            int status = ((Number) result.get("status")).intValue();
+
+            if (status >= 200 && status < 300) {
+                continue;
+            } else if (isRetriable(status)) {
+                failed.add(sent.get(i));
+            } else {
+                String reason = String.valueOf(result.get("error"));
+                rejections.add(reason);
+                LOGGER.error("Document not inserted (status=" + status + ", error=" + reason + ")");
+            } // if else
+        } // for
+    } // getFailedDocuments
+
+    private boolean isRetriable(int status) {
+        return status == 429 || status >= 500;
+    } // isRetriable
+
+    private static MessageDigest getDigest() throws NoSuchAlgorithmException {
+        MessageDigest digest = DIGESTS.get();
+
+        if (digest == null) {
+            digest = MessageDigest.getInstance("MD5");
+            DIGESTS.set(digest);
+        } // if
+
+        return digest;
+    } // getDigest
+
+    /**
+     * Reusable buffer where the payload of the _bulk requests is written, one per thread.
+     */
+    private static class BulkBuffer extends ByteArrayOutputStream {
+
+        BulkBuffer() {
+            super(8192);
+        } // BulkBuffer
+
+        void append(String str, Charset charset) {
+            byte[] bytes = str.getBytes(charset);
+            write(bytes, 0, bytes.length);
+        } // append
+
+        String asString(Charset charset) {
+            return new String(buf, 0, count, charset);
+        } // asString
+
+        byte[] getBuffer() {
+            return buf;
+        } // getBuffer
+
+    } // BulkBuffer
+
+    /**
+     * Entity whose content is the payload written within a bulk buffer, avoiding to copy it.
+     */
+    private static class BulkEntity extends StringEntity {
+
+        private final byte[] bytes;
+        private final int length;
+
+        BulkEntity(BulkBuffer buffer, Charset charset) {
+            super("", ContentType.create("text/plain", charset));
+            this.bytes = buffer.getBuffer();
+            this.length = buffer.size();
+        } // BulkEntity
+
+        @Override
+        public long getContentLength() {
+            return length;
+        } // getContentLength
+
+        @Override
+        public InputStream getContent() {
+            return new ByteArrayInputStream(bytes, 0, length);
+        } // getContent
+
+        @Override
+        public void writeTo(OutputStream outStream) throws IOException {
+            outStream.write(bytes, 0, length);
+            outStream.flush();
+        } // writeTo
+
+    } // BulkEntity
+
+} // ElasticsearchBackendImpl
@@ -24,12 +24,21 @@ import com.telefonica.iot.cygnus.log.CygnusLogger;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.security.PrivilegedExceptionAction;
+import java.util.List;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.SimpleGroupFactory;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.example.ExampleParquetWriter;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
 
 /**
  *
@@ -45,6 +54,9 @@ public class HDFSBackendImplBinary implements HDFSBackend {
     private final String hivePort;
     private final boolean serviceAsNamespace;
     private FSGetter fsGetter;
+    private HDFSWriterManager writerManager;
+    private FileSystem streamsFileSystem;
+    private IdleStreamsCloser idleStreamsCloser;
     private static final CygnusLogger LOGGER = new CygnusLogger(HDFSBackendImplREST.class);
     
     /**
@@ -82,6 +94,123 @@ public class HDFSBackendImplBinary implements HDFSBackend {
         this.fsGetter = fsGetter;
     } // setFSGetter
 
+    /**
+     * Enables the writing through long-lived output streams, see HDFSWriterManager.
+     * @param rollSize Size in bytes a file is rolled at, 0 means no rolling by size
+     * @param rollInterval Time in milliseconds a file is rolled after, 0 means no rolling by time
+     * @param idleTimeout Time in milliseconds an idle stream is closed after
+     */
+    public void enableStreams(long rollSize, long rollInterval, long idleTimeout) {
+        writerManager = new HDFSWriterManager(rollSize, rollInterval, idleTimeout);
+        idleStreamsCloser = new IdleStreamsCloser();
+        idleStreamsCloser.start();
+    } // enableStreams
+
+    /**
+     * Gets if the writing through long-lived output streams is enabled.
+     * @return True if the writing through long-lived output streams is enabled, otherwise false
+     */
+    public boolean isStreamsEnabled() {
+        return writerManager != null;
+    } // isStreamsEnabled
+
+    /**
+     * Writes data to a file in HDFS through a long-lived output stream; the file (and its parent directories) is
+     * created if not existing. Thus, it replaces the exists, createDir, createFile and append sequence.
+     *
+     * @param filePath File to be written
+     * @param data Data to be written in the file
+     * @throws com.telefonica.iot.cygnus.errors.CygnusPersistenceError
+     * @throws com.telefonica.iot.cygnus.errors.CygnusRuntimeError
+     */
+    public void write(String filePath, String data) throws CygnusPersistenceError, CygnusRuntimeError {
+        if (writerManager == null) {
+            throw new CygnusRuntimeError("File writing error", "IllegalStateException", "Streams are not enabled");
+        } // if
+
+        WritePEA pea = new WritePEA(filePath, data);
+        UserGroupInformation ugi = UserGroupInformation.createRemoteUser(hdfsUser);
+
+        try {
+            ugi.doAs(pea);
+        } catch (IOException e) {
+            throw new CygnusPersistenceError("File writing error", "IOException", e.getMessage());
+        } catch (InterruptedException e) {
+            throw new CygnusPersistenceError("File writing error", "InterruptedException", e.getMessage());
+        } // try catch
+    } // write
+
+    /**
+     * Closes all the long-lived output streams, if enabled.
+     */
+    public void closeStreams() {
+        if (writerManager == null) {
+            return;
+        } // if
+
+        idleStreamsCloser.signalForStop();
+        idleStreamsCloser.interrupt();
+        writerManager.closeAll();
+
+        synchronized (this) {
+            if (streamsFileSystem != null) {
+                try {
+                    streamsFileSystem.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Error while closing the HDFS file system. Details: " + e.getMessage());
+                } // try catch
+
+                streamsFileSystem = null;
+            } // if
+        } // synchronized
+    } // closeStreams
+
+    /**
+     * Gets the file system the long-lived output streams are opened with. It is not shared with the other
+     * operations, since the file systems got by them are closed once used.
+     * @return The file system the long-lived output streams are opened with
+     * @throws IOException
+     */
+    private synchronized FileSystem getStreamsFileSystem() throws IOException {
+        if (streamsFileSystem == null) {
+            streamsFileSystem = fsGetter.getNewInstance();
+        } // if
+
+        return streamsFileSystem;
+    } // getStreamsFileSystem
+
+    /**
+     * Creates a Parquet file in HDFS with the given records. Parquet files cannot be appended, thus a new file must be
+     * created each time. The file is written under a hidden name (ignored by Hive and MapReduce) and renamed once
+     * completely written, in order no reader gets a partial file.
+     *
+     * @param filePath File to be created, it must not exist
+     * @param schema Parquet schema of the records, e.g. "message m { optional int64 ts; optional binary s (UTF8); }"
+     * @param records Records to be written, each one containing the values (String, Long or null) of the schema
+     * fields in the same order
+     * @param compression Compression codec, i.e. "uncompressed", "snappy" or "gzip"
+     * @param rowGroupSize Size in bytes of the row groups
+     * @throws com.telefonica.iot.cygnus.errors.CygnusPersistenceError
+     * @throws com.telefonica.iot.cygnus.errors.CygnusRuntimeError
+     */
+    public void createParquetFile(String filePath, String schema, List<Object[]> records, String compression,
+            int rowGroupSize) throws CygnusPersistenceError, CygnusRuntimeError {
+        CreateParquetFilePEA pea = new CreateParquetFilePEA(filePath, schema, records, compression, rowGroupSize);
+        UserGroupInformation ugi = UserGroupInformation.createRemoteUser(hdfsUser);
+
+        try {
+            ugi.doAs(pea);
+        } catch (IOException e) {
+            throw new CygnusPersistenceError("Parquet file creation error", "IOException", e.getMessage());
+        } catch (InterruptedException e) {
+            throw new CygnusPersistenceError("Parquet file creation error", "InterruptedException",
+                    e.getMessage());
+        } catch (IllegalArgumentException e) {
+            throw new CygnusRuntimeError("Parquet file creation error", "IllegalArgumentException",
+                    e.getMessage());
+        } // try catch
+    } // createParquetFile
+
     @Override
     public void createDir(String dirPath) throws CygnusPersistenceError, CygnusRuntimeError {
         CreateDirPEA pea = new CreateDirPEA(dirPath);
@@ -239,6 +368,139 @@ public class HDFSBackendImplBinary implements HDFSBackend {
     
     } // AppendPEA
     
+    /**
+     * Privileged Exception Action for writing data to a HDFS file through a long-lived output stream.
+     */
+    private class WritePEA implements PrivilegedExceptionAction {
+
+        private final String filePath;
+        private final String data;
+
+        public WritePEA(String filePath, String data) {
+            this.filePath = filePath;
+            this.data = data;
+        } // WritePEA
+
+        @Override
+        public Void run() throws Exception {
+            String effectiveFilePath = "/user/" + (serviceAsNamespace ? "" : (hdfsUser + "/")) + filePath;
+            writerManager.write(getStreamsFileSystem(), effectiveFilePath, (data + "\n").getBytes(StandardCharsets.UTF_8));
+            return null;
+        } // run
+
+    } // WritePEA
+
+    /**
+     * Privileged Exception Action for creating a new HDFS Parquet file.
+     */
+    private class CreateParquetFilePEA implements PrivilegedExceptionAction {
+
+        private final String filePath;
+        private final String schema;
+        private final List<Object[]> records;
+        private final String compression;
+        private final int rowGroupSize;
+
+        public CreateParquetFilePEA(String filePath, String schema, List<Object[]> records, String compression,
+                int rowGroupSize) {
+            this.filePath = filePath;
+            this.schema = schema;
+            this.records = records;
+            this.compression = compression;
+            this.rowGroupSize = rowGroupSize;
+        } // CreateParquetFilePEA
+
+        @Override
+        public Void run() throws Exception {
+            String effectiveFilePath = "/user/" + (serviceAsNamespace ? "" : (hdfsUser + "/")) + filePath;
+            int index = effectiveFilePath.lastIndexOf('/');
+            Path path = new Path(effectiveFilePath);
+            Path tmpPath = new Path(effectiveFilePath.substring(0, index + 1) + "."
+                    + effectiveFilePath.substring(index + 1) + ".tmp");
+            MessageType messageType = MessageTypeParser.parseMessageType(schema);
+            SimpleGroupFactory groupFactory = new SimpleGroupFactory(messageType);
+            FileSystem fileSystem = fsGetter.get();
+
+            try {
+                // Parquet gets its own file system from the path and the configuration (Path.getFileSystem, i.e.
+                // through the FileSystem cache), not the given instance; qualifying the path with the scheme and
+                // authority of the given file system, and passing its configuration, Parquet writes to the same HDFS
+                ParquetWriter<Group> writer = ExampleParquetWriter.builder(fileSystem.makeQualified(tmpPath))
+                        .withConf(fileSystem.getConf())
+                        .withType(messageType)
+                        .withCompressionCodec(CompressionCodecName.fromConf(compression.toUpperCase()))
+                        .withRowGroupSize(rowGroupSize)
+                        .build();
+
+                try {
+                    for (Object[] record : records) {
+                        Group group = groupFactory.newGroup();
+
+                        for (int i = 0; i < record.length; i++) {
+                            if (record[i] instanceof Long) {
+                                group.add(i, (Long) record[i]);
+                            } else if (record[i] != null) {
+                                group.add(i, record[i].toString());
+                            } // if else
+                        } // for
+
+                        writer.write(group);
+                    } // for
+                } finally {
+                    writer.close();
+                } // try finally
+
+                if (!fileSystem.rename(tmpPath, path)) {
+                    throw new CygnusPersistenceError("The /user/" + (serviceAsNamespace ? "" : (hdfsUser + "/"))
+                            + filePath + " file could not be created in HDFS");
+                } // if
+            } catch (IOException e) {
+                fileSystem.delete(tmpPath, false);
+                throw e;
+            } finally {
+                fileSystem.close();
+            } // try catch finally
+
+            return null;
+        } // run
+
+    } // CreateParquetFilePEA
+
+    /**
+     * Class in charge of periodically closing the idle long-lived output streams.
+     */
+    private class IdleStreamsCloser extends Thread {
+
+        private volatile boolean stop;
+
+        IdleStreamsCloser() {
+            this.stop = false;
+            setDaemon(true);
+        } // IdleStreamsCloser
+
+        @Override
+        public void run() {
+            while (!stop) {
+                try {
+                    sleep(Math.max(writerManager.getIdleTimeout() / 2, 1000));
+                } catch (InterruptedException e) {
+                    continue;
+                } // try catch
+
+                int closed = writerManager.closeIdleWriters();
+
+                if (closed > 0) {
+                    LOGGER.debug("Idle HDFS output streams closed (" + closed + ")");
+                } // if
+            } // while
+        } // run
+
+        public void signalForStop() {
+            this.stop = true;
+        } // signalForStop
+
+    } // IdleStreamsCloser
+
     /**
      * Privileged Exception Action for finding out wether a file exists or not.
      */
@@ -297,6 +559,17 @@ public class HDFSBackendImplBinary implements HDFSBackend {
             conf.set("fs.default.name", "hdfs://" + hdfsHost + ":" + hdfsPort);
             return FileSystem.get(conf);
         } // get
+
+        /**
+         * Gets a new Hadoop FileSystem, i.e. not shared with any other user, thus it can be kept open.
+         * @return
+         * @throws java.io.IOException
+         */
+        public FileSystem getNewInstance() throws IOException {
+            Configuration conf = new Configuration();
+            conf.set("fs.default.name", "hdfs://" + hdfsHost + ":" + hdfsPort);
+            return FileSystem.newInstance(conf);
+        } // getNewInstance
         
     } // FSGetter
     
@@ -0,0 +1,272 @@
+/**
+ * Copyright 2026 Telefonica Investigación y Desarrollo, S.A.U
+ *
+ * This file is part of fiware-cygnus (FIWARE project).
+ *
+ * fiware-cygnus is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * fiware-cygnus is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with fiware-cygnus. If not, see
+ * http://www.gnu.org/licenses/.
+ *
+ * For those usages not covered by the GNU Affero General Public License please contact with iot_support at tid dot es
+ */
+package com.telefonica.iot.cygnus.backends.hdfs;
+
+import com.telefonica.iot.cygnus.log.CygnusLogger;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Manager of long-lived HDFS output streams, one per written file. Opening a stream (create or append) implies
+ * several NameNode round-trips and a lease acquisition, thus the streams are kept open among writes instead of being
+ * opened for each one.
+ *
+ * Each write is hflush'ed before returning, i.e. the data is visible to the readers and survives a Cygnus crash, as
+ * when closing a stream, but it does not involve the NameNode.
+ *
+ * The files are rolled, i.e. a new part file is opened within the same directory, when reaching a configured size
+ * or age. In addition, the streams idle for a configured time are closed, for instance the ones of a file no longer
+ * written because of the periodicity of file separation.
+ */
+public class HDFSWriterManager {
+
+    private static final CygnusLogger LOGGER = new CygnusLogger(HDFSWriterManager.class);
+    private static final String FILE_EXTENSION = ".txt";
+    private static final String PART_PREFIX = ".part";
+    private final long rollSize;
+    private final long rollInterval;
+    private final long idleTimeout;
+    private final ConcurrentHashMap<String, HDFSWriter> writers;
+
+    /**
+     * Constructor.
+     * @param rollSize Size in bytes a file is rolled at, 0 means no rolling by size
+     * @param rollInterval Time in milliseconds a file is rolled after, 0 means no rolling by time
+     * @param idleTimeout Time in milliseconds an idle stream is closed after
+     */
+    public HDFSWriterManager(long rollSize, long rollInterval, long idleTimeout) {
+        this.rollSize = rollSize;
+        this.rollInterval = rollInterval;
+        this.idleTimeout = idleTimeout;
+        this.writers = new ConcurrentHashMap<>();
+    } // HDFSWriterManager
+
+    /**
+     * Writes the given data into the given file, opening (or rolling) the stream if required. The data is hflush'ed
+     * before returning.
+     * @param fileSystem
+     * @param filePath Effective file path
+     * @param data
+     * @throws IOException
+     */
+    public void write(FileSystem fileSystem, String filePath, byte[] data) throws IOException {
+        while (true) {
+            HDFSWriter writer = writers.get(filePath);
+
+            if (writer == null) {
+                HDFSWriter newWriter = new HDFSWriter(filePath);
+                writer = writers.putIfAbsent(filePath, newWriter);
+
+                if (writer == null) {
+                    writer = newWriter;
+                } // if
+            } // if
+
+            synchronized (writer) {
+                // The writer may have been closed (and removed) meanwhile, for instance because of idleness
+                if (writer.isClosed()) {
+                    continue;
+                } // if
+
+                try {
+                    writer.write(fileSystem, data);
+                } catch (IOException e) {
+                    // The stream is not reliable anymore, it will be opened again in the next write
+                    writer.close();
+                    writers.remove(filePath, writer);
+                    throw e;
+                } // try catch
+
+                return;
+            } // synchronized
+        } // while
+    } // write
+
+    /**
+     * Closes the streams idle for more than the configured idle timeout.
+     * @return The number of closed streams
+     */
+    public int closeIdleWriters() {
+        long now = System.currentTimeMillis();
+        int closed = 0;
+
+        for (Map.Entry<String, HDFSWriter> entry : writers.entrySet()) {
+            HDFSWriter writer = entry.getValue();
+
+            synchronized (writer) {
+                if (!writer.isClosed() && now - writer.getLastWriteTime() >= idleTimeout) {
+                    writer.close();
+                    writers.remove(entry.getKey(), writer);
+                    closed++;
+                } // if
+            } // synchronized
+        } // for
+
+        return closed;
+    } // closeIdleWriters
+
+    /**
+     * Closes all the streams.
+     */
+    public void closeAll() {
+        for (Map.Entry<String, HDFSWriter> entry : writers.entrySet()) {
+            HDFSWriter writer = entry.getValue();
+
+            synchronized (writer) {
+                writer.close();
+                writers.remove(entry.getKey(), writer);
+            } // synchronized
+        } // for
+    } // closeAll
+
+    /**
+     * Gets the number of open streams. It is protected since it is only used by the tests.
+     * @return The number of open streams
+     */
+    protected int getNumWriters() {
+        return writers.size();
+    } // getNumWriters
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    } // getIdleTimeout
+
+    /**
+     * Gets the path of the given part of the given file. The part 0 is the file itself, the other parts are placed
+     * within the same directory, thus they are part of the same Hive table, if any.
+     * @param filePath
+     * @param part
+     * @return The path of the given part of the given file
+     */
+    protected static String getPartPath(String filePath, int part) {
+        if (part == 0) {
+            return filePath;
+        } else if (filePath.endsWith(FILE_EXTENSION)) {
+            return filePath.substring(0, filePath.length() - FILE_EXTENSION.length()) + PART_PREFIX + part
+                    + FILE_EXTENSION;
+        } else {
+            return filePath + PART_PREFIX + part;
+        } // if else
+    } // getPartPath
+
+    /**
+     * A long-lived output stream for a file, rolled into part files if configured.
+     */
+    private class HDFSWriter {
+
+        private final String filePath;
+        private FSDataOutputStream out;
+        private int part;
+        private long bytes;
+        private long openTime;
+        private long lastWriteTime;
+        private boolean closed;
+
+        HDFSWriter(String filePath) {
+            this.filePath = filePath;
+            this.out = null;
+            this.part = 0;
+            this.bytes = 0;
+            this.openTime = 0;
+            this.lastWriteTime = System.currentTimeMillis();
+            this.closed = false;
+        } // HDFSWriter
+
+        void write(FileSystem fileSystem, byte[] data) throws IOException {
+            long now = System.currentTimeMillis();
+
+            if (out != null && mustRoll(now)) {
+                LOGGER.debug("[HDFSWriterManager] Rolling file " + getPartPath(filePath, part) + " (bytes=" + bytes
+                        + ", age=" + (now - openTime) + " ms)");
+                out.close();
+                out = null;
+                part++;
+                open(fileSystem, now);
+            } else if (out == null) {
+                open(fileSystem, now);
+            } // if else
+
+            out.write(data);
+            out.hflush();
+            bytes += data.length;
+            lastWriteTime = now;
+        } // write
+
+        private boolean mustRoll(long now) {
+            return (rollSize > 0 && bytes >= rollSize) || (rollInterval > 0 && now - openTime >= rollInterval);
+        } // mustRoll
+
+        private void open(FileSystem fileSystem, long now) throws IOException {
+            while (true) {
+                Path path = new Path(getPartPath(filePath, part));
+
+                if (!fileSystem.exists(path)) {
+                    // Parent directories are created as well
+                    out = fileSystem.create(path);
+                    bytes = 0;
+                    break;
+                } // if
+
+                long length = fileSystem.getFileStatus(path).getLen();
+
+                // Existing parts already reaching the roll size are skipped, e.g. after a restart
+                if (rollSize > 0 && length >= rollSize) {
+                    part++;
+                    continue;
+                } // if
+
+                out = fileSystem.append(path);
+                bytes = length;
+                break;
+            } // while
+
+            openTime = now;
+            LOGGER.debug("[HDFSWriterManager] File " + getPartPath(filePath, part) + " opened (bytes=" + bytes + ")");
+        } // open
+
+        void close() {
+            if (out != null) {
+                try {
+                    out.close();
+                    LOGGER.debug("[HDFSWriterManager] File " + getPartPath(filePath, part) + " closed");
+                } catch (IOException e) {
+                    LOGGER.warn("[HDFSWriterManager] Error while closing the " + getPartPath(filePath, part)
+                            + " file. Details: " + e.getMessage());
+                } // try catch
+
+                out = null;
+            } // if
+
+            closed = true;
+        } // close
+
+        boolean isClosed() {
+            return closed;
+        } // isClosed
+
+        long getLastWriteTime() {
+            return lastWriteTime;
+        } // getLastWriteTime
+
+    } // HDFSWriter
+
+} // HDFSWriterManager
@@ -17,7 +17,9 @@
  */
 package com.telefonica.iot.cygnus.backends.kafka;
 
+import java.util.concurrent.Future;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
 
 /**
  * Interface for those backends implementing the persistence in Kafka.
@@ -45,8 +47,9 @@ public interface KafkaBackend {
     /**
      * Send a record.
      * @param record
+     * @return The future result of the send, done once the record is acknowledged (or failed)
      */
-    void send(ProducerRecord<String, String> record);
+    Future<RecordMetadata> send(ProducerRecord<String, String> record);
     
 } // KafkaBackend
 
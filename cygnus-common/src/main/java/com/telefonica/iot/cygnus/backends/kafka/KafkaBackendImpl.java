@@ -19,12 +19,17 @@ package com.telefonica.iot.cygnus.backends.kafka;
 
 import com.telefonica.iot.cygnus.log.CygnusLogger;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
 import kafka.admin.AdminUtils;
 import kafka.utils.ZKStringSerializer$;
 import org.I0Itec.zkclient.ZkClient;
+import org.apache.kafka.clients.producer.Callback;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.serialization.StringSerializer;
 
 /**
@@ -38,6 +43,7 @@ public class KafkaBackendImpl implements KafkaBackend {
     private static final CygnusLogger LOGGER = new CygnusLogger(KafkaBackendImpl.class);
     private final String zkEndpoint;
     private ZkClient zookeeperClient;
+    private final Set<String> knownTopics;
     
     /**
      * Constructor.
@@ -45,9 +51,21 @@ public class KafkaBackendImpl implements KafkaBackend {
      * @param zookeperEndpoint
      */
     public KafkaBackendImpl(String brokerList, String zookeperEndpoint) {
+        this(brokerList, zookeperEndpoint, new Properties());
+    } // KafkaBackendImpl
+    
+    /**
+     * Constructor.
+     * @param brokerList
+     * @param zookeperEndpoint
+     * @param producerProperties Additional producer properties (e.g. acks, linger.ms, batch.size, compression.type)
+     */
+    public KafkaBackendImpl(String brokerList, String zookeperEndpoint, Properties producerProperties) {
         LOGGER.debug("Creating persistence backend.");
         zkEndpoint = zookeperEndpoint;
+        knownTopics = ConcurrentHashMap.newKeySet();
         Properties properties = new Properties();
+        properties.putAll(producerProperties);
         properties.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, brokerList);
         properties.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
         properties.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
@@ -55,23 +73,51 @@ public class KafkaBackendImpl implements KafkaBackend {
         zookeeperClient = new ZkClient(zkEndpoint, 10000, 10000, ZKStringSerializer$.MODULE$);
     } // KafkaBackendImpl
 
+    /**
+     * Checks if a topic exists. The topics known to exist are remembered, thus ZooKeeper is only queried for the
+     * unknown ones.
+     * @param topic
+     * @return True if the topic exists, false otherwise
+     * @throws Exception
+     */
     @Override
     public boolean topicExists(String topic) throws Exception {
+        if (knownTopics.contains(topic)) {
+            return true;
+        } // if
+
         LOGGER.debug("Checking if topic '" + topic + "' already exists.");
-        return AdminUtils.topicExists(zookeeperClient, topic);
+        boolean exists = AdminUtils.topicExists(zookeeperClient, topic);
+
+        if (exists) {
+            knownTopics.add(topic);
+        } // if
+
+        return exists;
     } // topicExists
 
     @Override
     public void createTopic(String topic, int partitions, int replicationFactor) {
         AdminUtils.createTopic(zookeeperClient, topic, partitions, replicationFactor, new Properties());
+        knownTopics.add(topic);
         LOGGER.debug("Creating topic: " + topic + " , partitions: " + partitions
                 + " , " + "replication factor: " + replicationFactor + ".");
     } // createTopic
 
     @Override
-    public void send(ProducerRecord<String, String> record) {
-        kafkaProducer.send(record);
+    public Future<RecordMetadata> send(final ProducerRecord<String, String> record) {
+        Future<RecordMetadata> future = kafkaProducer.send(record, new Callback() {
+            @Override
+            public void onCompletion(RecordMetadata metadata, Exception exception) {
+                if (exception != null) {
+                    // The topic may not exist anymore, thus it is checked again the next time
+                    knownTopics.remove(record.topic());
+                    LOGGER.debug("Record: '" + record + "' not sent to Kafka. Details: " + exception.getMessage());
+                } // if
+            } // onCompletion
+        });
         LOGGER.debug("Record: '" + record + "' sent to Kafka.");
+        return future;
     } // send
     
     /**
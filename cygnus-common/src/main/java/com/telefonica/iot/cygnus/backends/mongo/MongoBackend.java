@@ -101,4 +101,16 @@ public interface MongoBackend {
             boolean[] resolutions)
         throws Exception;
 
+    /**
+     * Inserts the context data pre-aggregated by the given accumulator in the related aggregated collection for the
+     * resolutions given, by means of a single bulk write.
+     * @param dbName
+     * @param collectionName
+     * @param accumulator
+     * @param resolutions
+     * @throws Exception
+     */
+    void insertContextDataAggregated(String dbName, String collectionName, STHAccumulator accumulator,
+            boolean[] resolutions) throws Exception;
+
 } // MongoBackend
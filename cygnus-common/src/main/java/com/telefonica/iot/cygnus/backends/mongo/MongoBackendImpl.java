@@ -18,11 +18,15 @@
 package com.telefonica.iot.cygnus.backends.mongo;
 
 import com.mongodb.*;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteUpsert;
 import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
 import com.mongodb.client.model.CreateCollectionOptions;
 import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.InsertManyOptions;
 import com.mongodb.client.model.UpdateOptions;
 import com.mongodb.client.model.WriteModel;
 import com.mongodb.client.model.UpdateOneModel;
@@ -31,11 +35,17 @@ import com.telefonica.iot.cygnus.log.CygnusLogger;
 import com.telefonica.iot.cygnus.sinks.Enums.DataModel;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManagerFactory;
@@ -73,8 +83,33 @@ public class MongoBackendImpl implements MongoBackend {
     private final String sslTruststorePathFile;
     private final String sslTruststorePassword;
     private final DataModel dataModel;
+    private volatile int prepopulatedDocsCacheSize;
+    private final Map<String, Long> prepopulatedDocs;
+    private final ConcurrentHashMap<String, Long> dataExpirations;
+    private final MongoCache cache;
+    private volatile boolean orderedWrites;
+    private volatile WriteConcern writeConcern;
     private static final CygnusLogger LOGGER = new CygnusLogger(MongoBackendImpl.class);
 
+    /**
+     * Default maximum number of aggregated documents known as prepopulated.
+     */
+    public static final int DEFAULT_PREPOPULATED_DOCS_CACHE_SIZE = 10000;
+
+    /**
+     * Milliseconds a collection (and its indexes) is known to exist once created, before checking it again.
+     */
+    public static final long KNOWN_COLLECTIONS_TTL = 3600000;
+
+    /**
+     * Maximum number of collections known to exist.
+     */
+    public static final int KNOWN_COLLECTIONS_MAX_SIZE = 10000;
+
+    // Error codes meaning a collection known to exist may not exist anymore: NamespaceNotFound, IndexNotFound and
+    // InvalidNamespace
+    private static final int[] NOT_EXISTING_COLLECTION_CODES = {26, 27, 73};
+
     /**
      * Constructor.
      * @param mongoHosts
@@ -104,8 +139,59 @@ public class MongoBackendImpl implements MongoBackend {
         this.sslTruststorePathFile = sslTruststorePathFile;
         this.sslTruststorePassword = sslTruststorePassword;
         this.dataModel = dataModel;
+        this.prepopulatedDocsCacheSize = DEFAULT_PREPOPULATED_DOCS_CACHE_SIZE;
+        this.prepopulatedDocs = Collections.synchronizedMap(new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > prepopulatedDocsCacheSize;
+            } // removeEldestEntry
+        });
+        this.dataExpirations = new ConcurrentHashMap<>();
+        this.cache = new MongoCache(KNOWN_COLLECTIONS_TTL, KNOWN_COLLECTIONS_MAX_SIZE);
+        this.orderedWrites = true;
+        this.writeConcern = null;
     } // MongoBackendImpl
 
+    /**
+     * Sets whether the bulk writes are ordered (the default, a write error stops the remaining writes) or unordered
+     * (the remaining writes are done, and the server may apply them in parallel, e.g. across the shards).
+     * @param orderedWrites
+     */
+    public void setOrderedWrites(boolean orderedWrites) {
+        this.orderedWrites = orderedWrites;
+    } // setOrderedWrites
+
+    /**
+     * Sets the write concern of the inserts and updates, null means the one of the client (i.e. the one given in the
+     * Mongo URI, if any, or the driver's default).
+     * @param writeConcern
+     */
+    public void setWriteConcern(WriteConcern writeConcern) {
+        this.writeConcern = writeConcern;
+    } // setWriteConcern
+
+    /**
+     * Gets the write concern given its name (w1, w2, w3, majority, journaled, acknowledged or unacknowledged, case
+     * insensitive) or its number of acknowledging members.
+     * @param writeConcern
+     * @return The write concern, or null if not valid
+     */
+    public static WriteConcern parseWriteConcern(String writeConcern) {
+        if (writeConcern == null || writeConcern.isEmpty()) {
+            return null;
+        } // if
+
+        if (StringUtils.isNumeric(writeConcern)) {
+            try {
+                return new WriteConcern(Integer.parseInt(writeConcern));
+            } catch (NumberFormatException e) {
+                return null;
+            } // try catch
+        } // if
+
+        return WriteConcern.valueOf(writeConcern);
+    } // parseWriteConcern
+
     /**
      * Creates a collection for STH Comet, given its name, if not exists in the given database. Time-based limits are set,
      * if possible.
@@ -118,6 +204,12 @@ public class MongoBackendImpl implements MongoBackend {
      */
     @Override
     public void createCollection(String dbName, String collectionName, long dataExpiration) throws MongoException {
+        if (cache.isCachedCollection(dbName, collectionName)) {
+            LOGGER.debug("Mongo collection=" + collectionName + " at database=" + dbName + " is cached, thus it is "
+                    + "not created");
+            return;
+        } // if
+
         LOGGER.debug("Creating Mongo collection=" + collectionName + " at database=" + dbName);
         MongoDatabase db = getDatabase(dbName);
 
@@ -145,11 +237,18 @@ public class MongoBackendImpl implements MongoBackend {
             default:
         }
         options = new IndexOptions().name("cyg_agg_opt");
-        createIndex(db, collectionName, keys, options);
+        boolean indexed = createIndex(db, collectionName, keys, options);
         if (dataExpiration != 0) {
             keys = new BasicDBObject().append("_id.origin", 1);
             options = new IndexOptions().name("cyg_agg_exp").expireAfter(dataExpiration, TimeUnit.SECONDS);
-            createIndex(db, collectionName, keys, options);
+            indexed &= createIndex(db, collectionName, keys, options);
+        } // if
+
+        dataExpirations.put(dbName + "." + collectionName, dataExpiration);
+
+        // If any index could not be created, the collection is created again the next time
+        if (indexed) {
+            cache.addCollection(dbName, collectionName);
         } // if
     } // createCollection
 
@@ -165,6 +264,12 @@ public class MongoBackendImpl implements MongoBackend {
     @Override
     public void createCollection(String dbName, String collectionName, long collectionsSize, long maxDocuments,
             long dataExpiration) throws MongoException {
+        if (cache.isCachedCollection(dbName, collectionName)) {
+            LOGGER.debug("Mongo collection=" + collectionName + " at database=" + dbName + " is cached, thus it is "
+                    + "not created");
+            return;
+        } // if
+
         MongoDatabase db = getDatabase(dbName);
 
         // create the collection, with size-based limits if possible
@@ -218,11 +323,16 @@ public class MongoBackendImpl implements MongoBackend {
             default:
         }
         options = new IndexOptions().name("cyg_raw_opt");
-        createIndex(db, collectionName, keys, options);
+        boolean indexed = createIndex(db, collectionName, keys, options);
         if (dataExpiration != 0) {
             keys = new BasicDBObject().append("recvTime", 1);
             options = new IndexOptions().name("cyg_raw_exp").expireAfter(dataExpiration, TimeUnit.SECONDS);
-            createIndex(db, collectionName, keys, options);
+            indexed &= createIndex(db, collectionName, keys, options);
+        } // if
+
+        // If any index could not be created, the collection is created again the next time
+        if (indexed) {
+            cache.addCollection(dbName, collectionName);
         } // if
     } // createCollection
 
@@ -232,11 +342,13 @@ public class MongoBackendImpl implements MongoBackend {
      * @param collectionName
      * @param keys
      * @param options
+     * @return True if the index was created (or already existed), false otherwise
      */
-    public void createIndex(MongoDatabase db, String collectionName, BasicDBObject keys,
+    public boolean createIndex(MongoDatabase db, String collectionName, BasicDBObject keys,
             IndexOptions options) {
         try {
             db.getCollection(collectionName).createIndex(keys, options);
+            return true;
         } catch(Exception e) {
             // Our guess is:
             // IndexOptionsConflict -> when the same index (name and keys) already exits
@@ -244,13 +356,49 @@ public class MongoBackendImpl implements MongoBackend {
             if (e.getMessage().contains("IndexOptionsConflict") ||
                 e.getMessage().contains("IndexKeySpecsConflict")) {
                 db.getCollection(collectionName).dropIndex(options.getName());
-                createIndex(db, collectionName, keys, options);
+                return createIndex(db, collectionName, keys, options);
             } else {
                 LOGGER.warn("Error in collection " + collectionName + " creating index ex=" + e.getMessage());
+                return false;
             }
         } // try catch
     } // createIndex
 
+    /**
+     * Removes the given collection from the cache of known collections if the given error means it may not exist
+     * anymore, in order to be created again.
+     * @param dbName
+     * @param collectionName
+     * @param e
+     */
+    private void invalidateCollection(String dbName, String collectionName, MongoException e) {
+        boolean notExisting = isNotExistingCollectionCode(e.getCode());
+
+        if (!notExisting && e instanceof MongoBulkWriteException) {
+            for (BulkWriteError error : ((MongoBulkWriteException) e).getWriteErrors()) {
+                if (isNotExistingCollectionCode(error.getCode())) {
+                    notExisting = true;
+                    break;
+                } // if
+            } // for
+        } // if
+
+        if (notExisting && cache.removeCollection(dbName, collectionName)) {
+            LOGGER.debug("Mongo collection=" + collectionName + " at database=" + dbName + " may not exist anymore, "
+                    + "it will be created again (code=" + e.getCode() + ")");
+        } // if
+    } // invalidateCollection
+
+    private boolean isNotExistingCollectionCode(int code) {
+        for (int notExistingCode : NOT_EXISTING_COLLECTION_CODES) {
+            if (code == notExistingCode) {
+                return true;
+            } // if
+        } // for
+
+        return false;
+    } // isNotExistingCollectionCode
+
     /**
      * Inserts a new document in the given raw collection within the given database (row-like mode).
      * @param dbName
@@ -262,119 +410,324 @@ public class MongoBackendImpl implements MongoBackend {
     public void insertContextDataRaw(String dbName, String collectionName, ArrayList<Document> aggregation)
         throws Exception {
         MongoDatabase db = getDatabase(dbName);
-        MongoCollection collection = db.getCollection(collectionName);
-        collection.insertMany(aggregation);
+        MongoCollection collection = getCollectionForWrite(db, collectionName);
+
+        try {
+            collection.insertMany(aggregation, new InsertManyOptions().ordered(orderedWrites));
+        } catch (MongoException e) {
+            invalidateCollection(dbName, collectionName, e);
+            throw e;
+        } // try catch
     } // insertContextDataRaw
 
     @Override
     public void insertContextDataAggregated(String dbName, String collectionName, long recvTimeTs, String entityId,
             String entityType, String attrName, String attrType, double max, double min, double sum, double sum2,
             int numSamples, boolean[] resolutions) throws Exception {
-        // Preprocess some values
-        GregorianCalendar calendar = new GregorianCalendar();
-        calendar.setTimeZone(TimeZone.getTimeZone("UTC"));
-        calendar.setTimeInMillis(recvTimeTs);
-
-        insertContextDataAggregatedForResolution(dbName, collectionName, calendar, entityId, entityType,
-                                                 attrName, attrType, max, min, sum, sum2, numSamples, resolutions);
-
+        STHAccumulator accumulator = new STHAccumulator();
+        accumulator.add(recvTimeTs, entityId, entityType, attrName, attrType, max, min, sum, sum2, numSamples);
+        insertContextDataAggregated(dbName, collectionName, accumulator, resolutions);
     } // insertContextDataAggregated
 
     @Override
     public void insertContextDataAggregated(String dbName, String collectionName, long recvTimeTs, String entityId,
             String entityType, String attrName, String attrType, HashMap<String, Integer> counts,
             boolean[] resolutions) throws Exception {
-        // Preprocess some values
+        STHAccumulator accumulator = new STHAccumulator();
+        accumulator.add(recvTimeTs, entityId, entityType, attrName, attrType, counts);
+        insertContextDataAggregated(dbName, collectionName, accumulator, resolutions);
+    } // insertContextDataAggregated
+
+    @Override
+    public void insertContextDataAggregated(String dbName, String collectionName, STHAccumulator accumulator,
+            boolean[] resolutions) throws Exception {
+        if (accumulator.isEmpty()) {
+            return;
+        } // if
+
+        // Fold the accumulated points into the points of each resolution
+        LinkedHashMap<String, AggregatedPoint> points = new LinkedHashMap<>();
+        LinkedHashMap<String, AggregatedPoint> docs = new LinkedHashMap<>(); // one point per document
         GregorianCalendar calendar = new GregorianCalendar();
         calendar.setTimeZone(TimeZone.getTimeZone("UTC"));
-        calendar.setTimeInMillis(recvTimeTs);
 
-        insertContextDataAggregatedForResolution(dbName, collectionName, calendar, entityId, entityType,
-                                                 attrName, attrType, counts, resolutions);
+        for (int i = 0; i < resolutions.length; i++) {
+            if (!resolutions[i]) {
+                continue;
+            } // if
 
-    } // insertContextDataAggregated
+            Resolution resolution = Resolution.values()[i];
+
+            for (STHAccumulator.Point point : accumulator.getPoints()) {
+                calendar.setTimeInMillis(point.getRecvTimeTs());
+                BasicDBObject query = buildQueryForInsertAggregated(calendar, point.getEntityId(),
+                        point.getEntityType(), point.getAttrName(), getResolutions(resolution)).get(0);
+                String docKey = dbName + "." + collectionName + "\u0000" + query.get("_id").toString();
+                String pointKey = point.getKey() + "\u0000" + docKey + "\u0000" + query.get("points.offset");
+                AggregatedPoint aggregatedPoint = points.get(pointKey);
+
+                if (aggregatedPoint == null) {
+                    aggregatedPoint = new AggregatedPoint(docKey, resolution, query, new STHAccumulator.Point(
+                            point.getRecvTimeTs(), point.getEntityId(), point.getEntityType(), point.getAttrName(),
+                            point.getAttrType(), point.isNumeric()));
+                    points.put(pointKey, aggregatedPoint);
 
-    private void insertContextDataAggregatedForResolution(String dbName, String collectionName,
-            GregorianCalendar calendar, String entityId, String entityType, String attrName, String attrType,
-            double max, double min, double sum, double sum2, int numSamples, boolean[] resolutions) {
-        // Get database and collection
+                    if (!docs.containsKey(docKey)) {
+                        docs.put(docKey, aggregatedPoint);
+                    } // if
+                } // if
+
+                aggregatedPoint.point.merge(point);
+            } // for
+        } // for
+
+        // Prepopulate the documents not known as already prepopulated, then update them; the updates must be done
+        // once the documents exist, thus if the writes are unordered the prepopulations are written first
+        ArrayList<AggregatedPoint> prepopulations = new ArrayList<>();
+        ArrayList<AggregatedPoint> cachedPrepopulations = new ArrayList<>();
+
+        for (AggregatedPoint doc : docs.values()) {
+            if (isPrepopulated(doc.docKey)) {
+                cachedPrepopulations.add(doc);
+            } else {
+                prepopulations.add(doc);
+            } // if else
+        } // for
+
+        LOGGER.debug("Updating aggregated data, database=" + dbName + ", collection=" + collectionName
+                + ", prepopulations=" + prepopulations.size() + ", cached prepopulations="
+                + cachedPrepopulations.size() + ", updates=" + points.size() + ", ordered=" + orderedWrites);
         MongoDatabase db = getDatabase(dbName);
-        MongoCollection collection = db.getCollection(collectionName);
-
-        // Build the query
-        ArrayList<BasicDBObject> queries = buildQueryForInsertAggregated(calendar, entityId, entityType, attrName, resolutions);
-
-        // Prepopulate if needed
-        ArrayList<BasicDBObject> inserts = buildInsertForPrepopulate(attrType, resolutions, true);
-        List<WriteModel<Document>> writes = new ArrayList<WriteModel<Document>>();
-        for (int i = 0; i < queries.size(); i++) {
-            writes.add(
-                 new UpdateOneModel<Document>(
-                                              queries.get(i), // filter
-                                              inserts.get(i), // update
-                                              new UpdateOptions().upsert(true))
-                       );
-        }
-        // Do the update
-        BasicDBObject update = buildUpdateForUpdate(attrType, calendar, max, min, sum, sum2, numSamples);
-        LOGGER.debug("Updating data, database=" + dbName + ", collection=" + collectionName + ", queries="
-                + queries.toString() + ", update=" + update.toString());
-        for (int i = 0; i < queries.size(); i++) {
-            writes.add(
-                 new UpdateOneModel<Document>(
-                                              queries.get(i), // filter
-                                              update) // update
-                       );
-        }
-        com.mongodb.bulk.BulkWriteResult res = collection.bulkWrite(writes);
+        MongoCollection collection = getCollectionForWrite(db, collectionName);
+        com.mongodb.bulk.BulkWriteResult res;
+        long matchedUpdates;
 
-        if (res.getMatchedCount() == queries.size()) {
-            LOGGER.debug("Prepopulated data, database=" + dbName + ", collection=" + collectionName + ", queries="
-                    + queries.toString() + ", inserts=" + inserts.toString());
+        try {
+            // Unacknowledged bulk writes may be applied in any order, thus a single ordered one is used for them
+            if (orderedWrites || !collection.getWriteConcern().isAcknowledged()) {
+                List<WriteModel<Document>> writes = buildWritesForPrepopulate(prepopulations, calendar);
+                writes.addAll(buildWritesForUpdate(points.values(), calendar));
+                res = collection.bulkWrite(writes, new BulkWriteOptions().ordered(true));
+
+                // The upserts matching an existing document and all the updates are matched
+                matchedUpdates = res.wasAcknowledged()
+                        ? res.getMatchedCount() - (prepopulations.size() - res.getUpserts().size()) : points.size();
+            } else {
+                if (!prepopulations.isEmpty()) {
+                    collection.bulkWrite(buildWritesForPrepopulate(prepopulations, calendar),
+                            new BulkWriteOptions().ordered(false));
+                } // if
+
+                res = collection.bulkWrite(buildWritesForUpdate(points.values(), calendar),
+                        new BulkWriteOptions().ordered(false));
+                matchedUpdates = res.getMatchedCount();
+            } // if else
+        } catch (MongoException e) {
+            invalidateCollection(dbName, collectionName, e);
+            throw e;
+        } // try catch
+
+        // If any update was not matched, some cached document does not exist anymore (e.g. it was removed by hand)
+        if (!cachedPrepopulations.isEmpty() && matchedUpdates < points.size()) {
+            LOGGER.warn("Some aggregated documents known as prepopulated were not found, they are prepopulated again "
+                    + "(database=" + dbName + ", collection=" + collectionName + ")");
+            reinsertContextDataAggregated(collection, cachedPrepopulations, points.values(), calendar);
         } // if
+
+        for (AggregatedPoint doc : docs.values()) {
+            setPrepopulated(doc, dbName, collectionName, calendar);
+        } // for
     } // insertContextDataAggregated
 
-    private void insertContextDataAggregatedForResolution(String dbName, String collectionName,
-            GregorianCalendar calendar, String entityId, String entityType, String attrName, String attrType,
-            HashMap<String, Integer> counts, boolean[] resolutions) {
-        // Get database and collection
-        MongoDatabase db = getDatabase(dbName);
-        MongoCollection collection = db.getCollection(collectionName);
-
-        // Build the query
-        ArrayList<BasicDBObject> queries = buildQueryForInsertAggregated(calendar, entityId, entityType, attrName, resolutions);
-
-        // Prepopulate if needed
-        ArrayList<BasicDBObject> inserts = buildInsertForPrepopulate(attrType, resolutions, false);
-        List<WriteModel<Document>> writes = new ArrayList<WriteModel<Document>>();
-        for (int i = 0; i < queries.size(); i++) {
-            writes.add(
-                 new UpdateOneModel<Document>(
-                                              queries.get(i), // filter
-                                              inserts.get(i), // update
-                                              new UpdateOptions().upsert(true))
-                       );
-        }
-        // Do the update
-        for (String key : counts.keySet()) {
-            int count = counts.get(key);
-            ArrayList<BasicDBObject> updates = buildUpdateForUpdate(attrType, resolutions, calendar, key, count);
-            LOGGER.debug("Updating data, database=" + dbName + ", collection=" + collectionName + ", queries="
-                    + queries.toString() + ", updates=" + updates.toString());
-            for (int i = 0; i < queries.size(); i++) {
-                writes.add(
-                     new UpdateOneModel<Document>(
-                                                  queries.get(i), // filter
-                                                  updates.get(i)) // update
-                           );
-            }
+    /**
+     * Prepopulates again the given documents, once known as prepopulated, and redoes the updates regarding those
+     * not existing anymore. The updates regarding the existing ones are not redone, since they were already applied.
+     * @param collection
+     * @param docs
+     * @param points
+     * @param calendar
+     */
+    private void reinsertContextDataAggregated(MongoCollection collection, ArrayList<AggregatedPoint> docs,
+            Collection<AggregatedPoint> points, GregorianCalendar calendar) {
+        HashSet<String> missingDocKeys = new HashSet<>();
+
+        for (AggregatedPoint doc : docs) {
+            prepopulatedDocs.remove(doc.docKey);
         } // for
-        com.mongodb.bulk.BulkWriteResult res = collection.bulkWrite(writes);
-        if (res.getMatchedCount() == (counts.size() * queries.size())) {
-            LOGGER.debug("Prepopulated data, database=" + dbName + ", collection=" + collectionName + ", queries="
-                    + queries.toString() + ", insert=" + inserts.toString());
+
+        com.mongodb.bulk.BulkWriteResult res = collection.bulkWrite(buildWritesForPrepopulate(docs, calendar),
+                new BulkWriteOptions().ordered(orderedWrites));
+
+        for (BulkWriteUpsert upsert : res.getUpserts()) {
+            missingDocKeys.add(docs.get(upsert.getIndex()).docKey);
+        } // for
+
+        ArrayList<AggregatedPoint> missingPoints = new ArrayList<>();
+
+        for (AggregatedPoint point : points) {
+            if (missingDocKeys.contains(point.docKey)) {
+                missingPoints.add(point);
+            } // if
+        } // for
+
+        if (!missingPoints.isEmpty()) {
+            collection.bulkWrite(buildWritesForUpdate(missingPoints, calendar),
+                    new BulkWriteOptions().ordered(orderedWrites));
         } // if
-    } // insertContextDataAggregated
+    } // reinsertContextDataAggregated
+
+    /**
+     * Gets the given collection for inserting or updating, with the configured write concern (if any).
+     * @param db
+     * @param collectionName
+     * @return The collection
+     */
+    private MongoCollection<Document> getCollectionForWrite(MongoDatabase db, String collectionName) {
+        MongoCollection<Document> collection = db.getCollection(collectionName);
+        return writeConcern == null ? collection : collection.withWriteConcern(writeConcern);
+    } // getCollectionForWrite
+
+    private List<WriteModel<Document>> buildWritesForPrepopulate(Collection<AggregatedPoint> docs,
+            GregorianCalendar calendar) {
+        List<WriteModel<Document>> writes = new ArrayList<>();
+
+        for (AggregatedPoint doc : docs) {
+            writes.add(new UpdateOneModel<Document>(
+                    doc.query, // filter
+                    buildInsertForPrepopulate(doc.point.getAttrType(), getResolutions(doc.resolution),
+                            doc.point.isNumeric()).get(0), // update
+                    new UpdateOptions().upsert(true)));
+        } // for
+
+        return writes;
+    } // buildWritesForPrepopulate
+
+    private List<WriteModel<Document>> buildWritesForUpdate(Collection<AggregatedPoint> points,
+            GregorianCalendar calendar) {
+        List<WriteModel<Document>> writes = new ArrayList<>();
+
+        for (AggregatedPoint aggregatedPoint : points) {
+            STHAccumulator.Point point = aggregatedPoint.point;
+            calendar.setTimeInMillis(point.getRecvTimeTs());
+            BasicDBObject update;
+
+            if (point.isNumeric()) {
+                update = buildUpdateForUpdate(point.getAttrType(), calendar, point.getMax(), point.getMin(),
+                        point.getSum(), point.getSum2(), point.getNumSamples());
+            } else {
+                update = buildUpdateForUpdate(point.getAttrType(), aggregatedPoint.resolution, calendar,
+                        point.getCounts(), point.getNumSamples());
+            } // if else
+
+            writes.add(new UpdateOneModel<Document>(aggregatedPoint.query, update));
+        } // for
+
+        return writes;
+    } // buildWritesForUpdate
+
+    /**
+     * Sets the maximum number of aggregated documents known as prepopulated, 0 means prepopulating them always.
+     * @param prepopulatedDocsCacheSize
+     */
+    public void setPrepopulatedDocsCacheSize(int prepopulatedDocsCacheSize) {
+        this.prepopulatedDocsCacheSize = prepopulatedDocsCacheSize;
+
+        if (prepopulatedDocsCacheSize == 0) {
+            prepopulatedDocs.clear();
+        } // if
+    } // setPrepopulatedDocsCacheSize
+
+    /**
+     * Gets the number of aggregated documents known as prepopulated. It is protected for testing purposes.
+     * @return The number of aggregated documents known as prepopulated
+     */
+    protected int getNumPrepopulatedDocs() {
+        return prepopulatedDocs.size();
+    } // getNumPrepopulatedDocs
+
+    private boolean isPrepopulated(String docKey) {
+        if (prepopulatedDocsCacheSize == 0) {
+            return false;
+        } // if
+
+        Long expiration = prepopulatedDocs.get(docKey);
+
+        if (expiration == null) {
+            return false;
+        } else if (expiration <= System.currentTimeMillis()) {
+            prepopulatedDocs.remove(docKey);
+            return false;
+        } else {
+            return true;
+        } // if else
+    } // isPrepopulated
+
+    /**
+     * Sets the given document as prepopulated until the end of its range, i.e. until no more updates are expected
+     * for it, or until its expiration, if the collection has a time-based limit.
+     * @param doc
+     * @param dbName
+     * @param collectionName
+     * @param calendar
+     */
+    private void setPrepopulated(AggregatedPoint doc, String dbName, String collectionName,
+            GregorianCalendar calendar) {
+        if (prepopulatedDocsCacheSize == 0) {
+            return;
+        } // if
+
+        calendar.setTimeInMillis(doc.point.getRecvTimeTs());
+        long origin = getOrigin(calendar, doc.resolution).getTime();
+        calendar.setTimeInMillis(origin);
+        calendar.add(getRangeField(doc.resolution), 1);
+        long expiration = calendar.getTimeInMillis();
+        Long dataExpiration = dataExpirations.get(dbName + "." + collectionName);
+
+        if (dataExpiration != null && dataExpiration > 0) {
+            expiration = Math.min(expiration, origin + dataExpiration * 1000);
+        } // if
+
+        prepopulatedDocs.put(doc.docKey, expiration);
+    } // setPrepopulated
+
+    /**
+     * Given a resolution, gets the calendar field of its range.
+     * @param resolution
+     * @return The calendar field of the range of the given resolution
+     */
+    private int getRangeField(Resolution resolution) {
+        switch (resolution) {
+            case SECOND:
+                return Calendar.MINUTE;
+            case MINUTE:
+                return Calendar.HOUR_OF_DAY;
+            case HOUR:
+                return Calendar.DAY_OF_MONTH;
+            case DAY:
+                return Calendar.MONTH;
+            default:
+                return Calendar.YEAR;
+        } // switch
+    } // getRangeField
+
+    /**
+     * Point of a resolution within an aggregated document.
+     */
+    private static class AggregatedPoint {
+
+        private final String docKey;
+        private final Resolution resolution;
+        private final BasicDBObject query;
+        private final STHAccumulator.Point point;
+
+        AggregatedPoint(String docKey, Resolution resolution, BasicDBObject query, STHAccumulator.Point point) {
+            this.docKey = docKey;
+            this.resolution = resolution;
+            this.query = query;
+            this.point = point;
+        } // AggregatedPoint
+
+    } // AggregatedPoint
 
     /**
      * Builds the Json query used both to prepopulate and update an aggregated collection. It is protected for testing
@@ -583,11 +936,46 @@ public class MongoBackendImpl implements MongoBackend {
     } // buildUpdateForUpdate
 
     /**
-     * Gets a Mongo database.
+     * Builds the Json to be updated with all the pre-aggregated string values of a point of the given resolution. It
+     * is protected for testing purposes.
+     * @param attrType
+     * @param resolution
+     * @param calendar
+     * @param counts
+     * @param numSamples
+     * @return
+     */
+    protected BasicDBObject buildUpdateForUpdate(String attrType, Resolution resolution, GregorianCalendar calendar,
+            Map<String, Integer> counts, int numSamples) {
+        int offset = getOffset(calendar, resolution);
+        int modifiedOffset = offset - (resolution == Resolution.DAY || resolution == Resolution.MONTH ? 1 : 0);
+        BasicDBObject inc = new BasicDBObject("points." + modifiedOffset + ".samples", numSamples);
+
+        for (Map.Entry<String, Integer> count : counts.entrySet()) {
+            inc.append("points." + modifiedOffset + ".occur." + count.getKey(), count.getValue());
+        } // for
+
+        return new BasicDBObject("$set", new BasicDBObject("attrType", attrType)).append("$inc", inc);
+    } // buildUpdateForUpdate
+
+    /**
+     * Gets the resolutions array with the given resolution as the only enabled one.
+     * @param resolution
+     * @return The resolutions array with the given resolution as the only enabled one
+     */
+    private boolean[] getResolutions(Resolution resolution) {
+        boolean[] resolutions = new boolean[Resolution.values().length];
+        resolutions[resolution.ordinal()] = true;
+        return resolutions;
+    } // getResolutions
+
+    /**
+     * Gets a Mongo database. It is synchronized since the client is lazily created and the bulk writes may be
+     * concurrent. It is protected for testing purposes.
      * @param dbName
      * @return
      */
-    private MongoDatabase getDatabase(String dbName) {
+    protected synchronized MongoDatabase getDatabase(String dbName) {
         if(StringUtils.isNotEmpty(mongoURI)) {
 			return 	getDatabaseByUsingMongoURI(dbName);
         }
@@ -0,0 +1,127 @@
+/**
+ * Copyright 2026 Telefonica Investigación y Desarrollo, S.A.U
+ *
+ * This file is part of fiware-cygnus (FIWARE project).
+ *
+ * fiware-cygnus is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * fiware-cygnus is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with fiware-cygnus. If not, see
+ * http://www.gnu.org/licenses/.
+ *
+ * For those usages not covered by the GNU Affero General Public License please contact with iot_support at tid dot es
+ */
+package com.telefonica.iot.cygnus.backends.mongo;
+
+import com.telefonica.iot.cygnus.log.CygnusLogger;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of the collections known to exist, together with their indexes, within their databases. Unlike SQLCache, it
+ * is concurrently accessed by the sink threads, thus it is backed by a synchronized map. The collections are known to
+ * exist for a limited time, after which they are checked (i.e. created, if not existing) again; this way the
+ * collections (or indexes) removed by hand are eventually created again. The number of known collections is bounded,
+ * the least recently used ones being removed first.
+ */
+public class MongoCache {
+
+    private static final CygnusLogger LOGGER = new CygnusLogger(MongoCache.class);
+    private final Map<String, Long> collections;
+    private final long ttl;
+
+    /**
+     * Constructor.
+     * @param ttl Milliseconds a collection is known to exist once added, 0 means caching nothing
+     * @param maxSize Maximum number of collections known to exist
+     */
+    public MongoCache(long ttl, final int maxSize) {
+        this.collections = Collections.synchronizedMap(new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maxSize;
+            } // removeEldestEntry
+        });
+        this.ttl = ttl;
+    } // MongoCache
+
+    /**
+     * Adds a collection name within a database name to the cache.
+     * @param dataBase
+     * @param collectionName
+     * @return True if the collection is added, false otherwise
+     */
+    public boolean addCollection(String dataBase, String collectionName) {
+        if (ttl <= 0) {
+            return false;
+        } // if
+
+        Long previous = collections.put(getKey(dataBase, collectionName), System.currentTimeMillis() + ttl);
+        LOGGER.debug("'" + collectionName + "' added to the collections cache of '" + dataBase + "' (total: "
+                + collections.size() + ")");
+        return previous == null;
+    } // addCollection
+
+    /**
+     * Gets if a collection name within a database name is cached.
+     * @param dataBase
+     * @param collectionName
+     * @return True if the collection name is cached, false otherwise
+     */
+    public boolean isCachedCollection(String dataBase, String collectionName) {
+        String key = getKey(dataBase, collectionName);
+        Long expiration = collections.get(key);
+
+        if (expiration == null) {
+            return false;
+        } else if (expiration <= System.currentTimeMillis()) {
+            collections.remove(key, expiration);
+            return false;
+        } else {
+            return true;
+        } // if else
+    } // isCachedCollection
+
+    /**
+     * Removes a collection name within a database name from the cache.
+     * @param dataBase
+     * @param collectionName
+     * @return True if the collection was cached, false otherwise
+     */
+    public boolean removeCollection(String dataBase, String collectionName) {
+        boolean removed = collections.remove(getKey(dataBase, collectionName)) != null;
+
+        if (removed) {
+            LOGGER.debug("'" + collectionName + "' removed from the collections cache of '" + dataBase + "' (total: "
+                    + collections.size() + ")");
+        } // if
+
+        return removed;
+    } // removeCollection
+
+    /**
+     * Removes all the collection names within a database name from the cache.
+     * @param dataBase
+     */
+    public void removeDataBase(String dataBase) {
+        String prefix = dataBase + ".";
+
+        synchronized (collections) {
+            collections.keySet().removeIf(key -> key.startsWith(prefix));
+        } // synchronized
+
+        LOGGER.debug("'" + dataBase + "' collections removed from the collections cache (total: "
+                + collections.size() + ")");
+    } // removeDataBase
+
+    private String getKey(String dataBase, String collectionName) {
+        // Database names cannot contain dots, thus the key is unique
+        return dataBase + "." + collectionName;
+    } // getKey
+
+} // MongoCache
@@ -0,0 +1,275 @@
+/**
+ * Copyright 2026 Telefonica Investigación y Desarrollo, S.A.U
+ *
+ * This file is part of fiware-cygnus (FIWARE project).
+ *
+ * fiware-cygnus is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * fiware-cygnus is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with fiware-cygnus. If not, see
+ * http://www.gnu.org/licenses/.
+ *
+ * For those usages not covered by the GNU Affero General Public License please contact with iot_support at tid dot es
+ */
+package com.telefonica.iot.cygnus.backends.mongo;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Accumulator of STH samples regarding a single aggregated collection. The samples are folded in memory per entity,
+ * attribute and second, i.e. the finest resolution, so that many notifications can be persisted by means of a single
+ * bulk write. Such a folding does not lose any information, since a second always falls within a single point of
+ * every resolution.
+ */
+public class STHAccumulator {
+
+    private static final String SEPARATOR = "\u0000";
+    private final LinkedHashMap<String, Point> points;
+
+    /**
+     * Constructor.
+     */
+    public STHAccumulator() {
+        points = new LinkedHashMap<>();
+    } // STHAccumulator
+
+    /**
+     * Adds a numeric sample.
+     * @param recvTimeTs
+     * @param entityId
+     * @param entityType
+     * @param attrName
+     * @param attrType
+     * @param value
+     */
+    public void add(long recvTimeTs, String entityId, String entityType, String attrName, String attrType,
+            double value) {
+        getPoint(recvTimeTs, entityId, entityType, attrName, attrType, true).update(value);
+    } // add
+
+    /**
+     * Adds a string sample.
+     * @param recvTimeTs
+     * @param entityId
+     * @param entityType
+     * @param attrName
+     * @param attrType
+     * @param value
+     */
+    public void add(long recvTimeTs, String entityId, String entityType, String attrName, String attrType,
+            String value) {
+        getPoint(recvTimeTs, entityId, entityType, attrName, attrType, false).update(value);
+    } // add
+
+    /**
+     * Adds already aggregated numeric samples.
+     * @param recvTimeTs
+     * @param entityId
+     * @param entityType
+     * @param attrName
+     * @param attrType
+     * @param max
+     * @param min
+     * @param sum
+     * @param sum2
+     * @param numSamples
+     */
+    public void add(long recvTimeTs, String entityId, String entityType, String attrName, String attrType,
+            double max, double min, double sum, double sum2, int numSamples) {
+        getPoint(recvTimeTs, entityId, entityType, attrName, attrType, true).update(max, min, sum, sum2, numSamples);
+    } // add
+
+    /**
+     * Adds already aggregated string samples.
+     * @param recvTimeTs
+     * @param entityId
+     * @param entityType
+     * @param attrName
+     * @param attrType
+     * @param counts
+     */
+    public void add(long recvTimeTs, String entityId, String entityType, String attrName, String attrType,
+            Map<String, Integer> counts) {
+        getPoint(recvTimeTs, entityId, entityType, attrName, attrType, false).update(counts);
+    } // add
+
+    public Collection<Point> getPoints() {
+        return points.values();
+    } // getPoints
+
+    public boolean isEmpty() {
+        return points.isEmpty();
+    } // isEmpty
+
+    private Point getPoint(long recvTimeTs, String entityId, String entityType, String attrName, String attrType,
+            boolean numeric) {
+        long second = recvTimeTs - Math.floorMod(recvTimeTs, 1000L);
+        String key = Point.getKey(entityId, entityType, attrName, attrType, numeric) + SEPARATOR + second;
+        Point point = points.get(key);
+
+        if (point == null) {
+            point = new Point(second, entityId, entityType, attrName, attrType, numeric);
+            points.put(key, point);
+        } // if
+
+        return point;
+    } // getPoint
+
+    /**
+     * Folded samples regarding an entity attribute within a time interval.
+     */
+    public static class Point {
+
+        private final long recvTimeTs;
+        private final String entityId;
+        private final String entityType;
+        private final String attrName;
+        private final String attrType;
+        private final boolean numeric;
+        private double max;
+        private double min;
+        private double sum;
+        private double sum2;
+        private int numSamples;
+        private final LinkedHashMap<String, Integer> counts;
+
+        /**
+         * Constructor.
+         * @param recvTimeTs Any time within the interval
+         * @param entityId
+         * @param entityType
+         * @param attrName
+         * @param attrType
+         * @param numeric
+         */
+        public Point(long recvTimeTs, String entityId, String entityType, String attrName, String attrType,
+                boolean numeric) {
+            this.recvTimeTs = recvTimeTs;
+            this.entityId = entityId;
+            this.entityType = entityType;
+            this.attrName = attrName;
+            this.attrType = attrType;
+            this.numeric = numeric;
+            max = Double.NEGATIVE_INFINITY;
+            min = Double.POSITIVE_INFINITY;
+            sum = 0;
+            sum2 = 0;
+            numSamples = 0;
+            counts = new LinkedHashMap<>();
+        } // Point
+
+        /**
+         * Gets a key identifying the entity attribute this point refers to, no matter the time interval.
+         * @return The key identifying the entity attribute this point refers to
+         */
+        public String getKey() {
+            return getKey(entityId, entityType, attrName, attrType, numeric);
+        } // getKey
+
+        private static String getKey(String entityId, String entityType, String attrName, String attrType,
+                boolean numeric) {
+            return entityId + SEPARATOR + entityType + SEPARATOR + attrName + SEPARATOR + attrType + SEPARATOR
+                    + numeric;
+        } // getKey
+
+        private void update(double v) {
+            max = Math.max(max, v);
+            min = Math.min(min, v);
+            sum += v;
+            sum2 += v * v;
+            numSamples++;
+        } // update
+
+        private void update(String v) {
+            counts.merge(v, 1, Integer::sum);
+            numSamples++;
+        } // update
+
+        private void update(double max, double min, double sum, double sum2, int numSamples) {
+            this.max = Math.max(this.max, max);
+            this.min = Math.min(this.min, min);
+            this.sum += sum;
+            this.sum2 += sum2;
+            this.numSamples += numSamples;
+        } // update
+
+        private void update(Map<String, Integer> counts) {
+            for (Map.Entry<String, Integer> count : counts.entrySet()) {
+                this.counts.merge(count.getKey(), count.getValue(), Integer::sum);
+                numSamples += count.getValue();
+            } // for
+        } // update
+
+        /**
+         * Merges the given point into this one. Both points must refer to the same entity attribute.
+         * @param other
+         */
+        public void merge(Point other) {
+            max = Math.max(max, other.max);
+            min = Math.min(min, other.min);
+            sum += other.sum;
+            sum2 += other.sum2;
+            numSamples += other.numSamples;
+
+            for (String value : other.counts.keySet()) {
+                counts.merge(value, other.counts.get(value), Integer::sum);
+            } // for
+        } // merge
+
+        public long getRecvTimeTs() {
+            return recvTimeTs;
+        } // getRecvTimeTs
+
+        public String getEntityId() {
+            return entityId;
+        } // getEntityId
+
+        public String getEntityType() {
+            return entityType;
+        } // getEntityType
+
+        public String getAttrName() {
+            return attrName;
+        } // getAttrName
+
+        public String getAttrType() {
+            return attrType;
+        } // getAttrType
+
+        public boolean isNumeric() {
+            return numeric;
+        } // isNumeric
+
+        public double getMax() {
+            return max;
+        } // getMax
+
+        public double getMin() {
+            return min;
+        } // getMin
+
+        public double getSum() {
+            return sum;
+        } // getSum
+
+        public double getSum2() {
+            return sum2;
+        } // getSum2
+
+        public int getNumSamples() {
+            return numSamples;
+        } // getNumSamples
+
+        public LinkedHashMap<String, Integer> getCounts() {
+            return counts;
+        } // getCounts
+
+    } // Point
+
+} // STHAccumulator
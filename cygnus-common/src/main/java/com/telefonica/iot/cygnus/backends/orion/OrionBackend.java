@@ -18,8 +18,10 @@
 package com.telefonica.iot.cygnus.backends.orion;
 
 import java.io.UnsupportedEncodingException;
+import java.util.List;
 
 import org.json.JSONException;
+import org.json.JSONObject;
 
 import com.telefonica.iot.cygnus.backends.http.JsonResponse;
 import com.telefonica.iot.cygnus.errors.CygnusBadAuthorization;
@@ -128,4 +130,20 @@ public interface OrionBackend {
     void updateRemoteContext(String bodyJSON, String orionToken, String fiwareService, String fiwareServicePath)
             throws CygnusRuntimeError, CygnusPersistenceError, UnsupportedEncodingException, CygnusBadAuthorization,
             JSONException;
+
+    /**
+     * Create or update several entities in the system at once, by appending their attributes (NGSIv2).
+     * 
+     * @param entities
+     * @param orionToken
+     * @param fiwareService
+     * @param fiwareServicePath
+     * @throws CygnusRuntimeError
+     * @throws CygnusPersistenceError
+     * @throws UnsupportedEncodingException
+     * @throws CygnusBadAuthorization
+     */
+    void updateRemoteContexts(List<JSONObject> entities, String orionToken, String fiwareService,
+            String fiwareServicePath) throws CygnusRuntimeError, CygnusPersistenceError, UnsupportedEncodingException,
+            CygnusBadAuthorization;
 } // StatsBackend
@@ -20,6 +20,7 @@ package com.telefonica.iot.cygnus.backends.orion;
 
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.http.Header;
 import org.apache.http.entity.StringEntity;
@@ -237,4 +238,56 @@ public class OrionBackendImpl extends HttpBackend implements OrionBackend {
     } // updateRemoteContext
       // **/
 
+    /**
+     * Create or update several entities in the system at once, by appending their attributes (NGSIv2). The
+     * entities not existing are created.
+     * 
+     * @param entities
+     * @param orionToken
+     * @param fiwareService
+     * @param fiwareServicePath
+     * @throws CygnusPersistenceError
+     * @throws CygnusRuntimeError
+     * @throws UnsupportedEncodingException
+     * @throws CygnusBadAuthorization
+     */
+    @Override
+    public void updateRemoteContexts(List<JSONObject> entities, String orionToken, String fiwareService,
+            String fiwareServicePath) throws CygnusRuntimeError, CygnusPersistenceError, UnsupportedEncodingException,
+            CygnusBadAuthorization {
+        LOGGER.debug("init updateRemoteContexts(entities --> " + entities.size() + ", fiwareService --> "
+                + fiwareService + ", fiwareServicePath --> " + fiwareServicePath + ")");
+        // create the relative URL
+        String relativeURL = "/v2/op/update";
+
+        // create the http headers
+        ArrayList<Header> headers = getHeaders(orionToken, fiwareService, fiwareServicePath);
+
+        // the entities are already JSON objects, thus the body is composed without parsing them again
+        StringBuilder body = new StringBuilder("{\"actionType\":\"append\",\"entities\":[");
+
+        for (int i = 0; i < entities.size(); i++) {
+            if (i > 0) {
+                body.append(',');
+            } // if
+
+            body.append(entities.get(i).toString());
+        } // for
+
+        body.append("]}");
+
+        // Update the entities
+        JsonResponse response = doRequest("POST", relativeURL, true, headers, new StringEntity(body.toString()));
+        LOGGER.debug("Response of update entities. Status Code --> " + response.getStatusCode()
+                + " , Reason Phrase --> " + response.getReasonPhrase());
+
+        // check the status
+        if (response.getStatusCode() == 401) {
+            throw new CygnusBadAuthorization("Error of authorization.");
+        } else if (response.getStatusCode() != 200 && response.getStatusCode() != 204) {
+            throw new CygnusPersistenceError("The contexts could not be updated. HttpFS response: "
+                    + response.getStatusCode() + " " + response.getReasonPhrase());
+        } // if else
+    } // updateRemoteContexts
+
 } // StatsBackendImpl
@@ -39,4 +39,25 @@ public class Enum {
             }
         }
     }
+
+    public enum SQLInsertMode {
+        LITERAL {
+            @Override
+            public String toString() {
+                return "literal";
+            }
+        },
+        BATCH {
+            @Override
+            public String toString() {
+                return "batch";
+            }
+        },
+        COPY {
+            @Override
+            public String toString() {
+                return "copy";
+            }
+        }
+    }
 }
@@ -64,18 +64,20 @@ public interface SQLBackend {
      * @param schemaName
      * @param tableName
      * @param maxRecords
+     * @return The number of deleted records
      * @throws com.telefonica.iot.cygnus.errors.CygnusRuntimeError
      * @throws com.telefonica.iot.cygnus.errors.CygnusPersistenceError
      */
-    void capRecords(String dataBase, String schemaName, String tableName, long maxRecords) throws CygnusRuntimeError, CygnusPersistenceError;
+    long capRecords(String dataBase, String schemaName, String tableName, long maxRecords) throws CygnusRuntimeError, CygnusPersistenceError;
 
     /**
      * Expirates records within all the cached tables based on the expiration time.
      * @param expirationTime
+     * @return The number of deleted records
      * @throws com.telefonica.iot.cygnus.errors.CygnusRuntimeError
      * @throws com.telefonica.iot.cygnus.errors.CygnusPersistenceError
      */
-    void expirateRecordsCache(long expirationTime) throws CygnusRuntimeError, CygnusPersistenceError;
+    long expirateRecordsCache(long expirationTime) throws CygnusRuntimeError, CygnusPersistenceError;
 
 
 }
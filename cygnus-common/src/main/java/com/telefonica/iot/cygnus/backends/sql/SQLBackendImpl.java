@@ -19,26 +19,32 @@
 package com.telefonica.iot.cygnus.backends.sql;
 
 import com.google.gson.JsonElement;
-import com.sun.rowset.CachedRowSetImpl;
 import com.telefonica.iot.cygnus.errors.CygnusBadContextData;
 import com.telefonica.iot.cygnus.errors.CygnusPersistenceError;
 import com.telefonica.iot.cygnus.errors.CygnusRuntimeError;
 import com.telefonica.iot.cygnus.log.CygnusLogger;
 import com.telefonica.iot.cygnus.utils.CommonUtils;
 import com.telefonica.iot.cygnus.backends.sql.Enum.SQLInstance;
+import com.telefonica.iot.cygnus.backends.sql.Enum.SQLInsertMode;
 import org.apache.commons.dbcp.ConnectionFactory;
 import org.apache.commons.dbcp.DriverManagerConnectionFactory;
 import org.apache.commons.dbcp.PoolableConnectionFactory;
 import org.apache.commons.dbcp.PoolingDataSource;
+import org.apache.commons.pool.KeyedObjectPoolFactory;
+import org.apache.commons.pool.impl.GenericKeyedObjectPool;
+import org.apache.commons.pool.impl.GenericKeyedObjectPoolFactory;
 import org.apache.commons.pool.impl.GenericObjectPool;
+import org.postgresql.PGConnection;
 
 import javax.sql.DataSource;
-import javax.sql.rowset.CachedRowSet;
+import java.io.IOException;
+import java.io.StringReader;
 import java.sql.*;
 import java.text.ParseException;
 import java.time.Instant;
 import java.util.*;
 import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The type Sql backend.
@@ -53,9 +59,15 @@ public class SQLBackendImpl implements SQLBackend{
     private final int maxLatestErrors;
     private static final String DEFAULT_ERROR_TABLE_SUFFIX = "_error_log";
     private static final int DEFAULT_MAX_LATEST_ERRORS = 100;
-    private static final String DEFAULT_LIMIT_SELECT_EXP_RECORDS = "4096";
+    private static final int DEFAULT_DELETE_CHUNK_SIZE = 4096;
+    // Oracle specific types of the TIMESTAMP WITH (LOCAL) TIME ZONE columns
+    private static final int ORACLE_TIMESTAMPTZ = -101;
+    private static final int ORACLE_TIMESTAMPLTZ = -102;
+    private static final int DEFAULT_MAX_OPEN_PREPARED_STATEMENTS = 100;
     private String nlsTimestampFormat;
     private String nlsTimestampTzFormat;
+    private SQLInsertMode insertMode;
+    private int deleteChunkSize;
 
     /**
      * Constructor.
@@ -119,6 +131,8 @@ public class SQLBackendImpl implements SQLBackend{
         this.sqlInstance = sqlInstance;
         this.persistErrors = persistErrors;
         this.maxLatestErrors = maxLatestErrors;
+        this.insertMode = SQLInsertMode.LITERAL;
+        this.deleteChunkSize = DEFAULT_DELETE_CHUNK_SIZE;
     } // SQLBackendImpl
 
     /**
@@ -164,6 +178,37 @@ public class SQLBackendImpl implements SQLBackend{
         return nlsTimestampTzFormat;
     } // getNlsTImestampTzFormat
 
+    /**
+     * Sets the insert mode. In batch mode the rows are bound to a prepared statement and sent as a JDBC batch, the
+     * prepared statements being pooled by the connections; in copy mode (PostgreSQL only) the rows are streamed as CSV
+     * through a COPY query; in literal mode (default) the values are written within the SQL query. It must be set
+     * before getting any connection.
+     *
+     * @param insertMode
+     */
+    public void setInsertMode(SQLInsertMode insertMode) {
+        this.insertMode = insertMode;
+        driver.setBatchMode(insertMode == SQLInsertMode.BATCH);
+    } // setInsertMode
+
+    public SQLInsertMode getInsertMode() {
+        return insertMode;
+    } // getInsertMode
+
+    /**
+     * Sets the maximum number of records deleted per statement when capping or expirating records. A value equal or
+     * lower than zero means all the records are deleted by a single statement.
+     *
+     * @param deleteChunkSize
+     */
+    public void setDeleteChunkSize(int deleteChunkSize) {
+        this.deleteChunkSize = deleteChunkSize;
+    } // setDeleteChunkSize
+
+    public int getDeleteChunkSize() {
+        return deleteChunkSize;
+    } // getDeleteChunkSize
+
     @Override
     public void createDestination(String destination) throws CygnusRuntimeError, CygnusPersistenceError {
         if (cache.isCachedDataBase(destination)) {
@@ -310,147 +355,187 @@ public class SQLBackendImpl implements SQLBackend{
         cache.addTable(dataBase, tableName);
     } // insertContextData
 
-    private CachedRowSet select(String dataBase, String schema, String tableName, String selection)
-            throws CygnusRuntimeError, CygnusPersistenceError {
-        Statement stmt = null;
-
-        // get a connection to the given destination
-        Connection con = driver.getConnection(dataBase);
-        String query = "";
+    /**
+     * Gets the name of the given table as it must be used within the queries, i.e. qualified with the schema in
+     * PostgreSQL and between backquotes in MySQL.
+     *
+     * @param schema
+     * @param tableName
+     * @return The table name to be used within the queries
+     */
+    private String getQueryTableName(String schema, String tableName) {
         if (sqlInstance == SQLInstance.MYSQL) {
-            query = "select " + selection + " from `" + tableName + "` order by recvTime desc limit " + DEFAULT_LIMIT_SELECT_EXP_RECORDS;
-        } else if (sqlInstance == SQLInstance.POSTGRESQL) {
-            if (schema != null && (!tableName.startsWith(schema))) {
-                tableName = schema + '.' + tableName;
-            }
-            query = "select " + selection + " from " + tableName + " order by recvTime desc limit " + DEFAULT_LIMIT_SELECT_EXP_RECORDS;
+            return "`" + tableName + "`";
+        } else if (sqlInstance == SQLInstance.POSTGRESQL && schema != null && !tableName.startsWith(schema)) {
+            return schema + '.' + tableName;
         } else {
-            query = "select " + selection + " from " + tableName + " order by recvTime desc limit " + DEFAULT_LIMIT_SELECT_EXP_RECORDS;
-        }
+            return tableName;
+        } // if else
+    } // getQueryTableName
 
-        try {
-            stmt = con.createStatement();
-        } catch (SQLException e) {
-            closeSQLObjects(con, stmt);
-            throw new CygnusRuntimeError(sqlInstance.toString().toUpperCase() + " Querying error", "SQLException", e.getMessage());
-        } // try catch
+    /**
+     * Selects the reception times of the given table, ordered by reception time. Only the reception time column is
+     * read and the number of rows is limited, thus the ordering is resolved by the database (using an index on the
+     * reception time, if any) and the rows are never loaded in memory all together.
+     *
+     * @param dataBase
+     * @param schema
+     * @param tableName
+     * @param descending
+     * @param offset
+     * @param limit
+     * @return The selected reception times, as timestamps if the column is a timestamp, otherwise as strings
+     * @throws CygnusRuntimeError
+     * @throws CygnusPersistenceError
+     */
+    private ArrayList<Object> selectRecvTimes(String dataBase, String schema, String tableName, boolean descending,
+            long offset, int limit) throws CygnusRuntimeError, CygnusPersistenceError {
+        String query = "select recvTime from " + getQueryTableName(schema, tableName) + " order by recvTime "
+                + (descending ? "desc" : "asc");
+
+        if (sqlInstance == SQLInstance.ORACLE) {
+            query += " offset " + offset + " rows fetch next " + limit + " rows only";
+        } else {
+            query += " limit " + limit + " offset " + offset;
+        } // if else
+
+        Connection con = driver.getConnection(dataBase);
+        Statement stmt = null;
+        ArrayList<Object> recvTimes = new ArrayList<>();
 
         try {
-            // to-do: refactor after implementing
-            // https://github.com/telefonicaid/fiware-cygnus/issues/1371
+            stmt = con.createStatement();
             LOGGER.debug(sqlInstance.toString().toUpperCase() + " Executing SQL query '" + query + "'");
             ResultSet rs = stmt.executeQuery(query);
-            // A CachedRowSet is "disconnected" from the source, thus can be
-            // used once the statement is closed
-            @SuppressWarnings("restriction")
-            CachedRowSet crs = new CachedRowSetImpl();
-            crs.populate(rs); // FIXME: close Resultset Objects??
-            closeSQLObjects(con, stmt);
+            boolean isTimestamp = isTimestampColumn(rs.getMetaData().getColumnType(1));
+
+            while (rs.next()) {
+                recvTimes.add(isTimestamp ? rs.getTimestamp(1) : rs.getString(1));
+            } // while
+
             rs.close();
-            return crs;
         } catch (SQLTimeoutException e) {
             throw new CygnusPersistenceError(sqlInstance.toString().toUpperCase() + " Data select error. Query " + query, "SQLTimeoutException", e.getMessage());
         } catch (SQLException e) {
-            closeSQLObjects(con, stmt);
             persistError(dataBase, schema, query, e);
             throw new CygnusPersistenceError(sqlInstance.toString().toUpperCase() + " Querying error", "SQLException", e.getMessage());
+        } finally {
+            closeSQLObjects(con, stmt);
         } // try catch
-    } // select
 
-    private void delete(String dataBase, String schema, String tableName, String filters)
-            throws CygnusRuntimeError, CygnusPersistenceError {
-        Statement stmt = null;
+        return recvTimes;
+    } // selectRecvTimes
 
-        // get a connection to the given destination
-        Connection con = driver.getConnection(dataBase);
-        String query = "";
-        if (sqlInstance == SQLInstance.MYSQL) {
-            query = "delete from `" + tableName + "` where " + filters;
+    /**
+     * Checks if the given column type is a timestamp, in order to read it by means of getTimestamp instead of
+     * getObject, which returns vendor specific types (e.g. oracle.sql.TIMESTAMP) being neither dates nor parseable
+     * strings.
+     *
+     * @param columnType
+     * @return True if the given column type is a timestamp, false otherwise
+     */
+    private boolean isTimestampColumn(int columnType) {
+        switch (columnType) {
+            case Types.DATE:
+            case Types.TIMESTAMP:
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+            case ORACLE_TIMESTAMPTZ:
+            case ORACLE_TIMESTAMPLTZ:
+                return true;
+            default:
+                return false;
+        } // switch
+    } // isTimestampColumn
+
+    /**
+     * Deletes the records of the given table whose reception time is older than the given one (or older or equal, if
+     * inclusive). If a delete chunk size is configured the records are deleted in chunks of that size, each chunk
+     * within its own statement, thus the time the table is locked is bounded.
+     *
+     * @param dataBase
+     * @param schema
+     * @param tableName
+     * @param recvTime
+     * @param inclusive
+     * @return The number of deleted records
+     * @throws CygnusRuntimeError
+     * @throws CygnusPersistenceError
+     */
+    private long deleteOlderRecords(String dataBase, String schema, String tableName, Object recvTime,
+            boolean inclusive) throws CygnusRuntimeError, CygnusPersistenceError {
+        String queryTableName = getQueryTableName(schema, tableName);
+        String filter = "recvTime " + (inclusive ? "<=" : "<") + " ?";
+        String query;
+
+        if (deleteChunkSize <= 0) {
+            query = "delete from " + queryTableName + " where " + filter;
+        } else if (sqlInstance == SQLInstance.MYSQL) {
+            query = "delete from " + queryTableName + " where " + filter + " order by recvTime limit " + deleteChunkSize;
         } else if (sqlInstance == SQLInstance.POSTGRESQL) {
-            if (schema != null && (!tableName.startsWith(schema))) {
-                tableName = schema + '.' + tableName;
-            }
-            query = "delete from " + tableName + " where " + filters;
+            query = "delete from " + queryTableName + " where ctid in (select ctid from " + queryTableName
+                    + " where " + filter + " limit " + deleteChunkSize + ")";
         } else {
-            query = "delete from " + tableName + " where " + filters;
-        }
+            query = "delete from " + queryTableName + " where " + filter + " and rownum <= " + deleteChunkSize;
+        } // if else
 
-        try {
-            stmt = con.createStatement();
-        } catch (SQLException e) {
-            closeSQLObjects(con, stmt);
-            throw new CygnusRuntimeError(sqlInstance.toString().toUpperCase() + " Deleting error", "SQLException", e.getMessage());
-        } // try catch
+        Connection con = driver.getConnection(dataBase);
+        PreparedStatement stmt = null;
+        long numDeleted = 0;
 
         try {
-            LOGGER.debug(sqlInstance.toString().toUpperCase() + " Executing SQL query '" + query + "'");
-            stmt.executeUpdate(query);
+            stmt = con.prepareStatement(query);
+            stmt.setObject(1, recvTime);
+            LOGGER.debug(sqlInstance.toString().toUpperCase() + " Executing SQL query '" + query + "' (recvTime="
+                    + recvTime + ")");
+            int chunkDeleted;
+
+            do {
+                chunkDeleted = stmt.executeUpdate();
+                numDeleted += chunkDeleted;
+            } while (deleteChunkSize > 0 && chunkDeleted >= deleteChunkSize);
         } catch (SQLTimeoutException e) {
             throw new CygnusPersistenceError(sqlInstance.toString().toUpperCase() + " Data delete error. Query " + query, "SQLTimeoutException", e.getMessage());
         } catch (SQLException e) {
-            closeSQLObjects(con, stmt);
             persistError(dataBase, schema, query, e);
             throw new CygnusPersistenceError(sqlInstance.toString().toUpperCase() + " Deleting error", "SQLException", e.getMessage());
+        } finally {
+            closeSQLObjects(con, stmt);
         } // try catch
 
-        closeSQLObjects(con, stmt);
-    } // delete
+        return numDeleted;
+    } // deleteOlderRecords
 
     @Override
-    public void capRecords(String dataBase, String schemaName, String tableName, long maxRecords)
+    public long capRecords(String dataBase, String schemaName, String tableName, long maxRecords)
             throws CygnusRuntimeError, CygnusPersistenceError {
         LOGGER.debug(sqlInstance.toString().toUpperCase() + " capRecords for database: " +
                      dataBase + " schema: " + schemaName + " tableName: " + tableName);
-        // Get the records within the table
-        CachedRowSet records = select(dataBase, schemaName, tableName, "*");
-
-        // Get the number of records
-        int numRecords = 0;
-
-        try {
-            if (records.last()) {
-                numRecords = records.getRow();
-                records.beforeFirst();
-            } // if
-        } catch (SQLException e) {
-            throw new CygnusRuntimeError(sqlInstance.toString().toUpperCase() + " Data capping error", "SQLException", e.getMessage());
-        } // try catch
-
-        // Get the reception times (they work as IDs) for future deletion
-        // to-do: refactor after implementing
-        // https://github.com/telefonicaid/fiware-cygnus/issues/1371
-        String filters = "";
-
-        try {
-            if (numRecords > maxRecords) {
-                for (int i = 0; i < (numRecords - maxRecords); i++) {
-                    records.next();
-                    String recvTime = records.getString("recvTime");
-
-                    if (filters.isEmpty()) {
-                        filters += "recvTime='" + recvTime + "'";
-                    } else {
-                        filters += " or recvTime='" + recvTime + "'";
-                    } // if else
-                } // for
-            } // if
+        long start = System.currentTimeMillis();
 
-            records.close();
-        } catch (SQLException e) {
-            throw new CygnusRuntimeError(sqlInstance.toString().toUpperCase() + " Data capping error", "SQLException", e.getMessage());
-        } // try catch
+        // Get the reception time of the oldest record to be kept; the records older than it are deleted, thus the
+        // records sharing reception time (e.g. the attributes of a notification in row mode) are never split
+        ArrayList<Object> recvTimes = selectRecvTimes(dataBase, schemaName, tableName, true, Math.max(maxRecords - 1, 0), 1);
+        long numDeleted = 0;
 
-        if (filters.isEmpty()) {
+        if (recvTimes.isEmpty() || recvTimes.get(0) == null) {
             LOGGER.debug(sqlInstance.toString().toUpperCase() + " No records to be deleted");
         } else {
-            LOGGER.debug(sqlInstance.toString().toUpperCase() + " Records must be deleted (destination=" + dataBase + ",schemaName=" + schemaName + ",tableName=" + tableName + ", filters="
-                    + filters + ")");
-            delete(dataBase, schemaName, tableName, filters);
+            LOGGER.debug(sqlInstance.toString().toUpperCase() + " Records must be deleted (destination=" + dataBase
+                    + ",schemaName=" + schemaName + ",tableName=" + tableName + ", recvTime<" + recvTimes.get(0) + ")");
+            numDeleted = deleteOlderRecords(dataBase, schemaName, tableName, recvTimes.get(0), maxRecords <= 0);
         } // if else
+
+        long elapsed = System.currentTimeMillis() - start;
+        LOGGER.debug(sqlInstance.toString().toUpperCase() + " " + numDeleted + " records capped in " + elapsed
+                + " ms (destination=" + dataBase + ",schemaName=" + schemaName + ",tableName=" + tableName + ")");
+        return numDeleted;
     } // capRecords
 
     @Override
-    public void expirateRecordsCache(long expirationTime) throws CygnusRuntimeError, CygnusPersistenceError {
+    public long expirateRecordsCache(long expirationTime) throws CygnusRuntimeError, CygnusPersistenceError {
+        long start = System.currentTimeMillis();
+        long numDeleted = 0;
+
         // Iterate on the cached resource IDs
         cache.startDataBaseIterator();
 
@@ -471,67 +556,88 @@ public class SQLBackendImpl implements SQLBackend{
                 }
                 LOGGER.debug(sqlInstance.toString().toUpperCase() + " expirateRecordsCache for database: " +
                              dataBase + " schema: " + schema + " tableName: " + tableName);
-                // Get the records within the table
-                CachedRowSet records = select(dataBase, schema, tableName, "*");
+                numDeleted += expirateRecords(dataBase, schema, tableName, expirationTime);
+            } // while
+        } // while
 
-                // Get the number of records
-                int numRecords = 0;
+        long elapsed = System.currentTimeMillis() - start;
+        LOGGER.debug(sqlInstance.toString().toUpperCase() + " " + numDeleted + " records expired in " + elapsed + " ms");
+        return numDeleted;
+    } // expirateRecordsCache
 
-                try {
-                    if (records.last()) {
-                        numRecords = records.getRow();
-                        records.beforeFirst();
-                    } // if
-                } catch (SQLException e) {
-                    try {
-                        records.close();
-                    } catch (SQLException e1) {
-                        LOGGER.debug(sqlInstance.toString().toUpperCase() + " Can't close CachedRowSet.");
-                    }
-                    throw new CygnusRuntimeError(sqlInstance.toString().toUpperCase() + " Data expiration error", "SQLException", e.getMessage());
-                } // try catch
+    /**
+     * Expirates the records of the given table. The oldest reception times are read in pages of the delete chunk size
+     * until a not expired one is found, and the records up to the last expired one are deleted. The reception times
+     * are parsed in Java, thus any format stored by the sinks is supported. The expiration stops if a page cannot be
+     * deleted, otherwise it would be read again and again.
+     *
+     * @param dataBase
+     * @param schema
+     * @param tableName
+     * @param expirationTime
+     * @return The number of deleted records
+     * @throws CygnusRuntimeError
+     * @throws CygnusPersistenceError
+     */
+    private long expirateRecords(String dataBase, String schema, String tableName, long expirationTime)
+            throws CygnusRuntimeError, CygnusPersistenceError {
+        int pageSize = deleteChunkSize > 0 ? deleteChunkSize : DEFAULT_DELETE_CHUNK_SIZE;
+        long numDeleted = 0;
+        boolean allExpired = true;
 
-                // Get the reception times (they work as IDs) for future
-                // deletion
-                // to-do: refactor after implementing
-                // https://github.com/telefonicaid/fiware-cygnus/issues/1371
-                String filters = "";
+        while (allExpired) {
+            ArrayList<Object> recvTimes = selectRecvTimes(dataBase, schema, tableName, false, 0, pageSize);
+            long limitTime = new Date().getTime() - (expirationTime * 1000);
+            Object lastExpired = null;
 
-                try {
-                    for (int i = 0; i < numRecords; i++) {
-                        records.next();
-                        String recvTime = records.getString("recvTime");
-                        long recordTime = CommonUtils.getMilliseconds(recvTime);
-                        long currentTime = new java.util.Date().getTime();
-
-                        if (recordTime < (currentTime - (expirationTime * 1000))) {
-                            if (filters.isEmpty()) {
-                                filters += "recvTime='" + recvTime + "'";
-                            } else {
-                                filters += " or recvTime='" + recvTime + "'";
-                            } // if else
-                        } else {
-                            break;
-                        } // if else
-                    } // for
-                } catch (SQLException e) {
-                    throw new CygnusRuntimeError(sqlInstance.toString().toUpperCase() + " Data expiration error", "SQLException", e.getMessage());
-                } catch (ParseException e) {
-                    throw new CygnusRuntimeError(sqlInstance.toString().toUpperCase() + " Data expiration error", "ParseException", e.getMessage());
-                } catch (Exception e) {
-                    throw new CygnusRuntimeError(sqlInstance.toString().toUpperCase() + " Data expiration error", "Exception", e.getMessage());
-                } // try catch
-
-                if (filters.isEmpty()) {
-                    LOGGER.debug(sqlInstance.toString().toUpperCase() + " No records to be deleted");
-                } else {
-                    LOGGER.debug(sqlInstance.toString().toUpperCase() + " Records must be deleted (destination=" + dataBase + ",schemaName=" + schema + ",tableName=" + tableName + ", filters="
-                            + filters + ")");
-                    delete(dataBase, schema, tableName, filters);
-                } // if else
-            } // while
+            try {
+                for (Object recvTime : recvTimes) {
+                    long recordTime;
+
+                    if (recvTime == null) {
+                        continue;
+                    } else if (recvTime instanceof Date) {
+                        recordTime = ((Date) recvTime).getTime();
+                    } else {
+                        recordTime = CommonUtils.getMilliseconds(recvTime.toString());
+                    } // if else
+
+                    if (recordTime < limitTime) {
+                        lastExpired = recvTime;
+                    } else {
+                        allExpired = false;
+                        break;
+                    } // if else
+                } // for
+            } catch (ParseException e) {
+                throw new CygnusRuntimeError(sqlInstance.toString().toUpperCase() + " Data expiration error", "ParseException", e.getMessage());
+            } catch (Exception e) {
+                throw new CygnusRuntimeError(sqlInstance.toString().toUpperCase() + " Data expiration error", "Exception", e.getMessage());
+            } // try catch
+
+            if (lastExpired == null) {
+                LOGGER.debug(sqlInstance.toString().toUpperCase() + " No records to be deleted");
+                break;
+            } // if
+
+            LOGGER.debug(sqlInstance.toString().toUpperCase() + " Records must be deleted (destination=" + dataBase
+                    + ",schemaName=" + schema + ",tableName=" + tableName + ", recvTime<=" + lastExpired + ")");
+            long pageDeleted = deleteOlderRecords(dataBase, schema, tableName, lastExpired, true);
+
+            // Nothing deleted (e.g. the records are locked by another writer), the same page would be read again
+            if (pageDeleted == 0) {
+                LOGGER.warn(sqlInstance.toString().toUpperCase() + " No expired records could be deleted (destination="
+                        + dataBase + ",schemaName=" + schema + ",tableName=" + tableName + ", recvTime<=" + lastExpired
+                        + "), the expiration is retried in the next cycle");
+                break;
+            } // if
+
+            numDeleted += pageDeleted;
+            allExpired = allExpired && recvTimes.size() >= pageSize;
         } // while
-    } // expirateRecordsCache
+
+        return numDeleted;
+    } // expirateRecords
 
     /**
      * Close all the SQL objects previously opened by doCreateTable and
@@ -691,13 +797,30 @@ public class SQLBackendImpl implements SQLBackend{
             // Ordering queries to avoid deadlocks. See issue #2197 for more detail
             upsertQuerysList.sort(Comparator.comparing(buff -> buff.toString()));
 
-            for (StringBuffer query : upsertQuerysList) {
-                PreparedStatement upsertStatement;
-                currentUpsertQuery = query.toString();
-                upsertStatement = connection.prepareStatement(currentUpsertQuery);
-                // FIXME https://github.com/telefonicaid/fiware-cygnus/issues/1959
-                upsertStatement.executeUpdate();
-                upsertQuerys = upsertQuerys + " " + query;
+            if (insertMode == SQLInsertMode.BATCH) {
+                // The upserts are sent in a single round trip, the order avoiding deadlocks is kept within the batch
+                Statement upsertStatement = connection.createStatement();
+                StringBuilder batchQuerys = new StringBuilder();
+                try {
+                    for (StringBuffer query : upsertQuerysList) {
+                        upsertStatement.addBatch(query.toString());
+                        batchQuerys.append(" ").append(query);
+                    }
+                    currentUpsertQuery = batchQuerys.toString();
+                    upsertStatement.executeBatch();
+                    upsertQuerys = currentUpsertQuery;
+                } finally {
+                    closeStatement(upsertStatement);
+                }
+            } else {
+                for (StringBuffer query : upsertQuerysList) {
+                    PreparedStatement upsertStatement;
+                    currentUpsertQuery = query.toString();
+                    upsertStatement = connection.prepareStatement(currentUpsertQuery);
+                    // FIXME https://github.com/telefonicaid/fiware-cygnus/issues/1959
+                    upsertStatement.executeUpdate();
+                    upsertQuerys = upsertQuerys + " " + query;
+                }
             }
             connection.commit();
             LOGGER.info(sqlInstance.toString().toUpperCase() + " Finished transactions into database: " +
@@ -761,21 +884,42 @@ public class SQLBackendImpl implements SQLBackend{
             connection = driver.getConnection(dataBase);
             connection.setAutoCommit(false);
 
-            insertQuery = SQLQueryUtils.sqlInsertQuery(aggregation,
-                                                       tableName,
-                                                       sqlInstance,
-                                                       dataBase,
-                                                       schema,
-                                                       attrNativeTypes).toString();
-
-            PreparedStatement insertStatement;
-            insertStatement = connection.prepareStatement(insertQuery);
-            /*
-            FIXME https://github.com/telefonicaid/fiware-cygnus/issues/1959
-            Add SQLSafe values with native PreparedStatement methods
-            insertPreparedStatement = SQLQueryUtils.addJsonValues(insertStatement, aggregation, attrNativeTypes);
-            */
-            insertStatement.executeUpdate();
+            if (isCopyInsert(aggregation)) {
+                // COPY is not a regular statement, it is run by the copy API of the PostgreSQL driver within the
+                // current transaction
+                insertQuery = SQLQueryUtils.sqlCopyQuery(aggregation.keySet(), tableName, schema).toString();
+                String copyValues = SQLQueryUtils.getCopyValues(aggregation, attrNativeTypes);
+                long copiedRows = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(insertQuery,
+                        new StringReader(copyValues));
+                LOGGER.debug(sqlInstance.toString().toUpperCase() + " " + copiedRows + " rows copied into " +
+                             schema + "." + tableName);
+            } else if (isBatchInsert(aggregation)) {
+                // The query only depends on the table and the fields, thus the prepared statement is reused from the
+                // statement pool of the connection
+                insertQuery = SQLQueryUtils.sqlPreparedInsertQuery(aggregation.keySet(),
+                                                                   tableName,
+                                                                   sqlInstance,
+                                                                   schema).toString();
+
+                PreparedStatement insertStatement = connection.prepareStatement(insertQuery);
+                try {
+                    SQLQueryUtils.addJsonValues(insertStatement, aggregation, attrNativeTypes, sqlInstance);
+                    insertStatement.executeBatch();
+                } finally {
+                    closeStatement(insertStatement);
+                }
+            } else {
+                insertQuery = SQLQueryUtils.sqlInsertQuery(aggregation,
+                                                           tableName,
+                                                           sqlInstance,
+                                                           dataBase,
+                                                           schema,
+                                                           attrNativeTypes).toString();
+
+                PreparedStatement insertStatement;
+                insertStatement = connection.prepareStatement(insertQuery);
+                insertStatement.executeUpdate();
+            }
 
             connection.commit();
             LOGGER.info(sqlInstance.toString().toUpperCase() + " Finished transactions into database: " +
@@ -794,6 +938,12 @@ public class SQLBackendImpl implements SQLBackend{
                                                  " insertQuery: " + insertQuery,
                                                  " SQLTimeoutException", e.getMessage());
             }
+        } catch (IOException e) {
+            cygnusSQLRollback(connection);
+            throw new CygnusPersistenceError(sqlInstance.toString().toUpperCase() +
+                                             " Data copy error. database: " + dataBase +
+                                             " insertQuery: " + insertQuery,
+                                             " IOException", e.getMessage());
         } catch (SQLException e) {
             cygnusSQLRollback(connection);
             if (insertQuery.isEmpty()) {
@@ -822,6 +972,47 @@ public class SQLBackendImpl implements SQLBackend{
     }
 
 
+    /**
+     * Gets if the given aggregation must be inserted as a JDBC batch of bound values. That is not possible for Oracle
+     * (its multiple row insert is used instead) nor if any value is a SQL function, since such functions must be
+     * written within the query.
+     *
+     * @param aggregation
+     * @return True if the aggregation must be inserted as a JDBC batch, false otherwise
+     */
+    private boolean isBatchInsert(LinkedHashMap<String, ArrayList<JsonElement>> aggregation) {
+        if (insertMode != SQLInsertMode.BATCH || sqlInstance == SQLInstance.ORACLE) {
+            return false;
+        } // if
+
+        if (SQLQueryUtils.hasSQLFunctionValues(aggregation)) {
+            LOGGER.debug(sqlInstance.toString().toUpperCase() + " SQL functions found within the values, they will be inserted as literals");
+            return false;
+        } // if
+
+        return true;
+    } // isBatchInsert
+
+    /**
+     * Gets if the given aggregation must be inserted through a PostgreSQL COPY query. That is only possible for
+     * PostgreSQL and if no value is a SQL function, since such functions must be written within an insert query.
+     *
+     * @param aggregation
+     * @return True if the aggregation must be copied, false otherwise
+     */
+    private boolean isCopyInsert(LinkedHashMap<String, ArrayList<JsonElement>> aggregation) {
+        if (insertMode != SQLInsertMode.COPY || sqlInstance != SQLInstance.POSTGRESQL) {
+            return false;
+        } // if
+
+        if (SQLQueryUtils.hasSQLFunctionValues(aggregation)) {
+            LOGGER.debug(sqlInstance.toString().toUpperCase() + " SQL functions found within the values, they will be inserted as literals");
+            return false;
+        } // if
+
+        return true;
+    } // isCopyInsert
+
     private void cygnusSQLRollback (Connection connection) {
         try {
             connection.rollback();
@@ -935,8 +1126,8 @@ public class SQLBackendImpl implements SQLBackend{
 
     public class SQLDriver {
 
-        private final HashMap<String, DataSource> datasources;
-        private final HashMap<String, GenericObjectPool> pools;
+        private final ConcurrentHashMap<String, DataSource> datasources;
+        private final ConcurrentHashMap<String, GenericObjectPool> pools;
         private final String sqlHost;
         private final String sqlPort;
         private final String sqlUsername;
@@ -948,6 +1139,7 @@ public class SQLBackendImpl implements SQLBackend{
         private final int minPoolIdle;
         private final int minPoolIdleTimeMillis;
         private final String sqlOptions;
+        private boolean batchMode;
 
         /**
          * Constructor.
@@ -965,8 +1157,8 @@ public class SQLBackendImpl implements SQLBackend{
          * @param sqlOptions
          */
         public SQLDriver(String sqlHost, String sqlPort, String sqlUsername, String sqlPassword, int maxPoolSize, int maxPoolIdle, int minPoolIdle, int minPoolIdleTimeMillis, SQLInstance sqlInstance, String sqlDriverName, String sqlOptions) {
-            datasources = new HashMap<>();
-            pools = new HashMap<>();
+            datasources = new ConcurrentHashMap<>();
+            pools = new ConcurrentHashMap<>();
             this.sqlHost = sqlHost;
             this.sqlPort = sqlPort;
             this.sqlUsername = sqlUsername;
@@ -978,8 +1170,20 @@ public class SQLBackendImpl implements SQLBackend{
             this.sqlInstance = sqlInstance;
             this.sqlDriverName = sqlDriverName;
             this.sqlOptions = sqlOptions;
+            this.batchMode = false;
         } // SQLDriver
 
+        /**
+         * Sets the batch mode. In batch mode the connections pool their prepared statements and the JDBC driver is
+         * asked to rewrite the batches into multiple row statements. It only affects the connection pools created
+         * afterwards.
+         *
+         * @param batchMode
+         */
+        public void setBatchMode(boolean batchMode) {
+            this.batchMode = batchMode;
+        } // setBatchMode
+
         /**
          * Gets a connection to the SQL server.
          *
@@ -1095,14 +1299,15 @@ public class SQLBackendImpl implements SQLBackend{
         } // numConnectionsCreated
 
         /**
-         * Create a connection pool for destination.
+         * Create a connection pool for destination. It is synchronized since several batch persistence workers may
+         * ask for the same not yet existing pool at the same time, and only one pool must be created per destination.
          *
          * @param destination
          * @return PoolingDataSource
          * @throws Exception
          */
         @SuppressWarnings("unused")
-        private DataSource createConnectionPool(String destination) throws Exception {
+        private synchronized DataSource createConnectionPool(String destination) throws Exception {
             GenericObjectPool gPool = null;
             if (pools.containsKey(destination)){
                 LOGGER.debug(sqlInstance.toString().toUpperCase() + " Pool recovered from Cache (" + destination + ")");
@@ -1127,7 +1332,7 @@ public class SQLBackendImpl implements SQLBackend{
                 pools.put(destination, gPool);
 
                 // Creates a ConnectionFactory Object Which Will Be Used by the Pool to Create the Connection Object!
-                String sep = (sqlOptions != null && !sqlOptions.trim().isEmpty()) ? "&" : "?";
+                String sep = jdbcUrl.contains("?") ? "&" : "?";
                 String logJdbc = jdbcUrl + sep + "user=" + sqlUsername + "&password=XXXXXXXXXX";
 
                 LOGGER.debug(sqlInstance.toString().toUpperCase() + " Creating connection pool jdbc: " + logJdbc);
@@ -1135,7 +1340,13 @@ public class SQLBackendImpl implements SQLBackend{
 
                 // Creates a PoolableConnectionFactory That Will Wraps the Connection Object Created by
                 // the ConnectionFactory to Add Object Pooling Functionality!
-                PoolableConnectionFactory pcf = new PoolableConnectionFactory(cf, gPool, null, null, false, true);
+                // In batch mode the prepared statements are pooled per connection, keyed by their SQL query
+                KeyedObjectPoolFactory stmtPoolFactory = null;
+                if (batchMode) {
+                    stmtPoolFactory = new GenericKeyedObjectPoolFactory(null, -1,
+                            GenericKeyedObjectPool.WHEN_EXHAUSTED_GROW, 0, 1, DEFAULT_MAX_OPEN_PREPARED_STATEMENTS);
+                }
+                PoolableConnectionFactory pcf = new PoolableConnectionFactory(cf, gPool, stmtPoolFactory, null, false, true);
             } //else
             return new PoolingDataSource(gPool);
         } // createConnectionPool
@@ -1156,6 +1367,18 @@ public class SQLBackendImpl implements SQLBackend{
             if (sqlOptions != null && !sqlOptions.trim().isEmpty()) {
                 jdbcUrl += "?" + sqlOptions;
             }
+            if (batchMode) {
+                // Let the driver rewrite the batches into multiple row statements, unless already configured
+                String rewriteOption = null;
+                if (sqlInstance == SQLInstance.MYSQL) {
+                    rewriteOption = "rewriteBatchedStatements";
+                } else if (sqlInstance == SQLInstance.POSTGRESQL) {
+                    rewriteOption = "reWriteBatchedInserts";
+                }
+                if (rewriteOption != null && !jdbcUrl.toLowerCase().contains(rewriteOption.toLowerCase())) {
+                    jdbcUrl += (jdbcUrl.contains("?") ? "&" : "?") + rewriteOption + "=true";
+                }
+            }
 
             return jdbcUrl;
         } // generateJDBCUrl
@@ -19,27 +19,31 @@ package com.telefonica.iot.cygnus.backends.sql;
 
 import com.telefonica.iot.cygnus.log.CygnusLogger;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Cache of the created databases and tables. It may be updated by several batch persistence workers at the same time,
+ * thus the hierarchy is stored in concurrent collections.
+ */
 public class SQLCache {
 
     private static final CygnusLogger LOGGER = new CygnusLogger(SQLCache.class);
-    private final HashMap<String, ArrayList<String>> hierarchy;
+    private final ConcurrentHashMap<String, Set<String>> hierarchy;
     private Iterator dataBaseEntries;
     private Entry nextDataBaseEntry;
-    private final HashMap<String, Iterator> tableEntries;
-    private final HashMap<String, String> nextTableEntry;
+    private final ConcurrentHashMap<String, Iterator> tableEntries;
+    private final ConcurrentHashMap<String, String> nextTableEntry;
 
     /**
      * Constructor.
      */
     public SQLCache() {
-        hierarchy = new HashMap<>();
-        tableEntries = new HashMap<>();
-        nextTableEntry = new HashMap<>();
+        hierarchy = new ConcurrentHashMap<>();
+        tableEntries = new ConcurrentHashMap<>();
+        nextTableEntry = new ConcurrentHashMap<>();
     } // SQLCache
     
     /**
@@ -48,12 +52,11 @@ public class SQLCache {
      * @return True if the dataBase is added, false otherwise.
      */
     public boolean addDataBase(String dataBase) {
-        if (hierarchy.containsKey(dataBase)) {
+        if (hierarchy.putIfAbsent(dataBase, ConcurrentHashMap.<String>newKeySet()) != null) {
             LOGGER.debug("'" + dataBase + "' not added to the database cache, since already existing (total: " +
                          hierarchy.size() + ")");
             return false;
         } else {
-            hierarchy.put(dataBase, new ArrayList<String>());
             LOGGER.debug("'" + dataBase + "' added to the database cache(total: " + hierarchy.size() + ")");
             return true;
         } // if else
@@ -66,15 +69,14 @@ public class SQLCache {
      * @return True if the table is added, false otherwise
      */
     public boolean addTable(String dataBase, String tableName) {
-        ArrayList<String> tables = hierarchy.get(dataBase);
+        Set<String> tables = hierarchy.get(dataBase);
         
         if (tables != null) {
-            if (tables.contains(tableName)) {
+            if (!tables.add(tableName)) {
                 LOGGER.debug("'" + tableName + "' not added to the tables cache, since already existing (total: " +
                              tables.size() + ")");
                 return false;
             } else {
-                tables.add(tableName);
                 LOGGER.debug("'" + tableName + "' added to the tables cache (total: " + tables.size() + ")");
                 return true;
             } // if else
@@ -101,7 +103,7 @@ public class SQLCache {
      * @return True if the table name is cached, false otherwise.
      */
     public boolean isCachedTable(String dataBase, String tableName) {
-        ArrayList<String> tables = hierarchy.get(dataBase);
+        Set<String> tables = hierarchy.get(dataBase);
         
         if (tables == null) {
             return false;
@@ -24,6 +24,7 @@ import com.telefonica.iot.cygnus.backends.sql.Enum.SQLInstance;
 
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -399,6 +400,61 @@ public class SQLQueryUtils {
         return query;
     }
 
+    /**
+     * Sql prepared insert query string buffer, i.e. an insert query having a question mark per field instead of the
+     * values. The values are bound afterwards through addJsonValues, thus the same query (and the same prepared
+     * statement) is valid for any aggregation having the same fields.
+     *
+     * @param keyList     the key list
+     * @param tableName   the table name
+     * @param sqlInstance the sql instance
+     * @param schema      the database schema
+     * @return the string buffer
+     */
+    protected static StringBuffer sqlPreparedInsertQuery(Set<String> keyList,
+                                                         String tableName,
+                                                         SQLInstance sqlInstance,
+                                                         String schema) {
+        StringBuffer query = new StringBuffer();
+        StringBuffer questionValues = sqlQuestionValues(keyList);
+
+        if (sqlInstance == SQLInstance.POSTGRESQL) {
+            StringBuffer postgisDestination = new StringBuffer(schema).append(".").append(tableName);
+            query.append("INSERT INTO ").append(postgisDestination).append(" ").
+                    append(getFieldsForInsert(keyList, POSTGRES_FIELDS_MARK)).append(" ").
+                    append("VALUES ").append(questionValues);
+        } else if (sqlInstance == SQLInstance.MYSQL) {
+            query.append("INSERT INTO ").append(MYSQL_FIELDS_MARK).append(tableName).append(MYSQL_FIELDS_MARK).append(" ").
+                    append(getFieldsForInsert(keyList, MYSQL_FIELDS_MARK)).append(" ").
+                    append("VALUES ").append(questionValues);
+        } else if (sqlInstance == SQLInstance.ORACLE) {
+            query.append("INSERT INTO ").append(tableName).append(" ").
+                    append(getFieldsForInsert(keyList, ORACLE_FIELDS_MARK)).append(" ").
+                    append("VALUES ").append(questionValues);
+        }
+
+        LOGGER.debug("[SQLQueryUtils.sqlPreparedInsertQuery] Preparing Insert query: " + query.toString());
+        return query;
+    }
+
+    /**
+     * Sql copy query string buffer, i.e. a PostgreSQL COPY query loading the given fields from CSV rows sent through
+     * the standard input (see getCopyValues).
+     *
+     * @param keyList   the key list
+     * @param tableName the table name
+     * @param schema    the database schema
+     * @return the string buffer
+     */
+    protected static StringBuffer sqlCopyQuery(Set<String> keyList, String tableName, String schema) {
+        StringBuffer query = new StringBuffer();
+        query.append("COPY ").append(schema).append(".").append(tableName).append(" ").
+                append(getFieldsForInsert(keyList, POSTGRES_FIELDS_MARK)).append(" ").
+                append("FROM STDIN WITH (FORMAT csv)");
+        LOGGER.debug("[SQLQueryUtils.sqlCopyQuery] Preparing Copy query: " + query.toString());
+        return query;
+    }
+
     /**
      * Sql question values string buffer.
      *
@@ -450,92 +506,112 @@ public class SQLQueryUtils {
 
 
     /**
-     * Add json values prepared statement.
+     * Add json values prepared statement. A batch is added to the statement per each event within the aggregation, the
+     * values being bound in the same order than the fields given by sqlPreparedInsertQuery. The values are bound in
+     * such a way they are equivalent to the ones got from getValuesForInsert, thus this method must not be used if the
+     * aggregation contains SQL functions (see hasSQLFunctionValues).
      *
      * @param previousStatement the previous statement
      * @param aggregation       the aggregation
      * @param attrNativeTypes   the attr native types
+     * @param sqlInstance       the sql instance
      * @return the prepared statement
      * @throws SQLException the sql exception
      */
     protected static PreparedStatement addJsonValues (PreparedStatement previousStatement,
                                                       LinkedHashMap<String, ArrayList<JsonElement>> aggregation,
-                                                      boolean attrNativeTypes) throws SQLException {
+                                                      boolean attrNativeTypes,
+                                                      SQLInstance sqlInstance) throws SQLException {
 
         PreparedStatement preparedStatement = previousStatement;
+        ArrayList<ArrayList<JsonElement>> columns = new ArrayList<>(aggregation.values());
         int numEvents = collectionSizeOnLinkedHashMap(aggregation);
         for (int i = 0; i < numEvents; i++) {
-            Iterator<String> it = aggregation.keySet().iterator();
             int position = 1;
-            while (it.hasNext()) {
-                String entry = it.next();
-                ArrayList<JsonElement> values = aggregation.get(entry);
+            for (ArrayList<JsonElement> values : columns) {
                 JsonElement value = values.get(i);
                 if (attrNativeTypes) {
                     if (value == null || value.isJsonNull()) {
-                        preparedStatement.setString(position, "NULL");
-                        LOGGER.debug("[SQLQueryUtils.addJsonValues] " + "Added NULL as String");
-                    } else {
-                        if (value.isJsonPrimitive()) {
-                            if (value.getAsJsonPrimitive().isNumber()) {
-                                preparedStatement.setDouble(position, value.getAsDouble());
-                                LOGGER.debug("[SQLQueryUtils.addJsonValues] " + "Added " + value.getAsDouble() + " as Number");
-                                position++;
-                            } else if (value.getAsJsonPrimitive().isBoolean()) {
-                                preparedStatement.setBoolean(position, value.getAsBoolean());
-                                LOGGER.debug("[SQLQueryUtils.addJsonValues] " + "Added " + value.getAsBoolean() + " as Boolean");
-                                position++;
-                            } else {
-                                String stringValue = value.getAsString();
-                                if (stringValue.contains("ST_GeomFromGeoJSON") || stringValue.contains("ST_SetSRID") ||
-                                    stringValue.contains("SDO_GEOMETRY") || stringValue.contains("sdo_util.from_geojson")) {
-                                    preparedStatement.setObject(position, stringValue);
-                                    LOGGER.debug("[SQLQueryUtils.addJsonValues] " + "Added postgis Function " + stringValue + " as Object");
-                                    position++;
-                                } else {
-                                    preparedStatement.setObject(position, stringValue);
-                                    LOGGER.debug("[SQLQueryUtils.addJsonValues] " + "Added " + stringValue + " as Object");
-                                    position++;
-                                }
-                            } // else
-                        } else { // if (value.isJsonPrimitive())
-                            preparedStatement.setString(position, value.toString());
-                            LOGGER.debug("[SQLQueryUtils.addJsonValues] " + "Added " + value.toString() + " as String");
-                            position++;
+                        preparedStatement.setNull(position, Types.NULL);
+                    } else if (value.isJsonPrimitive()) {
+                        if (value.getAsJsonPrimitive().isNumber()) {
+                            preparedStatement.setBigDecimal(position, value.getAsBigDecimal());
+                        } else if (value.getAsJsonPrimitive().isBoolean()) {
+                            preparedStatement.setBoolean(position, value.getAsBoolean());
+                        } else {
+                            setStringValue(preparedStatement, position, value.getAsString(), sqlInstance);
                         } // else
+                    } else {
+                        setStringValue(preparedStatement, position, value.toString(), sqlInstance);
                     } // else
                 } else { //if (attrNativeTypes)
                     if (value != null && value.isJsonPrimitive()) {
-                        String stringValue = value.getAsString();
-                        if (stringValue.contains("ST_GeomFromGeoJSON") || stringValue.contains("ST_SetSRID") ||
-                            stringValue.contains("SDO_GEOMETRY") || stringValue.contains("sdo_util.from_geojson")) {
-                            preparedStatement.setObject(position, stringValue);
-                            LOGGER.debug("[SQLQueryUtils.addJsonValues] " + "Added postgis Function " + stringValue + " as Object");
-                            position++;
-                        } else {
-                            preparedStatement.setObject(position, stringValue);
-                            LOGGER.debug("[SQLQueryUtils.addJsonValues] " + "Added " + stringValue + " as String");
-                            position++;
-                        }
+                        setStringValue(preparedStatement, position, value.getAsString(), sqlInstance);
+                    } else if (value == null) {
+                        setStringValue(preparedStatement, position, "NULL", sqlInstance);
                     } else {
-                        if (value == null){
-                            preparedStatement.setObject(position, "NULL");
-                            LOGGER.debug("[SQLQueryUtils.addJsonValues] " + "Added NULL as String");
-                            position++;
-                        } else {
-                            preparedStatement.setObject(position, value.toString());
-                            LOGGER.debug("[SQLQueryUtils.addJsonValues] " + "Added " + value.toString() + " as String");
-                            position++;
-                        }
-                    }
-                }
-            } // while
+                        setStringValue(preparedStatement, position, value.toString(), sqlInstance);
+                    } // else
+                } // else
+                position++;
+            } // for
             preparedStatement.addBatch();
-            LOGGER.debug("[SQLQueryUtils.addJsonValues] Batch added");
         } // for
+        LOGGER.debug("[SQLQueryUtils.addJsonValues] " + numEvents + " batches added");
         return preparedStatement;
     }
 
+    /**
+     * Binds a string value. PostgreSQL values are bound with an unspecified type, thus the server infers it from the
+     * column (as it does with the quoted literals), otherwise a text value could not be inserted in a numeric or
+     * timestamp column.
+     *
+     * @param preparedStatement the prepared statement
+     * @param position          the parameter position
+     * @param value             the value
+     * @param sqlInstance       the sql instance
+     * @throws SQLException the sql exception
+     */
+    private static void setStringValue(PreparedStatement preparedStatement, int position, String value,
+                                       SQLInstance sqlInstance) throws SQLException {
+        if (sqlInstance == SQLInstance.POSTGRESQL) {
+            preparedStatement.setObject(position, value, Types.OTHER);
+        } else {
+            preparedStatement.setString(position, value);
+        }
+    }
+
+    /**
+     * Checks if the given value is a SQL function (PostGIS or Oracle geometries) that must be added to the query as it
+     * is, instead of being quoted or bound.
+     *
+     * @param value the value
+     * @return true if the value is a SQL function, false otherwise
+     */
+    protected static boolean isSQLFunctionValue(String value) {
+        return value.contains("ST_GeomFromGeoJSON") || value.contains("ST_SetSRID") ||
+               value.contains("SDO_GEOMETRY") || value.contains("sdo_util.from_geojson");
+    }
+
+    /**
+     * Checks if the aggregation contains any SQL function value, in which case the values cannot be bound to a
+     * prepared statement.
+     *
+     * @param aggregation the aggregation
+     * @return true if any value is a SQL function, false otherwise
+     */
+    protected static boolean hasSQLFunctionValues(LinkedHashMap<String, ArrayList<JsonElement>> aggregation) {
+        for (ArrayList<JsonElement> values : aggregation.values()) {
+            for (JsonElement value : values) {
+                if (value != null && value.isJsonPrimitive() && value.getAsJsonPrimitive().isString()
+                        && isSQLFunctionValue(value.getAsString())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * Collection size on linked hash map int.
      *
@@ -634,6 +710,72 @@ public class SQLQueryUtils {
         return valuesForInsert;
     } // getValuesForInsert
 
+    /**
+     * Gets values for copy, i.e. a CSV row per event within the aggregation, the values being in the same order than
+     * the fields given by sqlCopyQuery. The values are written in such a way they are equivalent to the ones got from
+     * getValuesForInsert, thus this method must not be used if the aggregation contains SQL functions (see
+     * hasSQLFunctionValues).
+     *
+     * @param aggregation     the aggregation
+     * @param attrNativeTypes the attr native types
+     * @return a String with all the rows in CSV format.
+     */
+    public static String getCopyValues(LinkedHashMap<String, ArrayList<JsonElement>> aggregation, boolean attrNativeTypes) {
+        StringBuilder copyValues = new StringBuilder();
+        ArrayList<ArrayList<JsonElement>> columns = new ArrayList<>(aggregation.values());
+        int numEvents = collectionSizeOnLinkedHashMap(aggregation);
+
+        for (int i = 0; i < numEvents; i++) {
+            boolean first = true;
+            for (ArrayList<JsonElement> values : columns) {
+                if (first) {
+                    first = false;
+                } else {
+                    copyValues.append(SEPARATION_MARK);
+                } // if else
+                copyValues.append(getCsvValueFromJsonElement(values.get(i), attrNativeTypes));
+            } // for
+            copyValues.append("\n");
+        } // for
+        return copyValues.toString();
+    } // getCopyValues
+
+    /**
+     * Gets a CSV value from a json element. In CSV format an unquoted empty value is a NULL, whereas quoted values are
+     * always strings, the server casting them to the column type.
+     *
+     * @param value           the value
+     * @param attrNativeTypes the attr native types
+     * @return the CSV value
+     */
+    private static String getCsvValueFromJsonElement(JsonElement value, boolean attrNativeTypes) {
+        if (attrNativeTypes) {
+            if (value == null || value.isJsonNull()) {
+                return "";
+            } else if (value.isJsonPrimitive()) {
+                if (value.getAsJsonPrimitive().isBoolean() || value.getAsJsonPrimitive().isNumber()) {
+                    return value.getAsString();
+                } else {
+                    return quoteCsvValue(value.getAsString());
+                } // if else
+            } else {
+                return quoteCsvValue(value.toString());
+            } // if else
+        } else {
+            if (value != null && value.isJsonPrimitive()) {
+                return quoteCsvValue(value.getAsString());
+            } else if (value == null) {
+                return quoteCsvValue("NULL");
+            } else {
+                return quoteCsvValue(value.toString());
+            } // if else
+        } // if else
+    } // getCsvValueFromJsonElement
+
+    private static String quoteCsvValue(String value) {
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    } // quoteCsvValue
+
     /**
      * Gets values for insert in a List
      *
@@ -29,7 +29,7 @@ public abstract class CygnusHandler {
     protected static final long BOOTTIME = new Date().getTime();
     protected static long numReceivedEvents = 0;
     protected static long numProcessedEvents = 0;
-    protected CygnusMetrics serviceMetrics = new CygnusMetrics();
+    protected volatile CygnusMetrics serviceMetrics = new CygnusMetrics();
     
     /**
      * Gets the number of received events.
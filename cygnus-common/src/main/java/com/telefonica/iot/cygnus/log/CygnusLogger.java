@@ -132,6 +132,22 @@ public class CygnusLogger {
     } // trace
     
     
+    /**
+     * Checks if the DEBUG level is enabled. Useful for not building expensive messages that will not be traced.
+     * @return True if the DEBUG level is enabled, otherwise false
+     */
+    public boolean isDebugEnabled() {
+        return this.logger.isDebugEnabled();
+    } // isDebugEnabled
+    
+    /**
+     * Checks if the INFO level is enabled. Useful for not building expensive messages that will not be traced.
+     * @return True if the INFO level is enabled, otherwise false
+     */
+    public boolean isInfoEnabled() {
+        return this.logger.isInfoEnabled();
+    } // isInfoEnabled
+    
     private void traceAndExit(Exception e) {
         System.err.println("A problem with the logging system was found... shutting down Cygnus right now!"
                 + " Details=" + e.getMessage());
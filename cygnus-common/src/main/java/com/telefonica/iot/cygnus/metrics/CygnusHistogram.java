@@ -0,0 +1,172 @@
+/**
+ * Copyright 2026 Telefonica Investigación y Desarrollo, S.A.U
+ *
+ * This file is part of fiware-cygnus (FIWARE project).
+ *
+ * fiware-cygnus is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * fiware-cygnus is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with fiware-cygnus. If not, see
+ * http://www.gnu.org/licenses/.
+ *
+ * For those usages not covered by the GNU Affero General Public License please contact with iot_support at tid dot es
+ */
+package com.telefonica.iot.cygnus.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log-linear histogram of non negative values, e.g. latencies in milliseconds or batch sizes. Values lower than 8
+ * are exactly counted; greater values are counted within buckets whose width is the 1/8 of their magnitude, thus the
+ * percentiles have a relative error not greater than 12.5%. The maximum is exactly tracked. The histogram is
+ * thread-safe and lock-free, and its memory footprint is fixed (a few hundreds of counters).
+ */
+public class CygnusHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40; // values greater than 2^41 (more than 69 years in ms) are truncated
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+    private static final int NUM_BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+    private final AtomicLongArray buckets;
+    private final LongAdder count;
+    private final LongAccumulator max;
+
+    /**
+     * Constructor.
+     */
+    public CygnusHistogram() {
+        buckets = new AtomicLongArray(NUM_BUCKETS);
+        count = new LongAdder();
+        max = new LongAccumulator(Math::max, 0);
+    } // CygnusHistogram
+
+    /**
+     * Records the given value. Negative values (e.g. latencies affected by clock skew) are recorded as 0.
+     * @param value
+     */
+    public void record(long value) {
+        record(value, 1);
+    } // record
+
+    /**
+     * Records the given value as many times as given.
+     * @param value
+     * @param times
+     */
+    public void record(long value, long times) {
+        long v = Math.min(Math.max(value, 0), MAX_VALUE);
+        buckets.addAndGet(getBucketIndex(v), times);
+        count.add(times);
+        max.accumulate(v);
+    } // record
+
+    public long getCount() {
+        return count.sum();
+    } // getCount
+
+    public long getMax() {
+        return max.get();
+    } // getMax
+
+    /**
+     * Gets the value under which the given percentage of the recorded values fall.
+     * @param percentile A percentage within [0, 100]
+     * @return The value for the given percentile, or 0 if no value was recorded
+     */
+    public long getPercentile(double percentile) {
+        long[] counts = new long[NUM_BUCKETS];
+        long total = 0;
+
+        // Copy the counters first, since they may be updated meanwhile
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        } // for
+
+        if (total == 0) {
+            return 0;
+        } // if
+
+        long rank = Math.max((long) Math.ceil(percentile / 100 * total), 1);
+        long accumulated = 0;
+        long maxValue = max.get();
+
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            accumulated += counts[i];
+
+            if (accumulated >= rank) {
+                return Math.min(getBucketValue(i), maxValue);
+            } // if
+        } // for
+
+        return maxValue;
+    } // getPercentile
+
+    /**
+     * Merges the given histogram into this one.
+     * @param other
+     */
+    public void merge(CygnusHistogram other) {
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            long c = other.buckets.get(i);
+
+            if (c != 0) {
+                buckets.addAndGet(i, c);
+            } // if
+        } // for
+
+        count.add(other.count.sum());
+        max.accumulate(other.max.get());
+    } // merge
+
+    /**
+     * Gets the Json string for this histogram.
+     * @return The Json string for this histogram
+     */
+    public String toJsonString() {
+        return "{\"count\":" + getCount() + ","
+                + "\"p50\":" + getPercentile(50) + ","
+                + "\"p95\":" + getPercentile(95) + ","
+                + "\"p99\":" + getPercentile(99) + ","
+                + "\"max\":" + getMax() + "}";
+    } // toJsonString
+
+    /**
+     * Gets the index of the bucket the given value falls in. Package-private in order it can be tested.
+     * @param value
+     * @return The index of the bucket the given value falls in
+     */
+    static int getBucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        } // if
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    } // getBucketIndex
+
+    /**
+     * Gets the greatest value falling in the given bucket. Package-private in order it can be tested.
+     * @param index
+     * @return The greatest value falling in the given bucket
+     */
+    static long getBucketValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        } // if
+
+        int exponent = (index - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+        long subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        long lowest = (1L << exponent) + (subBucket << (exponent - SUB_BUCKET_BITS));
+        return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    } // getBucketValue
+
+} // CygnusHistogram
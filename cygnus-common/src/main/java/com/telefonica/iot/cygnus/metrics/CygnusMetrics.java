@@ -17,27 +17,42 @@
  */
 package com.telefonica.iot.cygnus.metrics;
 
-import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
+ * Per service and subservice metrics. These metrics are updated by the source handler threads and the sink runner
+ * threads while they are read by the management interface, thus they are thread-safe: the metrics are kept within
+ * concurrent maps and the counters are adders, in order the updates are never lost nor serialized. The readings
+ * (merge, toJsonString) are lock-free and weakly consistent, i.e. an update done while reading may be
+ * partially seen, but it will be fully seen by the next reading.
  *
  * @author frb
  */
 public class CygnusMetrics {
     
-    private final HashMap<String, HashMap<String, Metrics>> perServiceSubserviceMetrics;
-    private final HashMap<String, Metrics> perServiceAggrMetrics;
-    private final HashMap<String, Metrics> perSubserviceAggrMetrics;
+    private final ConcurrentMap<String, ConcurrentMap<String, Metrics>> perServiceSubserviceMetrics;
+    private final ConcurrentMap<String, Metrics> perServiceAggrMetrics;
+    private final ConcurrentMap<String, Metrics> perSubserviceAggrMetrics;
     private final Metrics allAggrMetrics;
+    private final ConcurrentMap<String, ConcurrentMap<String, Latencies>> perSinkDestinationLatencies;
+    private final ConcurrentMap<String, CacheStats> perCacheStats;
+    private final ConcurrentMap<String, DeletionStats> perSinkDeletionStats;
     
     /**
      * Constructor.
      */
     public CygnusMetrics() {
-        perServiceSubserviceMetrics = new HashMap<>();
-        perServiceAggrMetrics = new HashMap<>();
-        perSubserviceAggrMetrics = new HashMap<>();
+        perServiceSubserviceMetrics = new ConcurrentHashMap<>();
+        perServiceAggrMetrics = new ConcurrentHashMap<>();
+        perSubserviceAggrMetrics = new ConcurrentHashMap<>();
         allAggrMetrics = new Metrics();
+        perSinkDestinationLatencies = new ConcurrentHashMap<>();
+        perCacheStats = new ConcurrentHashMap<>();
+        perSinkDeletionStats = new ConcurrentHashMap<>();
     } // CygnusMetrics
     
     /**
@@ -58,78 +73,180 @@ public class CygnusMetrics {
             long incomingTransactionResponseSize, long incomingTransactionErrors, double serviceTime,
             long outgoingTransactions, long outgoingTransactionRequestSize, long outgoingTransactionResponseSize,
             long outgoingTransactionErrors) {
-        // Add to per-service metrics
-        HashMap<String, Metrics> subserviceMetrics = perServiceSubserviceMetrics.get(service);
+        // The aggregated metrics are got before the per-service metrics, thus a per-service metrics is never read
+        // without its aggregated metrics
+        Metrics allsubserviceMetrics = getOrCreate(perServiceAggrMetrics, service);
+        Metrics subsvcMetrics = getOrCreate(perSubserviceAggrMetrics, subservice);
+        ConcurrentMap<String, Metrics> subserviceMetrics = perServiceSubserviceMetrics.get(service);
         
         if (subserviceMetrics == null) {
-            subserviceMetrics = new HashMap<>();
-            perServiceSubserviceMetrics.put(service, subserviceMetrics);
+            subserviceMetrics = new ConcurrentHashMap<>();
+            ConcurrentMap<String, Metrics> current = perServiceSubserviceMetrics.putIfAbsent(service,
+                    subserviceMetrics);
+            
+            if (current != null) {
+                subserviceMetrics = current;
+            } // if
         } // if
         
-        Metrics metrics = subserviceMetrics.get(subservice);
+        Metrics metrics = getOrCreate(subserviceMetrics, subservice);
+        
+        // Add to per-service metrics, per-service aggregated metrics, per-subservice metrics and aggregated metrics
+        for (Metrics m : new Metrics[] {metrics, allsubserviceMetrics, subsvcMetrics, allAggrMetrics}) {
+            m.addIncomingTransactions(incomingTransaction);
+            m.addIncomingTransactionRequestSize(incomingTransactionRequestSize);
+            m.addIncomingTransactionResponseSize(incomingTransactionResponseSize);
+            m.addIncomingTransactionErrors(incomingTransactionErrors);
+            m.addServiceTime(serviceTime);
+            m.addOutgoingTransactions(outgoingTransactions);
+            m.addOutgoingTransactionRequestSize(outgoingTransactionRequestSize);
+            m.addOutgoingTransactionResponseSize(outgoingTransactionResponseSize);
+            m.addOutgoingTransactionErrors(outgoingTransactionErrors);
+        } // for
+    } // add
+    
+    /**
+     * Gets the metrics for the given key within the given map, creating them if not existing.
+     * @param map
+     * @param key
+     * @return The metrics for the given key
+     */
+    private Metrics getOrCreate(ConcurrentMap<String, Metrics> map, String key) {
+        Metrics metrics = map.get(key);
         
         if (metrics == null) {
             metrics = new Metrics();
-            subserviceMetrics.put(subservice, metrics);
+            Metrics current = map.putIfAbsent(key, metrics);
+            
+            if (current != null) {
+                metrics = current;
+            } // if
         } // if
         
-        metrics.addIncomingTransactions(incomingTransaction);
-        metrics.addIncomingTransactionRequestSize(incomingTransactionRequestSize);
-        metrics.addIncomingTransactionResponseSize(incomingTransactionResponseSize);
-        metrics.addIncomingTransactionErrors(incomingTransactionErrors);
-        metrics.addServiceTime(serviceTime);
-        metrics.addOutgoingTransactions(outgoingTransactions);
-        metrics.addOutgoingTransactionRequestSize(outgoingTransactionRequestSize);
-        metrics.addOutgoingTransactionResponseSize(outgoingTransactionResponseSize);
-        metrics.addOutgoingTransactionErrors(outgoingTransactionErrors);
-        
-        // Add to per-service aggregated metrics
-        Metrics allsubserviceMetrics = perServiceAggrMetrics.get(service);
-        
-        if (allsubserviceMetrics == null) {
-            allsubserviceMetrics = new Metrics();
-            perServiceAggrMetrics.put(service, allsubserviceMetrics);
+        return metrics;
+    } // getOrCreate
+    
+    /**
+     * Adds latencies to the given destination within the given sink. A call to this method stands for a single
+     * persistence operation.
+     * @param sink
+     * @param destination
+     * @param persistenceTime Milliseconds spent by the persistence operation
+     * @param endToEndLatencies Milliseconds elapsed since the reception of each persisted event until its persistence;
+     * the batch size is given by the length of this array
+     */
+    public void addLatencies(String sink, String destination, long persistenceTime, long[] endToEndLatencies) {
+        ConcurrentMap<String, Latencies> destinationLatencies = perSinkDestinationLatencies.get(sink);
+        
+        if (destinationLatencies == null) {
+            destinationLatencies = new ConcurrentHashMap<>();
+            ConcurrentMap<String, Latencies> current = perSinkDestinationLatencies.putIfAbsent(sink,
+                    destinationLatencies);
+            
+            if (current != null) {
+                destinationLatencies = current;
+            } // if
         } // if
         
-        allsubserviceMetrics.addIncomingTransactions(incomingTransaction);
-        allsubserviceMetrics.addIncomingTransactionRequestSize(incomingTransactionRequestSize);
-        allsubserviceMetrics.addIncomingTransactionResponseSize(incomingTransactionResponseSize);
-        allsubserviceMetrics.addIncomingTransactionErrors(incomingTransactionErrors);
-        allsubserviceMetrics.addServiceTime(serviceTime);
-        allsubserviceMetrics.addOutgoingTransactions(outgoingTransactions);
-        allsubserviceMetrics.addOutgoingTransactionRequestSize(outgoingTransactionRequestSize);
-        allsubserviceMetrics.addOutgoingTransactionResponseSize(outgoingTransactionResponseSize);
-        allsubserviceMetrics.addOutgoingTransactionErrors(outgoingTransactionErrors);
-        
-        // Add to per-subservice metrics
-        Metrics subsvcMetrics = perSubserviceAggrMetrics.get(subservice);
-        
-        if (subsvcMetrics == null) {
-            subsvcMetrics = new Metrics();
-            perSubserviceAggrMetrics.put(subservice, subsvcMetrics);
+        Latencies latencies = getOrCreateLatencies(destinationLatencies, destination);
+        latencies.getPersistenceTime().record(persistenceTime);
+        latencies.getBatchSize().record(endToEndLatencies.length);
+        
+        for (long endToEndLatency : endToEndLatencies) {
+            latencies.getEndToEndLatency().record(endToEndLatency);
+        } // for
+    } // addLatencies
+    
+    /**
+     * Gets the latencies for the given key within the given map, creating them if not existing.
+     * @param map
+     * @param key
+     * @return The latencies for the given key
+     */
+    private Latencies getOrCreateLatencies(ConcurrentMap<String, Latencies> map, String key) {
+        Latencies latencies = map.get(key);
+        
+        if (latencies == null) {
+            latencies = new Latencies();
+            Latencies current = map.putIfAbsent(key, latencies);
+            
+            if (current != null) {
+                latencies = current;
+            } // if
         } // if
         
-        subsvcMetrics.addIncomingTransactions(incomingTransaction);
-        subsvcMetrics.addIncomingTransactionRequestSize(incomingTransactionRequestSize);
-        subsvcMetrics.addIncomingTransactionResponseSize(incomingTransactionResponseSize);
-        subsvcMetrics.addIncomingTransactionErrors(incomingTransactionErrors);
-        subsvcMetrics.addServiceTime(serviceTime);
-        subsvcMetrics.addOutgoingTransactions(outgoingTransactions);
-        subsvcMetrics.addOutgoingTransactionRequestSize(outgoingTransactionRequestSize);
-        subsvcMetrics.addOutgoingTransactionResponseSize(outgoingTransactionResponseSize);
-        subsvcMetrics.addOutgoingTransactionErrors(outgoingTransactionErrors);
-        
-        // Add to per-subservice aggregated metrics
-        allAggrMetrics.addIncomingTransactions(incomingTransaction);
-        allAggrMetrics.addIncomingTransactionRequestSize(incomingTransactionRequestSize);
-        allAggrMetrics.addIncomingTransactionResponseSize(incomingTransactionResponseSize);
-        allAggrMetrics.addIncomingTransactionErrors(incomingTransactionErrors);
-        allAggrMetrics.addServiceTime(serviceTime);
-        allAggrMetrics.addOutgoingTransactions(outgoingTransactions);
-        allAggrMetrics.addOutgoingTransactionRequestSize(outgoingTransactionRequestSize);
-        allAggrMetrics.addOutgoingTransactionResponseSize(outgoingTransactionResponseSize);
-        allAggrMetrics.addOutgoingTransactionErrors(outgoingTransactionErrors);
-    } // add
+        return latencies;
+    } // getOrCreateLatencies
+    
+    /**
+     * Adds hits and misses to the given cache.
+     * @param cache
+     * @param hits
+     * @param misses
+     */
+    public void addCacheStats(String cache, long hits, long misses) {
+        if (hits == 0 && misses == 0) {
+            return;
+        } // if
+        
+        CacheStats stats = getOrCreateCacheStats(perCacheStats, cache);
+        stats.addHits(hits);
+        stats.addMisses(misses);
+    } // addCacheStats
+    
+    /**
+     * Gets the cache stats for the given key within the given map, creating them if not existing.
+     * @param map
+     * @param key
+     * @return The cache stats for the given key
+     */
+    private CacheStats getOrCreateCacheStats(ConcurrentMap<String, CacheStats> map, String key) {
+        CacheStats stats = map.get(key);
+        
+        if (stats == null) {
+            stats = new CacheStats();
+            CacheStats current = map.putIfAbsent(key, stats);
+            
+            if (current != null) {
+                stats = current;
+            } // if
+        } // if
+        
+        return stats;
+    } // getOrCreateCacheStats
+    
+    /**
+     * Adds records deleted by the given sink (capping or expiration), and the time spent on deleting them.
+     * @param sink
+     * @param deletedRecords
+     * @param deletionTime Milliseconds
+     */
+    public void addDeletionStats(String sink, long deletedRecords, long deletionTime) {
+        DeletionStats stats = getOrCreateDeletionStats(perSinkDeletionStats, sink);
+        stats.addDeletedRecords(deletedRecords);
+        stats.addDeletionTime(deletionTime);
+    } // addDeletionStats
+    
+    /**
+     * Gets the deletion stats for the given key within the given map, creating them if not existing.
+     * @param map
+     * @param key
+     * @return The deletion stats for the given key
+     */
+    private DeletionStats getOrCreateDeletionStats(ConcurrentMap<String, DeletionStats> map, String key) {
+        DeletionStats stats = map.get(key);
+        
+        if (stats == null) {
+            stats = new DeletionStats();
+            DeletionStats current = map.putIfAbsent(key, stats);
+            
+            if (current != null) {
+                stats = current;
+            } // if
+        } // if
+        
+        return stats;
+    } // getOrCreateDeletionStats
     
     /**
      * Gets metrics related to given service and service path.
@@ -138,7 +255,8 @@ public class CygnusMetrics {
      * @return Metrics related to given service and ervice path
      */
     public Metrics getServiceSubserviceMetrics(String service, String servicePath) {
-        return perServiceSubserviceMetrics.get(service).get(servicePath);
+        Map<String, Metrics> subserviceMetrics = perServiceSubserviceMetrics.get(service);
+        return subserviceMetrics == null ? null : subserviceMetrics.get(servicePath);
     } // getServiceSubserviceMetrics
     
     /**
@@ -166,66 +284,98 @@ public class CygnusMetrics {
     public Metrics getAllAggrMetrics() {
         return this.allAggrMetrics;
     } // getAllAggrMetrics
+    
+    /**
+     * Gets latencies related to given sink and destination.
+     * @param sink
+     * @param destination
+     * @return Latencies related to given sink and destination
+     */
+    public Latencies getSinkDestinationLatencies(String sink, String destination) {
+        Map<String, Latencies> destinationLatencies = perSinkDestinationLatencies.get(sink);
+        return destinationLatencies == null ? null : destinationLatencies.get(destination);
+    } // getSinkDestinationLatencies
+    
+    /**
+     * Gets the stats related to given cache.
+     * @param cache
+     * @return Stats related to given cache
+     */
+    public CacheStats getCacheStats(String cache) {
+        return perCacheStats.get(cache);
+    } // getCacheStats
+    
+    /**
+     * Gets the deletion stats related to given sink.
+     * @param sink
+     * @return Deletion stats related to given sink
+     */
+    public DeletionStats getDeletionStats(String sink) {
+        return perSinkDeletionStats.get(sink);
+    } // getDeletionStats
    
     /**
-     * Merges given source handler metrics into these ones.
+     * Merges given source handler metrics into these ones. The given metrics may be updated meanwhile.
      * @param other
      */
     public void merge(CygnusMetrics other) {
-        HashMap<String, HashMap<String, Metrics>> otherServiceMetrics = other.perServiceSubserviceMetrics;
-                
-        for (String service : otherServiceMetrics.keySet()) {
-            HashMap<String, Metrics> thisSubservices = this.perServiceSubserviceMetrics.get(service);
+        for (Map.Entry<String, ConcurrentMap<String, Metrics>> otherService
+                : other.perServiceSubserviceMetrics.entrySet()) {
+            ConcurrentMap<String, Metrics> thisSubservices = this.perServiceSubserviceMetrics.get(otherService.getKey());
 
             if (thisSubservices == null) {
-                thisSubservices = new HashMap<>();
-                this.perServiceSubserviceMetrics.put(service, thisSubservices);
+                thisSubservices = new ConcurrentHashMap<>();
+                ConcurrentMap<String, Metrics> current = this.perServiceSubserviceMetrics.putIfAbsent(
+                        otherService.getKey(), thisSubservices);
+                
+                if (current != null) {
+                    thisSubservices = current;
+                } // if
             } // if
 
-            HashMap<String, Metrics> otherSubservices = otherServiceMetrics.get(service);
-
-            for (String subservice : otherSubservices.keySet()) {
-                Metrics thisMetrics = thisSubservices.get(subservice);
-
-                if (thisMetrics == null) {
-                    thisMetrics = new Metrics();
-                    thisSubservices.put(subservice, thisMetrics);
-                } // if
-                
-                Metrics otherMetrics = otherSubservices.get(subservice);
-                thisMetrics.merge(otherMetrics);
+            for (Map.Entry<String, Metrics> otherSubservice : otherService.getValue().entrySet()) {
+                getOrCreate(thisSubservices, otherSubservice.getKey()).merge(otherSubservice.getValue());
             } // for
         } // for
         
-        HashMap<String, Metrics> otherServiceSumMetrics = other.perServiceAggrMetrics;
+        for (Map.Entry<String, Metrics> otherService : other.perServiceAggrMetrics.entrySet()) {
+            getOrCreate(this.perServiceAggrMetrics, otherService.getKey()).merge(otherService.getValue());
+        } // for
         
-        for (String service : otherServiceSumMetrics.keySet()) {
-            Metrics thisMetrics = this.perServiceAggrMetrics.get(service);
-            
-            if (thisMetrics == null) {
-                thisMetrics = new Metrics();
-                this.perServiceAggrMetrics.put(service, thisMetrics);
-            } // if
-            
-            Metrics otherMetrics = otherServiceSumMetrics.get(service);
-            thisMetrics.merge(otherMetrics);
+        for (Map.Entry<String, Metrics> otherSubservice : other.perSubserviceAggrMetrics.entrySet()) {
+            getOrCreate(this.perSubserviceAggrMetrics, otherSubservice.getKey()).merge(otherSubservice.getValue());
         } // for
         
-        HashMap<String, Metrics> otherSuberviceMetrics = other.perSubserviceAggrMetrics;
+        this.allAggrMetrics.merge(other.allAggrMetrics);
         
-        for (String subservice : otherSuberviceMetrics.keySet()) {
-            Metrics thisMetrics = this.perSubserviceAggrMetrics.get(subservice);
-            
-            if (thisMetrics == null) {
-                thisMetrics = new Metrics();
-                this.perSubserviceAggrMetrics.put(subservice, thisMetrics);
+        for (Map.Entry<String, ConcurrentMap<String, Latencies>> otherSink
+                : other.perSinkDestinationLatencies.entrySet()) {
+            ConcurrentMap<String, Latencies> thisDestinations = this.perSinkDestinationLatencies.get(
+                    otherSink.getKey());
+
+            if (thisDestinations == null) {
+                thisDestinations = new ConcurrentHashMap<>();
+                ConcurrentMap<String, Latencies> current = this.perSinkDestinationLatencies.putIfAbsent(
+                        otherSink.getKey(), thisDestinations);
+                
+                if (current != null) {
+                    thisDestinations = current;
+                } // if
             } // if
-            
-            Metrics otherMetrics = otherSuberviceMetrics.get(subservice);
-            thisMetrics.merge(otherMetrics);
+
+            for (Map.Entry<String, Latencies> otherDestination : otherSink.getValue().entrySet()) {
+                getOrCreateLatencies(thisDestinations, otherDestination.getKey())
+                        .merge(otherDestination.getValue());
+            } // for
         } // for
         
-        this.allAggrMetrics.merge(other.allAggrMetrics);
+        for (Map.Entry<String, CacheStats> otherCache : other.perCacheStats.entrySet()) {
+            getOrCreateCacheStats(this.perCacheStats, otherCache.getKey()).merge(otherCache.getValue());
+        } // for
+        
+        for (Map.Entry<String, DeletionStats> otherSink : other.perSinkDeletionStats.entrySet()) {
+            getOrCreateDeletionStats(this.perSinkDeletionStats, otherSink.getKey()).merge(otherSink.getValue());
+        } // for
     } // merge
     
     /**
@@ -233,122 +383,197 @@ public class CygnusMetrics {
      * @return The Json string for this metrics
      */
     public String toJsonString() {
-        String json = "{\"services\":{";
+        StringBuilder json = new StringBuilder("{\"services\":{");
         boolean firstService = true;
         
-        for (String service : perServiceSubserviceMetrics.keySet()) {
+        for (Map.Entry<String, ConcurrentMap<String, Metrics>> service : perServiceSubserviceMetrics.entrySet()) {
             if (firstService) {
-                json += "\"" + service + "\":{\"subservs\":{";
                 firstService = false;
             } else {
-                json += ",\"" + service + "\":{\"subservs\":{";
+                json.append(",");
             } // if else
             
-            HashMap<String, Metrics> subserviceMetrics = perServiceSubserviceMetrics.get(service);
-            boolean firstSubservice = true;
+            json.append("\"").append(service.getKey()).append("\":{\"subservs\":{");
+            appendSubservices(json, service.getValue());
+            Metrics serviceAggrMetrics = perServiceAggrMetrics.get(service.getKey());
+            json.append("},\"sum\":").append((serviceAggrMetrics == null ? new Metrics() : serviceAggrMetrics)
+                    .toJsonString()).append("}");
+        } // for
+        
+        json.append("},\"sum\": {\"subservs\":{");
+        appendSubservices(json, perSubserviceAggrMetrics);
+
+        if (perSubserviceAggrMetrics.isEmpty()) {
+            json.append("},\"sum\":{}}");
+        } else {
+            json.append("},\"sum\":").append(allAggrMetrics.toJsonString()).append("}");
+        } // if else
+        
+        // Latencies are only gathered by the sinks, thus they are only given if any sink is gathering them
+        if (!perSinkDestinationLatencies.isEmpty()) {
+            json.append(",\"latencies\":{");
+            appendLatencies(json);
+            json.append("}");
+        } // if
+        
+        // Same for the caches stats
+        if (!perCacheStats.isEmpty()) {
+            json.append(",\"caches\":{");
+            boolean firstCache = true;
             
-            for (String subservice : subserviceMetrics.keySet()) {
-                Metrics metrics = subserviceMetrics.get(subservice);
+            for (Map.Entry<String, CacheStats> cache : perCacheStats.entrySet()) {
+                if (firstCache) {
+                    firstCache = false;
+                } else {
+                    json.append(",");
+                } // if else
                 
-                if (firstSubservice) {
-                    json += "\"" + ((subservice.charAt(0) == '/') ? subservice.substring(1) : subservice) + "\":" + metrics.toJsonString();
-                    firstSubservice = false;
+                json.append("\"").append(cache.getKey()).append("\":").append(cache.getValue().toJsonString());
+            } // for
+            
+            json.append("}");
+        } // if
+        
+        // Same for the deletion stats, only gathered by the sinks capping or expirating records
+        if (!perSinkDeletionStats.isEmpty()) {
+            json.append(",\"deletions\":{");
+            boolean firstSink = true;
+            
+            for (Map.Entry<String, DeletionStats> sink : perSinkDeletionStats.entrySet()) {
+                if (firstSink) {
+                    firstSink = false;
                 } else {
-                    json += ",\"" + ((subservice.charAt(0) == '/') ? subservice.substring(1) : subservice) + "\":" + metrics.toJsonString();
+                    json.append(",");
                 } // if else
+                
+                json.append("\"").append(sink.getKey()).append("\":").append(sink.getValue().toJsonString());
             } // for
             
-            json += "},\"sum\":" + perServiceAggrMetrics.get(service).toJsonString() + "}";
-        } // for
+            json.append("}");
+        } // if
         
-        json += "},\"sum\": {\"subservs\":{";
+        return json.append("}").toString();
+    } // toJsonString
+    
+    /**
+     * Appends to the given Json the given per subservice metrics.
+     * @param json
+     * @param subserviceMetrics
+     */
+    private void appendSubservices(StringBuilder json, Map<String, Metrics> subserviceMetrics) {
         boolean firstSubservice = true;
         
-        for (String subservice : perSubserviceAggrMetrics.keySet()) {
-            Metrics metrics = perSubserviceAggrMetrics.get(subservice);
+        for (Map.Entry<String, Metrics> subservice : subserviceMetrics.entrySet()) {
+            String name = subservice.getKey();
             
             if (firstSubservice) {
-                json += "\"" + ((subservice.charAt(0) == '/') ? subservice.substring(1) : subservice) + "\":" + metrics.toJsonString();
                 firstSubservice = false;
             } else {
-                json += ",\"" + ((subservice.charAt(0) == '/') ? subservice.substring(1) : subservice) + "\":" + metrics.toJsonString();
+                json.append(",");
             } // if else
+            
+            json.append("\"").append((!name.isEmpty() && name.charAt(0) == '/') ? name.substring(1) : name)
+                    .append("\":").append(subservice.getValue().toJsonString());
         } // for
-
-        if (perSubserviceAggrMetrics.isEmpty()) {
-            json += "},\"sum\":{}}}";
-        } else {
-            json += "},\"sum\":" + allAggrMetrics.toJsonString() + "}}";
-        } // if else
+    } // appendSubservices
+    
+    /**
+     * Appends to the given Json the per sink and destination latencies.
+     * @param json
+     */
+    private void appendLatencies(StringBuilder json) {
+        boolean firstSink = true;
         
-        return json;
-    } // toJsonString
+        for (Map.Entry<String, ConcurrentMap<String, Latencies>> sink : perSinkDestinationLatencies.entrySet()) {
+            if (firstSink) {
+                firstSink = false;
+            } else {
+                json.append(",");
+            } // if else
+            
+            json.append("\"").append(sink.getKey()).append("\":{");
+            boolean firstDestination = true;
+            
+            for (Map.Entry<String, Latencies> destination : sink.getValue().entrySet()) {
+                if (firstDestination) {
+                    firstDestination = false;
+                } else {
+                    json.append(",");
+                } // if else
+                
+                json.append("\"").append(destination.getKey()).append("\":")
+                        .append(destination.getValue().toJsonString());
+            } // for
+            
+            json.append("}");
+        } // for
+    } // appendLatencies
 
     /**
      * Metrics class.
      */
     public class Metrics {
         
-        private long incomingTransactions;
-        private long incomingTransactionRequestSize;
-        private long incomingTransactionResponseSize;
-        private long incomingTransactionErrors;
-        private double serviceTime;
-        private long outgoingTransactions;
-        private long outgoingTransactionRequestSize;
-        private long outgoingTransactionResponseSize;
-        private long outgoingTransactionErrors;
+        private final LongAdder incomingTransactions;
+        private final LongAdder incomingTransactionRequestSize;
+        private final LongAdder incomingTransactionResponseSize;
+        private final LongAdder incomingTransactionErrors;
+        private final DoubleAdder serviceTime;
+        private final LongAdder outgoingTransactions;
+        private final LongAdder outgoingTransactionRequestSize;
+        private final LongAdder outgoingTransactionResponseSize;
+        private final LongAdder outgoingTransactionErrors;
         
 
         /**
          * Constructor.
          */
         public Metrics() {
-            incomingTransactions = 0;
-            incomingTransactionRequestSize = 0;
-            incomingTransactionResponseSize = 0;
-            incomingTransactionErrors = 0;
-            serviceTime = 0;
-            outgoingTransactions = 0;
-            outgoingTransactionRequestSize = 0;
-            outgoingTransactionResponseSize = 0;
-            outgoingTransactionErrors = 0;
+            incomingTransactions = new LongAdder();
+            incomingTransactionRequestSize = new LongAdder();
+            incomingTransactionResponseSize = new LongAdder();
+            incomingTransactionErrors = new LongAdder();
+            serviceTime = new DoubleAdder();
+            outgoingTransactions = new LongAdder();
+            outgoingTransactionRequestSize = new LongAdder();
+            outgoingTransactionResponseSize = new LongAdder();
+            outgoingTransactionErrors = new LongAdder();
         } // Metrics
 
         public long getIncomingTransactions() {
-            return incomingTransactions;
+            return incomingTransactions.sum();
         } // getIncomingTransactions
 
         public long getIncomingTransactionRequestSize() {
-            return incomingTransactionRequestSize;
+            return incomingTransactionRequestSize.sum();
         } // getIncomingTransactionRequestSize
 
         public long getIncomingTransactionResponseSize() {
-            return incomingTransactionResponseSize;
+            return incomingTransactionResponseSize.sum();
         } // getIncomingTransactionResponseSize
 
         public long getIncomingTransactionErrors() {
-            return incomingTransactionErrors;
+            return incomingTransactionErrors.sum();
         } // getIncomingTransactionErrors
         
         public double getServiceTime() {
-            return serviceTime;
+            return serviceTime.sum();
         } // getServiceTime
         
         public long getOutgoingTransactions() {
-            return outgoingTransactions;
+            return outgoingTransactions.sum();
         } // getOutgoingTransactions
 
         public long getOutgoingTransactionRequestSize() {
-            return outgoingTransactionRequestSize;
+            return outgoingTransactionRequestSize.sum();
         } // getOutgoingTransactionRequestSize
 
         public long getOutgoingTransactionResponseSize() {
-            return outgoingTransactionResponseSize;
+            return outgoingTransactionResponseSize.sum();
         } // getOutgoingTransactionResponseSize
 
         public long getOutgoingTransactionErrors() {
-            return outgoingTransactionErrors;
+            return outgoingTransactionErrors.sum();
         } // getOutgoingTransactionErrors
 
         /**
@@ -356,7 +581,7 @@ public class CygnusMetrics {
          * @param incomingTransactions
          */
         public void addIncomingTransactions(long incomingTransactions) {
-            this.incomingTransactions += incomingTransactions;
+            this.incomingTransactions.add(incomingTransactions);
         } // addIncomingTransactions
 
         /**
@@ -364,7 +589,7 @@ public class CygnusMetrics {
          * @param incomingTransactionRequestSize
          */
         public void addIncomingTransactionRequestSize(long incomingTransactionRequestSize) {
-            this.incomingTransactionRequestSize += incomingTransactionRequestSize;
+            this.incomingTransactionRequestSize.add(incomingTransactionRequestSize);
         } // addIncomingTransactionRequestSize
 
         /**
@@ -372,7 +597,7 @@ public class CygnusMetrics {
          * @param incomingTransactionResponseSize
          */
         public void addIncomingTransactionResponseSize(long incomingTransactionResponseSize) {
-            this.incomingTransactionResponseSize += incomingTransactionResponseSize;
+            this.incomingTransactionResponseSize.add(incomingTransactionResponseSize);
         } // addIncomingTransactionResponseSize
 
         /**
@@ -380,7 +605,7 @@ public class CygnusMetrics {
          * @param incomingTransactionErrors
          */
         public void addIncomingTransactionErrors(long incomingTransactionErrors) {
-            this.incomingTransactionErrors += incomingTransactionErrors;
+            this.incomingTransactionErrors.add(incomingTransactionErrors);
         } // addIncomingTransactionErrors
         
         /**
@@ -388,7 +613,7 @@ public class CygnusMetrics {
          * @param serviceTime
          */
         public void addServiceTime(double serviceTime) {
-            this.serviceTime += serviceTime;
+            this.serviceTime.add(serviceTime);
         } // addIncomingTransactionErrors
         
         /**
@@ -396,7 +621,7 @@ public class CygnusMetrics {
          * @param outgoingTransactions
          */
         public void addOutgoingTransactions(long outgoingTransactions) {
-            this.outgoingTransactions += outgoingTransactions;
+            this.outgoingTransactions.add(outgoingTransactions);
         } // addOutgoingTransactions
 
         /**
@@ -404,7 +629,7 @@ public class CygnusMetrics {
          * @param outgoingTransactionRequestSize
          */
         public void addOutgoingTransactionRequestSize(long outgoingTransactionRequestSize) {
-            this.outgoingTransactionRequestSize += outgoingTransactionRequestSize;
+            this.outgoingTransactionRequestSize.add(outgoingTransactionRequestSize);
         } // addOutgoingTransactionRequestSize
 
         /**
@@ -412,7 +637,7 @@ public class CygnusMetrics {
          * @param outgoingTransactionResponseSize
          */
         public void addOutgoingTransactionResponseSize(long outgoingTransactionResponseSize) {
-            this.outgoingTransactionResponseSize += outgoingTransactionResponseSize;
+            this.outgoingTransactionResponseSize.add(outgoingTransactionResponseSize);
         } // addOutgoingTransactionResponseSize
 
         /**
@@ -420,7 +645,7 @@ public class CygnusMetrics {
          * @param outgoingTransactionErrors
          */
         public void addOutgoingTransactionErrors(long outgoingTransactionErrors) {
-            this.outgoingTransactionErrors += outgoingTransactionErrors;
+            this.outgoingTransactionErrors.add(outgoingTransactionErrors);
         } // addOutgoingTransactionErrors
 
         /**
@@ -428,15 +653,15 @@ public class CygnusMetrics {
          * @param metrics
          */
         public void merge(Metrics metrics) {
-            incomingTransactions += metrics.incomingTransactions;
-            incomingTransactionRequestSize += metrics.incomingTransactionRequestSize;
-            incomingTransactionResponseSize += metrics.incomingTransactionResponseSize;
-            incomingTransactionErrors += metrics.incomingTransactionErrors;
-            serviceTime += metrics.serviceTime;
-            outgoingTransactions += metrics.outgoingTransactions;
-            outgoingTransactionRequestSize += metrics.outgoingTransactionRequestSize;
-            outgoingTransactionResponseSize += metrics.outgoingTransactionResponseSize;
-            outgoingTransactionErrors += metrics.outgoingTransactionErrors;
+            incomingTransactions.add(metrics.incomingTransactions.sum());
+            incomingTransactionRequestSize.add(metrics.incomingTransactionRequestSize.sum());
+            incomingTransactionResponseSize.add(metrics.incomingTransactionResponseSize.sum());
+            incomingTransactionErrors.add(metrics.incomingTransactionErrors.sum());
+            serviceTime.add(metrics.serviceTime.sum());
+            outgoingTransactions.add(metrics.outgoingTransactions.sum());
+            outgoingTransactionRequestSize.add(metrics.outgoingTransactionRequestSize.sum());
+            outgoingTransactionResponseSize.add(metrics.outgoingTransactionResponseSize.sum());
+            outgoingTransactionErrors.add(metrics.outgoingTransactionErrors.sum());
         } // merge
         
         /**
@@ -444,19 +669,204 @@ public class CygnusMetrics {
          * @return The Json string for this metrics
          */
         public String toJsonString() {
-            double avg = (outgoingTransactions == 0 ? 0 : serviceTime / outgoingTransactions);
+            long outgoingTransactionsSum = outgoingTransactions.sum();
+            double avg = (outgoingTransactionsSum == 0 ? 0 : serviceTime.sum() / outgoingTransactionsSum);
             
-            return "{\"incomingTransactions\":" + incomingTransactions + ","
-                    + "\"incomingTransactionRequestSize\":" + incomingTransactionRequestSize + ","
-                    + "\"incomingTransactionResponseSize\":" + incomingTransactionResponseSize + ","
-                    + "\"incomingTransactionErrors\":" + incomingTransactionErrors + ","
+            return "{\"incomingTransactions\":" + incomingTransactions.sum() + ","
+                    + "\"incomingTransactionRequestSize\":" + incomingTransactionRequestSize.sum() + ","
+                    + "\"incomingTransactionResponseSize\":" + incomingTransactionResponseSize.sum() + ","
+                    + "\"incomingTransactionErrors\":" + incomingTransactionErrors.sum() + ","
                     + "\"serviceTime\":" + avg + ","
-                    + "\"outgoingTransactions\":" + outgoingTransactions + ","
-                    + "\"outgoingTransactionRequestSize\":" + outgoingTransactionRequestSize + ","
-                    + "\"outgoingTransactionResponseSize\":" + outgoingTransactionResponseSize + ","
-                    + "\"outgoingTransactionErrors\":" + outgoingTransactionErrors + "}";
+                    + "\"outgoingTransactions\":" + outgoingTransactionsSum + ","
+                    + "\"outgoingTransactionRequestSize\":" + outgoingTransactionRequestSize.sum() + ","
+                    + "\"outgoingTransactionResponseSize\":" + outgoingTransactionResponseSize.sum() + ","
+                    + "\"outgoingTransactionErrors\":" + outgoingTransactionErrors.sum() + "}";
         } // toJsonString
         
     } // Metrics
     
+    /**
+     * Latencies class. Histograms of the end-to-end latency (since the event reception until its persistence), the
+     * persistence operation time and the size of the persisted batches.
+     */
+    public class Latencies {
+        
+        private final CygnusHistogram endToEndLatency;
+        private final CygnusHistogram persistenceTime;
+        private final CygnusHistogram batchSize;
+        
+        /**
+         * Constructor.
+         */
+        public Latencies() {
+            endToEndLatency = new CygnusHistogram();
+            persistenceTime = new CygnusHistogram();
+            batchSize = new CygnusHistogram();
+        } // Latencies
+        
+        public CygnusHistogram getEndToEndLatency() {
+            return endToEndLatency;
+        } // getEndToEndLatency
+        
+        public CygnusHistogram getPersistenceTime() {
+            return persistenceTime;
+        } // getPersistenceTime
+        
+        public CygnusHistogram getBatchSize() {
+            return batchSize;
+        } // getBatchSize
+        
+        /**
+         * Merges given latencies with these ones.
+         * @param latencies
+         */
+        public void merge(Latencies latencies) {
+            endToEndLatency.merge(latencies.endToEndLatency);
+            persistenceTime.merge(latencies.persistenceTime);
+            batchSize.merge(latencies.batchSize);
+        } // merge
+        
+        /**
+         * Gets the Json string for these latencies.
+         * @return The Json string for these latencies
+         */
+        public String toJsonString() {
+            return "{\"endToEndLatency\":" + endToEndLatency.toJsonString() + ","
+                    + "\"persistenceTime\":" + persistenceTime.toJsonString() + ","
+                    + "\"batchSize\":" + batchSize.toJsonString() + "}";
+        } // toJsonString
+        
+    } // Latencies
+    
+    /**
+     * CacheStats class.
+     */
+    public class CacheStats {
+        
+        private final LongAdder hits;
+        private final LongAdder misses;
+        
+        /**
+         * Constructor.
+         */
+        public CacheStats() {
+            hits = new LongAdder();
+            misses = new LongAdder();
+        } // CacheStats
+        
+        public long getHits() {
+            return hits.sum();
+        } // getHits
+        
+        public long getMisses() {
+            return misses.sum();
+        } // getMisses
+        
+        /**
+         * Gets the ratio of hits among all the lookups, or 0 if there were no lookups.
+         * @return The ratio of hits among all the lookups
+         */
+        public double getHitRate() {
+            long h = hits.sum();
+            long lookups = h + misses.sum();
+            return lookups == 0 ? 0 : (double) h / lookups;
+        } // getHitRate
+        
+        /**
+         * Adds hits.
+         * @param hits
+         */
+        public void addHits(long hits) {
+            this.hits.add(hits);
+        } // addHits
+        
+        /**
+         * Adds misses.
+         * @param misses
+         */
+        public void addMisses(long misses) {
+            this.misses.add(misses);
+        } // addMisses
+        
+        /**
+         * Merges given cache stats with these ones.
+         * @param stats
+         */
+        public void merge(CacheStats stats) {
+            hits.add(stats.hits.sum());
+            misses.add(stats.misses.sum());
+        } // merge
+        
+        /**
+         * Gets the Json string for these cache stats.
+         * @return The Json string for these cache stats
+         */
+        public String toJsonString() {
+            long h = hits.sum();
+            long m = misses.sum();
+            return "{\"hits\":" + h + ",\"misses\":" + m + ",\"hitRate\":"
+                    + (h + m == 0 ? 0 : (double) h / (h + m)) + "}";
+        } // toJsonString
+        
+    } // CacheStats
+    
+    /**
+     * DeletionStats class.
+     */
+    public class DeletionStats {
+        
+        private final LongAdder deletedRecords;
+        private final LongAdder deletionTime;
+        
+        /**
+         * Constructor.
+         */
+        public DeletionStats() {
+            deletedRecords = new LongAdder();
+            deletionTime = new LongAdder();
+        } // DeletionStats
+        
+        public long getDeletedRecords() {
+            return deletedRecords.sum();
+        } // getDeletedRecords
+        
+        public long getDeletionTime() {
+            return deletionTime.sum();
+        } // getDeletionTime
+        
+        /**
+         * Adds deleted records.
+         * @param deletedRecords
+         */
+        public void addDeletedRecords(long deletedRecords) {
+            this.deletedRecords.add(deletedRecords);
+        } // addDeletedRecords
+        
+        /**
+         * Adds deletion time.
+         * @param deletionTime
+         */
+        public void addDeletionTime(long deletionTime) {
+            this.deletionTime.add(deletionTime);
+        } // addDeletionTime
+        
+        /**
+         * Merges given deletion stats with these ones.
+         * @param stats
+         */
+        public void merge(DeletionStats stats) {
+            deletedRecords.add(stats.deletedRecords.sum());
+            deletionTime.add(stats.deletionTime.sum());
+        } // merge
+        
+        /**
+         * Gets the Json string for these deletion stats.
+         * @return The Json string for these deletion stats
+         */
+        public String toJsonString() {
+            return "{\"deletedRecords\":" + deletedRecords.sum() + ",\"deletionTime\":" + deletionTime.sum() + "}";
+        } // toJsonString
+        
+    } // DeletionStats
+    
 } // CygnusMetrics
@@ -31,7 +31,7 @@ public abstract class CygnusSink extends AbstractSink {
     protected final long setupTime = new Date().getTime();
     protected long numProcessedEvents = 0;
     protected long numPersistedEvents = 0;
-    protected CygnusMetrics serviceMetrics = new CygnusMetrics();
+    protected volatile CygnusMetrics serviceMetrics = new CygnusMetrics();
     
     /**
      * Gets the setup time.
@@ -36,9 +36,12 @@ import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.List;
 import java.util.Properties;
 import java.util.TimeZone;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.xml.bind.DatatypeConverter;
@@ -52,6 +55,7 @@ import org.apache.http.impl.DefaultBHttpServerConnection;
 import org.apache.http.impl.conn.PoolingClientConnectionManager;
 import org.apache.logging.log4j.core.pattern.SequenceNumberPatternConverter;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 import org.json.simple.JSONArray;
@@ -81,6 +85,19 @@ public final class CommonUtils {
     private static final DateTimeFormatter FORMATTER6 = DateTimeFormat.forPattern(
             "yyyy-MM-dd'T'HH:mm:ss.SSSZ").withOffsetParsed();
     private static final Pattern FORMATTER6_PATTERN = Pattern.compile("^(\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2})\\.(\\d+)([+-][\\d:]+)$");
+    private static final DateTimeFormatter HUMAN_READABLE_DATE_FORMATTER = DateTimeFormat.forPattern(
+            "yyyy-MM-dd").withZoneUTC();
+    private static final DateTimeFormatter HUMAN_READABLE_TIME_FORMATTER = DateTimeFormat.forPattern(
+            "HH:mm:ss").withZoneUTC();
+    private static final int HUMAN_READABLE_CACHE_SIZE = 4; // power of 2
+    private static final ThreadLocal<HumanReadableSecond[]> HUMAN_READABLE_CACHE =
+            new ThreadLocal<HumanReadableSecond[]>() {
+                @Override
+                protected HumanReadableSecond[] initialValue() {
+                    return new HumanReadableSecond[HUMAN_READABLE_CACHE_SIZE];
+                } // initialValue
+            };
+    private static final long UNPARSEABLE = Long.MIN_VALUE;
 
     private static final Pattern PATTERN = Pattern.compile("^[a-zA-Z0-9_]*$");
     
@@ -157,6 +174,39 @@ public final class CommonUtils {
      * @return
      */
     public static String getHumanReadable(long ts, boolean addUTC) {
+        if (ts < 0) {
+            return getHumanReadableWithSimpleDateFormat(ts, addUTC);
+        } // if
+
+        // Timestamps within the same second share the date and time parts, thus they are formatted once per thread
+        long second = ts / 1000;
+        HumanReadableSecond[] cache = HUMAN_READABLE_CACHE.get();
+        int slot = (int) (second & (HUMAN_READABLE_CACHE_SIZE - 1));
+        HumanReadableSecond cached = cache[slot];
+
+        if (cached == null || cached.second != second) {
+            cached = new HumanReadableSecond(second);
+            cache[slot] = cached;
+        } // if
+
+        StringBuilder humanRedable = new StringBuilder(28);
+        humanRedable.append(addUTC ? cached.utcPrefix : cached.prefix).append(ts % 1000);
+
+        if (addUTC) {
+            humanRedable.append('Z');
+        } // if
+
+        return humanRedable.toString();
+    } // getHumanRedable
+
+    /**
+     * Gets the human redable version of timestamp expressed in miliseconds, by means of SimpleDateFormat. Used for
+     * the timestamps before the epoch, where SimpleDateFormat (Julian calendar) and Joda (ISO calendar) may differ.
+     * @param ts
+     * @param addUTC
+     * @return
+     */
+    private static String getHumanReadableWithSimpleDateFormat(long ts, boolean addUTC) {
         SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
         sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
         String humanRedable = sdf.format(new Date(ts));
@@ -165,7 +215,26 @@ public final class CommonUtils {
         sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
         humanRedable += sdf.format(new Date(ts)) + (addUTC ? "Z" : "");
         return humanRedable;
-    } // getHumanRedable
+    } // getHumanReadableWithSimpleDateFormat
+
+    /**
+     * Date and time parts of the human readable version of a second, up to the milliseconds separator.
+     */
+    private static final class HumanReadableSecond {
+
+        private final long second;
+        private final String prefix;
+        private final String utcPrefix;
+
+        HumanReadableSecond(long second) {
+            this.second = second;
+            String date = HUMAN_READABLE_DATE_FORMATTER.print(second * 1000);
+            String time = HUMAN_READABLE_TIME_FORMATTER.print(second * 1000);
+            this.prefix = date + " " + time + ".";
+            this.utcPrefix = date + "T" + time + ".";
+        } // HumanReadableSecond
+
+    } // HumanReadableSecond
     
     /**
      * Gets the milliseconds version of the given timestamp.
@@ -245,6 +314,12 @@ public final class CommonUtils {
      */
     public static Long getTimeInstant(String metadata) {
         Long res = null;
+
+        // Most of the attributes have no TimeInstant metadata, not worth parsing
+        if (metadata != null && !metadata.contains("TimeInstant")) {
+            return res;
+        } // if
+
         JSONParser parser = new JSONParser();
         JSONArray mds;
         
@@ -278,8 +353,14 @@ public final class CommonUtils {
     public static Long getTimeInstantFromString(String stringDate) {
         String mdValue = stringDate;
         Long res = null;
+        long millis = parseTimestamp(mdValue);
+
+        if (millis != UNPARSEABLE) {
+            return millis;
+        } // if
+
         DateTime dateTime;
-        dateTime = parseStringWithFormats(mdValue);
+        dateTime = parseStringWithFormatPattern1(mdValue);
         GregorianCalendar cal = dateTime.toGregorianCalendar();
         res = cal.getTimeInMillis();
 
@@ -287,11 +368,220 @@ public final class CommonUtils {
 
     }
 
+    /**
+     * Parses a timestamp in any of the supported formats: "yyyy-MM-dd'T'HH:mm:ss[.SSS]'Z'" (UTC),
+     * "yyyy-MM-dd HH:mm:ss[.SSS]" (UTC) and "yyyy-MM-dd'T'HH:mm:ss[.SSS]+hh[[:]mm]" (offset). The common shapes are
+     * parsed in a single pass; the rest of them are tried against the formatters, one after the other.
+     * @param tsString
+     * @return The parsed timestamp, null if not parseable
+     */
     public static DateTime parseStringWithFormats (String tsString) {
+        long millis = parseTimestamp(tsString);
+
+        if (millis == UNPARSEABLE) {
+            // Not one of the common shapes, let the formatters decide
+            return parseStringWithFormatPattern1(tsString);
+        } // if
+
+        int offsetStart = tsString.length() - 1;
+
+        while (offsetStart > 18 && tsString.charAt(offsetStart) != '+' && tsString.charAt(offsetStart) != '-') {
+            offsetStart--;
+        } // while
+
+        if (offsetStart == 18) {
+            return new DateTime(millis, DateTimeZone.UTC);
+        } else {
+            return new DateTime(millis, DateTimeZone.forOffsetMillis((int) parseOffset(tsString, offsetStart)));
+        } // if else
+    }
+
+    /**
+     * Parses a timestamp in a single pass, without exceptions. The accepted shapes are those accepted by the
+     * formatters, in the same way; any other shape is left to the formatters.
+     * @param ts
+     * @return The milliseconds since the epoch, UNPARSEABLE if not one of the accepted shapes
+     */
+    private static long parseTimestamp(String ts) {
+        int len = (ts == null ? 0 : ts.length());
+
+        if (len < 19 || ts.charAt(4) != '-' || ts.charAt(7) != '-' || ts.charAt(13) != ':'
+                || ts.charAt(16) != ':') {
+            return UNPARSEABLE;
+        } // if
+
+        char separator = ts.charAt(10);
+
+        if (separator != 'T' && separator != ' ') {
+            return UNPARSEABLE;
+        } // if
+
+        int year = parseDigits(ts, 0, 4);
+        int month = parseDigits(ts, 5, 2);
+        int day = parseDigits(ts, 8, 2);
+        int hour = parseDigits(ts, 11, 2);
+        int minute = parseDigits(ts, 14, 2);
+        int second = parseDigits(ts, 17, 2);
+
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > getDaysInMonth(year, month) || hour < 0
+                || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return UNPARSEABLE;
+        } // if
+
+        int pos = 19;
+        int millis = 0;
+        int fractionDigits = 0;
+
+        if (pos < len && ts.charAt(pos) == '.') {
+            pos++;
+
+            while (pos < len && ts.charAt(pos) >= '0' && ts.charAt(pos) <= '9') {
+                if (fractionDigits < 3) {
+                    millis = millis * 10 + (ts.charAt(pos) - '0');
+                } // if
+
+                fractionDigits++;
+                pos++;
+            } // while
+
+            if (fractionDigits == 0) {
+                return UNPARSEABLE;
+            } // if
+
+            for (int i = fractionDigits; i < 3; i++) {
+                millis *= 10;
+            } // for
+        } // if
+
+        long offset;
+
+        // The formatters accept up to 3 fraction digits, or 6 (microseconds); other lengths are left to them since
+        // they parse them in their own way
+        if (pos == len) {
+            // yyyy-MM-dd HH:mm:ss[.SSS]
+            if (separator != ' ' || (fractionDigits > 3 && fractionDigits != 6)) {
+                return UNPARSEABLE;
+            } // if
+
+            offset = 0;
+        } else if (separator != 'T') {
+            return UNPARSEABLE;
+        } else if (pos == len - 1 && ts.charAt(pos) == 'Z') {
+            // yyyy-MM-dd'T'HH:mm:ss[.SSS]'Z'
+            if (fractionDigits > 3 && fractionDigits != 6) {
+                return UNPARSEABLE;
+            } // if
+
+            offset = 0;
+        } else {
+            // yyyy-MM-dd'T'HH:mm:ss[.SSS]Z, the fraction (if any) being at least 3 digits long, and at least 5 digits
+            // long if the offset is "+hh" (otherwise, the formatters take the last digit and the offset as microseconds)
+            if (fractionDigits > 0 && (fractionDigits < 3 || (len - pos == 3 && fractionDigits < 5))) {
+                return UNPARSEABLE;
+            } // if
+
+            offset = parseOffset(ts, pos);
+
+            if (offset == UNPARSEABLE) {
+                return UNPARSEABLE;
+            } // if
+        } // if else
+
+        return (getDaysSinceEpoch(year, month, day) * 86400L + hour * 3600L + minute * 60L + second) * 1000L
+                + millis - offset;
+    } // parseTimestamp
+
+    /**
+     * Parses an offset like "+hh", "+hh:mm" or "+hhmm", ending the given string.
+     * @param ts
+     * @param pos
+     * @return The offset in milliseconds, UNPARSEABLE if not one of the accepted shapes
+     */
+    private static long parseOffset(String ts, int pos) {
+        int len = ts.length();
+        char sign = ts.charAt(pos);
+
+        if ((sign != '+' && sign != '-') || len - pos < 3) {
+            return UNPARSEABLE;
+        } // if
+
+        int hours = parseDigits(ts, pos + 1, 2);
+        int minutes = 0;
+
+        if (len - pos == 6) {
+            minutes = parseDigits(ts, pos + 3, 2);
+        } else if (len - pos == 6 + 1 && ts.charAt(pos + 3) == ':') {
+            minutes = parseDigits(ts, pos + 4, 2);
+        } else if (len - pos != 3) {
+            return UNPARSEABLE;
+        } // if else
+
+        if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59) {
+            return UNPARSEABLE;
+        } // if
+
+        long offset = (hours * 3600L + minutes * 60L) * 1000L;
+        return sign == '+' ? offset : -offset;
+    } // parseOffset
+
+    /**
+     * Parses a fixed number of decimal digits.
+     * @param s
+     * @param pos
+     * @param count
+     * @return The parsed number, -1 if any of the characters is not a digit
+     */
+    private static int parseDigits(String s, int pos, int count) {
+        int value = 0;
+
+        for (int i = pos; i < pos + count; i++) {
+            char c = s.charAt(i);
+
+            if (c < '0' || c > '9') {
+                return -1;
+            } // if
+
+            value = value * 10 + (c - '0');
+        } // for
+
+        return value;
+    } // parseDigits
+
+    private static int getDaysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return ((year % 4 == 0 && year % 100 != 0) || year % 400 == 0) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        } // switch
+    } // getDaysInMonth
+
+    /**
+     * Gets the number of days since 1970-01-01 of a (proleptic Gregorian) date.
+     * @param year
+     * @param month
+     * @param day
+     * @return
+     */
+    private static long getDaysSinceEpoch(int year, int month, int day) {
+        int y = (month <= 2 ? year - 1 : year);
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    } // getDaysSinceEpoch
+
+    public static DateTime parseStringWithFormatPattern1 (String tsString) {
         try {
             return FORMATTER1.parseDateTime(tsString);
         } catch (Exception e) {
-            LOGGER.debug("parseStringWithFormats exception " + e.getMessage());
+            LOGGER.debug("parseStringWithFormatPattern1 exception " + e.getMessage());
             return parseStringWithFormatPattern2(tsString);
         }
     }
@@ -397,6 +687,36 @@ public final class CommonUtils {
             return UUID.randomUUID().toString();
         } // else
     } // generateUniqueId
+    
+    /**
+     * Waits for all the given futures to end, even if some of them fail. Then, the first failure (if any) is thrown
+     * as it was thrown by the task, i.e. an Error is rethrown as such and is not wrapped. If the calling thread is
+     * interrupted while waiting, its interrupted status is restored and the InterruptedException is thrown.
+     * @param futures
+     * @throws Exception
+     */
+    public static void waitForAll(List<? extends Future<?>> futures) throws Exception {
+        Throwable failure = null;
+        
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = (failure == null ? e : failure);
+            } catch (ExecutionException e) {
+                failure = (failure == null ? e.getCause() : failure);
+            } // try catch
+        } // for
+        
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure instanceof Exception) {
+            throw (Exception) failure;
+        } else if (failure != null) {
+            throw new ExecutionException(failure);
+        } // if else
+    } // waitForAll
         
     /**
      * Only works in DEBUG level.
@@ -65,4 +65,9 @@ public interface KeyStoneUtils {
     String updateSessionToken(String user, String password, String fiwareService, String fiwareServicePath)
             throws CygnusRuntimeError, CygnusPersistenceError;
 
+    /**
+     * Releases resources, e.g. the threads refreshing the tokens in background.
+     */
+    void close();
+
 }
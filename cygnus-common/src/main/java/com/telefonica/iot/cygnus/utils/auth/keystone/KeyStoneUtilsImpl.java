@@ -19,18 +19,22 @@ package com.telefonica.iot.cygnus.utils.auth.keystone;
 
 import com.telefonica.iot.cygnus.backends.http.HttpBackend;
 import com.telefonica.iot.cygnus.backends.http.JsonResponse;
-import com.telefonica.iot.cygnus.errors.CygnusExpiratingError;
 import com.telefonica.iot.cygnus.errors.CygnusPersistenceError;
 import com.telefonica.iot.cygnus.errors.CygnusRuntimeError;
 import com.telefonica.iot.cygnus.log.CygnusLogger;
 
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
-import java.util.Calendar;
-
-import java.util.GregorianCalendar;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.http.Header;
 import org.apache.http.entity.StringEntity;
@@ -86,9 +90,21 @@ public class KeyStoneUtilsImpl extends HttpBackend implements KeyStoneUtils {
     // token live time (minutes)
     private static final int INT_DEFAULT_LIVE_TIME = 50;
 
+    // part of the token live time after which the token is refreshed in background
+    private static final double REFRESH_AHEAD_RATIO = 0.8;
+
+    // minimum time between background refresh attempts of the same token (milliseconds)
+    private static final long REFRESH_RETRY_INTERVAL = 30000;
+
     // Token cache object
     private TokenCache tokenCache;
 
+    // Refreshes in progress, by service and subservice, in order concurrent refreshes of the same token are done once
+    private final ConcurrentMap<String, FutureTask<String>> refreshes;
+
+    // Executor for the background refreshes
+    private final ExecutorService refreshExecutor;
+
     /**
      * Constructor.
      * 
@@ -108,6 +124,15 @@ public class KeyStoneUtilsImpl extends HttpBackend implements KeyStoneUtils {
         super(keyStoneHost, keyStonePort, ssl, false, null, null, null, null, maxConns, maxConnsPerRoute);
         setAllHeaders(true);
         this.tokenCache = new TokenCache();
+        this.refreshes = new ConcurrentHashMap<String, FutureTask<String>>();
+        this.refreshExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread refresher = new Thread(r, "keystone-token-refresher");
+                refresher.setDaemon(true);
+                return refresher;
+            }
+        });
     }
 
     /**
@@ -159,6 +184,37 @@ public class KeyStoneUtilsImpl extends HttpBackend implements KeyStoneUtils {
     @Override
     public String updateSessionToken(String user, String password, String fiwareService, String fiwareServicePath)
             throws CygnusRuntimeError, CygnusPersistenceError {
+        String token = requestSessionToken(user, password, fiwareService, fiwareServicePath);
+        tokenCache.addToken(fiwareService, fiwareServicePath, token, currentTimeMillis());
+        return token;
+    }
+
+    /**
+     * Gets the current time, used for the expiration and the refresh of the cached tokens.
+     * 
+     * @return The current time in milliseconds
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Requests a new session token to Keystone.
+     * 
+     * @param user
+     *            user for authentication
+     * @param password
+     *            password for authentication
+     * @param fiwareService
+     *            Fiware service name
+     * @param fiwareServicePath
+     *            Fiware subservice name
+     * @return The new session token
+     * @throws CygnusRuntimeError
+     * @throws CygnusPersistenceError
+     */
+    protected String requestSessionToken(String user, String password, String fiwareService,
+            String fiwareServicePath) throws CygnusRuntimeError, CygnusPersistenceError {
         try {
             LOGGER.info("Requesting new token from Keystone Server.");
             // create the relative URL
@@ -199,7 +255,6 @@ public class KeyStoneUtilsImpl extends HttpBackend implements KeyStoneUtils {
                     }
                 }
                 if (!token.equals("")) {
-                    tokenCache.addToken(fiwareService, fiwareServicePath, token);
                     LOGGER.info("Token succesfully received.");
                     return token;
                 } else {
@@ -218,34 +273,165 @@ public class KeyStoneUtilsImpl extends HttpBackend implements KeyStoneUtils {
     @Override
     public String getSessionToken(String user, String password, String fiwareService, String fiwareServicePath)
             throws CygnusRuntimeError, CygnusPersistenceError {
+        // try in Cache
+        TokenCache.Token cached = tokenCache.getToken(fiwareService, fiwareServicePath);
+
+        if (cached == null) {
+            // not cached
+            LOGGER.info("Token not found in cache." + fiwareService + fiwareServicePath);
+
+            try {
+                // first try to recover token at service level.
+                return refreshSessionToken(user, password, fiwareService, STR_NO_SERVICEPATH);
+            } catch (Exception e1) {
+                // if not possible, at more restrictive sub-service level.
+                return refreshSessionToken(user, password, fiwareService, fiwareServicePath);
+            }
+        }
 
-        try { // try in Cache
-            return tokenCache.getToken(fiwareService, fiwareServicePath);
+        long now = currentTimeMillis();
 
-        } catch (CygnusExpiratingError e) {
+        if (!cached.isValid(now)) {
             // If expired...
+            LOGGER.info("The token has expired for " + cached.getIndexKey());
 
             if (tokenCache.isCached(fiwareService, STR_NO_SERVICEPATH)) {
                 // Cached at service level
-                return updateSessionToken(user, password, fiwareService, STR_NO_SERVICEPATH);
+                return refreshSessionToken(user, password, fiwareService, STR_NO_SERVICEPATH);
             } else {
                 // Cached at SubService level
-                return updateSessionToken(user, password, fiwareService, fiwareServicePath);
+                return refreshSessionToken(user, password, fiwareService, fiwareServicePath);
             }
-        } catch (CygnusRuntimeError e) {
-            // not cached or cache error
+        }
 
-            try {
-                // first try to recover token at service level.
-                return updateSessionToken(user, password, fiwareService, STR_NO_SERVICEPATH);
-            } catch (Exception e1) {
-                // if not possible, at more restrictive sub-service level.
+        // If about to expire, the still valid token is returned while a new one is requested in background
+        if (cached.startRefresh(now)) {
+            LOGGER.debug("Refreshing in background the token for " + cached.getIndexKey());
+            startSessionTokenRefresh(user, password, cached.getFiwareService(), cached.getFiwareServicePath());
+        }
+
+        LOGGER.debug("Returning Token from cache " + cached.getIndexKey());
+        return cached.getToken();
+    }
+
+    /**
+     * Refreshes the session token, waiting for it. If the same token is already being refreshed, then the ongoing
+     * refresh is waited instead of starting a new one.
+     * 
+     * @param user
+     *            user for authentication
+     * @param password
+     *            password for authentication
+     * @param fiwareService
+     *            Fiware service name
+     * @param fiwareServicePath
+     *            Fiware subservice name
+     * @return The refreshed session token
+     * @throws CygnusRuntimeError
+     * @throws CygnusPersistenceError
+     */
+    private String refreshSessionToken(String user, String password, String fiwareService, String fiwareServicePath)
+            throws CygnusRuntimeError, CygnusPersistenceError {
+        String key = fiwareService + fiwareServicePath;
+        FutureTask<String> refresh = refreshes.get(key);
+
+        if (refresh == null) {
+            FutureTask<String> newRefresh = createRefresh(user, password, fiwareService, fiwareServicePath);
+            refresh = refreshes.putIfAbsent(key, newRefresh);
+
+            if (refresh == null) {
+                refresh = newRefresh;
+                runRefresh(key, refresh);
+            }
+        }
+
+        try {
+            return refresh.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof CygnusRuntimeError) {
+                throw (CygnusRuntimeError) cause;
+            } else if (cause instanceof CygnusPersistenceError) {
+                throw (CygnusPersistenceError) cause;
+            } else {
+                throw new CygnusRuntimeError("Token refresh error", cause.getClass().getName(), cause.getMessage());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CygnusRuntimeError("Token refresh error", "InterruptedException", e.getMessage());
+        }
+    }
+
+    /**
+     * Starts a background refresh of the session token, unless the same token is already being refreshed.
+     * 
+     * @param user
+     *            user for authentication
+     * @param password
+     *            password for authentication
+     * @param fiwareService
+     *            Fiware service name
+     * @param fiwareServicePath
+     *            Fiware subservice name
+     */
+    private void startSessionTokenRefresh(String user, String password, String fiwareService,
+            String fiwareServicePath) {
+        final String key = fiwareService + fiwareServicePath;
+        final FutureTask<String> refresh = createRefresh(user, password, fiwareService, fiwareServicePath);
+
+        if (refreshes.putIfAbsent(key, refresh) != null) {
+            return;
+        }
+
+        try {
+            refreshExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    runRefresh(key, refresh);
+
+                    try {
+                        refresh.get();
+                    } catch (ExecutionException e) {
+                        LOGGER.warn("Token background refresh error for " + key + ", the cached token will be used "
+                                + "until its expiration. Details: " + e.getCause().getMessage());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Already closed, the cached token is used until its expiration
+            refreshes.remove(key, refresh);
+        }
+    }
+
+    private FutureTask<String> createRefresh(final String user, final String password, final String fiwareService,
+            final String fiwareServicePath) {
+        return new FutureTask<String>(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
                 return updateSessionToken(user, password, fiwareService, fiwareServicePath);
             }
+        });
+    }
 
+    private void runRefresh(String key, FutureTask<String> refresh) {
+        try {
+            refresh.run();
+        } finally {
+            refreshes.remove(key, refresh);
         }
     }
 
+    /**
+     * Shuts down the executor of the background refreshes. The refreshes in progress are not waited for.
+     */
+    @Override
+    public void close() {
+        refreshExecutor.shutdownNow();
+    }
+
     /**
      * LiveTime setter.
      * 
@@ -256,24 +442,25 @@ public class KeyStoneUtilsImpl extends HttpBackend implements KeyStoneUtils {
     }
 
     /**
-     * Token Cache class.
+     * Token Cache class. It is concurrently read by the sink threads and updated by the refreshing threads, thus the
+     * tokens are immutable (except for the time of the next background refresh) and kept within a concurrent map.
      * 
      * @author PMO Santander Smart City – Ayuntamiento de Santander
      */
-    private class TokenCache {
+    private static class TokenCache {
         /**
          * Token class.
          * 
          * @author PMO Santander Smart City – Ayuntamiento de Santander
          *
          */
-        private class Token {
+        private static class Token {
 
-            private String fiwareService;
-            private String fiwareServicePath;
-            private Calendar expirationDate;
-            private String token;
-            private int tokenMinutesLive;
+            private final String fiwareService;
+            private final String fiwareServicePath;
+            private final long expirationTime;
+            private final String token;
+            private final AtomicLong refreshTime;
 
             /**
              * Default constructor.
@@ -284,15 +471,19 @@ public class KeyStoneUtilsImpl extends HttpBackend implements KeyStoneUtils {
              *            subservice name
              * @param token
              *            auth token
+             * @param liveTime
+             *            token live time (minutes)
+             * @param now
+             *            creation time in milliseconds
              */
-            Token(String fiwareService, String fiwareServicePath, String token, int liveTime) {
+            Token(String fiwareService, String fiwareServicePath, String token, int liveTime, long now) {
                 super();
+                long liveTimeMillis = liveTime * 60000L;
                 this.fiwareService = fiwareService;
                 this.fiwareServicePath = fiwareServicePath;
                 this.token = token;
-                this.tokenMinutesLive = liveTime; // Default live time = 50
-                                                  // minutes
-                this.renew();
+                this.expirationTime = now + liveTimeMillis;
+                this.refreshTime = new AtomicLong(now + (long) (liveTimeMillis * REFRESH_AHEAD_RATIO));
             }
 
             /**
@@ -304,16 +495,6 @@ public class KeyStoneUtilsImpl extends HttpBackend implements KeyStoneUtils {
                 return token;
             }
 
-            /**
-             * Sets token value.
-             * 
-             * @param token
-             *            auth token
-             */
-            public void setToken(String token) {
-                this.token = token;
-            }
-
             /**
              * @return returns the Fiware Service.
              */
@@ -329,35 +510,25 @@ public class KeyStoneUtilsImpl extends HttpBackend implements KeyStoneUtils {
             }
 
             /**
-             * @return returns expiration date for the token.
+             * @param now
+             *            current time in milliseconds
+             * @return true if the token is valid.
              */
-            public Calendar getExpirationDate() {
-                return expirationDate;
+            public boolean isValid(long now) {
+                return expirationTime > now;
             }
 
             /**
-             * Gets token´s default live time.
+             * Checks if the token must be refreshed in background. If so, the next background refresh is postponed,
+             * thus a single caller gets true.
              * 
-             * @return Returns token´s default time to live in minutes
-             */
-            public int getTokenMinutesLive() {
-                return tokenMinutesLive;
-            }
-
-            /**
-             * Renews token expiration date.
-             */
-            public void renew() {
-                this.expirationDate = (GregorianCalendar) GregorianCalendar.getInstance();
-                this.expirationDate.add(GregorianCalendar.MINUTE, this.tokenMinutesLive);
-            }
-
-            /**
-             * @return true if the token is valid.
+             * @param now
+             *            current time in milliseconds
+             * @return true if the caller must refresh the token in background.
              */
-            public boolean isValid() {
-                GregorianCalendar now = (GregorianCalendar) GregorianCalendar.getInstance();
-                return this.expirationDate.compareTo(now) > 0;
+            public boolean startRefresh(long now) {
+                long next = refreshTime.get();
+                return now >= next && refreshTime.compareAndSet(next, now + REFRESH_RETRY_INTERVAL);
             }
 
             /**
@@ -371,15 +542,15 @@ public class KeyStoneUtilsImpl extends HttpBackend implements KeyStoneUtils {
 
         }
 
-        private Map<String, Token> tokenCache;
-        private int liveTime;
+        private final ConcurrentMap<String, Token> tokenCache;
+        private volatile int liveTime;
 
         /**
          * Default Constructor.
          */
         TokenCache() {
             super();
-            this.tokenCache = new HashMap<String, Token>();
+            this.tokenCache = new ConcurrentHashMap<String, Token>();
             this.liveTime = INT_DEFAULT_LIVE_TIME;
         }
 
@@ -392,62 +563,38 @@ public class KeyStoneUtilsImpl extends HttpBackend implements KeyStoneUtils {
         }
 
         public boolean isCached(String fiwareService, String fiwareServicePath) {
-            Token token = new Token(fiwareService, fiwareServicePath, "", liveTime);
-            String key = token.getIndexKey();
-            return tokenCache.containsKey(key);
+            return tokenCache.containsKey(fiwareService + fiwareServicePath);
         }
 
-        void addToken(String fiwareService, String fiwareServicePath, String token) {
-            Token tokenObj = new Token(fiwareService, fiwareServicePath, token, liveTime);
-            String key = tokenObj.getIndexKey();
-
-            // verify if already exists
-            if (tokenCache.containsKey(key)) {
-                tokenObj = tokenCache.get(key);
-                // Renew live time & token string
-                tokenObj.renew();
-                tokenObj.setToken(token);
-                LOGGER.info(" Token renew for " + key);
-            } else {
-                // add token to Cache
-                tokenCache.put(key, tokenObj);
+        void addToken(String fiwareService, String fiwareServicePath, String token, long now) {
+            // add or replace (i.e. renew live time & token string) the token
+            Token previous = tokenCache.put(fiwareService + fiwareServicePath,
+                    new Token(fiwareService, fiwareServicePath, token, liveTime, now));
 
-                LOGGER.info(" Token created for " + key);
+            if (previous == null) {
+                LOGGER.info(" Token created for " + fiwareService + fiwareServicePath);
+            } else {
+                LOGGER.info(" Token renew for " + fiwareService + fiwareServicePath);
             }
         }
 
-        String getToken(String fiwareService, String fiwareServicePath)
-                throws CygnusExpiratingError, CygnusRuntimeError {
-            Token tokenObj = new Token(fiwareService, fiwareServicePath, "", liveTime);
-            String key = "";
-
-            // Check at Service and Subservice levels
-            if (tokenCache.containsKey(tokenObj.getIndexKey())) {
-                key = tokenObj.getIndexKey();
-            } else if (tokenCache.containsKey(fiwareService + STR_NO_SERVICEPATH)) {
-                tokenObj.fiwareServicePath = STR_NO_SERVICEPATH;
-                key = tokenObj.getIndexKey();
-            }
-
-            // if exists
-            if (!key.equals("")) {
-                tokenObj = tokenCache.get(key);
-
-                if (tokenObj.isValid()) {
-                    LOGGER.info("Returning Token from cache " + key);
-                    return tokenObj.getToken();
-                } else {
-                    // Token expired
-                    // tokenCache.remove(key);
+        /**
+         * Gets the cached token, at subservice level or, if not cached, at service level.
+         * 
+         * @param fiwareService
+         *            service name
+         * @param fiwareServicePath
+         *            subservice name
+         * @return The cached token, or null if not cached
+         */
+        Token getToken(String fiwareService, String fiwareServicePath) {
+            Token tokenObj = tokenCache.get(fiwareService + fiwareServicePath);
 
-                    LOGGER.info("The token has expired for" + key);
-                    throw new CygnusExpiratingError("The token has expired for" + key);
-                }
-            } else {
-                // Not found in Cache
-                LOGGER.info("Token not found in cache." + fiwareService + fiwareServicePath);
-                throw new CygnusRuntimeError("Token not found in cache." + fiwareService + fiwareServicePath);
+            if (tokenObj == null) {
+                tokenObj = tokenCache.get(fiwareService + STR_NO_SERVICEPATH);
             }
+
+            return tokenObj;
         }
     }
 
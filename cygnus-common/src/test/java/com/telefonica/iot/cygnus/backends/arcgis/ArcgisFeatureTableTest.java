@@ -18,20 +18,35 @@
 
 package com.telefonica.iot.cygnus.backends.arcgis;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.logging.log4j.core.config.Configurator;
 import org.apache.logging.log4j.core.config.DefaultConfiguration;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
 
 import com.telefonica.iot.cygnus.backends.arcgis.exceptions.ArcgisException;
 import com.telefonica.iot.cygnus.backends.arcgis.model.Feature;
+import com.telefonica.iot.cygnus.backends.arcgis.model.Field;
+import com.telefonica.iot.cygnus.backends.arcgis.model.GisAttributeType;
 import com.telefonica.iot.cygnus.backends.arcgis.restutils.ArcgisBaseTest;
 import com.telefonica.iot.cygnus.backends.arcgis.restutils.ArcgisFeatureTable;
+import com.telefonica.iot.cygnus.backends.arcgis.restutils.RestFeatureTable;
 
 /**
  * 
@@ -145,6 +160,32 @@ public class ArcgisFeatureTableTest implements ArcgisBaseTest {
         }
     }
 
+    /**
+     * 
+     */
+    @Test
+    public void arcgisRemoveDuplicatesTest() {
+        System.out.println("----------------  arcgisRemoveDuplicatesTest");
+        String uniqueField = "IDEXTERNO";
+        List<Feature> featureList = new ArrayList<Feature>();
+        featureList.add(FeatureTestFactory.getNewOcupacionFeature("Prueba 1", 9991));
+        featureList.add(FeatureTestFactory.getNewOcupacionFeature("Prueba 2", 9992));
+        featureList.add(FeatureTestFactory.getNewOcupacionFeature("modificado 1", 9991));
+        featureList.add(FeatureTestFactory.getNewOcupacionFeature("Prueba 3", 9993));
+        featureList.add(FeatureTestFactory.getNewOcupacionFeature("modificado 3", 9993));
+
+        List<Feature> resultList = new OfflineFeatureTable().removeDuplicates(featureList, uniqueField);
+
+        // First occurrence position, last occurrence value
+        assertEquals(3, resultList.size());
+        assertEquals(9991, resultList.get(0).getAttributes().get(uniqueField));
+        assertEquals("modificado 1", resultList.get(0).getAttributes().get("DESCRIPCION"));
+        assertEquals(9992, resultList.get(1).getAttributes().get(uniqueField));
+        assertEquals("Prueba 2", resultList.get(1).getAttributes().get("DESCRIPCION"));
+        assertEquals(9993, resultList.get(2).getAttributes().get(uniqueField));
+        assertEquals("modificado 3", resultList.get(2).getAttributes().get("DESCRIPCION"));
+    }
+
     /**
      * 
      */
@@ -194,4 +235,125 @@ public class ArcgisFeatureTableTest implements ArcgisBaseTest {
         }
     }
 
+    /**
+     * 
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void arcgisFailedUpdatesTest() throws Exception {
+        System.out.println("----------------  arcgisFailedUpdatesTest");
+        String uniqueField = "IDEXTERNO";
+        RestFeatureTable restTable = mock(RestFeatureTable.class);
+        Field uniqueFieldInfo = new Field();
+        uniqueFieldInfo.setType(GisAttributeType.INTEGER);
+        Map<String, Field> tableAttributes = new HashMap<String, Field>();
+        tableAttributes.put(uniqueField, uniqueFieldInfo);
+        when(restTable.getTableAttributes()).thenReturn(tableAttributes);
+
+        // Both features exist in the table at first, then the second one is deleted by a third party
+        when(restTable.getFeatureList(ArgumentMatchers.anyString())).thenReturn(
+                Arrays.asList(getServerFeature(9991, 1), getServerFeature(9992, 2)),
+                Arrays.asList(getServerFeature(9991, 1)));
+        // The update of the deleted feature fails, thus the whole update is rolled back
+        when(restTable.updateFeatureList(ArgumentMatchers.<Feature>anyList())).thenReturn(
+                Arrays.asList(1, 2), Arrays.asList(-1, -1), Arrays.asList(1));
+        when(restTable.addFeatureList(ArgumentMatchers.<Feature>anyList())).thenReturn(Arrays.asList(3));
+
+        OfflineFeatureTable table = new OfflineFeatureTable(restTable);
+        table.setBatchAction(ArcgisFeatureTable.ADD_UPDATE_ACTION);
+        table.setUniqueField(uniqueField);
+        table.setBatchSize(1);
+
+        // The ObjectIds are queried and cached
+        table.addUpdateFeatures(Arrays.asList(FeatureTestFactory.getNewOcupacionFeature("Prueba 1", 9991),
+                FeatureTestFactory.getNewOcupacionFeature("Prueba 2", 9992)), uniqueField);
+        assertEquals(2, table.objectIdsCached());
+
+        // The cached ObjectIds are used, the failed features are queried again and the deleted one is added again
+        table.addUpdateFeatures(Arrays.asList(FeatureTestFactory.getNewOcupacionFeature("modificado 1", 9991),
+                FeatureTestFactory.getNewOcupacionFeature("modificado 2", 9992)), uniqueField);
+
+        ArgumentCaptor<List<Feature>> addedCaptor = ArgumentCaptor.forClass(List.class);
+        verify(restTable, times(2)).getFeatureList(ArgumentMatchers.anyString());
+        verify(restTable, times(3)).updateFeatureList(ArgumentMatchers.<Feature>anyList());
+        verify(restTable, times(1)).addFeatureList(addedCaptor.capture());
+        assertEquals(1, addedCaptor.getValue().size());
+        assertEquals(9992, addedCaptor.getValue().get(0).getAttributes().get(uniqueField));
+        assertEquals(Integer.valueOf(-1), addedCaptor.getValue().get(0).getObjectId());
+        assertEquals(Integer.valueOf(1), table.getCachedObjectId("9991"));
+        assertEquals(Integer.valueOf(3), table.getCachedObjectId("9992"));
+        assertFalse(table.hasError());
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void arcgisMissingUpdateResultsTest() throws Exception {
+        System.out.println("----------------  arcgisMissingUpdateResultsTest");
+        String uniqueField = "IDEXTERNO";
+        RestFeatureTable restTable = mock(RestFeatureTable.class);
+        Field uniqueFieldInfo = new Field();
+        uniqueFieldInfo.setType(GisAttributeType.INTEGER);
+        Map<String, Field> tableAttributes = new HashMap<String, Field>();
+        tableAttributes.put(uniqueField, uniqueFieldInfo);
+        when(restTable.getTableAttributes()).thenReturn(tableAttributes);
+        when(restTable.getFeatureList(ArgumentMatchers.anyString())).thenReturn(
+                Arrays.asList(getServerFeature(9991, 1), getServerFeature(9992, 2)));
+        // The second update response does not include the results, thus they are unknown
+        when(restTable.updateFeatureList(ArgumentMatchers.<Feature>anyList())).thenReturn(
+                Arrays.asList(1, 2), Arrays.<Integer>asList(null, null));
+
+        OfflineFeatureTable table = new OfflineFeatureTable(restTable);
+        table.setBatchAction(ArcgisFeatureTable.ADD_UPDATE_ACTION);
+        table.setUniqueField(uniqueField);
+        table.setBatchSize(1);
+        table.addUpdateFeatures(Arrays.asList(FeatureTestFactory.getNewOcupacionFeature("Prueba 1", 9991),
+                FeatureTestFactory.getNewOcupacionFeature("Prueba 2", 9992)), uniqueField);
+        table.addUpdateFeatures(Arrays.asList(FeatureTestFactory.getNewOcupacionFeature("modificado 1", 9991),
+                FeatureTestFactory.getNewOcupacionFeature("modificado 2", 9992)), uniqueField);
+
+        // The features are not retried, nor their cached ObjectIds invalidated
+        verify(restTable, times(1)).getFeatureList(ArgumentMatchers.anyString());
+        verify(restTable, times(2)).updateFeatureList(ArgumentMatchers.<Feature>anyList());
+        verify(restTable, times(0)).addFeatureList(ArgumentMatchers.<Feature>anyList());
+        assertEquals(2, table.objectIdsCached());
+        assertFalse(table.hasError());
+    }
+
+    private static Feature getServerFeature(Integer externalId, Integer objectId) throws ArcgisException {
+        Feature feature = FeatureTestFactory.getNewOcupacionFeature("servidor", externalId);
+        feature.setObjectId(objectId);
+        return feature;
+    }
+
+    /**
+     * Feature table not connected to any server, for testing purposes.
+     */
+    private static class OfflineFeatureTable extends ArcgisFeatureTable {
+
+        OfflineFeatureTable() {
+            super();
+        }
+
+        OfflineFeatureTable(RestFeatureTable restTable) {
+            super(restTable);
+        }
+
+        @Override
+        protected int objectIdsCached() {
+            return super.objectIdsCached();
+        }
+
+        @Override
+        protected Integer getCachedObjectId(String uniqueFieldValue) {
+            return super.getCachedObjectId(uniqueFieldValue);
+        }
+
+        @Override
+        protected List<Feature> removeDuplicates(List<Feature> featureList, String uniqueField) {
+            return super.removeDuplicates(featureList, uniqueField);
+        }
+    }
+
 }
@@ -18,11 +18,13 @@
 
 package com.telefonica.iot.cygnus.backends.arcgis;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.net.MalformedURLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.logging.log4j.core.config.Configurator;
@@ -321,4 +323,41 @@ public class RestFeatureTableTest implements ArcgisBaseTest {
         }
 
     }
+
+    /**
+     * 
+     * @throws ArcgisException
+     */
+    @Test
+    public void objectIdsFromJsonTest() throws ArcgisException {
+        System.out.println("----------------  objectIdsFromJsonTest");
+        ResultsFeatureTable featureTable = new ResultsFeatureTable();
+
+        // Only the results explicitly marked as unsuccessful are failed
+        assertEquals(Arrays.asList(1, -1, 3, null),
+                featureTable.objectIdsFromJson("{\"updateResults\":[{\"objectId\":1,\"success\":true},"
+                        + "{\"objectId\":2,\"success\":false},{\"objectId\":3},{\"success\":true}]}",
+                        "updateResults", 4));
+        // The missing results are unknown
+        assertEquals(Arrays.asList(1, null),
+                featureTable.objectIdsFromJson("{\"updateResults\":[{\"objectId\":1,\"success\":true}]}",
+                        "updateResults", 2));
+        assertEquals(Arrays.asList(null, null), featureTable.objectIdsFromJson("{}", "updateResults", 2));
+        assertEquals(Arrays.asList(null, null), featureTable.objectIdsFromJson("not json", "updateResults", 2));
+    }
+
+    /**
+     * Feature table exposing the parsing of the edit results, for testing purposes.
+     */
+    private static class ResultsFeatureTable extends RestFeatureTable {
+
+        ResultsFeatureTable() throws ArcgisException {
+            super("http://localhost/FeatureServer/0", null, "http://localhost/generateToken", 0, 0);
+        }
+
+        @Override
+        protected List<Integer> objectIdsFromJson(String responseJson, String resultsTag, int size) {
+            return super.objectIdsFromJson(responseJson, resultsTag, size);
+        }
+    }
 }
@@ -17,17 +17,26 @@
  */
 package com.telefonica.iot.cygnus.backends.dynamo;
 
+import com.amazonaws.services.dynamodbv2.document.BatchWriteItemOutcome;
 import com.amazonaws.services.dynamodbv2.document.DynamoDB;
 import com.amazonaws.services.dynamodbv2.document.Item;
 import com.amazonaws.services.dynamodbv2.document.Table;
 import com.amazonaws.services.dynamodbv2.document.TableWriteItems;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
+import org.mockito.Mockito;
 import static org.mockito.Mockito.when;
 import org.mockito.junit.MockitoJUnitRunner;
 
@@ -68,8 +77,8 @@ public class DynamoDBBackendImplTest {
         backend = new DynamoDBBackendImpl(accessKeyId, secretAccessKey, region);
         
         // set up the behaviour of the mocked classes
-        when(mockDynamoDB.createTable(null)).thenReturn(null);
-        when(mockDynamoDB.batchWriteItem(mockTableWriteItems)).thenReturn(null);
+        when(mockDynamoDB.batchWriteItem(Mockito.any(TableWriteItems.class)))
+                .thenReturn(new BatchWriteItemOutcome(new BatchWriteItemResult()));
         when(mockDynamoDB.getTable(tableName)).thenReturn(mockTable);
     } // setUp
     
@@ -112,4 +121,81 @@ public class DynamoDBBackendImplTest {
         } // try catch finally
     } // testPutItems
     
+    /**
+     * Test of putItems method, of class DynamoDBBackendImpl. More than 25 items are put in chunks of up to 25 items.
+     */
+    @Test
+    public void testPutItemsChunks() {
+        System.out.println("Testing DynamoDBBackendImpl.putItems (chunks of up to 25 items)");
+        
+        try {
+            backend.setDynamoDB(mockDynamoDB);
+            backend.setWriteOptions(2, 0, 1);
+            ArrayList<Item> aggregation = new ArrayList<Item>();
+            
+            for (int i = 0; i < 60; i++) {
+                aggregation.add(new Item().withNumber("recvTimeTs", i));
+            } // for
+            
+            backend.putItems(tableName, aggregation);
+            Mockito.verify(mockDynamoDB, Mockito.times(3)).batchWriteItem(Mockito.any(TableWriteItems.class));
+        } catch (Exception e) {
+            fail(e.getMessage());
+        } // try catch
+    } // testPutItemsChunks
+    
+    /**
+     * Test of putItems method, of class DynamoDBBackendImpl. The unprocessed items are retried.
+     */
+    @Test
+    public void testPutItemsUnprocessedItems() {
+        System.out.println("Testing DynamoDBBackendImpl.putItems (unprocessed items are retried)");
+        List<WriteRequest> writeRequests = new ArrayList<WriteRequest>();
+        writeRequests.add(new WriteRequest().withPutRequest(new PutRequest()));
+        Map<String, List<WriteRequest>> unprocessedItems = Collections.singletonMap(tableName, writeRequests);
+        
+        try {
+            when(mockDynamoDB.batchWriteItem(Mockito.any(TableWriteItems.class))).thenReturn(
+                    new BatchWriteItemOutcome(new BatchWriteItemResult().withUnprocessedItems(unprocessedItems)));
+            when(mockDynamoDB.batchWriteItemUnprocessed(unprocessedItems))
+                    .thenReturn(new BatchWriteItemOutcome(new BatchWriteItemResult()));
+            backend.setDynamoDB(mockDynamoDB);
+            backend.setWriteOptions(1, 3, 1);
+            ArrayList<Item> aggregation = new ArrayList<Item>();
+            aggregation.add(new Item().withString("field", "value"));
+            backend.putItems(tableName, aggregation);
+            Mockito.verify(mockDynamoDB, Mockito.times(1)).batchWriteItemUnprocessed(unprocessedItems);
+        } catch (Exception e) {
+            fail(e.getMessage());
+        } // try catch
+    } // testPutItemsUnprocessedItems
+    
+    /**
+     * Test of close method, of class DynamoDBBackendImpl. The batch writers are stopped and the DynamoDB client is
+     * shut down.
+     */
+    @Test
+    public void testClose() {
+        System.out.println("Testing DynamoDBBackendImpl.close (batch writers stopped, client shut down)");
+        
+        try {
+            backend.setDynamoDB(mockDynamoDB);
+            backend.setWriteOptions(2, 0, 1);
+            ArrayList<Item> aggregation = new ArrayList<Item>();
+            
+            for (int i = 0; i < 30; i++) {
+                aggregation.add(new Item().withNumber("recvTimeTs", i));
+            } // for
+            
+            backend.putItems(tableName, aggregation);
+            ExecutorService writeExecutor = backend.getWriteExecutor();
+            backend.close();
+            assertTrue(writeExecutor.isShutdown());
+            assertTrue(backend.getWriteExecutor() == null);
+            Mockito.verify(mockDynamoDB, Mockito.times(1)).shutdown();
+        } catch (Exception e) {
+            fail(e.getMessage());
+        } // try catch
+    } // testClose
+    
 } // DynamoDBBackendImplTest
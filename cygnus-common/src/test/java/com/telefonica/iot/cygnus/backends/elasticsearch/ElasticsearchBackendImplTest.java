@@ -29,6 +29,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import org.apache.http.HttpResponse;
 import org.apache.http.ProtocolVersion;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpPost;
@@ -54,6 +55,8 @@ import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -609,4 +612,125 @@ public class ElasticsearchBackendImplTest {
             } // try-catch
         } // testBulkInsert_oneData
     } // InvalidCharsetTest
+
+    public static class BulkErrorsTest {
+        /**
+         * setup test class
+         */
+        @BeforeClass
+        public static void setUpClass() {
+            LoggerContext ctx = (LoggerContext) LogManager.getContext(false);
+            Configuration config = ctx.getConfiguration();
+            LoggerConfig loggerConfig = config.getLoggerConfig(LogManager.ROOT_LOGGER_NAME);
+            loggerConfig.setLevel(Level.FATAL);
+            ctx.updateLoggers();
+        } // setUpClass
+
+        @Mock
+        private HttpClient mockHttpClient;
+
+        private final List<String> payloads = new ArrayList<String>();
+
+        /**
+         * setup test case
+         *
+         * @throws Exception
+         */
+        @Before
+        public void setUp() throws Exception {
+            // the first document is rejected with a retriable status the first time, the second one is inserted
+            final BasicHttpResponse partialResponse = new BasicHttpResponse(new ProtocolVersion("http", 1, 1), 200, "ok");
+            partialResponse.setHeader("Content-Type", "application/json");
+            partialResponse.setEntity(new StringEntity("{\"errors\": true, \"items\": ["
+                    + "{\"index\": {\"status\": 429, \"error\": {\"type\": \"es_rejected_execution_exception\"}}},"
+                    + "{\"index\": {\"status\": 201}}]}"));
+            final BasicHttpResponse okResponse = new BasicHttpResponse(new ProtocolVersion("http", 1, 1), 200, "ok");
+            okResponse.setHeader("Content-Type", "application/json");
+            okResponse.setEntity(new StringEntity("{\"errors\": false, \"items\": [{\"index\": {\"status\": 201}}]}"));
+
+            MockitoAnnotations.initMocks(this);
+            when(mockHttpClient.execute(Mockito.any(HttpPost.class))).thenAnswer(new Answer<HttpResponse>() {
+                @Override
+                public HttpResponse answer(InvocationOnMock invocation) throws Throwable {
+                    HttpPost request = invocation.getArgument(0);
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    request.getEntity().writeTo(out);
+                    payloads.add(out.toString());
+                    return payloads.size() == 1 ? partialResponse : okResponse;
+                } // answer
+            });
+        } // setUp
+
+        /**
+         * [ElasticsearchBackendImplTest$BulkErrorsTest.testBulkInsert_retryFailedItems]
+         * Test only the documents rejected with a retriable status are retried.
+         */
+        @Test
+        public void testBulkInsert_retryFailedItems() {
+            System.out.println(getTestTraceHead("[ElasticsearchBackendImplTest.bulkInsert Retry of failed items]"));
+
+            List<Map<String, String>> data = new ArrayList<Map<String, String>>();
+            data.add(new HashMap<String, String>(){
+                {
+                    put("recvTimeTs", "test_recvTimeTs_1");
+                    put("data", "{\"message\": \"en - test data 1\"}");
+                }
+            });
+            data.add(new HashMap<String, String>(){
+                {
+                    put("recvTimeTs", "test_recvTimeTs_2");
+                    put("data", "{\"message\": \"en - test data 2\"}");
+                }
+            });
+            String expected = "";
+            expected += "{\"index\":{\"_id\":\"test_recvTimeTs_1-CA7219C0B311573D5D84EC08C80DB1E0\"}}\n";
+            expected += "{\"message\": \"en - test data 1\"}\n";
+
+            try {
+                ElasticsearchBackendImpl backend = new ElasticsearchBackendImpl(host, port, false, maxConns, maxConnsPerRoute, charSet);
+                backend.setHttpClient(mockHttpClient);
+                backend.setBulkOptions(ElasticsearchBackendImpl.DEFAULT_BULK_MAX_BYTES, 1, 0);
+                backend.bulkInsert(idx, type, data);
+
+                verify(mockHttpClient, times(2)).execute(Mockito.any(HttpPost.class));
+                assertEquals(expected, payloads.get(1));
+            } catch (Exception e) {
+                fail(e.getMessage());
+            } // try-catch
+        } // testBulkInsert_retryFailedItems
+
+        /**
+         * [ElasticsearchBackendImplTest$BulkErrorsTest.testBulkInsert_noMoreRetries]
+         * Test an error is thrown if the rejected documents cannot be retried.
+         */
+        @Test
+        public void testBulkInsert_noMoreRetries() {
+            System.out.println(getTestTraceHead("[ElasticsearchBackendImplTest.bulkInsert No more retries of failed items]"));
+
+            List<Map<String, String>> data = new ArrayList<Map<String, String>>();
+            data.add(new HashMap<String, String>(){
+                {
+                    put("recvTimeTs", "test_recvTimeTs_1");
+                    put("data", "{\"message\": \"en - test data 1\"}");
+                }
+            });
+            data.add(new HashMap<String, String>(){
+                {
+                    put("recvTimeTs", "test_recvTimeTs_2");
+                    put("data", "{\"message\": \"en - test data 2\"}");
+                }
+            });
+
+            try {
+                ElasticsearchBackendImpl backend = new ElasticsearchBackendImpl(host, port, false, maxConns, maxConnsPerRoute, charSet);
+                backend.setHttpClient(mockHttpClient);
+                backend.bulkInsert(idx, type, data);
+                fail("An error was expected");
+            } catch (CygnusPersistenceError e) {
+                assertEquals("CygnusPersistenceError. Could not insert 1 documents after 0 retries (index=idx, type=type). ", e.getMessage());
+            } catch (Exception e) {
+                fail(e.getMessage());
+            } // try-catch
+        } // testBulkInsert_noMoreRetries
+    } // BulkErrorsTest
 } // ElasticsearchBackendImplTest
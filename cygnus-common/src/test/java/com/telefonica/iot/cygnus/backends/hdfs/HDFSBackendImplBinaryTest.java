@@ -19,6 +19,11 @@
 package com.telefonica.iot.cygnus.backends.hdfs;
 
 import com.telefonica.iot.cygnus.backends.hdfs.HDFSBackendImplBinary.FSGetter;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
@@ -48,6 +53,8 @@ public class HDFSBackendImplBinaryTest {
     private FileSystem mockFileSystem;
     @Mock
     private FSDataOutputStream fsDataOutputStreamMock;
+    @Mock
+    private FileSystem mockStreamsFileSystem;
     
     // constants
     private final String hdfsHost = "1.2.3.4";
@@ -149,4 +156,75 @@ public class HDFSBackendImplBinaryTest {
         } // try catch finally
     } // testExists
     
+    /**
+     * Test of write method, of class HDFSBackendImplBinary.
+     */
+    @Test
+    public void testWrite() {
+        System.out.println("Testing HDFSBackendImplBinary.write");
+        String filePath = "path/to/my/data.txt";
+        
+        try {
+            when(mockFSGetter.getNewInstance()).thenReturn(mockStreamsFileSystem);
+            when(mockStreamsFileSystem.exists(Mockito.any(Path.class))).thenReturn(false);
+            when(mockStreamsFileSystem.create(Mockito.any(Path.class))).thenReturn(fsDataOutputStreamMock);
+            backend.setFSGetter(mockFSGetter);
+            
+            // Each write is 22 bytes long, thus the third one rolls the file
+            backend.enableStreams(30, 0, 60000);
+            backend.write(filePath, data);
+            backend.write(filePath, data);
+            backend.write(filePath, data);
+            backend.closeStreams();
+            
+            Mockito.verify(mockFSGetter, Mockito.times(1)).getNewInstance();
+            Mockito.verify(mockStreamsFileSystem, Mockito.times(1)).create(
+                    new Path("/user/" + user + "/path/to/my/data.txt"));
+            Mockito.verify(mockStreamsFileSystem, Mockito.times(1)).create(
+                    new Path("/user/" + user + "/path/to/my/data.part1.txt"));
+            Mockito.verify(mockStreamsFileSystem, Mockito.never()).append(Mockito.any(Path.class));
+            Mockito.verify(fsDataOutputStreamMock, Mockito.times(3)).hflush();
+            Mockito.verify(fsDataOutputStreamMock, Mockito.times(2)).close();
+        } catch (Exception e) {
+            fail(e.getMessage());
+        } // try catch
+    } // testWrite
+
+    /**
+     * Test of createParquetFile method, of class HDFSBackendImplBinary.
+     */
+    @Test
+    public void testCreateParquetFile() {
+        System.out.println("Testing HDFSBackendImplBinary.createParquetFile");
+        String filePath = "path/to/my/data_1.parquet";
+        String schema = "message ngsi { optional int64 ts; optional binary value (UTF8); }";
+        List<Object[]> records = new ArrayList<>();
+        records.add(new Object[] {1429535775L, "21.5"});
+        records.add(new Object[] {1429535776L, null});
+        
+        try {
+            // The temporary file is qualified into a local directory, written by Parquet through Hadoop
+            final File localDir = Files.createTempDirectory("cygnus-parquet").toFile();
+            localDir.deleteOnExit();
+            File localFile = new File(localDir, ".data_1.parquet.tmp");
+            localFile.deleteOnExit();
+            when(mockFileSystem.makeQualified(Mockito.any(Path.class)))
+                    .thenReturn(new Path(localFile.toURI()));
+            when(mockFileSystem.getConf()).thenReturn(new Configuration());
+            when(mockFileSystem.rename(Mockito.any(Path.class), Mockito.any(Path.class))).thenReturn(true);
+            backend.setFSGetter(mockFSGetter);
+            backend.createParquetFile(filePath, schema, records, "gzip", 1048576);
+            
+            Mockito.verify(mockFileSystem, Mockito.times(1)).makeQualified(
+                    new Path("/user/" + user + "/path/to/my/.data_1.parquet.tmp"));
+            Mockito.verify(mockFileSystem, Mockito.times(1)).rename(
+                    new Path("/user/" + user + "/path/to/my/.data_1.parquet.tmp"),
+                    new Path("/user/" + user + "/path/to/my/data_1.parquet"));
+            byte[] bytes = Files.readAllBytes(localFile.toPath());
+            assertEquals("PAR1", new String(bytes, 0, 4, "UTF-8"));
+        } catch (Exception e) {
+            fail(e.getMessage());
+        } // try catch
+    } // testCreateParquetFile
+    
 } // HDFSBackendImplRESTTest
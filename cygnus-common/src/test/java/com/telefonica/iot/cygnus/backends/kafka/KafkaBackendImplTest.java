@@ -18,6 +18,7 @@
 package com.telefonica.iot.cygnus.backends.kafka;
 
 import static com.telefonica.iot.cygnus.utils.CommonUtilsForTests.getTestTraceHead;
+import org.apache.kafka.clients.producer.Callback;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.logging.log4j.Level;
@@ -66,7 +67,8 @@ public class KafkaBackendImplTest {
      */
     @Before
     public void setUp() throws Exception {
-        when(mockKafkaProducer.send(Mockito.any(ProducerRecord.class))).thenReturn(null);
+        when(mockKafkaProducer.send(Mockito.any(ProducerRecord.class), Mockito.any(Callback.class)))
+                .thenReturn(null);
     } // setUp
     
     /**
@@ -17,9 +17,22 @@
  */
 package com.telefonica.iot.cygnus.backends.mongo;
 
+import com.mongodb.WriteConcern;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
 import com.telefonica.iot.cygnus.sinks.Enums.DataModel;
 import static com.telefonica.iot.cygnus.utils.CommonUtilsForTests.getTestTraceHead;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.TimeZone;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
@@ -27,7 +40,13 @@ import org.apache.logging.log4j.core.LoggerContext;
 import org.apache.logging.log4j.core.config.Configuration;
 import org.apache.logging.log4j.core.config.LoggerConfig;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.bson.BsonInt32;
+import org.bson.Document;
 import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
 
 /**
  *
@@ -573,4 +592,225 @@ public class MongoBackendImplTest {
         } // try catch
     } // testBuildUpdateForUpdateString
 
+    /**
+     * [MongoBackendImpl.buildUpdateForUpdate] -------- Given a calendar, an attribute type, a resolution and the
+     * pre-aggregated occurrences of several string values, a single aggregation update is created.
+     */
+    @Test
+    public void testBuildUpdateForUpdateStrings() {
+        System.out.println(getTestTraceHead("[MongoBackendImpl.buildUpdateForUpdate]")
+                + "-------- Given a calendar, an attribute type, a resolution and the pre-aggregated occurrences of "
+                + "several string values, a single aggregation update is created");
+        String attrType = "someType";
+        LinkedHashMap<String, Integer> counts = new LinkedHashMap<>();
+        counts.put("on", 3);
+        counts.put("off", 1);
+        GregorianCalendar calendar = new GregorianCalendar(2017, 3, 5, 11, 46, 13); // month 3 is April
+        MongoBackendImpl backend = new MongoBackendImpl(null, null, null, null, null, null, null, false, false, null, null, null, null);
+        String updateForUpdate = "{\"$set\": {\"attrType\": \"someType\"}, "
+                + "\"$inc\": {\"points.4.samples\": 4, \"points.4.occur.on\": 3, \"points.4.occur.off\": 1}}";
+
+        try {
+            assertEquals(updateForUpdate, backend.buildUpdateForUpdate(attrType, MongoBackendImpl.Resolution.DAY,
+                    calendar, counts, 4).toString());
+            System.out.println(getTestTraceHead("[MongoBackendImpl.buildUpdateForUpdate]")
+                    + "-  OK  - The related update for '2017-04-05T11:46:13', resolution 'DAY' and given "
+                    + "preaggregations is '" + updateForUpdate + "'");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[MongoBackendImpl.buildUpdateForUpdate]")
+                    + "- FAIL - The related update for '2017-04-05T11:46:13', resolution 'DAY' and given "
+                    + "preaggregations is not '" + updateForUpdate + "'");
+            throw e;
+        } // try catch
+    } // testBuildUpdateForUpdateStrings
+
+    /**
+     * [MongoBackendImpl.parseWriteConcern] -------- Write concerns are parsed by name or number of members, and
+     * the invalid ones are detected.
+     */
+    @Test
+    public void testParseWriteConcern() {
+        System.out.println(getTestTraceHead("[MongoBackendImpl.parseWriteConcern]")
+                + "-------- Write concerns are parsed by name or number of members, and the invalid ones are detected");
+
+        try {
+            assertEquals(WriteConcern.MAJORITY, MongoBackendImpl.parseWriteConcern("majority"));
+            assertEquals(WriteConcern.W1, MongoBackendImpl.parseWriteConcern("w1"));
+            assertEquals(WriteConcern.UNACKNOWLEDGED, MongoBackendImpl.parseWriteConcern("UNACKNOWLEDGED"));
+            assertEquals(new WriteConcern(2), MongoBackendImpl.parseWriteConcern("2"));
+            assertNull(MongoBackendImpl.parseWriteConcern(""));
+            assertNull(MongoBackendImpl.parseWriteConcern("all"));
+            assertNull(MongoBackendImpl.parseWriteConcern("99999999999"));
+            System.out.println(getTestTraceHead("[MongoBackendImpl.parseWriteConcern]")
+                    + "-  OK  - Write concerns have been parsed and the invalid ones detected");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[MongoBackendImpl.parseWriteConcern]")
+                    + "- FAIL - Write concerns have not been parsed or the invalid ones not detected");
+            throw e;
+        } // try catch
+    } // testParseWriteConcern
+
+    /**
+     * [MongoBackendImpl.insertContextDataAggregated] -------- The documents known as prepopulated are not
+     * prepopulated again.
+     */
+    @Test
+    public void testInsertContextDataAggregatedPrepopulatedDocsCache() throws Exception {
+        System.out.println(getTestTraceHead("[MongoBackendImpl.insertContextDataAggregated]")
+                + "-------- The documents known as prepopulated are not prepopulated again");
+        MongoCollection<Document> collection = createCollection();
+        List<List<WriteModel<Document>>> writes = recordBulkWrites(collection, createResult(1, 0),
+                createResult(1));
+        MongoBackendImpl backend = createBackend(collection);
+        backend.insertContextDataAggregated("db", "coll", createAccumulator(), MONTH_RESOLUTION);
+        backend.insertContextDataAggregated("db", "coll", createAccumulator(), MONTH_RESOLUTION);
+
+        try {
+            assertEquals(2, writes.size());
+            assertEquals(2, writes.get(0).size());
+            assertTrue(isUpsert(writes.get(0).get(0)));
+            assertTrue(!isUpsert(writes.get(0).get(1)));
+            assertEquals(1, writes.get(1).size());
+            assertTrue(!isUpsert(writes.get(1).get(0)));
+            assertEquals(1, backend.getNumPrepopulatedDocs());
+            System.out.println(getTestTraceHead("[MongoBackendImpl.insertContextDataAggregated]")
+                    + "-  OK  - The second insertion only updated the already prepopulated document");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[MongoBackendImpl.insertContextDataAggregated]")
+                    + "- FAIL - The second insertion prepopulated again the document");
+            throw e;
+        } // try catch
+    } // testInsertContextDataAggregatedPrepopulatedDocsCache
+
+    /**
+     * [MongoBackendImpl.insertContextDataAggregated] -------- The documents are known as prepopulated until the
+     * expiration of the collection, if it is sooner than the end of their range.
+     */
+    @Test
+    public void testInsertContextDataAggregatedPrepopulatedDocsExpiration() throws Exception {
+        System.out.println(getTestTraceHead("[MongoBackendImpl.insertContextDataAggregated]")
+                + "-------- The documents are known as prepopulated until the expiration of the collection, if it "
+                + "is sooner than the end of their range");
+        MongoCollection<Document> collection = createCollection();
+        List<List<WriteModel<Document>>> writes = recordBulkWrites(collection, createResult(1, 0),
+                createResult(1));
+        MongoBackendImpl backend = createBackend(collection);
+        // The documents expire 1 second after their origin, i.e. the start of the year
+        backend.createCollection("db", "coll", 1);
+        backend.insertContextDataAggregated("db", "coll", createAccumulator(), MONTH_RESOLUTION);
+        backend.insertContextDataAggregated("db", "coll", createAccumulator(), MONTH_RESOLUTION);
+
+        try {
+            assertEquals(2, writes.size());
+            assertEquals(2, writes.get(0).size());
+            assertEquals(2, writes.get(1).size());
+            assertTrue(isUpsert(writes.get(1).get(0)));
+            System.out.println(getTestTraceHead("[MongoBackendImpl.insertContextDataAggregated]")
+                    + "-  OK  - The expired document was prepopulated again");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[MongoBackendImpl.insertContextDataAggregated]")
+                    + "- FAIL - The expired document was not prepopulated again");
+            throw e;
+        } // try catch
+    } // testInsertContextDataAggregatedPrepopulatedDocsExpiration
+
+    /**
+     * [MongoBackendImpl.insertContextDataAggregated] -------- The documents known as prepopulated but not existing
+     * anymore (e.g. removed by hand) are prepopulated and updated again.
+     */
+    @Test
+    public void testInsertContextDataAggregatedRemovedDoc() throws Exception {
+        System.out.println(getTestTraceHead("[MongoBackendImpl.insertContextDataAggregated]")
+                + "-------- The documents known as prepopulated but not existing anymore are prepopulated and "
+                + "updated again");
+        MongoCollection<Document> collection = createCollection();
+        // The update of the second insertion does not match, since the document was removed
+        List<List<WriteModel<Document>>> writes = recordBulkWrites(collection, createResult(1, 0),
+                createResult(0), createResult(0, 0), createResult(1));
+        MongoBackendImpl backend = createBackend(collection);
+        backend.insertContextDataAggregated("db", "coll", createAccumulator(), MONTH_RESOLUTION);
+        backend.insertContextDataAggregated("db", "coll", createAccumulator(), MONTH_RESOLUTION);
+
+        try {
+            assertEquals(4, writes.size());
+            assertEquals(1, writes.get(1).size());
+            assertTrue(!isUpsert(writes.get(1).get(0)));
+            assertEquals(1, writes.get(2).size());
+            assertTrue(isUpsert(writes.get(2).get(0)));
+            assertEquals(1, writes.get(3).size());
+            assertTrue(!isUpsert(writes.get(3).get(0)));
+            assertEquals(1, backend.getNumPrepopulatedDocs());
+            System.out.println(getTestTraceHead("[MongoBackendImpl.insertContextDataAggregated]")
+                    + "-  OK  - The removed document was prepopulated and updated again");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[MongoBackendImpl.insertContextDataAggregated]")
+                    + "- FAIL - The removed document was not prepopulated and updated again");
+            throw e;
+        } // try catch
+    } // testInsertContextDataAggregatedRemovedDoc
+
+    private static final boolean[] MONTH_RESOLUTION = {false, false, false, false, true};
+
+    private STHAccumulator createAccumulator() {
+        STHAccumulator accumulator = new STHAccumulator();
+        accumulator.add(System.currentTimeMillis(), "Room1", "Room", "temperature", "Number", 26.5);
+        return accumulator;
+    } // createAccumulator
+
+    @SuppressWarnings("unchecked")
+    private MongoCollection<Document> createCollection() {
+        return Mockito.mock(MongoCollection.class);
+    } // createCollection
+
+    private MongoBackendImpl createBackend(MongoCollection<Document> collection) {
+        final MongoDatabase db = Mockito.mock(MongoDatabase.class);
+        Mockito.when(db.getCollection("coll")).thenReturn(collection);
+        return new MongoBackendImpl(null, "localhost:27017", null, null, null, null, DataModel.DMBYENTITY, false,
+                false, null, null, null, null) {
+            @Override
+            protected synchronized MongoDatabase getDatabase(String dbName) {
+                return db;
+            } // getDatabase
+        };
+    } // createBackend
+
+    /**
+     * Records the bulk writes done to the given collection, returning the given results in order.
+     * @param collection
+     * @param results
+     * @return The recorded bulk writes
+     */
+    private List<List<WriteModel<Document>>> recordBulkWrites(MongoCollection<Document> collection,
+            BulkWriteResult... results) {
+        final List<List<WriteModel<Document>>> writes = new ArrayList<>();
+        final LinkedList<BulkWriteResult> pendingResults = new LinkedList<>(Arrays.asList(results));
+        Mockito.when(collection.bulkWrite(ArgumentMatchers.<List<WriteModel<Document>>>any(),
+                ArgumentMatchers.any(BulkWriteOptions.class))).thenAnswer(invocation -> {
+                    List<WriteModel<Document>> bulk = invocation.getArgument(0);
+                    writes.add(new ArrayList<>(bulk));
+                    return pendingResults.poll();
+                });
+        return writes;
+    } // recordBulkWrites
+
+    /**
+     * Creates an acknowledged bulk write result.
+     * @param matched The number of matched writes
+     * @param upserts The indexes of the upserted documents
+     * @return An acknowledged bulk write result
+     */
+    private BulkWriteResult createResult(int matched, int... upserts) {
+        List<BulkWriteUpsert> upserted = new ArrayList<>();
+
+        for (int upsert : upserts) {
+            upserted.add(new BulkWriteUpsert(upsert, new BsonInt32(upsert)));
+        } // for
+
+        return BulkWriteResult.acknowledged(0, matched, 0, matched, upserted);
+    } // createResult
+
+    private boolean isUpsert(WriteModel<Document> write) {
+        return ((UpdateOneModel<Document>) write).getOptions().isUpsert();
+    } // isUpsert
+
 } // MongoBackendImplTest
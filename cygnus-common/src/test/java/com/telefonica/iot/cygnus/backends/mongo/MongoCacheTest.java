@@ -0,0 +1,150 @@
+/**
+ * Copyright 2026 Telefonica Investigación y Desarrollo, S.A.U
+ *
+ * This file is part of fiware-cygnus (FIWARE project).
+ *
+ * fiware-cygnus is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * fiware-cygnus is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with fiware-cygnus. If not, see
+ * http://www.gnu.org/licenses/.
+ *
+ * For those usages not covered by the GNU Affero General Public License please contact with iot_support at tid dot es
+ */
+package com.telefonica.iot.cygnus.backends.mongo;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.config.LoggerConfig;
+import org.junit.Test;
+
+import static com.telefonica.iot.cygnus.utils.CommonUtilsForTests.getTestTraceHead;
+import static org.junit.Assert.assertTrue;
+
+public class MongoCacheTest {
+
+    /**
+     * Constructor.
+     */
+    public MongoCacheTest() {
+        LoggerContext ctx = (LoggerContext) LogManager.getContext(false);
+        Configuration config = ctx.getConfiguration();
+        LoggerConfig loggerConfig = config.getLoggerConfig(LogManager.ROOT_LOGGER_NAME);
+        loggerConfig.setLevel(Level.FATAL);
+        ctx.updateLoggers();
+    } // MongoCacheTest
+    
+    /**
+     * [MongoCache.addCollection] -------- A collection is added if not existing in the cache.
+     */
+    @Test
+    public void testAddCollectionNotExisting() {
+        System.out.println(getTestTraceHead("[MongoCache.addCollection]")
+                + "-------- A collection is added if not existing in the cache");
+        MongoCache cache = new MongoCache(60000, 100);
+        boolean added1 = cache.addCollection("dataBase", "collection");
+        boolean added2 = cache.addCollection("dataBase", "collection");
+        
+        try {
+            assertTrue(added1 && !added2);
+            assertTrue(cache.isCachedCollection("dataBase", "collection"));
+            assertTrue(!cache.isCachedCollection("dataBase", "collection2"));
+            assertTrue(!cache.isCachedCollection("dataBase2", "collection"));
+            System.out.println(getTestTraceHead("[MongoCache.addCollection]")
+                    + "-  OK  - The collection was added once");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[MongoCache.addCollection]")
+                    + "- FAIL - The collection was not added once");
+            throw e;
+        } // try catch
+    } // testAddCollectionNotExisting
+    
+    /**
+     * [MongoCache.isCachedCollection] -------- A collection is not cached anymore once expired.
+     */
+    @Test
+    public void testIsCachedCollectionExpired() {
+        System.out.println(getTestTraceHead("[MongoCache.isCachedCollection]")
+                + "-------- A collection is not cached anymore once expired");
+        MongoCache cache = new MongoCache(1, 100);
+        cache.addCollection("dataBase", "collection");
+        
+        try {
+            Thread.sleep(10);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } // try catch
+        
+        try {
+            assertTrue(!cache.isCachedCollection("dataBase", "collection"));
+            assertTrue(!new MongoCache(0, 100).addCollection("dataBase", "collection"));
+            System.out.println(getTestTraceHead("[MongoCache.isCachedCollection]")
+                    + "-  OK  - The collection is not cached anymore");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[MongoCache.isCachedCollection]")
+                    + "- FAIL - The collection is still cached");
+            throw e;
+        } // try catch
+    } // testIsCachedCollectionExpired
+    
+    /**
+     * [MongoCache.removeCollection] -------- Collections are removed one by one or by database.
+     */
+    @Test
+    public void testRemoveCollection() {
+        System.out.println(getTestTraceHead("[MongoCache.removeCollection]")
+                + "-------- Collections are removed one by one or by database");
+        MongoCache cache = new MongoCache(60000, 100);
+        cache.addCollection("dataBase", "collection1");
+        cache.addCollection("dataBase", "collection2");
+        cache.addCollection("dataBase2", "collection1");
+        boolean removed1 = cache.removeCollection("dataBase", "collection1");
+        boolean removed2 = cache.removeCollection("dataBase", "collection1");
+        cache.removeDataBase("dataBase");
+        
+        try {
+            assertTrue(removed1 && !removed2);
+            assertTrue(!cache.isCachedCollection("dataBase", "collection2"));
+            assertTrue(cache.isCachedCollection("dataBase2", "collection1"));
+            System.out.println(getTestTraceHead("[MongoCache.removeCollection]")
+                    + "-  OK  - The collections were removed");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[MongoCache.removeCollection]")
+                    + "- FAIL - The collections were not removed");
+            throw e;
+        } // try catch
+    } // testRemoveCollection
+    
+    /**
+     * [MongoCache.addCollection] -------- The least recently used collection is removed when the cache is full.
+     */
+    @Test
+    public void testAddCollectionFull() {
+        System.out.println(getTestTraceHead("[MongoCache.addCollection]")
+                + "-------- The least recently used collection is removed when the cache is full");
+        MongoCache cache = new MongoCache(60000, 2);
+        cache.addCollection("dataBase", "collection1");
+        cache.addCollection("dataBase", "collection2");
+        cache.isCachedCollection("dataBase", "collection1");
+        cache.addCollection("dataBase", "collection3");
+        
+        try {
+            assertTrue(cache.isCachedCollection("dataBase", "collection1"));
+            assertTrue(!cache.isCachedCollection("dataBase", "collection2"));
+            assertTrue(cache.isCachedCollection("dataBase", "collection3"));
+            System.out.println(getTestTraceHead("[MongoCache.addCollection]")
+                    + "-  OK  - The least recently used collection was removed");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[MongoCache.addCollection]")
+                    + "- FAIL - The least recently used collection was not removed");
+            throw e;
+        } // try catch
+    } // testAddCollectionFull
+    
+} // MongoCacheTest
@@ -0,0 +1,170 @@
+/**
+ * Copyright 2026 Telefonica Investigación y Desarrollo, S.A.U
+ *
+ * This file is part of fiware-cygnus (FIWARE project).
+ *
+ * fiware-cygnus is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * fiware-cygnus is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with fiware-cygnus. If not, see
+ * http://www.gnu.org/licenses/.
+ *
+ * For those usages not covered by the GNU Affero General Public License please contact with iot_support at tid dot es
+ */
+package com.telefonica.iot.cygnus.backends.mongo;
+
+import static com.telefonica.iot.cygnus.utils.CommonUtilsForTests.getTestTraceHead;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import org.junit.Test;
+
+/**
+ * Tests of the in memory folding of STH samples.
+ */
+public class STHAccumulatorTest {
+
+    private static final double DELTA = 0.000001;
+
+    /**
+     * [STHAccumulator.add] -------- Numeric samples within the same second are folded into a single point.
+     */
+    @Test
+    public void testAddNumericSamples() {
+        System.out.println(getTestTraceHead("[STHAccumulator.add]")
+                + "-------- Numeric samples within the same second are folded into a single point");
+        STHAccumulator accumulator = new STHAccumulator();
+        accumulator.add(1000, "Room1", "Room", "temperature", "Number", 2);
+        accumulator.add(1500, "Room1", "Room", "temperature", "Number", -3);
+        accumulator.add(1999, "Room1", "Room", "temperature", "Number", 5);
+        accumulator.add(2000, "Room1", "Room", "temperature", "Number", 7);
+        accumulator.add(1200, "Room2", "Room", "temperature", "Number", 1);
+        ArrayList<STHAccumulator.Point> points = new ArrayList<>(accumulator.getPoints());
+
+        try {
+            assertEquals(3, points.size());
+            STHAccumulator.Point point = points.get(0);
+            assertEquals(1000, point.getRecvTimeTs());
+            assertEquals(5, point.getMax(), DELTA);
+            assertEquals(-3, point.getMin(), DELTA);
+            assertEquals(4, point.getSum(), DELTA);
+            assertEquals(38, point.getSum2(), DELTA);
+            assertEquals(3, point.getNumSamples());
+            assertEquals(2000, points.get(1).getRecvTimeTs());
+            assertEquals(1, points.get(1).getNumSamples());
+            assertEquals("Room2", points.get(2).getEntityId());
+            System.out.println(getTestTraceHead("[STHAccumulator.add]")
+                    + "-  OK  - The samples were folded per entity, attribute and second");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[STHAccumulator.add]")
+                    + "- FAIL - The samples were not folded per entity, attribute and second");
+            throw e;
+        } // try catch
+    } // testAddNumericSamples
+
+    /**
+     * [STHAccumulator.add] -------- The maximum and the minimum of a point do not depend on any initial value, i.e.
+     * the maximum of negative samples is negative and the minimum of positive samples is positive.
+     */
+    @Test
+    public void testAddMaxMinStartingValues() {
+        System.out.println(getTestTraceHead("[STHAccumulator.add]")
+                + "-------- The maximum and the minimum of a point do not depend on any initial value");
+        STHAccumulator.Point empty = new STHAccumulator.Point(0, "Room1", "Room", "temperature", "Number", true);
+        STHAccumulator accumulator = new STHAccumulator();
+        accumulator.add(1000, "Room1", "Room", "temperature", "Number", -5);
+        accumulator.add(1000, "Room1", "Room", "temperature", "Number", -1);
+        accumulator.add(1000, "Room1", "Room", "pressure", "Number", 720);
+        accumulator.add(1000, "Room1", "Room", "pressure", "Number", 710, 700, 1410, 994100, 2);
+        ArrayList<STHAccumulator.Point> points = new ArrayList<>(accumulator.getPoints());
+
+        try {
+            assertEquals(Double.NEGATIVE_INFINITY, empty.getMax(), DELTA);
+            assertEquals(Double.POSITIVE_INFINITY, empty.getMin(), DELTA);
+            assertEquals(-1, points.get(0).getMax(), DELTA);
+            assertEquals(-5, points.get(0).getMin(), DELTA);
+            assertEquals(720, points.get(1).getMax(), DELTA);
+            assertEquals(700, points.get(1).getMin(), DELTA);
+            assertEquals(3, points.get(1).getNumSamples());
+            System.out.println(getTestTraceHead("[STHAccumulator.add]")
+                    + "-  OK  - The maximum and the minimum were the ones of the samples");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[STHAccumulator.add]")
+                    + "- FAIL - The maximum or the minimum were not the ones of the samples");
+            throw e;
+        } // try catch
+    } // testAddMaxMinStartingValues
+
+    /**
+     * [STHAccumulator.add] -------- String samples are counted per value, and they are not mixed with the numeric
+     * samples of the same attribute.
+     */
+    @Test
+    public void testAddStringSamples() {
+        System.out.println(getTestTraceHead("[STHAccumulator.add]")
+                + "-------- String samples are counted per value, and they are not mixed with the numeric samples "
+                + "of the same attribute");
+        STHAccumulator accumulator = new STHAccumulator();
+        accumulator.add(1000, "Room1", "Room", "status", "Text", "on");
+        accumulator.add(1100, "Room1", "Room", "status", "Text", "off");
+        HashMap<String, Integer> counts = new HashMap<>();
+        counts.put("on", 2);
+        accumulator.add(1200, "Room1", "Room", "status", "Text", counts);
+        accumulator.add(1300, "Room1", "Room", "status", "Text", 1);
+        ArrayList<STHAccumulator.Point> points = new ArrayList<>(accumulator.getPoints());
+
+        try {
+            assertEquals(2, points.size());
+            assertTrue(!points.get(0).isNumeric());
+            assertEquals(3, (int) points.get(0).getCounts().get("on"));
+            assertEquals(1, (int) points.get(0).getCounts().get("off"));
+            assertEquals(4, points.get(0).getNumSamples());
+            assertTrue(points.get(1).isNumeric());
+            assertEquals(1, points.get(1).getNumSamples());
+            System.out.println(getTestTraceHead("[STHAccumulator.add]")
+                    + "-  OK  - The string samples were counted per value");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[STHAccumulator.add]")
+                    + "- FAIL - The string samples were not counted per value");
+            throw e;
+        } // try catch
+    } // testAddStringSamples
+
+    /**
+     * [STHAccumulator.Point.merge] -------- Merging points keeps the maximum, the minimum and the sums of both.
+     */
+    @Test
+    public void testMerge() {
+        System.out.println(getTestTraceHead("[STHAccumulator.Point.merge]")
+                + "-------- Merging points keeps the maximum, the minimum and the sums of both");
+        STHAccumulator accumulator = new STHAccumulator();
+        accumulator.add(1000, "Room1", "Room", "temperature", "Number", -2);
+        accumulator.add(2000, "Room1", "Room", "temperature", "Number", -4);
+        STHAccumulator.Point merged = new STHAccumulator.Point(0, "Room1", "Room", "temperature", "Number", true);
+
+        for (STHAccumulator.Point point : accumulator.getPoints()) {
+            merged.merge(point);
+        } // for
+
+        try {
+            assertEquals(-2, merged.getMax(), DELTA);
+            assertEquals(-4, merged.getMin(), DELTA);
+            assertEquals(-6, merged.getSum(), DELTA);
+            assertEquals(20, merged.getSum2(), DELTA);
+            assertEquals(2, merged.getNumSamples());
+            System.out.println(getTestTraceHead("[STHAccumulator.Point.merge]")
+                    + "-  OK  - The merged point keeps the aggregations of both points");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[STHAccumulator.Point.merge]")
+                    + "- FAIL - The merged point does not keep the aggregations of both points");
+            throw e;
+        } // try catch
+    } // testMerge
+
+} // STHAccumulatorTest
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2026 Telefonica Investigación y Desarrollo, S.A.U
+ *
+ * This file is part of fiware-cygnus (FIWARE project).
+ *
+ * fiware-cygnus is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * fiware-cygnus is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with fiware-cygnus. If not, see
+ * http://www.gnu.org/licenses/.
+ *
+ * For those usages not covered by the GNU Affero General Public License please contact with iot_support at tid dot es
+ */
+package com.telefonica.iot.cygnus.backends.orion;
+
+import static com.telefonica.iot.cygnus.utils.CommonUtilsForTests.getTestTraceHead;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.http.Header;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import com.telefonica.iot.cygnus.backends.http.JsonResponse;
+import com.telefonica.iot.cygnus.errors.CygnusBadAuthorization;
+import com.telefonica.iot.cygnus.errors.CygnusPersistenceError;
+
+/**
+ * Tests of the context updates done by OrionBackendImpl.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class OrionBackendImplTest {
+
+    private final String host = "localhost";
+    private final String port = "1026";
+    private final int maxConns = 50;
+    private final int maxConnsPerRoute = 10;
+
+    /**
+     * [OrionBackendImpl.updateRemoteContexts] -------- The entities are appended in a single /v2/op/update request.
+     */
+    @Test
+    public void testUpdateRemoteContextsBody() throws Exception {
+        System.out.println(getTestTraceHead("[OrionBackendImpl.updateRemoteContexts]")
+                + "-------- The entities are appended in a single /v2/op/update request");
+        OrionBackendImpl backend = createBackend(204);
+        List<JSONObject> entities = new ArrayList<JSONObject>();
+        entities.add(new JSONObject("{\"id\":\"Room1\",\"type\":\"Room\","
+                + "\"temperature\":{\"type\":\"Number\",\"value\":26}}"));
+        entities.add(new JSONObject("{\"id\":\"Room2\",\"type\":\"Room\","
+                + "\"temperature\":{\"type\":\"Number\",\"value\":27}}"));
+        backend.updateRemoteContexts(entities, "token", "service", "/path");
+        ArgumentCaptor<StringEntity> captor = ArgumentCaptor.forClass(StringEntity.class);
+        Mockito.verify(backend).doRequest(ArgumentMatchers.eq("POST"), ArgumentMatchers.eq("/v2/op/update"),
+                ArgumentMatchers.eq(true), ArgumentMatchers.<ArrayList<Header>>any(), captor.capture());
+        JSONObject body = new JSONObject(EntityUtils.toString(captor.getValue()));
+
+        try {
+            assertEquals("append", body.getString("actionType"));
+            JSONArray sentEntities = body.getJSONArray("entities");
+            assertEquals(2, sentEntities.length());
+            assertEquals("Room1", sentEntities.getJSONObject(0).getString("id"));
+            assertEquals(27, sentEntities.getJSONObject(1).getJSONObject("temperature").getInt("value"));
+            System.out.println(getTestTraceHead("[OrionBackendImpl.updateRemoteContexts]")
+                    + "-  OK  - The body appends the given entities");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[OrionBackendImpl.updateRemoteContexts]")
+                    + "- FAIL - The body does not append the given entities: " + body);
+            throw e;
+        } // try catch
+    } // testUpdateRemoteContextsBody
+
+    /**
+     * [OrionBackendImpl.updateRemoteContexts] -------- A 401 response throws a CygnusBadAuthorization.
+     */
+    @Test
+    public void testUpdateRemoteContextsUnauthorized() throws Exception {
+        System.out.println(getTestTraceHead("[OrionBackendImpl.updateRemoteContexts]")
+                + "-------- A 401 response throws a CygnusBadAuthorization");
+        OrionBackendImpl backend = createBackend(401);
+
+        try {
+            backend.updateRemoteContexts(new ArrayList<JSONObject>(), "token", "service", "/path");
+            fail("No CygnusBadAuthorization was thrown");
+        } catch (CygnusBadAuthorization e) {
+            System.out.println(getTestTraceHead("[OrionBackendImpl.updateRemoteContexts]")
+                    + "-  OK  - A CygnusBadAuthorization was thrown");
+        } // try catch
+    } // testUpdateRemoteContextsUnauthorized
+
+    /**
+     * [OrionBackendImpl.updateRemoteContexts] -------- A response other than 200 or 204 throws a
+     * CygnusPersistenceError.
+     */
+    @Test
+    public void testUpdateRemoteContextsError() throws Exception {
+        System.out.println(getTestTraceHead("[OrionBackendImpl.updateRemoteContexts]")
+                + "-------- A response other than 200 or 204 throws a CygnusPersistenceError");
+        OrionBackendImpl backend = createBackend(500);
+
+        try {
+            backend.updateRemoteContexts(new ArrayList<JSONObject>(), "token", "service", "/path");
+            fail("No CygnusPersistenceError was thrown");
+        } catch (CygnusPersistenceError e) {
+            System.out.println(getTestTraceHead("[OrionBackendImpl.updateRemoteContexts]")
+                    + "-  OK  - A CygnusPersistenceError was thrown");
+        } // try catch
+    } // testUpdateRemoteContextsError
+
+    private OrionBackendImpl createBackend(int statusCode) throws Exception {
+        OrionBackendImpl backend = Mockito.spy(new OrionBackendImpl(host, port, false, maxConns, maxConnsPerRoute));
+        Mockito.doReturn(new JsonResponse(null, statusCode, "reason", null)).when(backend).doRequest(
+                ArgumentMatchers.anyString(), ArgumentMatchers.anyString(), ArgumentMatchers.anyBoolean(),
+                ArgumentMatchers.<ArrayList<Header>>any(), ArgumentMatchers.any(StringEntity.class));
+        return backend;
+    } // createBackend
+
+} // OrionBackendImplTest
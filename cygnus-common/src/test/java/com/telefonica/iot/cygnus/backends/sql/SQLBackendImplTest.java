@@ -20,6 +20,7 @@ package com.telefonica.iot.cygnus.backends.sql;
 
 import com.telefonica.iot.cygnus.backends.sql.SQLBackendImpl.SQLDriver;
 import com.telefonica.iot.cygnus.backends.sql.Enum.SQLInstance;
+import com.telefonica.iot.cygnus.backends.sql.Enum.SQLInsertMode;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -28,7 +29,13 @@ import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -163,6 +170,117 @@ public class SQLBackendImplTest {
         } // try catch finally
     } // testCreateTable
 
+    /**
+     * Test of capRecords method, of class SQLBackendImpl.
+     */
+    @Test
+    public void testCapRecords() {
+        System.out.println("Testing SQLBackendImpl.capRecords (oldest records deleted by the database in chunks)");
+        String oldestKeptRecvTime = "2016-04-20T07:19:55.801Z";
+
+        try {
+            SQLDriver mockDriver = Mockito.mock(SQLDriver.class);
+            Connection mockCapConnection = Mockito.mock(Connection.class);
+            Statement mockSelectStatement = Mockito.mock(Statement.class);
+            ResultSet mockResultSet = Mockito.mock(ResultSet.class);
+            ResultSetMetaData mockMetaData = Mockito.mock(ResultSetMetaData.class);
+            PreparedStatement mockDeleteStatement = Mockito.mock(PreparedStatement.class);
+            when(mockDriver.getConnection(Mockito.anyString())).thenReturn(mockCapConnection);
+            when(mockCapConnection.createStatement()).thenReturn(mockSelectStatement);
+            when(mockSelectStatement.executeQuery(Mockito.anyString())).thenReturn(mockResultSet);
+            when(mockResultSet.getMetaData()).thenReturn(mockMetaData);
+            when(mockMetaData.getColumnType(1)).thenReturn(Types.VARCHAR);
+            when(mockResultSet.next()).thenReturn(true, false);
+            when(mockResultSet.getString(1)).thenReturn(oldestKeptRecvTime);
+            when(mockCapConnection.prepareStatement(Mockito.anyString())).thenReturn(mockDeleteStatement);
+            when(mockDeleteStatement.executeUpdate()).thenReturn(2, 1);
+
+            backend.setDriver(mockDriver);
+            backend.setDeleteChunkSize(2);
+            backend.capRecords(dbName1, null, tableName1, 100);
+
+            Mockito.verify(mockSelectStatement).executeQuery("select recvTime from `" + tableName1
+                    + "` order by recvTime desc limit 1 offset 99");
+            Mockito.verify(mockCapConnection).prepareStatement("delete from `" + tableName1
+                    + "` where recvTime < ? order by recvTime limit 2");
+            Mockito.verify(mockDeleteStatement).setObject(1, oldestKeptRecvTime);
+            Mockito.verify(mockDeleteStatement, Mockito.times(2)).executeUpdate();
+        } catch (Exception e) {
+            fail(e.getMessage());
+        } // try catch
+    } // testCapRecords
+
+    /**
+     * Test of expirateRecordsCache method, of class SQLBackendImpl.
+     */
+    @Test
+    public void testExpirateRecordsCacheTimestamp() {
+        System.out.println("Testing SQLBackendImpl.expirateRecordsCache (reception times read as timestamps)");
+        Timestamp expiredRecvTime = new Timestamp(System.currentTimeMillis() - 3600000);
+        Timestamp notExpiredRecvTime = new Timestamp(System.currentTimeMillis());
+
+        try {
+            ResultSet mockResultSet = Mockito.mock(ResultSet.class);
+            ResultSetMetaData mockMetaData = Mockito.mock(ResultSetMetaData.class);
+            PreparedStatement mockDeleteStatement = Mockito.mock(PreparedStatement.class);
+            when(mockStatement.executeQuery(Mockito.anyString())).thenReturn(mockResultSet);
+            when(mockResultSet.getMetaData()).thenReturn(mockMetaData);
+            when(mockMetaData.getColumnType(1)).thenReturn(Types.TIMESTAMP);
+            when(mockResultSet.next()).thenReturn(true, true, false);
+            when(mockResultSet.getTimestamp(1)).thenReturn(expiredRecvTime, notExpiredRecvTime);
+            when(mockConnection.prepareStatement(Mockito.anyString())).thenReturn(mockDeleteStatement);
+            when(mockDeleteStatement.executeUpdate()).thenReturn(1);
+
+            backend.setDriver(mockDriverTableCreate);
+            backend.setDeleteChunkSize(0);
+            backend.createDestination(dbName1);
+            backend.createTable(dbName1, null, tableName1, fieldNames1);
+            backend.expirateRecordsCache(60);
+
+            Mockito.verify(mockStatement).executeQuery("select recvTime from `" + tableName1
+                    + "` order by recvTime asc limit 4096 offset 0");
+            Mockito.verify(mockResultSet, Mockito.never()).getObject(1);
+            Mockito.verify(mockConnection).prepareStatement("delete from `" + tableName1 + "` where recvTime <= ?");
+            Mockito.verify(mockDeleteStatement).setObject(1, expiredRecvTime);
+            Mockito.verify(mockDeleteStatement).executeUpdate();
+        } catch (Exception e) {
+            fail(e.getMessage());
+        } // try catch
+    } // testExpirateRecordsCacheTimestamp
+
+    @Test(timeout = 10000)
+    public void testExpirateRecordsCacheNothingDeleted() {
+        System.out.println("Testing SQLBackendImpl.expirateRecordsCache (stops if expired records cannot be deleted)");
+        final Timestamp expiredRecvTime = new Timestamp(System.currentTimeMillis() - 3600000);
+
+        try {
+            ResultSet mockResultSet = Mockito.mock(ResultSet.class);
+            ResultSetMetaData mockMetaData = Mockito.mock(ResultSetMetaData.class);
+            PreparedStatement mockDeleteStatement = Mockito.mock(PreparedStatement.class);
+            final AtomicInteger rows = new AtomicInteger();
+            when(mockStatement.executeQuery(Mockito.anyString())).thenReturn(mockResultSet);
+            when(mockResultSet.getMetaData()).thenReturn(mockMetaData);
+            when(mockMetaData.getColumnType(1)).thenReturn(Types.TIMESTAMP);
+            // Every page is full of expired records, as when they cannot be deleted
+            when(mockResultSet.next()).thenAnswer(invocation -> rows.incrementAndGet() % 3 != 0);
+            when(mockResultSet.getTimestamp(1)).thenReturn(expiredRecvTime);
+            when(mockConnection.prepareStatement(Mockito.anyString())).thenReturn(mockDeleteStatement);
+            when(mockDeleteStatement.executeUpdate()).thenReturn(0);
+
+            backend.setDriver(mockDriverTableCreate);
+            backend.setDeleteChunkSize(2);
+            backend.createDestination(dbName1);
+            backend.createTable(dbName1, null, tableName1, fieldNames1);
+            backend.expirateRecordsCache(60);
+
+            Mockito.verify(mockStatement, Mockito.times(1)).executeQuery("select recvTime from `" + tableName1
+                    + "` order by recvTime asc limit 2 offset 0");
+            Mockito.verify(mockDeleteStatement, Mockito.times(1)).executeUpdate();
+        } catch (Exception e) {
+            fail(e.getMessage());
+        } // try catch
+    } // testExpirateRecordsCacheNothingDeleted
+
     @Test
     public void testJDBCUrlMySQL() {
         System.out.println("Testing SQLBackendImpl.SQLDriver.generateJDBCUrl (sqlInstance:mysql)");
@@ -291,4 +409,32 @@ public class SQLBackendImplTest {
         assertEquals(driver.generateJDBCUrl(destination), "jdbc:postgresql://localhost:5432/default");
     } // testJDBCUrlPostgreSQLWithOptions
 
+    @Test
+    public void testJDBCUrlBatchInsertMode() {
+        System.out.println("Testing SQLBackendImpl.SQLDriver.generateJDBCUrl (sqlInstance:mysql, insertMode:batch)");
+        String sqlHost = "localhost";
+        String sqlPort = "3306";
+        String sqlDriverName = "com.mysql.jdbc.Driver";
+        String destination = "dest";
+
+        SQLBackendImpl backend = new SQLBackendImpl(sqlHost, sqlPort, user, password, maxPoolSize, maxPoolIdle, minPoolIdle, minPoolIdleTimeMillis, SQLInstance.MYSQL, sqlDriverName, null, persistErrors, maxLatestErrors);
+        backend.setInsertMode(SQLInsertMode.BATCH);
+        assertEquals("jdbc:mysql://localhost:3306/dest?rewriteBatchedStatements=true", backend.getDriver().generateJDBCUrl(destination));
+
+        System.out.println("Testing SQLBackendImpl.SQLDriver.generateJDBCUrl (sqlInstance:mysql, insertMode:batch, options:useSSL=true)");
+        backend = new SQLBackendImpl(sqlHost, sqlPort, user, password, maxPoolSize, maxPoolIdle, minPoolIdle, minPoolIdleTimeMillis, SQLInstance.MYSQL, sqlDriverName, "useSSL=true", persistErrors, maxLatestErrors);
+        backend.setInsertMode(SQLInsertMode.BATCH);
+        assertEquals("jdbc:mysql://localhost:3306/dest?useSSL=true&rewriteBatchedStatements=true", backend.getDriver().generateJDBCUrl(destination));
+
+        System.out.println("Testing SQLBackendImpl.SQLDriver.generateJDBCUrl (sqlInstance:mysql, insertMode:batch, options:rewriteBatchedStatements=false)");
+        backend = new SQLBackendImpl(sqlHost, sqlPort, user, password, maxPoolSize, maxPoolIdle, minPoolIdle, minPoolIdleTimeMillis, SQLInstance.MYSQL, sqlDriverName, "rewriteBatchedStatements=false", persistErrors, maxLatestErrors);
+        backend.setInsertMode(SQLInsertMode.BATCH);
+        assertEquals("jdbc:mysql://localhost:3306/dest?rewriteBatchedStatements=false", backend.getDriver().generateJDBCUrl(destination));
+
+        System.out.println("Testing SQLBackendImpl.SQLDriver.generateJDBCUrl (sqlInstance:postgresql, insertMode:batch)");
+        backend = new SQLBackendImpl(sqlHost, "5432", user, password, maxPoolSize, maxPoolIdle, minPoolIdle, minPoolIdleTimeMillis, SQLInstance.POSTGRESQL, "org.postgresql.Driver", null, persistErrors, maxLatestErrors);
+        backend.setInsertMode(SQLInsertMode.BATCH);
+        assertEquals("jdbc:postgresql://localhost:5432/" + destination + "?reWriteBatchedInserts=true", backend.getDriver().generateJDBCUrl(destination));
+    } // testJDBCUrlBatchInsertMode
+
 } // SQLBackendImplTest
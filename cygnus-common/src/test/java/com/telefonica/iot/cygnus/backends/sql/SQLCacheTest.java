@@ -24,7 +24,15 @@ import org.apache.logging.log4j.core.config.Configuration;
 import org.apache.logging.log4j.core.config.LoggerConfig;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import static com.telefonica.iot.cygnus.utils.CommonUtilsForTests.getTestTraceHead;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 public class SQLCacheTest {
@@ -322,4 +330,60 @@ public class SQLCacheTest {
         } // try catch
     } // testTableIterationMethods
     
+    /**
+     * [SQLCache.addTable] -------- A table concurrently added by several persistence workers is added only once.
+     */
+    @Test
+    public void testAddTableConcurrently() throws Exception {
+        System.out.println(getTestTraceHead("[SQLCache.addTable]")
+                + "-------- A table concurrently added by several persistence workers is added only once");
+        final SQLCache cache = new SQLCache();
+        final String dataBase = "dataBase";
+        final int numWorkers = 8;
+        final int numTables = 100;
+        ExecutorService workers = Executors.newFixedThreadPool(numWorkers);
+        List<Future<Integer>> futures = new ArrayList<>();
+        
+        for (int i = 0; i < numWorkers; i++) {
+            futures.add(workers.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    int added = 0;
+                    cache.addDataBase(dataBase);
+                    
+                    for (int j = 0; j < numTables; j++) {
+                        if (cache.addTable(dataBase, "tablename" + j)) {
+                            added++;
+                        } // if
+                    } // for
+                    
+                    return added;
+                } // call
+            }));
+        } // for
+        
+        int totalAdded = 0;
+        
+        for (Future<Integer> future : futures) {
+            totalAdded += future.get();
+        } // for
+        
+        workers.shutdown();
+        
+        try {
+            assertEquals(numTables, totalAdded);
+            
+            for (int j = 0; j < numTables; j++) {
+                assertTrue(cache.isCachedTable(dataBase, "tablename" + j));
+            } // for
+            
+            System.out.println(getTestTraceHead("[SQLCache.addTable]")
+                    + "-  OK  - Each table was added only once");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[SQLCache.addTable]")
+                    + "- FAIL - Some table was added several times or not added");
+            throw e;
+        } // try catch
+    } // testAddTableConcurrently
+    
 } // SQLCacheTest
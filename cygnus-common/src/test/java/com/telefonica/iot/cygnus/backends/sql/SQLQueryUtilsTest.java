@@ -26,6 +26,7 @@ import com.telefonica.iot.cygnus.backends.sql.Enum.SQLInstance;
 
 import static com.telefonica.iot.cygnus.utils.CommonUtilsForTests.getTestTraceHead;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
@@ -537,6 +538,98 @@ public class SQLQueryUtilsTest {
 
     }
 
+    @Test
+    public void testPreparedInsertQuery() {
+        LinkedHashMap<String, ArrayList<JsonElement>> aggregation = getValueFieldsSingleBatch();
+        StringBuffer sqlPreparedQuery = SQLQueryUtils.sqlPreparedInsertQuery(aggregation.keySet(),
+                "exampleTable",
+                SQLInstance.POSTGRESQL,
+                "example");
+
+        String correctPostgreSQLQuery = "INSERT INTO example.exampleTable " +
+                "(recvTime,recvTimeS,fiwareServicePath,entityId,entityType,loadStr,loadBool,loadNumber,load_md) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+        try {
+            assertEquals(correctPostgreSQLQuery, sqlPreparedQuery.toString().trim());
+            System.out.println(getTestTraceHead("[NGSISQLUtilsTest.testPreparedInsertQuery]")
+                    + "-  OK  - PostgreSQL prepared insert query is the expected one");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[NGSISQLUtilsTest.testPreparedInsertQuery]")
+                    + "- FAIL - PostgreSQL prepared insert query is not the expected one");
+            throw e;
+        }
+
+        sqlPreparedQuery = SQLQueryUtils.sqlPreparedInsertQuery(aggregation.keySet(),
+                "exampleTable",
+                SQLInstance.MYSQL,
+                null);
+
+        String correctMySQLQuery = "INSERT INTO `exampleTable` " +
+                "(`recvTime`,`recvTimeS`,`fiwareServicePath`,`entityId`,`entityType`,`loadStr`,`loadBool`,`loadNumber`,`load_md`) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+        try {
+            assertEquals(correctMySQLQuery, sqlPreparedQuery.toString().trim());
+            System.out.println(getTestTraceHead("[NGSISQLUtilsTest.testPreparedInsertQuery]")
+                    + "-  OK  - MySQL prepared insert query is the expected one");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[NGSISQLUtilsTest.testPreparedInsertQuery]")
+                    + "- FAIL - MySQL prepared insert query is not the expected one");
+            throw e;
+        }
+    }
+
+    @Test
+    public void testCopyQueryAndValues() {
+        LinkedHashMap<String, ArrayList<JsonElement>> aggregation = getValueFieldsSingleBatch();
+        ArrayList<JsonElement> loadQuoted = new ArrayList<>();
+        loadQuoted.add(new JsonPrimitive("say \"hi\", bye"));
+        aggregation.put("loadQuoted", loadQuoted);
+        ArrayList<JsonElement> loadNull = new ArrayList<>();
+        loadNull.add(null);
+        aggregation.put("loadNull", loadNull);
+
+        String correctQuery = "COPY example.exampleTable " +
+                "(recvTime,recvTimeS,fiwareServicePath,entityId,entityType,loadStr,loadBool,loadNumber,load_md,loadQuoted,loadNull) " +
+                "FROM STDIN WITH (FORMAT csv)";
+        String correctNativeValues = "1461136795801,\"2016-04-20 07:19:55.801\",\"somePath1\",\"entityId1\",\"entityType\"," +
+                "\"load1\",true,1,\"load_md\",\"say \"\"hi\"\", bye\",\n";
+        String correctStringValues = "\"1461136795801\",\"2016-04-20 07:19:55.801\",\"somePath1\",\"entityId1\",\"entityType\"," +
+                "\"load1\",\"true\",\"1\",\"load_md\",\"say \"\"hi\"\", bye\",\"NULL\"\n";
+
+        try {
+            assertEquals(correctQuery, SQLQueryUtils.sqlCopyQuery(aggregation.keySet(), "exampleTable", "example").toString());
+            assertEquals(correctNativeValues, SQLQueryUtils.getCopyValues(aggregation, true));
+            assertEquals(correctStringValues, SQLQueryUtils.getCopyValues(aggregation, false));
+            System.out.println(getTestTraceHead("[NGSISQLUtilsTest.testCopyQueryAndValues]")
+                    + "-  OK  - Copy query and CSV values are the expected ones");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[NGSISQLUtilsTest.testCopyQueryAndValues]")
+                    + "- FAIL - Copy query and CSV values are not the expected ones");
+            throw e;
+        }
+    }
+
+    @Test
+    public void testHasSQLFunctionValues() {
+        LinkedHashMap<String, ArrayList<JsonElement>> aggregation = getValueFieldsSingleBatch();
+
+        try {
+            assertTrue(!SQLQueryUtils.hasSQLFunctionValues(aggregation));
+            ArrayList<JsonElement> location = new ArrayList<>();
+            location.add(new JsonPrimitive("ST_SetSRID(ST_MakePoint(-3.7167, 40.3833), 4326)"));
+            aggregation.put("location", location);
+            assertTrue(SQLQueryUtils.hasSQLFunctionValues(aggregation));
+            System.out.println(getTestTraceHead("[NGSISQLUtilsTest.testHasSQLFunctionValues]")
+                    + "-  OK  - SQL function values are detected");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[NGSISQLUtilsTest.testHasSQLFunctionValues]")
+                    + "- FAIL - SQL function values are not detected");
+            throw e;
+        }
+    }
+
     @Test
     public void testPostgreSQLInsertQueryMultipleBatch() {
         String tableName = "exampleTable";
@@ -13,6 +13,7 @@ import org.apache.logging.log4j.core.LoggerContext;
 import org.apache.logging.log4j.core.config.Configuration;
 import org.apache.logging.log4j.core.config.LoggerConfig;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 
 /**
@@ -594,4 +595,159 @@ public class CygnusMetricsTest {
         } // try catch
     } // testToJsonString
     
+    /**
+     * [CygnusMetrics.add] -------- Values concurrently added are not lost, even if the metrics are read meanwhile.
+     */
+    @Test
+    public void testConcurrentAdd() throws InterruptedException {
+        System.out.println(getTestTraceHead("[CygnusMetrics.add]")
+                + " - Values concurrently added are not lost, even if the metrics are read meanwhile");
+        
+        final CygnusMetrics metrics = new CygnusMetrics();
+        final int numThreads = 8;
+        final int numAdds = 10000;
+        Thread[] threads = new Thread[numThreads];
+        
+        for (int i = 0; i < numThreads; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < numAdds; j++) {
+                        metrics.add("service" + (j % 3), "/subservice" + (j % 5), 1, 10, 0, 0, 0, 1, 0, 0, 0);
+                    } // for
+                } // run
+            });
+            threads[i].start();
+        } // for
+        
+        // Read the metrics while being updated, as the management interface does
+        for (int i = 0; i < 100; i++) {
+            CygnusMetrics mergedMetrics = new CygnusMetrics();
+            mergedMetrics.merge(metrics);
+            mergedMetrics.toJsonString();
+        } // for
+        
+        for (Thread thread : threads) {
+            thread.join();
+        } // for
+        
+        try {
+            assertEquals(numThreads * numAdds, metrics.getAllAggrMetrics().getIncomingTransactions());
+            assertEquals(numThreads * numAdds * 10, metrics.getAllAggrMetrics().getIncomingTransactionRequestSize());
+            assertEquals(numThreads * numAdds, metrics.getAllAggrMetrics().getOutgoingTransactions());
+            System.out.println(getTestTraceHead("[CygnusMetrics.add]")
+                    + " -  OK  - No concurrently added value was lost");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[CygnusMetrics.add]")
+                    + " - FAIL - Some concurrently added values were lost");
+            throw e;
+        } // try catch
+    } // testConcurrentAdd
+    
+    /**
+     * [CygnusMetrics.addLatencies] -------- Latencies are added per sink and destination, and given as percentiles.
+     */
+    @Test
+    public void testAddLatencies() {
+        System.out.println(getTestTraceHead("[CygnusMetrics.addLatencies]")
+                + " - Latencies are added per sink and destination, and given as percentiles");
+        
+        CygnusMetrics metrics = new CygnusMetrics();
+        long[] endToEndLatencies = new long[100];
+        
+        for (int i = 0; i < endToEndLatencies.length; i++) {
+            endToEndLatencies[i] = i + 1;
+        } // for
+        
+        metrics.addLatencies("sink1", "destination1", 5, endToEndLatencies);
+        metrics.addLatencies("sink1", "destination1", 7, new long[] {2});
+        CygnusMetrics.Latencies latencies = metrics.getSinkDestinationLatencies("sink1", "destination1");
+        
+        try {
+            assertEquals(101, latencies.getEndToEndLatency().getCount());
+            assertEquals(100, latencies.getEndToEndLatency().getMax());
+            assertTrue(Math.abs(latencies.getEndToEndLatency().getPercentile(50) - 50) <= 50 / 8);
+            assertTrue(Math.abs(latencies.getEndToEndLatency().getPercentile(99) - 99) <= 99 / 8);
+            assertEquals(2, latencies.getPersistenceTime().getCount());
+            assertEquals(7, latencies.getPersistenceTime().getMax());
+            assertEquals(100, latencies.getBatchSize().getMax());
+            assertEquals(null, metrics.getSinkDestinationLatencies("sink1", "destination2"));
+            assertTrue(metrics.toJsonString().endsWith(",\"latencies\":{\"sink1\":{\"destination1\":"
+                    + latencies.toJsonString() + "}}}"));
+            System.out.println(getTestTraceHead("[CygnusMetrics.addLatencies]")
+                    + " -  OK  - Latencies were added and given as percentiles");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[CygnusMetrics.addLatencies]")
+                    + " - FAIL - Latencies were not added or not given as percentiles");
+            throw e;
+        } // try catch
+    } // testAddLatencies
+    
+    /**
+     * [CygnusMetrics.addCacheStats] -------- Cache stats are added per cache, merged and given with their hit rate.
+     */
+    @Test
+    public void testAddCacheStats() {
+        System.out.println(getTestTraceHead("[CygnusMetrics.addCacheStats]")
+                + " - Cache stats are added per cache, merged and given with their hit rate");
+        
+        CygnusMetrics metrics1 = new CygnusMetrics();
+        metrics1.addCacheStats("cache1", 2, 1);
+        metrics1.addCacheStats("cache2", 0, 0);
+        CygnusMetrics metrics2 = new CygnusMetrics();
+        metrics2.addCacheStats("cache1", 4, 1);
+        CygnusMetrics merged = new CygnusMetrics();
+        merged.merge(metrics1);
+        merged.merge(metrics2);
+        CygnusMetrics.CacheStats stats = merged.getCacheStats("cache1");
+        
+        try {
+            assertEquals(6, stats.getHits());
+            assertEquals(2, stats.getMisses());
+            assertEquals(0.75, stats.getHitRate(), 0);
+            assertEquals(null, merged.getCacheStats("cache2"));
+            assertTrue(merged.toJsonString().endsWith(
+                    ",\"caches\":{\"cache1\":{\"hits\":6,\"misses\":2,\"hitRate\":0.75}}}"));
+            System.out.println(getTestTraceHead("[CygnusMetrics.addCacheStats]")
+                    + " -  OK  - Cache stats were added, merged and given with their hit rate");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[CygnusMetrics.addCacheStats]")
+                    + " - FAIL - Cache stats were not added, merged or given with their hit rate");
+            throw e;
+        } // try catch
+    } // testAddCacheStats
+    
+    /**
+     * [CygnusMetrics.addDeletionStats] -------- Deletion stats are added per sink and merged.
+     */
+    @Test
+    public void testAddDeletionStats() {
+        System.out.println(getTestTraceHead("[CygnusMetrics.addDeletionStats]")
+                + " - Deletion stats are added per sink and merged");
+        
+        CygnusMetrics metrics1 = new CygnusMetrics();
+        metrics1.addDeletionStats("sink1", 100, 20);
+        metrics1.addDeletionStats("sink1", 0, 5);
+        CygnusMetrics metrics2 = new CygnusMetrics();
+        metrics2.addDeletionStats("sink1", 50, 10);
+        CygnusMetrics merged = new CygnusMetrics();
+        merged.merge(metrics1);
+        merged.merge(metrics2);
+        CygnusMetrics.DeletionStats stats = merged.getDeletionStats("sink1");
+        
+        try {
+            assertEquals(150, stats.getDeletedRecords());
+            assertEquals(35, stats.getDeletionTime());
+            assertEquals(null, merged.getDeletionStats("sink2"));
+            assertTrue(merged.toJsonString().endsWith(
+                    ",\"deletions\":{\"sink1\":{\"deletedRecords\":150,\"deletionTime\":35}}}"));
+            System.out.println(getTestTraceHead("[CygnusMetrics.addDeletionStats]")
+                    + " -  OK  - Deletion stats were added and merged");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[CygnusMetrics.addDeletionStats]")
+                    + " - FAIL - Deletion stats were not added or merged");
+            throw e;
+        } // try catch
+    } // testAddDeletionStats
+    
 } // CygnusMetricsTest
@@ -19,6 +19,13 @@ package com.telefonica.iot.cygnus.utils;
 
 import static com.telefonica.iot.cygnus.utils.CommonUtilsForTests.getTestTraceHead;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.core.LoggerContext;
@@ -409,4 +416,123 @@ public class CommonUtilsTest {
         } // try catch
     } // testIsANumber
 
+    /**
+     * [CommonUtils.getTimeInstantFromString] -------- The same milliseconds are obtained for the same instant,
+     * whichever the supported format is.
+     */
+    @Test
+    public void testGetTimeInstantFromStringFormats() {
+        System.out.println(getTestTraceHead("[CommonUtils.getTimeInstantFromString]")
+                + "-------- The same milliseconds are obtained for the same instant, whichever the supported format is");
+        String[] timestamps = {"2017-01-01T00:00:01.123Z", "2017-01-01T00:00:01.123456Z", "2017-01-01 00:00:01.123",
+            "2017-01-01 00:00:01.123456", "2017-01-01T09:00:01.123+09:00", "2017-01-01T09:00:01.123456+0900",
+            "2016-12-31T13:00:01.123456-11"};
+
+        for (String timestamp : timestamps) {
+            try {
+                assertEquals(1483228801123L, CommonUtils.getTimeInstantFromString(timestamp).longValue());
+                System.out.println(getTestTraceHead("[CommonUtils.getTimeInstantFromString]")
+                        + "-  OK  - Milliseconds obtained for '" + timestamp + "'");
+            } catch (AssertionError e) {
+                System.out.println(getTestTraceHead("[CommonUtils.getTimeInstantFromString]")
+                        + "- FAIL - Wrong milliseconds obtained for '" + timestamp + "'");
+                throw e;
+            } // try catch
+        } // for
+
+        try {
+            assertEquals(1456790399000L, CommonUtils.getTimeInstantFromString("2016-02-29T23:59:59Z").longValue());
+            assertEquals(null, CommonUtils.parseStringWithFormats("2017-02-29T23:59:59Z"));
+            System.out.println(getTestTraceHead("[CommonUtils.getTimeInstantFromString]")
+                    + "-  OK  - Leap days are properly checked");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[CommonUtils.getTimeInstantFromString]")
+                    + "- FAIL - Leap days are not properly checked");
+            throw e;
+        } // try catch
+    } // testGetTimeInstantFromStringFormats
+
+    /**
+     * [CommonUtils.getHumanReadable] -------- The human readable version of consecutive timestamps is properly
+     * obtained.
+     */
+    @Test
+    public void testGetHumanReadable() {
+        System.out.println(getTestTraceHead("[CommonUtils.getHumanReadable]")
+                + "-------- The human readable version of consecutive timestamps is properly obtained");
+
+        try {
+            assertEquals("2016-04-20T07:19:55.999Z", CommonUtils.getHumanReadable(1461136795999L, true));
+            assertEquals("2016-04-20T07:19:56.0Z", CommonUtils.getHumanReadable(1461136796000L, true));
+            assertEquals("2016-04-20 07:19:56.5", CommonUtils.getHumanReadable(1461136796005L, false));
+            assertEquals("2016-04-20T07:19:56.50Z", CommonUtils.getHumanReadable(1461136796050L, true));
+            assertEquals("2016-04-20T07:19:55.801Z", CommonUtils.getHumanReadable(1461136795801L, true));
+            assertEquals("1969-12-31T23:59:59.999Z", CommonUtils.getHumanReadable(-1L, true));
+            System.out.println(getTestTraceHead("[CommonUtils.getHumanReadable]")
+                    + "-  OK  - Human readable versions obtained");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[CommonUtils.getHumanReadable]")
+                    + "- FAIL - Wrong human readable versions obtained");
+            throw e;
+        } // try catch
+    } // testGetHumanReadable
+    
+    /**
+     * [CommonUtils.waitForAll] -------- All the futures are waited for, and the first failure is thrown as it is,
+     * even if it is an Error.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testWaitForAll() throws Exception {
+        System.out.println(getTestTraceHead("[CommonUtils.waitForAll]")
+                + "-------- All the futures are waited for, and the first failure is thrown as it is, even if it is "
+                + "an Error");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        final AtomicInteger numEnded = new AtomicInteger(0);
+        
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    numEnded.incrementAndGet();
+                    throw new OutOfMemoryError("first failure");
+                } // call
+            }));
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    Thread.sleep(200);
+                    numEnded.incrementAndGet();
+                    throw new ParseException("second failure", 0);
+                } // call
+            }));
+            
+            try {
+                CommonUtils.waitForAll(futures);
+                throw new AssertionError("No failure was thrown");
+            } catch (OutOfMemoryError e) {
+                assertEquals("first failure", e.getMessage());
+            } // try catch
+            
+            assertEquals(2, numEnded.get());
+            
+            try {
+                CommonUtils.waitForAll(futures.subList(1, 2));
+                throw new AssertionError("No failure was thrown");
+            } catch (ParseException e) {
+                assertEquals("second failure", e.getMessage());
+            } // try catch
+            
+            System.out.println(getTestTraceHead("[CommonUtils.waitForAll]")
+                    + "-  OK  - All the futures were waited for, and the first failure was thrown as it is");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[CommonUtils.waitForAll]")
+                    + "- FAIL - Not all the futures were waited for, or the failure was not thrown as it is");
+            throw e;
+        } finally {
+            executor.shutdown();
+        } // try catch finally
+    } // testWaitForAll
+
 } // NGSIUtilsTest
@@ -0,0 +1,305 @@
+/**
+ * Copyright 2026 Telefonica Investigación y Desarrollo, S.A.U
+ *
+ * This file is part of fiware-cygnus (FIWARE project).
+ *
+ * fiware-cygnus is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * fiware-cygnus is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with fiware-cygnus. If not, see
+ * http://www.gnu.org/licenses/.
+ *
+ * For those usages not covered by the GNU Affero General Public License please contact with iot_support at tid dot es
+ */
+package com.telefonica.iot.cygnus.utils.auth.keystone;
+
+import static com.telefonica.iot.cygnus.utils.CommonUtilsForTests.getTestTraceHead;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.telefonica.iot.cygnus.errors.CygnusPersistenceError;
+import com.telefonica.iot.cygnus.errors.CygnusRuntimeError;
+
+/**
+ * Tests of the token cache of KeyStoneUtilsImpl. Keystone is not requested, the tokens are given by a stub.
+ */
+public class KeyStoneUtilsImplTest {
+
+    private static final String USER = "user";
+    private static final String PASSWORD = "password";
+    private static final String SERVICE = "service";
+    private static final String SERVICE_PATH = "/path";
+    private static final int LIVE_TIME = 10;
+    private static final long LIVE_TIME_MILLIS = LIVE_TIME * 60000L;
+
+    /**
+     * KeyStoneUtilsImpl whose tokens are numbered in request order, and whose time is given by the test.
+     */
+    private static class KeyStoneUtilsStub extends KeyStoneUtilsImpl {
+
+        private final AtomicInteger requests = new AtomicInteger();
+        private volatile long now = 1000000L;
+        private volatile boolean failing = false;
+        private volatile String failingServicePath = null;
+        private volatile CountDownLatch blocker = null;
+
+        KeyStoneUtilsStub() {
+            super("localhost", "5001", false, 50, 10);
+            setTokenTimeToLive(LIVE_TIME);
+        } // KeyStoneUtilsStub
+
+        @Override
+        protected String requestSessionToken(String user, String password, String fiwareService,
+                String fiwareServicePath) throws CygnusRuntimeError, CygnusPersistenceError {
+            int request = requests.incrementAndGet();
+
+            if (blocker != null) {
+                try {
+                    blocker.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } // try catch
+            } // if
+
+            if (failing || fiwareServicePath.equals(failingServicePath)) {
+                throw new CygnusRuntimeError("Auth Error, HttpFS response:: 401 Unauthorized");
+            } // if
+
+            return "token" + request;
+        } // requestSessionToken
+
+        @Override
+        protected long currentTimeMillis() {
+            return now;
+        } // currentTimeMillis
+
+        String getToken() throws CygnusRuntimeError, CygnusPersistenceError {
+            return getSessionToken(USER, PASSWORD, SERVICE, SERVICE_PATH);
+        } // getToken
+
+        void waitForRequests(int expected) throws InterruptedException {
+            for (int i = 0; i < 500 && requests.get() < expected; i++) {
+                Thread.sleep(10);
+            } // for
+        } // waitForRequests
+
+    } // KeyStoneUtilsStub
+
+    /**
+     * [KeyStoneUtilsImpl.getSessionToken] -------- A not cached token requested by several threads at the same time
+     * is requested once to Keystone.
+     */
+    @Test
+    public void testGetSessionTokenConcurrently() throws Exception {
+        System.out.println(getTestTraceHead("[KeyStoneUtilsImpl.getSessionToken]")
+                + "-------- A not cached token requested by several threads at the same time is requested once to "
+                + "Keystone");
+        final KeyStoneUtilsStub keyStoneUtils = new KeyStoneUtilsStub();
+        keyStoneUtils.blocker = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<String>> tokens = new ArrayList<Future<String>>();
+
+        for (int i = 0; i < 8; i++) {
+            tokens.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return keyStoneUtils.getToken();
+                } // call
+            }));
+        } // for
+
+        // Let all the threads wait for the ongoing request
+        Thread.sleep(200);
+        keyStoneUtils.blocker.countDown();
+
+        try {
+            for (Future<String> token : tokens) {
+                assertEquals("token1", token.get(5, TimeUnit.SECONDS));
+            } // for
+
+            assertEquals(1, keyStoneUtils.requests.get());
+            System.out.println(getTestTraceHead("[KeyStoneUtilsImpl.getSessionToken]")
+                    + "-  OK  - 8 threads got the token of a single request");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[KeyStoneUtilsImpl.getSessionToken]")
+                    + "- FAIL - " + keyStoneUtils.requests.get() + " requests were done");
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        } // try catch finally
+    } // testGetSessionTokenConcurrently
+
+    /**
+     * [KeyStoneUtilsImpl.getSessionToken] -------- A token about to expire is returned while a new one is requested
+     * in background.
+     */
+    @Test
+    public void testGetSessionTokenRefreshAhead() throws Exception {
+        System.out.println(getTestTraceHead("[KeyStoneUtilsImpl.getSessionToken]")
+                + "-------- A token about to expire is returned while a new one is requested in background");
+        KeyStoneUtilsStub keyStoneUtils = new KeyStoneUtilsStub();
+        String firstToken = keyStoneUtils.getToken();
+        String cachedToken = keyStoneUtils.getToken();
+        keyStoneUtils.now += (long) (LIVE_TIME_MILLIS * 0.9);
+        keyStoneUtils.blocker = new CountDownLatch(1);
+        String aboutToExpireToken = keyStoneUtils.getToken();
+        keyStoneUtils.blocker.countDown();
+        keyStoneUtils.waitForRequests(2);
+        Thread.sleep(100);
+
+        try {
+            assertEquals("token1", firstToken);
+            assertEquals("token1", cachedToken);
+            assertEquals("token1", aboutToExpireToken);
+            assertEquals(2, keyStoneUtils.requests.get());
+            assertEquals("token2", keyStoneUtils.getToken());
+            assertEquals(2, keyStoneUtils.requests.get());
+            System.out.println(getTestTraceHead("[KeyStoneUtilsImpl.getSessionToken]")
+                    + "-  OK  - The token about to expire was returned and then replaced by the refreshed one");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[KeyStoneUtilsImpl.getSessionToken]")
+                    + "- FAIL - The token was not refreshed in background");
+            throw e;
+        } // try catch
+    } // testGetSessionTokenRefreshAhead
+
+    /**
+     * [KeyStoneUtilsImpl.getSessionToken] -------- If the background refresh fails, the cached token is used until
+     * its expiration, and the refresh is retried from time to time.
+     */
+    @Test
+    public void testGetSessionTokenRefreshAheadError() throws Exception {
+        System.out.println(getTestTraceHead("[KeyStoneUtilsImpl.getSessionToken]")
+                + "-------- If the background refresh fails, the cached token is used until its expiration, and the "
+                + "refresh is retried from time to time");
+        KeyStoneUtilsStub keyStoneUtils = new KeyStoneUtilsStub();
+        keyStoneUtils.getToken();
+        keyStoneUtils.failing = true;
+        keyStoneUtils.now += (long) (LIVE_TIME_MILLIS * 0.85);
+        String aboutToExpireToken = keyStoneUtils.getToken();
+        keyStoneUtils.waitForRequests(2);
+        Thread.sleep(100);
+        String notRefreshedToken = keyStoneUtils.getToken();
+        int requestsBeforeRetry = keyStoneUtils.requests.get();
+        keyStoneUtils.now += 31000;
+        keyStoneUtils.getToken();
+        keyStoneUtils.waitForRequests(3);
+
+        try {
+            assertEquals("token1", aboutToExpireToken);
+            assertEquals("token1", notRefreshedToken);
+            assertEquals(2, requestsBeforeRetry);
+            assertEquals(3, keyStoneUtils.requests.get());
+            System.out.println(getTestTraceHead("[KeyStoneUtilsImpl.getSessionToken]")
+                    + "-  OK  - The cached token was used while the refresh failed");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[KeyStoneUtilsImpl.getSessionToken]")
+                    + "- FAIL - The cached token was not used while the refresh failed");
+            throw e;
+        } // try catch
+
+        keyStoneUtils.now += LIVE_TIME_MILLIS;
+
+        try {
+            keyStoneUtils.getToken();
+            fail("An expired token was returned although it could not be refreshed");
+        } catch (CygnusRuntimeError e) {
+            System.out.println(getTestTraceHead("[KeyStoneUtilsImpl.getSessionToken]")
+                    + "-  OK  - The expired token was not returned");
+        } // try catch
+    } // testGetSessionTokenRefreshAheadError
+
+    /**
+     * [KeyStoneUtilsImpl.getSessionToken] -------- An expired token is requested again, waiting for it.
+     */
+    @Test
+    public void testGetSessionTokenExpired() throws Exception {
+        System.out.println(getTestTraceHead("[KeyStoneUtilsImpl.getSessionToken]")
+                + "-------- An expired token is requested again, waiting for it");
+        KeyStoneUtilsStub keyStoneUtils = new KeyStoneUtilsStub();
+        keyStoneUtils.getToken();
+        keyStoneUtils.now += LIVE_TIME_MILLIS + 1;
+
+        try {
+            assertEquals("token2", keyStoneUtils.getToken());
+            assertEquals(2, keyStoneUtils.requests.get());
+            System.out.println(getTestTraceHead("[KeyStoneUtilsImpl.getSessionToken]")
+                    + "-  OK  - A new token was returned");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[KeyStoneUtilsImpl.getSessionToken]")
+                    + "- FAIL - The expired token was not requested again");
+            throw e;
+        } // try catch
+    } // testGetSessionTokenExpired
+
+    /**
+     * [KeyStoneUtilsImpl.getSessionToken] -------- If a token at service level cannot be got, then a token at
+     * subservice level is requested and cached.
+     */
+    @Test
+    public void testGetSessionTokenSubserviceFallback() throws Exception {
+        System.out.println(getTestTraceHead("[KeyStoneUtilsImpl.getSessionToken]")
+                + "-------- If a token at service level cannot be got, then a token at subservice level is "
+                + "requested and cached");
+        KeyStoneUtilsStub keyStoneUtils = new KeyStoneUtilsStub();
+        keyStoneUtils.failingServicePath = "/";
+
+        try {
+            assertEquals("token2", keyStoneUtils.getToken());
+            assertEquals("token2", keyStoneUtils.getToken());
+            assertEquals(2, keyStoneUtils.requests.get());
+            System.out.println(getTestTraceHead("[KeyStoneUtilsImpl.getSessionToken]")
+                    + "-  OK  - The token at subservice level was returned and cached");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[KeyStoneUtilsImpl.getSessionToken]")
+                    + "- FAIL - The token at subservice level was not returned or not cached");
+            throw e;
+        } // try catch
+    } // testGetSessionTokenSubserviceFallback
+
+    /**
+     * [KeyStoneUtilsImpl.close] -------- Once closed, no token is refreshed in background, and a token about to
+     * expire is returned until its expiration.
+     */
+    @Test
+    public void testClose() throws Exception {
+        System.out.println(getTestTraceHead("[KeyStoneUtilsImpl.close]")
+                + "-------- Once closed, no token is refreshed in background, and a token about to expire is returned "
+                + "until its expiration");
+        KeyStoneUtilsStub keyStoneUtils = new KeyStoneUtilsStub();
+        String firstToken = keyStoneUtils.getToken();
+        keyStoneUtils.close();
+        keyStoneUtils.now += (long) (LIVE_TIME_MILLIS * 0.9);
+        String aboutToExpireToken = keyStoneUtils.getToken();
+        Thread.sleep(100);
+
+        try {
+            assertEquals("token1", firstToken);
+            assertEquals("token1", aboutToExpireToken);
+            assertEquals(1, keyStoneUtils.requests.get());
+            System.out.println(getTestTraceHead("[KeyStoneUtilsImpl.close]")
+                    + "-  OK  - The token about to expire was returned and not refreshed");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[KeyStoneUtilsImpl.close]")
+                    + "- FAIL - The token was refreshed in background after closing");
+            throw e;
+        } // try catch
+    } // testClose
+
+} // KeyStoneUtilsImplTest
@@ -25,6 +25,7 @@ import com.telefonica.iot.cygnus.interceptors.NGSILDEvent;
 import com.telefonica.iot.cygnus.log.CygnusLogger;
 import com.telefonica.iot.cygnus.sinks.Enums.DataModel;
 import com.telefonica.iot.cygnus.utils.CommonConstants;
+import com.telefonica.iot.cygnus.utils.NGSICharsets;
 import com.telefonica.iot.cygnus.utils.NGSIConstants;
 import com.telefonica.iot.cygnus.management.PatternTypeAdapter;
 import org.apache.flume.*;
@@ -631,6 +632,12 @@ public abstract class NGSILDSink extends CygnusSink implements Configurable {
             long time = (new Date().getTime() - event.getRecvTimeTs()) * events.size();
             serviceMetrics.add(service, servicePath, 0, 0, 0, 0, time, events.size(), 0, 0, error ? events.size() : 0);
         } // while
+        
+        // The names encodings cache is shared by all the sinks, thus each sink adds the stats since the last addition
+        // by any sink, so that the metrics of all the sinks sum the whole stats; hits and misses are taken at once,
+        // so that a sink never adds the hits of an interval together with the misses of another one
+        long[] cacheStats = NGSICharsets.getAndResetCacheStats();
+        serviceMetrics.addCacheStats(NGSICharsets.CACHE_NAME, cacheStats[0], cacheStats[1]);
     } // updateServiceMetrics
 
     /**
@@ -17,12 +17,43 @@
  */
 package com.telefonica.iot.cygnus.utils;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
- *
+ * Encodings of the names of the destinations. The same names (services, service paths, entity IDs and types,
+ * attribute names) are encoded again and again, thus the encoded names are memoized per encoding.
+ * 
  * @author frb
  */
 public final class NGSICharsets {
     
+    /**
+     * Name of the encodings cache within the metrics.
+     */
+    public static final String CACHE_NAME = "NGSICharsets";
+    
+    /**
+     * Maximum number of names memoized per encoding. Once reached, the encoding cache is emptied.
+     */
+    public static final int MAX_CACHED_NAMES = 10000;
+    
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    // Hits in the high 32 bits, misses in the low 32 bits, so that both are read and reset at once
+    private static final AtomicLong CACHE_STATS = new AtomicLong();
+    private static final long CACHE_HIT = 1L << 32;
+    private static final long CACHE_MISS = 1L;
+    private static final EncodingCache POSTGRESQL_CACHE = new EncodingCache();
+    private static final EncodingCache HDFS_CACHE = new EncodingCache();
+    private static final EncodingCache HDFS_SLASHES_CACHE = new EncodingCache();
+    private static final EncodingCache CKAN_CACHE = new EncodingCache();
+    private static final EncodingCache MYSQL_CACHE = new EncodingCache();
+    private static final EncodingCache MONGODB_DATABASE_CACHE = new EncodingCache();
+    private static final EncodingCache MONGODB_COLLECTION_CACHE = new EncodingCache();
+    private static final EncodingCache DYNAMODB_CACHE = new EncodingCache();
+    private static final EncodingCache HIVE_CACHE = new EncodingCache();
+    private static final EncodingCache KAFKA_CACHE = new EncodingCache();
+    
     /**
      * Constructor. It is private since utility classes should not have a public or default constructor.
      */
@@ -35,43 +66,35 @@ public final class NGSICharsets {
      * @return The encoded string
      */
     public static String encodePostgreSQL(String in) {
-        String out = "";
+        String out = POSTGRESQL_CACHE.get(in);
+        
+        if (out != null) {
+            return out;
+        } // if
+        
+        StringBuilder sb = new StringBuilder(in.length() + 8);
         
         for (int i = 0; i < in.length(); i++) {
             char c = in.charAt(i);
-            int code = c;
-            
-            if (code >= 97 && code <= 119) { // a-w --> a-w
-                out += c;
-            } else if (c == 'x') {
-                String next4;
             
-                if (i + 4 < in.length()) {
-                    next4 = in.substring(i + 1, i + 5);
-                } else {
-                    next4 = "WXYZ"; // whatever except a unicode
-                } // if else
-            
-                if (next4.matches("^[0-9a-fA-F]{4}$")) { // x --> xx
-                    out += "xx";
-                } else { // x --> x
-                    out += c;
-                } // if else
-            } else if (code == 121 || code == 122) { // yz --> yz
-                out += c;
-            } else if (code >= 48 && code <= 57) { // 0-9 --> 0-9
-                out += c;
+            if (c >= 'a' && c <= 'w') { // a-w --> a-w
+                sb.append(c);
+            } else if (c == 'x') { // x --> xx if followed by a unicode, otherwise x
+                appendX(sb, in, i);
+            } else if (c == 'y' || c == 'z') { // yz --> yz
+                sb.append(c);
+            } else if (c >= '0' && c <= '9') { // 0-9 --> 0-9
+                sb.append(c);
             } else if (c == '_') { // _ --> _
-                out += c;
+                sb.append(c);
             } else if (c == '=') { // = --> xffff
-                out += "xffff";
+                sb.append("xffff");
             } else { // --> xUNICODE
-                String hex = Integer.toHexString(code);
-                out += "x" + ("0000" + hex).substring(hex.length());
+                appendUnicode(sb, c);
             } // else
         } // for
         
-        return out;
+        return POSTGRESQL_CACHE.put(in, sb.toString());
     } // encodePostgreSQL
     
     /**
@@ -81,39 +104,34 @@ public final class NGSICharsets {
      * @return The encoded string
      */
     public static String encodeHDFS(String in, boolean allowSlashes) {
-        String out = "";
+        EncodingCache cache = (allowSlashes ? HDFS_SLASHES_CACHE : HDFS_CACHE);
+        String out = cache.get(in);
+        
+        if (out != null) {
+            return out;
+        } // if
+        
+        StringBuilder sb = new StringBuilder(in.length() + 8);
         
         for (int i = 0; i < in.length(); i++) {
             char c = in.charAt(i);
             
             if (c == '/') {
                 if (allowSlashes) {
-                    out += '/';
+                    sb.append('/');
                 } else {
-                    out += "x002f";
-                } // if else
-            } else if (c == 'x') {
-                String next4;
-            
-                if (i + 4 < in.length()) {
-                    next4 = in.substring(i + 1, i + 5);
-                } else {
-                    next4 = "WXYZ"; // whatever except a unicode
-                } // if else
-            
-                if (next4.matches("^[0-9a-fA-F]{4}$")) { // x --> xx
-                    out += "xx";
-                } else { // x --> x
-                    out += c;
+                    sb.append("x002f");
                 } // if else
+            } else if (c == 'x') { // x --> xx if followed by a unicode, otherwise x
+                appendX(sb, in, i);
             } else if (c == '=') { // = --> xffff
-                out += "xffff";
+                sb.append("xffff");
             } else {
-                out += c;
+                sb.append(c);
             } // else
         } // for
         
-        return out;
+        return cache.put(in, sb.toString());
     } // encodeHDFS
     
     /**
@@ -122,45 +140,37 @@ public final class NGSICharsets {
      * @return The encoded string
      */
     public static String encodeCKAN(String in) {
-        String out = "";
+        String out = CKAN_CACHE.get(in);
+        
+        if (out != null) {
+            return out;
+        } // if
+        
+        StringBuilder sb = new StringBuilder(in.length() + 8);
         
         for (int i = 0; i < in.length(); i++) {
             char c = in.charAt(i);
-            int code = c;
-            
-            if (code >= 97 && code <= 119) { // a-w --> a-w
-                out += c;
-            } else if (c == 'x') {
-                String next4;
-            
-                if (i + 4 < in.length()) {
-                    next4 = in.substring(i + 1, i + 5);
-                } else {
-                    next4 = "WXYZ"; // whatever except a unicode
-                } // if else
             
-                if (next4.matches("^[0-9a-fA-F]{4}$")) { // x --> xx
-                    out += "xx";
-                } else { // x --> x
-                    out += c;
-                } // if else
-            } else if (code == 121 || code == 122) { // yz --> yz
-                out += c;
-            } else if (code >= 48 && code <= 57) { // 0-9 --> 0-9
-                out += c;
+            if (c >= 'a' && c <= 'w') { // a-w --> a-w
+                sb.append(c);
+            } else if (c == 'x') { // x --> xx if followed by a unicode, otherwise x
+                appendX(sb, in, i);
+            } else if (c == 'y' || c == 'z') { // yz --> yz
+                sb.append(c);
+            } else if (c >= '0' && c <= '9') { // 0-9 --> 0-9
+                sb.append(c);
             } else if (c == '_') { // _ --> _
-                out += c;
+                sb.append(c);
             } else if (c == '-') { // - --> -
-                out += c;
+                sb.append(c);
             } else if (c == '=') { // = --> xffff
-                out += "xffff";
+                sb.append("xffff");
             } else { // --> xUNICODE
-                String hex = Integer.toHexString(code);
-                out += "x" + ("0000" + hex).substring(hex.length());
+                appendUnicode(sb, c);
             } // else
         } // for
         
-        return out;
+        return CKAN_CACHE.put(in, sb.toString());
     } // encodeCKAN
     
     /**
@@ -169,45 +179,37 @@ public final class NGSICharsets {
      * @return The encoded string
      */
     public static String encodeMySQL(String in) {
-        String out = "";
+        String out = MYSQL_CACHE.get(in);
+        
+        if (out != null) {
+            return out;
+        } // if
+        
+        StringBuilder sb = new StringBuilder(in.length() + 8);
         
         for (int i = 0; i < in.length(); i++) {
             char c = in.charAt(i);
-            int code = c;
-            
-            if (code >= 65 && code <= 90) { // A-Z --> A-Z
-                out += c;
-            } else if (code >= 97 && code <= 119) { // a-w --> a-w
-                out += c;
-            } else if (c == 'x') {
-                String next4;
-            
-                if (i + 4 < in.length()) {
-                    next4 = in.substring(i + 1, i + 5);
-                } else {
-                    next4 = "WXYZ"; // whatever except a unicode
-                } // if else
             
-                if (next4.matches("^[0-9a-fA-F]{4}$")) { // x --> xx
-                    out += "xx";
-                } else { // x --> x
-                    out += c;
-                } // if else
-            } else if (code == 121 || code == 122) { // yz --> yz
-                out += c;
-            } else if (code >= 48 && code <= 57) { // 0-9 --> 0-9
-                out += c;
+            if (c >= 'A' && c <= 'Z') { // A-Z --> A-Z
+                sb.append(c);
+            } else if (c >= 'a' && c <= 'w') { // a-w --> a-w
+                sb.append(c);
+            } else if (c == 'x') { // x --> xx if followed by a unicode, otherwise x
+                appendX(sb, in, i);
+            } else if (c == 'y' || c == 'z') { // yz --> yz
+                sb.append(c);
+            } else if (c >= '0' && c <= '9') { // 0-9 --> 0-9
+                sb.append(c);
             } else if (c == '_') { // _ --> _
-                out += c;
+                sb.append(c);
             } else if (c == '=') { // = --> xffff
-                out += "xffff";
+                sb.append("xffff");
             } else { // --> xUNICODE
-                String hex = Integer.toHexString(code);
-                out += "x" + ("0000" + hex).substring(hex.length());
+                appendUnicode(sb, c);
             } // else
         } // for
         
-        return out;
+        return MYSQL_CACHE.put(in, sb.toString());
     } // encodeMySQL
     
     /**
@@ -216,47 +218,39 @@ public final class NGSICharsets {
      * @return The encoded string
      */
     public static String encodeMongoDBDatabase(String in) {
-        String out = "";
+        String out = MONGODB_DATABASE_CACHE.get(in);
+        
+        if (out != null) {
+            return out;
+        } // if
+        
+        StringBuilder sb = new StringBuilder(in.length() + 8);
         
         for (int i = 0; i < in.length(); i++) {
             char c = in.charAt(i);
-            int code = c;
             
-            if (code >= 65 && code <= 90) { // A-Z --> A-Z
-                String hex = Integer.toHexString(code);
-                out += "x" + ("0000" + hex).substring(hex.length());
-            } else if (c == 'x') {
-                String next4;
-            
-                if (i + 4 < in.length()) {
-                    next4 = in.substring(i + 1, i + 5);
-                } else {
-                    next4 = "WXYZ"; // whatever except a unicode
-                } // if else
-            
-                if (next4.matches("^[0-9a-fA-F]{4}$")) { // x --> xx
-                    out += "xx";
-                } else { // x --> x
-                    out += c;
-                } // if else
+            if (c >= 'A' && c <= 'Z') { // A-Z --> xUNICODE
+                appendUnicode(sb, c);
+            } else if (c == 'x') { // x --> xx if followed by a unicode, otherwise x
+                appendX(sb, in, i);
             } else if (c == '/') {
-                out += "x002f";
+                sb.append("x002f");
             } else if (c == '\\') {
-                out += "x005c";
+                sb.append("x005c");
             } else if (c == '.') {
-                out += "x002e";
+                sb.append("x002e");
             } else if (c == '"') {
-                out += "x0022";
+                sb.append("x0022");
             } else if (c == '$') {
-                out += "x0024";
+                sb.append("x0024");
             } else if (c == '=') { // = --> xffff
-                out += "xffff";
+                sb.append("xffff");
             } else {
-                out += c;
+                sb.append(c);
             } // else
         } // for
         
-        return out;
+        return MONGODB_DATABASE_CACHE.put(in, sb.toString());
     } // encodeMongoDBDatabase
     
     /**
@@ -265,37 +259,31 @@ public final class NGSICharsets {
      * @return The encoded string
      */
     public static String encodeMongoDBCollection(String in) {
-        String out = "";
+        String out = MONGODB_COLLECTION_CACHE.get(in);
+        
+        if (out != null) {
+            return out;
+        } // if
+        
+        StringBuilder sb = new StringBuilder(in.length() + 8);
         
         for (int i = 0; i < in.length(); i++) {
             char c = in.charAt(i);
             
-            if (c == 'x') {
-                String next4;
-            
-                if (i + 4 < in.length()) {
-                    next4 = in.substring(i + 1, i + 5);
-                } else {
-                    next4 = "WXYZ"; // whatever except a unicode
-                } // if else
-            
-                if (next4.matches("^[0-9a-fA-F]{4}$")) { // x --> xx
-                    out += "xx";
-                } else { // x --> x
-                    out += c;
-                } // if else
+            if (c == 'x') { // x --> xx if followed by a unicode, otherwise x
+                appendX(sb, in, i);
             } else if (c == '/') { // it is accepted in collection names, however it is a problem when dumping
-                out += "x002f";
+                sb.append("x002f");
             } else if (c == '$') {
-                out += "x0024";
+                sb.append("x0024");
             } else if (c == '=') { // = --> xffff
-                out += "xffff";
+                sb.append("xffff");
             } else {
-                out += c;
+                sb.append(c);
             } // else
         } // for
         
-        return out;
+        return MONGODB_COLLECTION_CACHE.put(in, sb.toString());
     } // encodeMongoDBCollection
     
     /**
@@ -304,49 +292,41 @@ public final class NGSICharsets {
      * @return The encoded string
      */
     public static String encodeDynamoDB(String in) {
-        String out = "";
+        String out = DYNAMODB_CACHE.get(in);
+        
+        if (out != null) {
+            return out;
+        } // if
+        
+        StringBuilder sb = new StringBuilder(in.length() + 8);
         
         for (int i = 0; i < in.length(); i++) {
             char c = in.charAt(i);
-            int code = c;
             
-            if (code >= 65 && code <= 90) { // A-Z --> A-Z
-                out += c;
-            } else if (code >= 97 && code <= 119) { // a-w --> a-w
-                out += c;
-            } else if (c == 'x') {
-                String next4;
-            
-                if (i + 4 < in.length()) {
-                    next4 = in.substring(i + 1, i + 5);
-                } else {
-                    next4 = "WXYZ"; // whatever except a unicode
-                } // if else
-            
-                if (next4.matches("^[0-9a-fA-F]{4}$")) { // x --> xx
-                    out += "xx";
-                } else { // x --> x
-                    out += c;
-                } // if else
-            } else if (code == 121 || code == 122) { // yz --> yz
-                out += c;
-            } else if (code >= 48 && code <= 57) { // 0-9 --> 0-9
-                out += c;
+            if (c >= 'A' && c <= 'Z') { // A-Z --> A-Z
+                sb.append(c);
+            } else if (c >= 'a' && c <= 'w') { // a-w --> a-w
+                sb.append(c);
+            } else if (c == 'x') { // x --> xx if followed by a unicode, otherwise x
+                appendX(sb, in, i);
+            } else if (c == 'y' || c == 'z') { // yz --> yz
+                sb.append(c);
+            } else if (c >= '0' && c <= '9') { // 0-9 --> 0-9
+                sb.append(c);
             } else if (c == '_') { // _ --> _
-                out += c;
+                sb.append(c);
             } else if (c == '-') { // - --> -
-                out += c;
+                sb.append(c);
             } else if (c == '.') { // . --> .
-                out += c;
+                sb.append(c);
             } else if (c == '=') { // = --> xffff
-                out += "xffff";
+                sb.append("xffff");
             } else { // --> xUNICODE
-                String hex = Integer.toHexString(code);
-                out += "x" + ("0000" + hex).substring(hex.length());
+                appendUnicode(sb, c);
             } // else
         } // for
         
-        return out;
+        return DYNAMODB_CACHE.put(in, sb.toString());
     } // encodeDynamoDB
     
     /**
@@ -355,43 +335,35 @@ public final class NGSICharsets {
      * @return The encoded string
      */
     public static String encodeHive(String in) {
-        String out = "";
+        String out = HIVE_CACHE.get(in);
+        
+        if (out != null) {
+            return out;
+        } // if
+        
+        StringBuilder sb = new StringBuilder(in.length() + 8);
         
         for (int i = 0; i < in.length(); i++) {
             char c = in.charAt(i);
-            int code = c;
-            
-            if (code >= 97 && code <= 119) { // a-w --> a-w
-                out += c;
-            } else if (c == 'x') {
-                String next4;
-            
-                if (i + 4 < in.length()) {
-                    next4 = in.substring(i + 1, i + 5);
-                } else {
-                    next4 = "WXYZ"; // whatever except a unicode
-                } // if else
             
-                if (next4.matches("^[0-9a-fA-F]{4}$")) { // x --> xx
-                    out += "xx";
-                } else { // x --> x
-                    out += c;
-                } // if else
-            } else if (code == 121 || code == 122) { // yz --> yz
-                out += c;
-            } else if (code >= 48 && code <= 57) { // 0-9 --> 0-9
-                out += c;
+            if (c >= 'a' && c <= 'w') { // a-w --> a-w
+                sb.append(c);
+            } else if (c == 'x') { // x --> xx if followed by a unicode, otherwise x
+                appendX(sb, in, i);
+            } else if (c == 'y' || c == 'z') { // yz --> yz
+                sb.append(c);
+            } else if (c >= '0' && c <= '9') { // 0-9 --> 0-9
+                sb.append(c);
             } else if (c == '_') { // _ --> _
-                out += c;
+                sb.append(c);
             } else if (c == '=') { // = --> xffff
-                out += "xffff";
+                sb.append("xffff");
             } else { // --> xUNICODE
-                String hex = Integer.toHexString(code);
-                out += "x" + ("0000" + hex).substring(hex.length());
+                appendUnicode(sb, c);
             } // else
         } // for
         
-        return out;
+        return HIVE_CACHE.put(in, sb.toString());
     } // encodeHive
     
     /**
@@ -400,49 +372,123 @@ public final class NGSICharsets {
      * @return The encoded string
      */
     public static String encodeKafka(String in) {
-        String out = "";
+        String out = KAFKA_CACHE.get(in);
+        
+        if (out != null) {
+            return out;
+        } // if
+        
+        StringBuilder sb = new StringBuilder(in.length() + 8);
         
         for (int i = 0; i < in.length(); i++) {
             char c = in.charAt(i);
-            int code = c;
-            
-            if (code >= 65 && code <= 90) { // A-Z --> A-Z
-                out += c;
-            } else if (code >= 97 && code <= 119) { // a-w --> a-w
-                out += c;
-            } else if (c == 'x') {
-                String next4;
-            
-                if (i + 4 < in.length()) {
-                    next4 = in.substring(i + 1, i + 5);
-                } else {
-                    next4 = "WXYZ"; // whatever except a unicode
-                } // if else
             
-                if (next4.matches("^[0-9a-fA-F]{4}$")) { // x --> xx
-                    out += "xx";
-                } else { // x --> x
-                    out += c;
-                } // if else
-            } else if (code == 121 || code == 122) { // yz --> yz
-                out += c;
-            } else if (code >= 48 && code <= 57) { // 0-9 --> 0-9
-                out += c;
+            if (c >= 'A' && c <= 'Z') { // A-Z --> A-Z
+                sb.append(c);
+            } else if (c >= 'a' && c <= 'w') { // a-w --> a-w
+                sb.append(c);
+            } else if (c == 'x') { // x --> xx if followed by a unicode, otherwise x
+                appendX(sb, in, i);
+            } else if (c == 'y' || c == 'z') { // yz --> yz
+                sb.append(c);
+            } else if (c >= '0' && c <= '9') { // 0-9 --> 0-9
+                sb.append(c);
             } else if (c == '_') { // _ --> _
-                out += c;
+                sb.append(c);
             } else if (c == '-') { // - --> -
-                out += c;
+                sb.append(c);
             } else if (c == '.') { // . --> .
-                out += c;
+                sb.append(c);
             } else if (c == '=') { // = --> xffff
-                out += "xffff";
+                sb.append("xffff");
             } else { // --> xUNICODE
-                String hex = Integer.toHexString(code);
-                out += "x" + ("0000" + hex).substring(hex.length());
+                appendUnicode(sb, c);
             } // else
         } // for
         
-        return out;
+        return KAFKA_CACHE.put(in, sb.toString());
     } // encodeKafka
+    
+    /**
+     * Gets the number of encodings found and not found in the cache since the last call, and resets both of them.
+     * @return The number of encodings found (first element) and not found (second element) in the cache since the
+     * last call
+     */
+    public static long[] getAndResetCacheStats() {
+        long stats = CACHE_STATS.getAndSet(0);
+        return new long[] {stats >>> 32, stats & 0xFFFFFFFFL};
+    } // getAndResetCacheStats
+    
+    /**
+     * Appends the 'x' at the given position of the given string: "xx" if followed by 4 hexadecimal digits (i.e. a
+     * unicode), otherwise "x".
+     * @param sb
+     * @param in
+     * @param i
+     */
+    private static void appendX(StringBuilder sb, String in, int i) {
+        if (i + 4 < in.length() && isHexDigit(in.charAt(i + 1)) && isHexDigit(in.charAt(i + 2))
+                && isHexDigit(in.charAt(i + 3)) && isHexDigit(in.charAt(i + 4))) {
+            sb.append("xx");
+        } else {
+            sb.append('x');
+        } // if else
+    } // appendX
+    
+    /**
+     * Appends the unicode of the given character, i.e. 'x' followed by 4 lowercase hexadecimal digits.
+     * @param sb
+     * @param c
+     */
+    private static void appendUnicode(StringBuilder sb, char c) {
+        sb.append('x').append(HEX_DIGITS[(c >> 12) & 0xf]).append(HEX_DIGITS[(c >> 8) & 0xf])
+                .append(HEX_DIGITS[(c >> 4) & 0xf]).append(HEX_DIGITS[c & 0xf]);
+    } // appendUnicode
+    
+    private static boolean isHexDigit(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    } // isHexDigit
+    
+    /**
+     * Memoized encodings of an encoding. Bounded by emptying it when full, which is cheaper than an LRU policy and
+     * good enough since the number of distinct names is usually much lower than the bound.
+     */
+    private static final class EncodingCache {
+        
+        private final ConcurrentHashMap<String, String> encodings = new ConcurrentHashMap<>();
+        
+        /**
+         * Gets the memoized encoding of the given string, if any.
+         * @param in
+         * @return The memoized encoding, or null
+         */
+        String get(String in) {
+            String out = encodings.get(in);
+            
+            if (out == null) {
+                CACHE_STATS.addAndGet(CACHE_MISS);
+            } else {
+                CACHE_STATS.addAndGet(CACHE_HIT);
+            } // if else
+            
+            return out;
+        } // get
+        
+        /**
+         * Memoizes the encoding of the given string.
+         * @param in
+         * @param out
+         * @return The given encoding
+         */
+        String put(String in, String out) {
+            if (encodings.size() >= MAX_CACHED_NAMES) {
+                encodings.clear();
+            } // if
+            
+            encodings.put(in, out);
+            return out;
+        } // put
+        
+    } // EncodingCache
 
 } // NGSICharsets
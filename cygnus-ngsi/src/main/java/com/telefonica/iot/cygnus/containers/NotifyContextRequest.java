@@ -90,23 +90,24 @@ public class NotifyContextRequest {
     
     @Override
     public String toString() {
-        String s = "{\"subscriptionId\":\"" + subscriptionId + "\",\"originator\":\"" + originator
-                + "\",\"contextResponses\":[";
+        StringBuilder s = new StringBuilder("{\"subscriptionId\":\"").append(subscriptionId)
+                .append("\",\"originator\":\"").append(originator).append("\",\"contextResponses\":[");
         
         if (contextResponses != null) {
             boolean first = true;
 
             for (ContextElementResponse cer : contextResponses) {
                 if (first) {
-                    s += cer.toString();
                     first = false;
                 } else {
-                    s += "," + cer.toString();
+                    s.append(",");
                 } // if else
+                
+                s.append(cer.toString());
             } // for
         } // if
         
-        return s + "]}";
+        return s.append("]}").toString();
     } // toString
     
     /**
@@ -271,23 +272,24 @@ public class NotifyContextRequest {
         
         @Override
         public String toString() {
-            String s = "{\"id\":\"" + id + "\",\"type\":\"" + type + "\",\"isPattern\":\"" + isPattern
-                    + "\",\"attributes\":[";
+            StringBuilder s = new StringBuilder("{\"id\":\"").append(id).append("\",\"type\":\"").append(type)
+                    .append("\",\"isPattern\":\"").append(isPattern).append("\",\"attributes\":[");
             
             if (attributes != null) {
                 boolean first = true;
 
                 for (ContextAttribute ca : attributes) {
                     if (first) {
-                        s += ca.toString();
                         first = false;
                     } else {
-                        s += "," + ca.toString();
+                        s.append(",");
                     } // if else
+                    
+                    s.append(ca.toString());
                 } // for
             } // if
         
-            return s + "]}";
+            return s.append("]}").toString();
         } // toString
         
     } // ContextElement
@@ -361,6 +363,10 @@ public class NotifyContextRequest {
         public JsonElement getValue() {
             return value;
         } // getValue
+        
+        public ArrayList<ContextMetadata> getMetadatas() {
+            return metadatas;
+        } // getMetadatas
 
         /**
          * Gets the context metadata.
@@ -431,22 +437,23 @@ public class NotifyContextRequest {
         
         @Override
         public String toString() {
-            String s = "{\"name\":\"" + name + "\",\"type\":\"" + type + "\",\"value\":" + value
-                    + ",\"metadatas\":[";
+            StringBuilder s = new StringBuilder("{\"name\":\"").append(name).append("\",\"type\":\"").append(type)
+                    .append("\",\"value\":").append(value).append(",\"metadatas\":[");
             if (metadatas != null) {
                 boolean first = true;
 
                 for (ContextMetadata cm : metadatas) {
                     if (first) {
-                        s += cm.toString();
                         first = false;
                     } else {
-                        s += "," + cm.toString();
+                        s.append(",");
                     } // if else
+                    
+                    s.append(cm.toString());
                 } // for
             } // if
             
-            return s + "]}";
+            return s.append("]}").toString();
         } // toString
         
     } // ContextAttribute
@@ -490,6 +497,10 @@ public class NotifyContextRequest {
             } // if else if
         } // getValue
         
+        public JsonElement getJsonValue() {
+            return value;
+        } // getJsonValue
+        
         public void setName(String name) {
             this.name = name;
         } // setName
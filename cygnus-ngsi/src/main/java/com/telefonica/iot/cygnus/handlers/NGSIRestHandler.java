@@ -29,6 +29,9 @@ import com.telefonica.iot.cygnus.log.CygnusLogger;
 import com.telefonica.iot.cygnus.utils.CommonConstants;
 import com.telefonica.iot.cygnus.utils.CommonUtils;
 import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -66,10 +69,22 @@ public class NGSIRestHandler extends CygnusHandler implements HTTPSourceHandler
     private String notificationTarget;
     private String defaultService;
     private String defaultServicePath;
+    private boolean binaryEvents;
     
     // shared variables, making them static all the instances of this class will share them
     private static final Object LOCK = new Object();
     
+    // maximum number of characters of a notification traced at INFO level, the whole notification is traced at DEBUG
+    static final int MAX_TRACED_DATA_LENGTH = 1024;
+    
+    // Gson instances are thread-safe, thus they are built once and shared by all the requests
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(Pattern.class, new PatternTypeAdapter())
+            .create();
+    private static final Gson GSON_NGSIV2 = new GsonBuilder()
+            .registerTypeAdapter(NotifyContextRequestNGSIv2.class, new NotifyContextRequestNGSIv2Deserializer())
+            .create();
+    
     /**
      * Constructor. This can be used as a place where to initialize all that things we would like to do in the Flume
      * "initialization" class, which is unreachable by our code. As long as this class is instantiated almost at boot
@@ -104,6 +119,14 @@ public class NGSIRestHandler extends CygnusHandler implements HTTPSourceHandler
         return defaultServicePath;
     } // getDefaultServicePath
     
+    /**
+     * Gets if the events bodies are binary. It is protected due to it is only required for testing purposes.
+     * @return
+     */
+    protected boolean getBinaryEvents() {
+        return binaryEvents;
+    } // getBinaryEvents
+    
     /**
      * Gets true if the configuration is invalid, false otherwise. It is protected due to it is only
      * required for testing purposes.
@@ -160,6 +183,18 @@ public class NGSIRestHandler extends CygnusHandler implements HTTPSourceHandler
                     + "' parameter can only contain alphanumerics or underscores");
         } // else
         
+        String binaryEventsStr = context.getString(NGSIConstants.PARAM_BINARY_EVENTS, "false");
+        
+        if (binaryEventsStr.equals("true") || binaryEventsStr.equals("false")) {
+            binaryEvents = Boolean.valueOf(binaryEventsStr);
+            LOGGER.debug("[NGSIRestHandler] Reading configuration (" + NGSIConstants.PARAM_BINARY_EVENTS + "="
+                    + binaryEventsStr + ")");
+        } else {
+            invalidConfiguration = true;
+            LOGGER.error("[NGSIRestHandler] Bad configuration (" + NGSIConstants.PARAM_BINARY_EVENTS + "="
+                    + binaryEventsStr + ") -- Must be 'true' or 'false'");
+        } // if else
+        
         LOGGER.info("[NGSIRestHandler] Startup completed");
     } // configure
             
@@ -309,58 +344,47 @@ public class NGSIRestHandler extends CygnusHandler implements HTTPSourceHandler
         ThreadContext.put(CommonConstants.LOG4J_TRANS, transId);
         LOGGER.debug("[NGSIRestHandler] Starting internal transaction (" + transId + ")");
         
-        // Get the data content
-        String data = "";
-        String line;
+        // Parse the notification into a NotifyContextRequest object. The notification is parsed directly from the
+        // request reader, unless it must be logged as a whole
+        NotifyContextRequest ncr;
         
         try (BufferedReader reader = request.getReader()) {
-            while ((line = reader.readLine()) != null) {
-                data += line;
-            } // while
-        } // try
+            if (LOGGER.isDebugEnabled()) {
+                StringBuilder data = new StringBuilder();
+                String line;
                 
-        if (data.length() == 0) {
-            serviceMetrics.add(service, servicePath, 1, request.getContentLength(), 0, 1, 0, 0, 0, 0, 0);
-            LOGGER.warn("[NGSIRestHandler] Bad HTTP notification (No content in the request)");
-            throw new HTTPBadRequestException("No content in the request");
-        } // if
-
-        LOGGER.info("[NGSIRestHandler] Received data (" + data + ")");
-        
-        // Parse the original data into a NotifyContextRequest object
-        NotifyContextRequest ncr = null;
-        NotifyContextRequestNGSIv2 notifyContextRequestNGSIv2 = null;
-        Gson gson = new GsonBuilder()
-            .registerTypeAdapter(Pattern.class, new PatternTypeAdapter())
-            .create();
-
-        try {
-            if (ngsiVersion != null) {
-                switch (ngsiVersion) {
-                    case "legacy":
-                        ncr = gson.fromJson(data, NotifyContextRequest.class);
-                        LOGGER.debug("[NGSIRestHandler] Parsed NotifyContextRequest on legacy NGSI: " + ncr.toString());
-                        break;
-                    case "normalized":
-                        gson = new GsonBuilder().registerTypeAdapter(NotifyContextRequestNGSIv2.class, new NotifyContextRequestNGSIv2Deserializer()).create();
-                        notifyContextRequestNGSIv2 = gson.fromJson(data, NotifyContextRequestNGSIv2.class);
-                        ncr = notifyContextRequestNGSIv2.toNotifyContextRequest();
-                        LOGGER.debug("[NGSIRestHandler] Parsed NotifyContextRequest on normalized NGSIv2: " + ncr.toString());
-                        break;
-                    default:
-                        LOGGER.warn("Unknown value: " + ngsiVersion + " for NGSI format");
-                        throw new HTTPBadRequestException(ngsiVersion + " format not supported");
-                }
+                while ((line = reader.readLine()) != null) {
+                    data.append(line);
+                } // while
+                
+                if (data.length() > 0) {
+                    LOGGER.debug("[NGSIRestHandler] Received data (" + data + ")");
+                } // if
+                
+                ncr = parseNotifyContextRequest(new StringReader(data.toString()), ngsiVersion);
             } else {
-                ncr = gson.fromJson(data, NotifyContextRequest.class);
-                LOGGER.debug("[NGSIRestHandler] Parsed NotifyContextRequest on legacy NGSI: " + ncr.toString());
-            }
+                if (LOGGER.isInfoEnabled()) {
+                    String data = readPrefix(reader, MAX_TRACED_DATA_LENGTH);
+                    
+                    if (!data.isEmpty()) {
+                        LOGGER.info("[NGSIRestHandler] Received data (" + data + ")");
+                    } // if
+                } // if
+                
+                ncr = parseNotifyContextRequest(reader, ngsiVersion);
+            } // if else
         } catch (JsonSyntaxException e) {
             serviceMetrics.add(service, servicePath, 1, request.getContentLength(), 0, 1, 0, 0, 0, 0, 0);
             LOGGER.error("[NGSIRestHandler] Runtime error (" + e.getMessage() + ")");
             return null;
         } // try catch
         
+        if (ncr == null) {
+            serviceMetrics.add(service, servicePath, 1, request.getContentLength(), 0, 1, 0, 0, 0, 0, 0);
+            LOGGER.warn("[NGSIRestHandler] Bad HTTP notification (No content in the request)");
+            throw new HTTPBadRequestException("No content in the request");
+        } // if
+        
         // Split the notified service path and check if it matches the number of notified context responses
         String[] servicePaths = servicePath.split(",");
 
@@ -394,7 +418,10 @@ public class NGSIRestHandler extends CygnusHandler implements HTTPSourceHandler
         
         for (int i = 0; i < ncr.getContextResponses().size(); i++) {
             ContextElementResponse cer = ncr.getContextResponses().get(i);
-            LOGGER.debug("[NGSIRestHandler] NGSI event created for ContextElementResponse: " + cer.toString());
+            
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("[NGSIRestHandler] NGSI event created for ContextElementResponse: " + cer.toString());
+            } // if
             
             // Create the appropiate headers
             Map<String, String> headers = new HashMap<>();
@@ -419,14 +446,15 @@ public class NGSIRestHandler extends CygnusHandler implements HTTPSourceHandler
             NGSIEvent ngsiEvent = new NGSIEvent(
                     // Headers
                     headers, 
-                    // Bytes version of the notified ContextElement
-                    (cer.getContextElement().toString() + CommonConstants.CONCATENATOR).getBytes(), 
+                    // Bytes version of the notified ContextElement, lazily encoded only if required by the channel
+                    null, 
                     // Object version of the notified ContextElement
                     cer.getContextElement(),
                     // Will be set with the mapped object version of the notified ContextElement, by
                     // NGSINameMappingsInterceptor (if configured). Currently, null
                     null 
             );
+            ngsiEvent.setBinaryBody(binaryEvents);
             ngsiEvents.add(ngsiEvent);
             
             if (ids.isEmpty()) {
@@ -443,6 +471,64 @@ public class NGSIRestHandler extends CygnusHandler implements HTTPSourceHandler
         return ngsiEvents;
     } // getEvents
     
+    /**
+     * Reads up to the given number of characters from the given reader, without consuming them. The line breaks are
+     * removed, and the prefix is ended by an ellipsis if the reader has more characters.
+     * @param reader
+     * @param maxLength
+     * @return The prefix of the given reader
+     * @throws IOException
+     */
+    static String readPrefix(BufferedReader reader, int maxLength) throws IOException {
+        char[] prefix = new char[maxLength + 1];
+        int length = 0;
+        int read;
+        reader.mark(prefix.length);
+        
+        while (length < prefix.length && (read = reader.read(prefix, length, prefix.length - length)) != -1) {
+            length += read;
+        } // while
+        
+        reader.reset();
+        String data = new String(prefix, 0, Math.min(length, maxLength)).replaceAll("[\\r\\n]", "");
+        return length > maxLength ? data + "..." : data;
+    } // readPrefix
+    
+    /**
+     * Parses a NotifyContextRequest from the given reader, according to the given NGSI version. The reader is
+     * consumed in a streaming fashion, i.e. the notification is not copied into an intermediate string.
+     * @param reader
+     * @param ngsiVersion
+     * @return The parsed NotifyContextRequest, or null if the reader had no content
+     * @throws HTTPBadRequestException
+     */
+    private NotifyContextRequest parseNotifyContextRequest(Reader reader, String ngsiVersion)
+        throws HTTPBadRequestException {
+        NotifyContextRequest ncr;
+        
+        if (ngsiVersion == null || ngsiVersion.equals("legacy")) {
+            ncr = GSON.fromJson(reader, NotifyContextRequest.class);
+            
+            if (ncr != null && LOGGER.isDebugEnabled()) {
+                LOGGER.debug("[NGSIRestHandler] Parsed NotifyContextRequest on legacy NGSI: " + ncr.toString());
+            } // if
+        } else if (ngsiVersion.equals("normalized")) {
+            NotifyContextRequestNGSIv2 notifyContextRequestNGSIv2 = GSON_NGSIV2.fromJson(reader,
+                    NotifyContextRequestNGSIv2.class);
+            ncr = notifyContextRequestNGSIv2 == null ? null : notifyContextRequestNGSIv2.toNotifyContextRequest();
+            
+            if (ncr != null && LOGGER.isDebugEnabled()) {
+                LOGGER.debug("[NGSIRestHandler] Parsed NotifyContextRequest on normalized NGSIv2: "
+                        + ncr.toString());
+            } // if
+        } else {
+            LOGGER.warn("Unknown value: " + ngsiVersion + " for NGSI format");
+            throw new HTTPBadRequestException(ngsiVersion + " format not supported");
+        } // if else
+        
+        return ncr;
+    } // parseNotifyContextRequest
+    
     /**
      * Checks is the give Content-Type header value is wrong or not. It is protected since it is used by the tests.
      * @param headerValue
@@ -38,11 +38,13 @@ public class NGSIEvent implements Event {
     private byte[] body;
     private ContextElement originalCE;
     private ContextElement mappedCE;
+    private boolean binaryBody;
     
     private static final CygnusLogger LOGGER = new CygnusLogger(NGSIEvent.class);
     
     /**
-     * Constructor.
+     * Constructor. If the given body is null, then it is lazily encoded from the given context elements when
+     * required, i.e. when putting the event into a durable channel.
      * @param headers
      * @param body
      * @param originalCE
@@ -53,6 +55,7 @@ public class NGSIEvent implements Event {
         this.body = body;
         this.originalCE = originalCE;
         this.mappedCE = mappedCE;
+        this.binaryBody = false;
     } // NGSIEvent
 
     @Override
@@ -67,6 +70,11 @@ public class NGSIEvent implements Event {
 
     @Override
     public byte[] getBody() {
+        if (body == null && originalCE != null) {
+            body = binaryBody ? NGSIEventCodec.encode(originalCE, mappedCE)
+                    : NGSIEventCodec.encodeJson(originalCE, mappedCE);
+        } // if
+        
         return body;
     } // getBody
 
@@ -91,6 +99,19 @@ public class NGSIEvent implements Event {
         this.mappedCE = mappedCE;
     } // setMappedNCR
     
+    public boolean isBinaryBody() {
+        return binaryBody;
+    } // isBinaryBody
+    
+    /**
+     * Sets if the body must be encoded in binary format instead of Json format. It only applies to bodies lazily
+     * encoded, i.e. not given.
+     * @param binaryBody
+     */
+    public void setBinaryBody(boolean binaryBody) {
+        this.binaryBody = binaryBody;
+    } // setBinaryBody
+    
     /*
      * From here on, methods used by custom sinks. They are smart wrappers of the above methods.
      */
@@ -0,0 +1,308 @@
+/**
+ * Copyright 2026 Telefonica Investigación y Desarrollo, S.A.U
+ *
+ * This file is part of fiware-cygnus (FIWARE project).
+ *
+ * fiware-cygnus is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * fiware-cygnus is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with fiware-cygnus. If not, see
+ * http://www.gnu.org/licenses/.
+ *
+ * For those usages not covered by the GNU Affero General Public License please contact with iot_support at tid dot es
+ */
+package com.telefonica.iot.cygnus.interceptors;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.telefonica.iot.cygnus.containers.NotifyContextRequest.ContextAttribute;
+import com.telefonica.iot.cygnus.containers.NotifyContextRequest.ContextElement;
+import com.telefonica.iot.cygnus.containers.NotifyContextRequest.ContextMetadata;
+import com.telefonica.iot.cygnus.management.PatternTypeAdapter;
+import com.telefonica.iot.cygnus.utils.CommonConstants;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.regex.Pattern;
+import org.apache.flume.Event;
+
+/**
+ * Codec for the bodies of the NGSI events, i.e. the bytes version of the original and mapped context elements. These
+ * bodies are only used when the events are put into durable channels (e.g. CygnusFileChannel), since the sinks
+ * re-create the context elements from them when taking the events.
+ *
+ * Two formats are supported:
+ * - Json, the legacy one: the Json version of the original context element, a concatenator and, if mapped, the Json
+ * version of the mapped context element.
+ * - Binary: a magic byte and a format version, followed by length-prefixed fields. Decoding it does not require any
+ * Json parsing but for the values of the attributes and metadata being numbers, objects or arrays.
+ *
+ * The headers are not part of the body, since Flume already stores them together with the body.
+ */
+public final class NGSIEventCodec {
+
+    // Json never starts with a 0x00 byte, thus binary bodies can be told apart from Json ones
+    private static final byte MAGIC = 0x00;
+    private static final byte VERSION = 1;
+    private static final int NULL_LENGTH = -1;
+
+    // Tags for the attribute and metadata values
+    private static final byte VALUE_ABSENT = 0;
+    private static final byte VALUE_NULL = 1;
+    private static final byte VALUE_STRING = 2;
+    private static final byte VALUE_BOOLEAN = 3;
+    private static final byte VALUE_JSON = 4;
+
+    // Gson instances are thread-safe, thus the same one is shared for decoding all the Json bodies
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(Pattern.class, new PatternTypeAdapter())
+            .create();
+
+    /**
+     * Constructor. Utility classes should not have a public or default constructor.
+     */
+    private NGSIEventCodec() {
+    } // NGSIEventCodec
+
+    /**
+     * Gets if the given body is a binary one.
+     * @param body
+     * @return True if the given body is a binary one, otherwise false
+     */
+    public static boolean isBinary(byte[] body) {
+        return body != null && body.length > 1 && body[0] == MAGIC;
+    } // isBinary
+
+    /**
+     * Encodes the given context elements as a Json body.
+     * @param originalCE
+     * @param mappedCE It may be null if the event was not mapped
+     * @return The Json body
+     */
+    public static byte[] encodeJson(ContextElement originalCE, ContextElement mappedCE) {
+        return (originalCE.toString() + CommonConstants.CONCATENATOR + (mappedCE == null ? "" : mappedCE.toString()))
+                .getBytes();
+    } // encodeJson
+
+    /**
+     * Encodes the given context elements as a binary body.
+     * @param originalCE
+     * @param mappedCE It may be null if the event was not mapped
+     * @return The binary body
+     */
+    public static byte[] encode(ContextElement originalCE, ContextElement mappedCE) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(MAGIC);
+            out.writeByte(VERSION);
+            writeContextElement(out, originalCE);
+            writeContextElement(out, mappedCE);
+        } catch (IOException e) {
+            // Should never occur, since the bytes are written in memory
+            throw new IllegalStateException("Error while encoding a NGSI event (" + e.getMessage() + ")", e);
+        } // try catch
+
+        return bytes.toByteArray();
+    } // encode
+
+    /**
+     * Decodes the given Flume event, coming from a durable channel, into a NGSI event. Both binary and Json bodies
+     * are supported.
+     * @param event
+     * @return The decoded NGSI event
+     * @throws IOException If the binary body is malformed or its version is not supported
+     */
+    public static NGSIEvent decode(Event event) throws IOException {
+        byte[] body = event.getBody();
+        ContextElement originalCE = null;
+        ContextElement mappedCE = null;
+        boolean binary = isBinary(body);
+
+        if (binary) {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+            in.readByte(); // magic
+            byte version = in.readByte();
+
+            if (version != VERSION) {
+                throw new IOException("Unsupported NGSI event binary version " + version);
+            } // if
+
+            originalCE = readContextElement(in);
+            mappedCE = readContextElement(in);
+        } else {
+            String[] contextElementsStr = (new String(body)).split(CommonConstants.CONCATENATOR);
+
+            if (contextElementsStr.length == 1) {
+                originalCE = GSON.fromJson(contextElementsStr[0], ContextElement.class);
+            } else if (contextElementsStr.length == 2) {
+                originalCE = GSON.fromJson(contextElementsStr[0], ContextElement.class);
+                mappedCE = GSON.fromJson(contextElementsStr[1], ContextElement.class);
+            } // if else
+        } // if else
+
+        NGSIEvent ngsiEvent = new NGSIEvent(event.getHeaders(), body, originalCE, mappedCE);
+        ngsiEvent.setBinaryBody(binary);
+        return ngsiEvent;
+    } // decode
+
+    private static void writeContextElement(DataOutputStream out, ContextElement ce) throws IOException {
+        if (ce == null) {
+            out.writeBoolean(false);
+            return;
+        } // if
+
+        out.writeBoolean(true);
+        writeString(out, ce.getId());
+        writeString(out, ce.getType());
+        writeString(out, ce.getIsPattern());
+        ArrayList<ContextAttribute> attributes = ce.getAttributes();
+
+        if (attributes == null) {
+            out.writeInt(NULL_LENGTH);
+            return;
+        } // if
+
+        out.writeInt(attributes.size());
+
+        for (ContextAttribute attribute : attributes) {
+            writeString(out, attribute.getName());
+            writeString(out, attribute.getType());
+            writeValue(out, attribute.getValue());
+            ArrayList<ContextMetadata> metadatas = attribute.getMetadatas();
+
+            if (metadatas == null) {
+                out.writeInt(NULL_LENGTH);
+                continue;
+            } // if
+
+            out.writeInt(metadatas.size());
+
+            for (ContextMetadata metadata : metadatas) {
+                writeString(out, metadata.getName());
+                writeString(out, metadata.getType());
+                writeValue(out, metadata.getJsonValue());
+            } // for
+        } // for
+    } // writeContextElement
+
+    private static ContextElement readContextElement(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        } // if
+
+        ContextElement ce = new ContextElement();
+        ce.setId(readString(in));
+        ce.setType(readString(in));
+        ce.setIsPattern(readString(in));
+        int numAttributes = in.readInt();
+
+        if (numAttributes == NULL_LENGTH) {
+            ce.setAttributes(null);
+            return ce;
+        } // if
+
+        ArrayList<ContextAttribute> attributes = new ArrayList<>(numAttributes);
+
+        for (int i = 0; i < numAttributes; i++) {
+            ContextAttribute attribute = new ContextAttribute();
+            attribute.setName(readString(in));
+            attribute.setType(readString(in));
+            attribute.setContextValue(readValue(in));
+            int numMetadatas = in.readInt();
+
+            if (numMetadatas == NULL_LENGTH) {
+                attribute.setContextMetadata(null);
+            } else {
+                ArrayList<ContextMetadata> metadatas = new ArrayList<>(numMetadatas);
+
+                for (int j = 0; j < numMetadatas; j++) {
+                    ContextMetadata metadata = new ContextMetadata();
+                    metadata.setName(readString(in));
+                    metadata.setType(readString(in));
+                    metadata.setContextMetadata(readValue(in));
+                    metadatas.add(metadata);
+                } // for
+
+                attribute.setContextMetadata(metadatas);
+            } // if else
+
+            attributes.add(attribute);
+        } // for
+
+        ce.setAttributes(attributes);
+        return ce;
+    } // readContextElement
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(NULL_LENGTH);
+        } else {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } // if else
+    } // writeString
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+
+        if (length == NULL_LENGTH) {
+            return null;
+        } // if
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    } // readString
+
+    private static void writeValue(DataOutputStream out, JsonElement value) throws IOException {
+        if (value == null) {
+            out.writeByte(VALUE_ABSENT);
+        } else if (value.isJsonNull()) {
+            out.writeByte(VALUE_NULL);
+        } else if (value.isJsonPrimitive() && value.getAsJsonPrimitive().isString()) {
+            out.writeByte(VALUE_STRING);
+            writeString(out, value.getAsString());
+        } else if (value.isJsonPrimitive() && value.getAsJsonPrimitive().isBoolean()) {
+            out.writeByte(VALUE_BOOLEAN);
+            out.writeBoolean(value.getAsBoolean());
+        } else {
+            // Numbers (keeping their original representation), objects and arrays
+            out.writeByte(VALUE_JSON);
+            writeString(out, value.toString());
+        } // if else
+    } // writeValue
+
+    private static JsonElement readValue(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+
+        switch (tag) {
+            case VALUE_ABSENT:
+                return null;
+            case VALUE_NULL:
+                return JsonNull.INSTANCE;
+            case VALUE_STRING:
+                return new JsonPrimitive(readString(in));
+            case VALUE_BOOLEAN:
+                return new JsonPrimitive(in.readBoolean());
+            case VALUE_JSON:
+                return JsonParser.parseString(readString(in));
+            default:
+                throw new IOException("Unknown NGSI event binary value tag " + tag);
+        } // switch
+    } // readValue
+
+} // NGSIEventCodec
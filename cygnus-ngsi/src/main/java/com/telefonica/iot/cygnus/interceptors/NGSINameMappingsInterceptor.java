@@ -35,8 +35,11 @@ import com.telefonica.iot.cygnus.utils.NGSIConstants;
 import com.telefonica.iot.cygnus.management.PatternTypeAdapter;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.commons.lang3.tuple.ImmutableTriple;
 import org.apache.flume.Context;
 import org.apache.flume.Event;
@@ -53,9 +56,14 @@ import java.util.regex.Pattern;
 public class NGSINameMappingsInterceptor implements Interceptor {
 
     private static final CygnusLogger LOGGER = new CygnusLogger(NGSINameMappingsInterceptor.class);
+    private static final int DEFAULT_CACHE_SIZE = 10000;
+    private static final int MAX_ATTRIBUTE_RESOLUTIONS = 1000;
+    private static final String KEY_SEPARATOR = "\u0000";
     private final String nameMappingsConfFile;
     private final boolean invalidConfiguration;
-    private NameMappings nameMappings;
+    private final int cacheSize;
+    private final Map<String, EntityResolution> resolutionsCache;
+    private volatile NameMappings nameMappings;
     private PeriodicalNameMappingsReader periodicalNameMappingsReader;
 
     /**
@@ -65,8 +73,30 @@ public class NGSINameMappingsInterceptor implements Interceptor {
      * @param invalidConfiguration
      */
     public NGSINameMappingsInterceptor(String nameMappingsConfFile, boolean invalidConfiguration) {
+        this(nameMappingsConfFile, invalidConfiguration, DEFAULT_CACHE_SIZE);
+    } // NGSINameMappingsInterceptor
+
+    /**
+     * Constructor.
+     * 
+     * @param nameMappingsConfFile
+     * @param invalidConfiguration
+     * @param cacheSize Maximum number of cached resolutions, 0 disables the cache
+     */
+    public NGSINameMappingsInterceptor(String nameMappingsConfFile, boolean invalidConfiguration,
+            final int cacheSize) {
         this.nameMappingsConfFile = nameMappingsConfFile;
         this.invalidConfiguration = invalidConfiguration;
+        this.cacheSize = cacheSize;
+
+        // LRU cache of resolutions, the access order is updated on gets, thus all the operations are synchronized
+        this.resolutionsCache = Collections.synchronizedMap(new LinkedHashMap<String, EntityResolution>(16, 0.75f,
+                true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, EntityResolution> eldest) {
+                return size() > cacheSize;
+            } // removeEldestEntry
+        });
     } // NGSINameMappingsInterceptor
 
     @Override
@@ -108,14 +138,8 @@ public class NGSINameMappingsInterceptor implements Interceptor {
         // Add the mapped ContextElement to the NGSIEvent
         ngsiEvent.setMappedCE(map.getRight());
 
-        // Add the bytes version of the mapped ContextElement to event's body
-        byte[] originalCEBytes = ngsiEvent.getBody();
-        byte[] mappedCEBytes = map.getRight().toString().getBytes();
-        byte[] newBody = new byte[originalCEBytes.length + mappedCEBytes.length];
-        System.arraycopy(originalCEBytes, 0, newBody, 0, originalCEBytes.length);
-        System.arraycopy(mappedCEBytes, 0, newBody, originalCEBytes.length, mappedCEBytes.length);
-        ngsiEvent.setBody(newBody);
-        LOGGER.debug("[nmi] newBody: " + new String(newBody));
+        // The event's body, containing the bytes version of both ContextElements, will be lazily re-encoded
+        ngsiEvent.setBody(null);
 
         // Add the mapped service and service path to the headers
         headers.put(NGSIConstants.FLUME_HEADER_MAPPED_SERVICE, map.getLeft());
@@ -156,6 +180,7 @@ public class NGSINameMappingsInterceptor implements Interceptor {
     public static class Builder implements Interceptor.Builder {
         private boolean invalidConfiguration;
         private String nameMappingsConfFile;
+        private int cacheSize;
 
         @Override
         public void configure(Context context) {
@@ -170,11 +195,21 @@ public class NGSINameMappingsInterceptor implements Interceptor {
             } else {
                 LOGGER.info("[nmi] Reading configuration (nameMappingsConfFile=" + nameMappingsConfFile + ")");
             } // if else
+
+            cacheSize = context.getInteger("name_mappings_cache_size", DEFAULT_CACHE_SIZE);
+
+            if (cacheSize < 0) {
+                invalidConfiguration = true;
+                LOGGER.error("[nmi] Invalid configuration (name_mappings_cache_size = " + cacheSize
+                        + ") -- Must be greater than or equal to 0");
+            } else {
+                LOGGER.info("[nmi] Reading configuration (name_mappings_cache_size=" + cacheSize + ")");
+            } // if else
         } // configure
 
         @Override
         public Interceptor build() {
-            return new NGSINameMappingsInterceptor(nameMappingsConfFile, invalidConfiguration);
+            return new NGSINameMappingsInterceptor(nameMappingsConfFile, invalidConfiguration, cacheSize);
         } // build
 
         protected boolean getInvalidConfiguration() {
@@ -255,6 +290,7 @@ public class NGSINameMappingsInterceptor implements Interceptor {
         } catch (Exception e) {
             LOGGER.error("[nmi] Runtime error (" + e.getMessage() + ")");
             nameMappings = null;
+            resolutionsCache.clear();
             return;
         } // try catch
 
@@ -268,10 +304,17 @@ public class NGSINameMappingsInterceptor implements Interceptor {
      * @param jsonStr
      */
     protected void loadNameMappings(String jsonStr) {
+        // The new name mappings are set once parsed and compiled, then the resolutions of the previous ones are
+        // invalidated
+        nameMappings = parseNameMappings(jsonStr);
+        resolutionsCache.clear();
+        LOGGER.debug("[nmi] Reading name mappings, cached resolutions invalidated");
+    } // loadNameMappings
+
+    private NameMappings parseNameMappings(String jsonStr) {
         if (jsonStr == null) {
             LOGGER.debug("[nmi] Reading name mappings, no file to read");
-            nameMappings = null;
-            return;
+            return null;
         } // if
 
         // Parse the Json string
@@ -279,35 +322,36 @@ public class NGSINameMappingsInterceptor implements Interceptor {
             .registerTypeAdapter(Pattern.class, new PatternTypeAdapter())
             .create();
 
+        NameMappings parsedNameMappings;
+
         try {
-            nameMappings = gson.fromJson(jsonStr, NameMappings.class);
+            parsedNameMappings = gson.fromJson(jsonStr, NameMappings.class);
             LOGGER.debug("[nmi] Reading attribute mappings, Json parsed");
         } catch (JsonIOException e) {
             LOGGER.error("[nmi] Runtime error (" + e.getMessage() + ")");
-            nameMappings = null;
-            return;
+            return null;
         } catch (JsonSyntaxException e) {
             LOGGER.error("[nmi] Runtime error (" + e.getMessage() + ")");
-            nameMappings = null;
-            return;
+            return null;
         } // try catch
 
-        if (nameMappings != null) {
+        if (parsedNameMappings != null) {
             // Check if any of the mappings is not valid, e.g. some field is missing
-            nameMappings.purge();
+            parsedNameMappings.purge();
             LOGGER.debug("[nmi] Reading name mappings, Json purged");
 
             // Pre-compile the regular expressions
             try {
-                nameMappings.compilePatterns();
+                parsedNameMappings.compilePatterns();
             } catch (Exception e) {
                 LOGGER.error("[nmi] Compile patterns error (" + e.getMessage() + ") with namemapping " + jsonStr + " which will be ignored");
-                nameMappings = null;
-                return;
+                return null;
             } // try catch
             LOGGER.debug("[nmi] Reading name mappings, regular expressions pre-compiled");
         }
-    } // loadNameMappings
+
+        return parsedNameMappings;
+    } // parseNameMappings
 
     /**
      * Applies the mappings to the input NotifyContextRequest object.
@@ -319,20 +363,107 @@ public class NGSINameMappingsInterceptor implements Interceptor {
      */
     public ImmutableTriple<String, String, ContextElement> doMap(String originalService, String originalServicePath,
             ContextElement originalCE) {
-        if (nameMappings == null) {
-            LOGGER.info("[nmi] No namemappings to map entity " + originalCE.toString());
+        // Get a local reference, since the name mappings may be reloaded meanwhile
+        NameMappings currentNameMappings = nameMappings;
+
+        if (currentNameMappings == null) {
+            if (LOGGER.isInfoEnabled()) {
+                LOGGER.info("[nmi] No namemappings to map entity " + originalCE.toString());
+            } // if
+
             return new ImmutableTriple(originalService, originalServicePath, originalCE);
         } // if
 
-        // Triple to be returned
+        // Get the resolution of the mappings for the service, service path, entity ID and entity type
+        EntityResolution resolution = getEntityResolution(currentNameMappings, originalService, originalServicePath,
+                originalCE.getId(), originalCE.getType());
+        ContextElement newCE = originalCE.deepCopy();
+
+        if (resolution.getEntityMapping() == null) {
+            if (resolution.isServicePathFound() && LOGGER.isInfoEnabled()) {
+                LOGGER.info("[nmi] Entity " + originalCE.toString() + " no matched");
+            } // if
+
+            return new ImmutableTriple(resolution.getNewService(), resolution.getNewServicePath(), newCE);
+        } // if
+
+        newCE.setId(resolution.getNewEntityId());
+        newCE.setType(resolution.getNewEntityType());
+
+        for (ContextAttribute newCA : newCE.getAttributes()) {
+            String[] newNameAndType = resolution.getAttributeResolution(newCA.getName(), newCA.getType());
+
+            if (newNameAndType == null) {
+                LOGGER.debug("[nmi] Attribute not found: " + newCA.getName() + ", " + newCA.getType());
+                continue;
+            } // if
+
+            newCA.setName(newNameAndType[0]);
+            newCA.setType(newNameAndType[1]);
+        } // for
+
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("[nmi] Entity " + originalCE.toString() + " mapped to: " + newCE.toString()
+                    + " by matched with " + resolution.getEntityMapping().toString());
+        } // if
+
+        return new ImmutableTriple(resolution.getNewService(), resolution.getNewServicePath(), newCE);
+    } // doMap
+
+    /**
+     * Gets the resolution of the given name mappings for the given service, service path, entity ID and entity type,
+     * either from the cache or by evaluating the mappings.
+     * 
+     * @param currentNameMappings
+     * @param originalService
+     * @param originalServicePath
+     * @param originalEntityId
+     * @param originalEntityType
+     * @return The resolution of the mappings
+     */
+    private EntityResolution getEntityResolution(NameMappings currentNameMappings, String originalService,
+            String originalServicePath, String originalEntityId, String originalEntityType) {
+        if (cacheSize <= 0) {
+            return resolveEntity(currentNameMappings, originalService, originalServicePath, originalEntityId,
+                    originalEntityType);
+        } // if
+
+        String key = originalService + KEY_SEPARATOR + originalServicePath + KEY_SEPARATOR + originalEntityId
+                + KEY_SEPARATOR + originalEntityType;
+        EntityResolution resolution = resolutionsCache.get(key);
+
+        // Resolutions computed with previous name mappings are discarded; this may happen if the name mappings were
+        // reloaded while a resolution was being computed
+        if (resolution != null && resolution.getNameMappings() == currentNameMappings) {
+            LOGGER.debug("[nmi] Resolution found in the cache for " + key);
+            return resolution;
+        } // if
+
+        resolution = resolveEntity(currentNameMappings, originalService, originalServicePath, originalEntityId,
+                originalEntityType);
+        resolutionsCache.put(key, resolution);
+        return resolution;
+    } // getEntityResolution
+
+    /**
+     * Evaluates the given name mappings for the given service, service path, entity ID and entity type.
+     * 
+     * @param currentNameMappings
+     * @param originalService
+     * @param originalServicePath
+     * @param originalEntityId
+     * @param originalEntityType
+     * @return The resolution of the mappings
+     */
+    private EntityResolution resolveEntity(NameMappings currentNameMappings, String originalService,
+            String originalServicePath, String originalEntityId, String originalEntityType) {
         String newService = originalService;
         String newServicePath = originalServicePath;
-        ContextElement newCE = originalCE.deepCopy();
 
         // Map the service
         ServiceMapping serviceMapping = null;
 
-        for (ServiceMapping sm : nameMappings.getServiceMappings()) {
+        for (ServiceMapping sm : currentNameMappings.getServiceMappings()) {
             serviceMapping = sm;
 
             if (!serviceMapping.getOriginalServicePattern().matcher(originalService).matches()) {
@@ -343,8 +474,8 @@ public class NGSINameMappingsInterceptor implements Interceptor {
             LOGGER.debug("[nmi] FIWARE service found: " + originalService);
 
             if (serviceMapping.getNewService() != null) {
-                newService = originalService.replaceAll(serviceMapping.getOriginalServicePattern().toString(),
-                                                        serviceMapping.getNewService());
+                newService = serviceMapping.getOriginalServicePattern().matcher(originalService)
+                        .replaceAll(serviceMapping.getNewService());
                 LOGGER.debug("[nmi] FIWARE new service obtained: " + newService);
             } // if
 
@@ -353,7 +484,7 @@ public class NGSINameMappingsInterceptor implements Interceptor {
 
         if (serviceMapping == null) {
             LOGGER.debug("[nmi] FIWARE service not found: " + originalService);
-            return new ImmutableTriple(newService, newServicePath, newCE);
+            return new EntityResolution(currentNameMappings, newService, newServicePath, false, null, null, null);
         } // if
 
         // Map the service path
@@ -370,40 +501,31 @@ public class NGSINameMappingsInterceptor implements Interceptor {
             for (EntityMapping em : spm.getEntityMappings()) {
                 LOGGER.debug("[nmi] checking em: " + em.toString());
                 // check type
-                if (em.getOriginalEntityType() != null) {
-                    if (!em.getOriginalEntityTypePattern().matcher(newCE.getType()).matches()) {
-                        continue;
-                    } else {
-                        if (spm.getNewServicePath() != null) {
-                            newServicePath = originalServicePath.replaceAll(spm.getOriginalServicePathPattern().toString(),
-                                                                            spm.getNewServicePath());
-                        }
-                        LOGGER.debug("[nmi] FIWARE new service path obtained: " + newServicePath);
-                        servicePathMapping = spm;
-                        break;
-                    }
-                } else {
-                    if (spm.getNewServicePath() != null) {
-                        newServicePath = originalServicePath.replaceAll(spm.getOriginalServicePathPattern().toString(),
-                                                                        spm.getNewServicePath());
-                    }
-                    LOGGER.debug("[nmi] FIWARE new service path obtained: " + newServicePath);
-                    servicePathMapping = spm;
-                    break;
-                }
-            }
+                if (em.getOriginalEntityType() != null
+                        && !em.getOriginalEntityTypePattern().matcher(originalEntityType).matches()) {
+                    continue;
+                } // if
+
+                if (spm.getNewServicePath() != null) {
+                    newServicePath = spm.getOriginalServicePathPattern().matcher(originalServicePath)
+                            .replaceAll(spm.getNewServicePath());
+                } // if
+
+                LOGGER.debug("[nmi] FIWARE new service path obtained: " + newServicePath);
+                servicePathMapping = spm;
+                break;
+            } // for
+
             if (servicePathMapping != null) {
                 break;
-            }
+            } // if
         } // for
 
         if (servicePathMapping == null) {
             LOGGER.debug("[nmi] FIWARE service path not found: " + originalServicePath);
-            return new ImmutableTriple(newService, newServicePath, newCE);
+            return new EntityResolution(currentNameMappings, newService, newServicePath, false, null, null, null);
         } // if
 
-        String originalEntityId = newCE.getId();
-        String originalEntityType = newCE.getType();
         String newEntityId = originalEntityId;
         String newEntityType = originalEntityType;
         EntityMapping entityMapping = null;
@@ -418,7 +540,7 @@ public class NGSINameMappingsInterceptor implements Interceptor {
                     LOGGER.debug("[nmi] not matches type");
                     continue;
                 } else {
-                    LOGGER.debug("[nmi] " + entityMapping.getOriginalEntityType() + " matches " + newCE.getType());
+                    LOGGER.debug("[nmi] " + entityMapping.getOriginalEntityType() + " matches " + originalEntityType);
                 }
             }
             // check if match by Id
@@ -427,7 +549,7 @@ public class NGSINameMappingsInterceptor implements Interceptor {
                     LOGGER.debug("[nmi] not matches entityId");
                     continue;
                 } else {
-                    LOGGER.debug("[nmi] " + entityMapping.getOriginalEntityId() + " matches " + newCE.getId());
+                    LOGGER.debug("[nmi] " + entityMapping.getOriginalEntityId() + " matches " + originalEntityId);
                 }
             }
             if (!entityMapping.getOriginalEntityIdPattern().matcher(originalEntityId).matches() ||
@@ -441,8 +563,8 @@ public class NGSINameMappingsInterceptor implements Interceptor {
 
             if (entityMapping.getNewEntityId() != null) {
                 LOGGER.debug("[nmi] IdPattern : " + entityMapping.getOriginalEntityIdPattern().toString());
-                newEntityId = originalEntityId.replaceAll(entityMapping.getOriginalEntityIdPattern().toString(),
-                        entityMapping.getNewEntityId());
+                newEntityId = entityMapping.getOriginalEntityIdPattern().matcher(originalEntityId)
+                        .replaceAll(entityMapping.getNewEntityId());
                 LOGGER.debug("[nmi] newEntityId : " + newEntityId);
             } // if
 
@@ -453,76 +575,168 @@ public class NGSINameMappingsInterceptor implements Interceptor {
             break;
         } // for
 
-        if (entityMapping == null) {
-            LOGGER.info("[nmi] Entity " + originalCE.toString() + " no matched");
-            return new ImmutableTriple(newService, newServicePath, newCE);
-        } // if
+        return new EntityResolution(currentNameMappings, newService, newServicePath, true, entityMapping,
+                newEntityId, newEntityType);
+    } // resolveEntity
 
-        newCE.setId(newEntityId);
-        newCE.setType(newEntityType);
-
-        for (ContextAttribute newCA : newCE.getAttributes()) {
-            LOGGER.debug("[nmi] checking with CA: " + newCA.toString());
-            String originalAttributeName = newCA.getName();
-            String originalAttributeType = newCA.getType();
-            String newAttributeName = originalAttributeName;
-            String newAttributeType = originalAttributeType;
-            AttributeMapping attributeMapping = null;
-
-            for (AttributeMapping am : entityMapping.getAttributeMappings()) {
-                attributeMapping = am;
-                LOGGER.debug("[nmi] checking with attributeMapping: " + attributeMapping.toString());
-
-                // Check attribute type
-                if (attributeMapping.getOriginalAttributeType() != null) {
-                    if (!attributeMapping.getOriginalAttributeTypePattern().matcher(originalAttributeType).matches()) {
-                        LOGGER.debug("[nmi] not matches attribute type");
-                        continue;
-                    } else {
-                        LOGGER.debug("[nmi] " + attributeMapping.getOriginalAttributeType() + " matches ");
-                    }
+    /**
+     * Evaluates the attribute mappings of the given entity mapping for the given attribute name and type.
+     * 
+     * @param entityMapping
+     * @param originalAttributeName
+     * @param originalAttributeType
+     * @return The new attribute name and type, or null if no attribute mapping was found
+     */
+    private static String[] resolveAttribute(EntityMapping entityMapping, String originalAttributeName,
+            String originalAttributeType) {
+        String newAttributeName = originalAttributeName;
+        String newAttributeType = originalAttributeType;
+        AttributeMapping attributeMapping = null;
+
+        for (AttributeMapping am : entityMapping.getAttributeMappings()) {
+            attributeMapping = am;
+            LOGGER.debug("[nmi] checking with attributeMapping: " + attributeMapping.toString());
+
+            // Check attribute type
+            if (attributeMapping.getOriginalAttributeType() != null) {
+                if (!attributeMapping.getOriginalAttributeTypePattern().matcher(originalAttributeType).matches()) {
+                    LOGGER.debug("[nmi] not matches attribute type");
+                    continue;
+                } else {
+                    LOGGER.debug("[nmi] " + attributeMapping.getOriginalAttributeType() + " matches ");
                 }
-                // Check attribute name
-                if (attributeMapping.getOriginalAttributeName() != null) {
-                    if (!attributeMapping.getOriginalAttributeNamePattern().matcher(originalAttributeName).matches()) {
-                        LOGGER.debug("[nmi] not matches attribute name");
-                        continue;
-                    } else {
-                        LOGGER.debug("[nmi] " + attributeMapping.getOriginalAttributeName() + " matches ");
-                    }
+            }
+            // Check attribute name
+            if (attributeMapping.getOriginalAttributeName() != null) {
+                if (!attributeMapping.getOriginalAttributeNamePattern().matcher(originalAttributeName).matches()) {
+                    LOGGER.debug("[nmi] not matches attribute name");
+                    continue;
+                } else {
+                    LOGGER.debug("[nmi] " + attributeMapping.getOriginalAttributeName() + " matches ");
                 }
+            }
 
-                if (!attributeMapping.getOriginalAttributeNamePattern().matcher(originalAttributeName).matches() ||
-                    !attributeMapping.getOriginalAttributeTypePattern().matcher(originalAttributeType).matches()) {
-                    LOGGER.debug("[nmi] not matches both attribute type and name");
-                    attributeMapping = null;
-                    continue;
-                } // if
+            if (!attributeMapping.getOriginalAttributeNamePattern().matcher(originalAttributeName).matches() ||
+                !attributeMapping.getOriginalAttributeTypePattern().matcher(originalAttributeType).matches()) {
+                LOGGER.debug("[nmi] not matches both attribute type and name");
+                attributeMapping = null;
+                continue;
+            } // if
 
-                LOGGER.debug("[nmi] Attribute found: " + originalAttributeName + ", " + originalAttributeType);
+            LOGGER.debug("[nmi] Attribute found: " + originalAttributeName + ", " + originalAttributeType);
 
-                if (attributeMapping.getNewAttributeName() != null) {
-                    newAttributeName = attributeMapping.getNewAttributeName();
-                } // if
+            if (attributeMapping.getNewAttributeName() != null) {
+                newAttributeName = attributeMapping.getNewAttributeName();
+            } // if
 
-                if (attributeMapping.getNewAttributeType() != null) {
-                    newAttributeType = attributeMapping.getNewAttributeType();
-                } // if
+            if (attributeMapping.getNewAttributeType() != null) {
+                newAttributeType = attributeMapping.getNewAttributeType();
+            } // if
 
-                break;
-            } // for
+            break;
+        } // for
 
-            if (attributeMapping == null) {
-                LOGGER.debug("[nmi] Attribute not found: " + originalAttributeName + ", " + originalAttributeType);
-                continue;
+        if (attributeMapping == null) {
+            return null;
+        } // if
+
+        return new String[] {newAttributeName, newAttributeType};
+    } // resolveAttribute
+
+    /**
+     * Gets the number of cached resolutions. It is protected since it only can be used by this class and test
+     * classes.
+     * 
+     * @return The number of cached resolutions
+     */
+    protected int getCachedResolutions() {
+        return resolutionsCache.size();
+    } // getCachedResolutions
+
+    /**
+     * Resolution of the name mappings for a given service, service path, entity ID and entity type. The resolutions
+     * of the attributes are lazily added, since the attributes may differ from notification to notification.
+     */
+    private static class EntityResolution {
+
+        private static final String[] NOT_FOUND = new String[0];
+        private final NameMappings nameMappings;
+        private final String newService;
+        private final String newServicePath;
+        private final boolean servicePathFound;
+        private final EntityMapping entityMapping;
+        private final String newEntityId;
+        private final String newEntityType;
+        private final ConcurrentHashMap<String, String[]> attributeResolutions;
+
+        EntityResolution(NameMappings nameMappings, String newService, String newServicePath,
+                boolean servicePathFound, EntityMapping entityMapping, String newEntityId, String newEntityType) {
+            this.nameMappings = nameMappings;
+            this.newService = newService;
+            this.newServicePath = newServicePath;
+            this.servicePathFound = servicePathFound;
+            this.entityMapping = entityMapping;
+            this.newEntityId = newEntityId;
+            this.newEntityType = newEntityType;
+            this.attributeResolutions = new ConcurrentHashMap<>();
+        } // EntityResolution
+
+        public NameMappings getNameMappings() {
+            return nameMappings;
+        } // getNameMappings
+
+        public String getNewService() {
+            return newService;
+        } // getNewService
+
+        public String getNewServicePath() {
+            return newServicePath;
+        } // getNewServicePath
+
+        public boolean isServicePathFound() {
+            return servicePathFound;
+        } // isServicePathFound
+
+        public EntityMapping getEntityMapping() {
+            return entityMapping;
+        } // getEntityMapping
+
+        public String getNewEntityId() {
+            return newEntityId;
+        } // getNewEntityId
+
+        public String getNewEntityType() {
+            return newEntityType;
+        } // getNewEntityType
+
+        /**
+         * Gets the new name and type for the given attribute name and type.
+         * 
+         * @param originalAttributeName
+         * @param originalAttributeType
+         * @return The new attribute name and type, or null if no attribute mapping was found
+         */
+        public String[] getAttributeResolution(String originalAttributeName, String originalAttributeType) {
+            String key = originalAttributeName + KEY_SEPARATOR + originalAttributeType;
+            String[] newNameAndType = attributeResolutions.get(key);
+
+            if (newNameAndType == null) {
+                newNameAndType = resolveAttribute(entityMapping, originalAttributeName, originalAttributeType);
+
+                if (newNameAndType == null) {
+                    newNameAndType = NOT_FOUND;
+                } // if
+
+                // Bounded by the attribute mappings the entity mapping may produce, up to the number of distinct
+                // attributes notified for the entity
+                if (attributeResolutions.size() < MAX_ATTRIBUTE_RESOLUTIONS) {
+                    attributeResolutions.put(key, newNameAndType);
+                } // if
             } // if
 
-            newCA.setName(newAttributeName);
-            newCA.setType(newAttributeType);
-            LOGGER.debug("[nmi] newCA: " + newCA.toString());
-        } // for
-        LOGGER.info("[nmi] Entity " + originalCE.toString() + " mapped to: " + newCE.toString() + " by matched with " + entityMapping.toString());
-        return new ImmutableTriple(newService, newServicePath, newCE);
-    } // map
+            return newNameAndType == NOT_FOUND ? null : newNameAndType;
+        } // getAttributeResolution
+
+    } // EntityResolution
 
 } // NGSINameMappingsInterceptor
@@ -77,6 +77,7 @@ public class NGSIArcgisFeatureTableSink extends NGSISink {
     private static final int DEFAULT_MAX_BATCH_SIZE = 10;
     private static final int DEFAULT_BATCH_TIMEOUT_SECS = 60;
     private static final int DEFAULT_TIMEOUT = 0;
+    private static final long DEFAULT_OBJECT_ID_CACHE_TTL_SECS = 3600;
     private static final String ARCGIS_INSTANCE_NAME = "arcgis";
     
     private static final String GEO_JSON_COORDINATES_TAG = "coordinates";
@@ -92,6 +93,8 @@ public class NGSIArcgisFeatureTableSink extends NGSISink {
     private long timeoutSecs;
     private int connectionTimeout;
     private int readTimeout;
+    private int objectIdCacheSize;
+    private long objectIdCacheTtlSecs;
     private static volatile Map<String, NGSIArcgisFeatureTable> arcgisPersistenceBackend;
 
     /**
@@ -146,6 +149,24 @@ public class NGSIArcgisFeatureTableSink extends NGSISink {
         return password;
     } // getPassword
 
+    /**
+     * Gets the maximum number of ObjectIds cached per feature table.
+     * 
+     * @return
+     */
+    public int getObjectIdCacheSize() {
+        return objectIdCacheSize;
+    }
+
+    /**
+     * Gets the time (in seconds) a cached ObjectId is valid.
+     * 
+     * @return
+     */
+    public long getObjectIdCacheTtlSecs() {
+        return objectIdCacheTtlSecs;
+    }
+
     /**
      * 
      */
@@ -184,6 +205,8 @@ public class NGSIArcgisFeatureTableSink extends NGSISink {
                                                                              connectionTimeout, readTimeout);
                 newTable.setBatchAction(ArcgisFeatureTable.ADD_UPDATE_ACTION);
                 newTable.setBatchSize(maxBatchSize);
+                newTable.setObjectIdCacheSize(objectIdCacheSize);
+                newTable.setObjectIdCacheTTL(objectIdCacheTtlSecs * 1000);
 
                 if (newTable.hasError() || !newTable.connected()) {
                     LOGGER.error("Error creating new persistence Backend. " + newTable.getErrorDesc());
@@ -263,6 +286,27 @@ public class NGSIArcgisFeatureTableSink extends NGSISink {
         } else {
             LOGGER.debug("[" + this.getName() + "] Reading configuration (arcgis_connectionTimeout=" + connectionTimeout + ")");
         }
+
+        objectIdCacheSize = context.getInteger("arcgis_objectIdCacheSize",
+                ArcgisFeatureTable.DEFAULT_OBJECT_ID_CACHE_SIZE);
+        if (objectIdCacheSize < 0) {
+            invalidConfiguration = true;
+            LOGGER.error("[" + this.getName() + "] Invalid configuration (arcgis_objectIdCacheSize="
+                    + objectIdCacheSize + ") must be an integer greater or equal than 0");
+        } else {
+            LOGGER.debug("[" + this.getName() + "] Reading configuration (arcgis_objectIdCacheSize="
+                    + objectIdCacheSize + ")");
+        }
+
+        objectIdCacheTtlSecs = context.getLong("arcgis_objectIdCacheTtlSecs", DEFAULT_OBJECT_ID_CACHE_TTL_SECS);
+        if (objectIdCacheTtlSecs <= 0) {
+            invalidConfiguration = true;
+            LOGGER.error("[" + this.getName() + "] Invalid configuration (arcgis_objectIdCacheTtlSecs="
+                    + objectIdCacheTtlSecs + ") must be an integer greater than 0");
+        } else {
+            LOGGER.debug("[" + this.getName() + "] Reading configuration (arcgis_objectIdCacheTtlSecs="
+                    + objectIdCacheTtlSecs + ")");
+        }
         super.configure(context);
     } // configure
 
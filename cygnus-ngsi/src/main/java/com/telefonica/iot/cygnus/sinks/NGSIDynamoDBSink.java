@@ -57,6 +57,9 @@ public class NGSIDynamoDBSink extends NGSISink {
     private String secretAccessKey;
     private String region;
     private boolean attrPersistenceRow;
+    private int writeMaxInFlight;
+    private int writeMaxRetries;
+    private long writeRetryInterval;
     private long id = new Date().getTime();
 
     protected DynamoDBBackend getPersistenceBackend() {
@@ -83,6 +86,19 @@ public class NGSIDynamoDBSink extends NGSISink {
         return attrPersistenceRow;
     } // getRowAttrPersistence
 
+    protected int getWriteMaxInFlight() {
+        return writeMaxInFlight;
+    } // getWriteMaxInFlight
+
+    /**
+     * The DynamoDB client and the known tables cache are thread-safe.
+     * @return True
+     */
+    @Override
+    protected boolean supportsConcurrentPersistence() {
+        return true;
+    } // supportsConcurrentPersistence
+
     @Override
     public void configure(Context context) {
         // Read NGSISink general configuration
@@ -121,12 +137,47 @@ public class NGSIDynamoDBSink extends NGSISink {
             LOGGER.warn("[" + this.getName() + "] Invalid configuration (attr_persistence="
                 + attrPersistRowStr + ") -- Must be 'row' or 'column'");
         }  // if else
+
+        writeMaxInFlight = context.getInteger("write_max_in_flight", 1);
+
+        if (writeMaxInFlight <= 0) {
+            invalidConfiguration = true;
+            LOGGER.warn("[" + this.getName() + "] Invalid configuration (write_max_in_flight="
+                    + writeMaxInFlight + ") -- Must be greater than 0");
+        } else {
+            LOGGER.debug("[" + this.getName() + "] Reading configuration (write_max_in_flight="
+                    + writeMaxInFlight + ")");
+        } // if else
+
+        writeMaxRetries = context.getInteger("write_max_retries", DynamoDBBackendImpl.DEFAULT_WRITE_MAX_RETRIES);
+
+        if (writeMaxRetries < 0) {
+            invalidConfiguration = true;
+            LOGGER.warn("[" + this.getName() + "] Invalid configuration (write_max_retries="
+                    + writeMaxRetries + ") -- Must be greater than or equal to 0");
+        } else {
+            LOGGER.debug("[" + this.getName() + "] Reading configuration (write_max_retries="
+                    + writeMaxRetries + ")");
+        } // if else
+
+        writeRetryInterval = context.getLong("write_retry_interval", DynamoDBBackendImpl.DEFAULT_WRITE_RETRY_INTERVAL);
+
+        if (writeRetryInterval <= 0) {
+            invalidConfiguration = true;
+            LOGGER.warn("[" + this.getName() + "] Invalid configuration (write_retry_interval="
+                    + writeRetryInterval + ") -- Must be greater than 0");
+        } else {
+            LOGGER.debug("[" + this.getName() + "] Reading configuration (write_retry_interval="
+                    + writeRetryInterval + ")");
+        } // if else
     } // configure
 
     @Override
     public void start() {
         try {
-            persistenceBackend = new DynamoDBBackendImpl(accessKeyId, secretAccessKey, region);
+            DynamoDBBackendImpl backendImpl = new DynamoDBBackendImpl(accessKeyId, secretAccessKey, region);
+            backendImpl.setWriteOptions(writeMaxInFlight, writeMaxRetries, writeRetryInterval);
+            persistenceBackend = backendImpl;
             LOGGER.debug("[" + this.getName() + "] DynamoDB persistence backend created");
         } catch (Exception e) {
             LOGGER.error("Error while creating the DynamoDB persistence backend. Details="
@@ -136,6 +187,15 @@ public class NGSIDynamoDBSink extends NGSISink {
         super.start();
     } // start
 
+    @Override
+    public void stop() {
+        super.stop();
+
+        if (persistenceBackend != null) {
+            persistenceBackend.close();
+        } // if
+    } // stop
+
     @Override
     void persistBatch(NGSIBatch batch) throws CygnusBadConfiguration, CygnusPersistenceError {
         if (batch == null) {
@@ -352,7 +412,8 @@ public class NGSIDynamoDBSink extends NGSISink {
                 + tableName + "), Data (" + aggregation.toString() + ")");
 
         // tables can be always created in DynamoDB, independedntly of the attribute persistence mode,
-        // since it is NoSQL and there is no fixed structure
+        // since it is NoSQL and there is no fixed structure; besides, the tables known to exist are remembered by
+        // the backend, which does not reach DynamoDB for them
         
         try {
             persistenceBackend.createTable(tableName, NGSIConstants.DYNAMO_DB_PRIMARY_KEY);
@@ -22,7 +22,6 @@ package com.telefonica.iot.cygnus.sinks;
 
 import com.telefonica.iot.cygnus.backends.elasticsearch.ElasticsearchBackend;
 import com.telefonica.iot.cygnus.backends.elasticsearch.ElasticsearchBackendImpl;
-import com.telefonica.iot.cygnus.backends.http.JsonResponse;
 import com.telefonica.iot.cygnus.containers.NotifyContextRequest.ContextAttribute;
 import com.telefonica.iot.cygnus.containers.NotifyContextRequest.ContextElement;
 import com.telefonica.iot.cygnus.errors.CygnusBadConfiguration;
@@ -43,10 +42,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Future;
 import org.apache.flume.Context;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
@@ -76,49 +75,19 @@ public class NGSIElasticsearchSink extends NGSISink {
     private boolean rowAttrPersistence;
     private String timezone;
     private boolean castValue;
-    private int cacheFlashIntervalSec;
     private String charSet;
+    private int bulkMaxBytes;
+    private int bulkMaxRetries;
+    private long bulkRetryInterval;
+    private int bulkMaxInFlight;
     private ElasticsearchBackend persistenceBackend;
 
-    private ScheduledExecutorService scheduler;
+    private ExecutorService bulkExecutor;
     /**
-     * {@code aggregations} is instance variable to store the aggregated data.
-     * this object is read and written by main thread and ScheduledExecutorService thread.
-     * So you have to synchronize when using this object.
+     * {@code aggregations} is instance variable to store the aggregated data of the batch being persisted.
      *
      */
-    private Map<String, List<Map<String, String>>> aggregations = new ConcurrentHashMap<>();
-
-    /**
-     * {@code persistentTask} is an anonymous objects implements Runnable.
-     * This object is used directly or through ScheduledExecutorService to store the aggregated data to Elasticsearch.
-     *
-     * If {@code cache_flash_interval_sec} is zero, {@code run()} method of this object is called directly when {@code peristBatch()} is fired.
-     * Otherwise, ScheduledExecutorService calls this object periodically at the specified interval.
-     *
-     */
-    private Runnable persistentTask = new Runnable() {
-        public void run() {
-            try {
-                // synchronize aggregations because aggregations is read/written by main thread and ScheduledExecutorService thread.
-                synchronized(NGSIElasticsearchSink.this.aggregations) {
-                    for (Map.Entry<String, List<Map<String, String>>> aggregation : NGSIElasticsearchSink.this.aggregations.entrySet()) {
-                        String idx = aggregation.getKey();
-
-                        List<Map<String, String>> data = aggregation.getValue();
-                        JsonResponse response = NGSIElasticsearchSink.this.persistenceBackend.bulkInsert(idx,
-                                NGSIElasticsearchSink.this.mappingType, data);
-                        LOGGER.info("[" + NGSIElasticsearchSink.this.getName() + "] Persisting data at NGSIElasticsearchSink. (index="
-                                + idx + ", type=" + NGSIElasticsearchSink.this.mappingType + ", data=" + data + ")");
-                    } // for
-                    NGSIElasticsearchSink.this.aggregations.clear();
-                } // synchronized
-            } catch (Exception e) {
-                LOGGER.error("Error while persisting data using backend. Details=" + e.getMessage());
-                throw new RuntimeException(e);
-            } // try-catch
-        } // run
-    };
+    private Map<String, List<Map<String, String>>> aggregations = new HashMap<>();
 
     /**
      * Constructor.
@@ -219,14 +188,6 @@ public class NGSIElasticsearchSink extends NGSISink {
         return this.castValue;
     } // getCastValue
 
-    /**
-     * Gets the time interval (seconds) to flash the memory cache. It is protected due to it is only required for testing purposes.
-     * @return The interval seconds
-     */
-    protected int getCacheFlashIntervalSec() {
-        return this.cacheFlashIntervalSec;
-    } // getCacheFlashIntervalSec
-
     /**
      * Gets the CharSet. It is protected due to it is only required for testing purposes.
      * @return The charSet
@@ -235,6 +196,32 @@ public class NGSIElasticsearchSink extends NGSISink {
         return this.charSet;
     } // getCharSet
 
+    /**
+     * Gets the maximum size in bytes of a _bulk request. It is protected due to it is only required for testing purposes.
+     * @return The maximum size in bytes of a _bulk request
+     */
+    protected int getBulkMaxBytes() {
+        return this.bulkMaxBytes;
+    } // getBulkMaxBytes
+
+    /**
+     * Gets the number of retries of the not inserted documents. It is protected due to it is only required for testing
+     * purposes.
+     * @return The number of retries of the not inserted documents
+     */
+    protected int getBulkMaxRetries() {
+        return this.bulkMaxRetries;
+    } // getBulkMaxRetries
+
+    /**
+     * Gets the maximum number of concurrent _bulk requests. It is protected due to it is only required for testing
+     * purposes.
+     * @return The maximum number of concurrent _bulk requests
+     */
+    protected int getBulkMaxInFlight() {
+        return this.bulkMaxInFlight;
+    } // getBulkMaxInFlight
+
     /**
      * Gets the persistence backend. It is protected due to it is only required for testing purposes.
      * @return The persistence backend
@@ -267,14 +254,6 @@ public class NGSIElasticsearchSink extends NGSISink {
         this.aggregations = aggregations;
     } // setAggregations
 
-    /**
-     * Gets the scheduler. It is protected due to it is only required for testing purposes.
-     * @return The scheduler (if {@code cache_flash_interval_sec} is zero, this method returns {@code null})
-     */
-    protected ScheduledExecutorService getScheduler() {
-        return this.scheduler;
-    } // getScheduler
-
     /**
      * configure NGSIElasticsearchSink.
      *
@@ -363,89 +342,101 @@ public class NGSIElasticsearchSink extends NGSISink {
                 + castValueStr + ") -- Must be 'true' or 'false'");
         }  // if else
 
-        this.cacheFlashIntervalSec = context.getInteger("cache_flash_interval_sec", 0);
-        LOGGER.debug("[" + this.getName() + "] Reading configuration (cache_flash_interval_sec="
-                + this.cacheFlashIntervalSec + ")");
+        String cacheFlashIntervalSecStr = context.getString("cache_flash_interval_sec");
+
+        if (cacheFlashIntervalSecStr != null) {
+            LOGGER.warn("[" + this.getName() + "] Ignoring configuration (cache_flash_interval_sec="
+                    + cacheFlashIntervalSecStr + ") -- Deprecated, the data is persisted as soon as each batch is");
+        } // if
 
         this.charSet = context.getString("charset", "UTF-8");
         LOGGER.debug("[" + this.getName() + "] Reading configuration (charset=" + this.charSet + ")");
+
+        this.bulkMaxBytes = context.getInteger("bulk_max_bytes", ElasticsearchBackendImpl.DEFAULT_BULK_MAX_BYTES);
+        if (this.bulkMaxBytes > 0) {
+            LOGGER.debug("[" + this.getName() + "] Reading configuration (bulk_max_bytes=" + this.bulkMaxBytes + ")");
+        } else {
+            this.invalidConfiguration = true;
+            LOGGER.warn("[" + this.getName() + "] Invalid configuration (bulk_max_bytes=" + this.bulkMaxBytes
+                + ") -- Must be greater than 0");
+        } // if else
+
+        this.bulkMaxRetries = context.getInteger("bulk_max_retries", 3);
+        if (this.bulkMaxRetries >= 0) {
+            LOGGER.debug("[" + this.getName() + "] Reading configuration (bulk_max_retries=" + this.bulkMaxRetries + ")");
+        } else {
+            this.invalidConfiguration = true;
+            LOGGER.warn("[" + this.getName() + "] Invalid configuration (bulk_max_retries=" + this.bulkMaxRetries
+                + ") -- Must be greater than or equal to 0");
+        } // if else
+
+        this.bulkRetryInterval = context.getLong("bulk_retry_interval", 1000L);
+        if (this.bulkRetryInterval >= 0) {
+            LOGGER.debug("[" + this.getName() + "] Reading configuration (bulk_retry_interval="
+                + this.bulkRetryInterval + ")");
+        } else {
+            this.invalidConfiguration = true;
+            LOGGER.warn("[" + this.getName() + "] Invalid configuration (bulk_retry_interval="
+                + this.bulkRetryInterval + ") -- Must be greater than or equal to 0");
+        } // if else
+
+        this.bulkMaxInFlight = context.getInteger("bulk_max_in_flight", 4);
+        if (this.bulkMaxInFlight > 0) {
+            LOGGER.debug("[" + this.getName() + "] Reading configuration (bulk_max_in_flight="
+                + this.bulkMaxInFlight + ")");
+        } else {
+            this.invalidConfiguration = true;
+            LOGGER.warn("[" + this.getName() + "] Invalid configuration (bulk_max_in_flight=" + this.bulkMaxInFlight
+                + ") -- Must be greater than 0");
+        } // if else
     } // configure
 
     /**
      * start the NGSIElasticsearchSink.
-     * 1. instanciate persistenceBackend
-     * 2. call startInternal
-     * 3. call super.start()
+     * 1. instanciate persistenceBackend and the executor of concurrent _bulk requests
+     * 2. call super.start()
      *
      * {@inheritDoc}
      */
     @Override
     public void start() {
         try {
-            this.persistenceBackend = new ElasticsearchBackendImpl(this.elasticsearchHost, this.elasticsearchPort,
-                this.ssl, this.backendMaxConns, this.backendMaxConnsPerRoute, this.charSet);
+            ElasticsearchBackendImpl backendImpl = new ElasticsearchBackendImpl(this.elasticsearchHost,
+                this.elasticsearchPort, this.ssl, this.backendMaxConns, this.backendMaxConnsPerRoute, this.charSet);
+            backendImpl.setBulkOptions(this.bulkMaxBytes, this.bulkMaxRetries, this.bulkRetryInterval);
+            this.persistenceBackend = backendImpl;
             String endpoint = this.ssl ? "https://" : "http://" + this.elasticsearchHost + ":" + this.elasticsearchPort;
             LOGGER.debug("[" + this.getName() + "] Elasticsearch persistence backend created (endpoint=" + endpoint + ")");
         } catch (Exception e) {
             LOGGER.error("Error while creating the Elasticsearch persistence backend. Details=" + e.getMessage());
         } // try-catch
-        startInternal();
+        if (this.bulkMaxInFlight > 1) {
+            this.bulkExecutor = Executors.newFixedThreadPool(this.bulkMaxInFlight);
+        } // if
         LOGGER.info("[" + this.getName() + "] started NGSIElasticsearchSink gracefully");
         super.start();
     } // start
 
-    /**
-     * start ScheduledExecutorService if {@code cache_flash_interval_sec} is not zero.
-     * If {@code cache_flash_interval_sec} is not zero, start ScheduledExecutorService to persist data periodically at the {@code cache_flash_interval_sec} intervals.
-     * If {@code cache_flash_interval_sec} is 0 (default value), the ScheduledExecutorService does not start and the data is persisted at every time when {@code persistBatch} is called.
-     */
-    protected void startInternal() {
-        if (this.cacheFlashIntervalSec != 0) {
-            this.scheduler = Executors.newSingleThreadScheduledExecutor();
-            this.scheduler.scheduleWithFixedDelay(this.persistentTask, 0, this.cacheFlashIntervalSec, TimeUnit.SECONDS);
-            LOGGER.debug("[" + this.getName() + "] ScheduledExecutorService started");
-        } // if
-    } // startInternal
-
     /**
      * stop the NGSIElasticsearchSink gracefully.
-     * 1. call {@code stopInternal()}
+     * 1. shut down the executor of concurrent _bulk requests
      * 2. call {@code super.stop()}
      *
      * {@inheritDoc}
      */
     @Override
     public void stop() {
-        stopInternal();
+        if (this.bulkExecutor != null) {
+            this.bulkExecutor.shutdown();
+        } // if
         LOGGER.info("[" + this.getName() + "] stopped NGSIElasticsearchSink gracefully");
         super.stop();
     } // stop
 
-    /**
-     * stop NGSIElasticsearchSink gracefully.
-     * {@code stopInternal} stops the ScheduledExecutorService if it was started and persists remaining data if exist.
-     */
-    protected void stopInternal() {
-        try {
-            // stop scheduler if started
-            if (this.scheduler != null) {
-                this.scheduler.shutdown();
-                this.scheduler.awaitTermination(this.cacheFlashIntervalSec * 2, TimeUnit.SECONDS);
-                LOGGER.debug("[" + this.getName() + "] ScheduledThreadPoolExecutor stopped");
-            }
-        } catch (Exception e) {
-            LOGGER.error("Error while shutting down the scheduler. Details=" + e.getMessage());
-        } finally {
-            // persist the remaining data if exists
-            this.persistentTask.run();
-            LOGGER.debug("[" + this.getName() + "] persisted all data");
-        }
-    } // stopInternal
-
     /**
      * persist the aggregated data using backend.
-     * {@code persistBatch} aggregates the NGSI data using {@code ElasticsearchAggregator} and persists them using {@code persistentTask.run()} directly if {@code cache_flash_interval_sec} is zero.
-     * Otherwise, {@code persistBatch} aggregates the NGSI data, but {@code persistBatch} does not persist them. Because ScheduledExecutorService will persist them later.
+     * {@code persistBatch} aggregates the NGSI data using {@code ElasticsearchAggregator} and persists them using {@code flush()} directly.
+     * The sub-batches are set as persisted only once the aggregated data has been acknowledged by Elasticsearch, thus the batch is not committed before.
      *
      * @param batch a data to be persisted
      * @throws com.telefonica.iot.cygnus.errors.CygnusBadConfiguration
@@ -477,15 +468,82 @@ public class NGSIElasticsearchSink extends NGSISink {
             for (NGSIEvent event : events) {
                 aggregator.aggregate(event);
             } // for
+        } // while
 
-            // Persist the aggregation if cacheFlashIntervalSec == 0
-            if (this.cacheFlashIntervalSec == 0) {
-                this.persistentTask.run();
-            } // if
+        // Persist the aggregation, an error is thrown if it is not acknowledged
+        this.flush();
+
+        // Set the sub-batches as persisted
+        batch.startIterator();
+
+        while (batch.hasNext()) {
+            batch.getNextDestination();
             batch.setNextPersisted(true);
-        } // for
+        } // while
     } // persistBatch
 
+    /**
+     * Persists the aggregated data. The aggregations are emptied at the beginning, thus a failed batch is aggregated
+     * again from scratch when retried.
+     *
+     * @throws CygnusPersistenceError
+     * @throws CygnusRuntimeError
+     */
+    protected void flush() throws CygnusPersistenceError, CygnusRuntimeError {
+        Map<String, List<Map<String, String>>> flushedAggregations = new HashMap<>(this.aggregations);
+        this.aggregations.clear();
+        this.bulkInsert(flushedAggregations);
+    } // flush
+
+    /**
+     * Inserts the given aggregations, one _bulk request per index (or more, if too large). If there is an executor,
+     * up to {@code bulk_max_in_flight} indexes are inserted concurrently; no more requests are done until the
+     * in-flight ones end.
+     *
+     * @param flushedAggregations
+     * @throws CygnusPersistenceError
+     * @throws CygnusRuntimeError
+     */
+    private void bulkInsert(Map<String, List<Map<String, String>>> flushedAggregations)
+        throws CygnusPersistenceError, CygnusRuntimeError {
+        if (this.bulkExecutor == null || flushedAggregations.size() <= 1) {
+            for (Map.Entry<String, List<Map<String, String>>> aggregation : flushedAggregations.entrySet()) {
+                this.bulkInsert(aggregation.getKey(), aggregation.getValue());
+            } // for
+
+            return;
+        } // if
+
+        List<Future<Void>> futures = new ArrayList<>();
+
+        for (final Map.Entry<String, List<Map<String, String>>> aggregation : flushedAggregations.entrySet()) {
+            futures.add(this.bulkExecutor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    NGSIElasticsearchSink.this.bulkInsert(aggregation.getKey(), aggregation.getValue());
+                    return null;
+                } // call
+            }));
+        } // for
+
+        // wait for all the requests, the first error (if any) is thrown
+        try {
+            CommonUtils.waitForAll(futures);
+        } catch (CygnusPersistenceError | CygnusRuntimeError e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CygnusPersistenceError("Could not persist the aggregated data", e.getClass().getName(),
+                    e.getMessage());
+        } // try catch
+    } // bulkInsert
+
+    private void bulkInsert(String idx, List<Map<String, String>> data)
+        throws CygnusPersistenceError, CygnusRuntimeError {
+        this.persistenceBackend.bulkInsert(idx, this.mappingType, data);
+        LOGGER.info("[" + this.getName() + "] Persisting data at NGSIElasticsearchSink. (index="
+                + idx + ", type=" + this.mappingType + ", documents=" + data.size() + ")");
+    } // bulkInsert
+
     /**
      * Not implemented the size-based capping.
      *
@@ -657,13 +715,10 @@ public class NGSIElasticsearchSink extends NGSISink {
                 elem.put("recvTimeTs", String.valueOf(v.recvTimeTs));
                 elem.put("data", jobj.toJSONString());
 
-                // synchronize aggregations because aggregations is read/written by main thread and ScheduledExecutorService thread.
-                synchronized(NGSIElasticsearchSink.this.aggregations) {
-                    if (!NGSIElasticsearchSink.this.aggregations.containsKey(v.idx)) {
-                        NGSIElasticsearchSink.this.aggregations.put(v.idx, new ArrayList<Map<String, String>>());
-                    }
-                    NGSIElasticsearchSink.this.aggregations.get(v.idx).add(elem);
-                } // synchronized
+                if (!NGSIElasticsearchSink.this.aggregations.containsKey(v.idx)) {
+                    NGSIElasticsearchSink.this.aggregations.put(v.idx, new ArrayList<Map<String, String>>());
+                }
+                NGSIElasticsearchSink.this.aggregations.get(v.idx).add(elem);
             } // for
         } // aggregateAsRow
 
@@ -720,13 +775,10 @@ public class NGSIElasticsearchSink extends NGSISink {
             elem.put("recvTimeTs", String.valueOf(v.recvTimeTs));
             elem.put("data", jobj.toJSONString());
 
-            // synchronize aggregations because aggregations is read/written by main thread and ScheduledExecutorService thread.
-            synchronized(NGSIElasticsearchSink.this.aggregations) {
-                if (!NGSIElasticsearchSink.this.aggregations.containsKey(idx)) {
-                    NGSIElasticsearchSink.this.aggregations.put(idx, new ArrayList<Map<String, String>>());
-                }
-                NGSIElasticsearchSink.this.aggregations.get(idx).add(elem);
-            } // synchronized
+            if (!NGSIElasticsearchSink.this.aggregations.containsKey(idx)) {
+                NGSIElasticsearchSink.this.aggregations.put(idx, new ArrayList<Map<String, String>>());
+            }
+            NGSIElasticsearchSink.this.aggregations.get(idx).add(elem);
         } // aggregateAsColumn
 
         /**
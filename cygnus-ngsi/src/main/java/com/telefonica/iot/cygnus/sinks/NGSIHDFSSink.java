@@ -70,7 +70,7 @@ public class NGSIHDFSSink extends NGSISink {
     /**
      * Available file-format implementation.
      */
-    protected enum FileFormat { JSONROW, JSONCOLUMN, CSVROW, CSVCOLUMN }
+    protected enum FileFormat { JSONROW, JSONCOLUMN, CSVROW, CSVCOLUMN, PARQUETROW, PARQUETCOLUMN }
 
 
     protected enum Periodicity { NONE, HOURLY, DAILY, MONTHLY, YEARLY }
@@ -104,6 +104,12 @@ public class NGSIHDFSSink extends NGSISink {
     private String csvSeparator;
     private int maxConns;
     private int maxConnsPerRoute;
+    private boolean enableStreams;
+    private long streamsRollSize;
+    private long streamsRollInterval;
+    private long streamsIdleTimeout;
+    private String parquetCompression;
+    private int parquetRowGroupSize;
     private boolean enableMetadataPersistance;
     private Periodicity periodicityOfFileSeparation;
 
@@ -179,6 +185,10 @@ public class NGSIHDFSSink extends NGSISink {
                 return "csv-row";
             case CSVCOLUMN:
                 return "csv-column";
+            case PARQUETROW:
+                return "parquet-row";
+            case PARQUETCOLUMN:
+                return "parquet-column";
             default:
                 return "";
         } // switch;
@@ -253,6 +263,30 @@ public class NGSIHDFSSink extends NGSISink {
         return maxConnsPerRoute;
     } // getBackendMaxConnsPerRoute
 
+    protected boolean getEnableStreams() {
+        return enableStreams;
+    } // getEnableStreams
+
+    protected long getStreamsRollSize() {
+        return streamsRollSize;
+    } // getStreamsRollSize
+
+    protected long getStreamsRollInterval() {
+        return streamsRollInterval;
+    } // getStreamsRollInterval
+
+    protected long getStreamsIdleTimeout() {
+        return streamsIdleTimeout;
+    } // getStreamsIdleTimeout
+
+    protected String getParquetCompression() {
+        return parquetCompression;
+    } // getParquetCompression
+
+    protected int getParquetRowGroupSize() {
+        return parquetRowGroupSize;
+    } // getParquetRowGroupSize
+
     @Override
     public void configure(Context context) {
         String hdfsHost = context.getString("hdfs_host", "localhost");
@@ -311,7 +345,8 @@ public class NGSIHDFSSink extends NGSISink {
         } catch (Exception e) {
             invalidConfiguration = true;
             LOGGER.warn("[" + this.getName() + "] Invalid configuration (file_format="
-                    + fileFormatStr + ") -- Must be 'json-row', 'json-column', 'csv-row' or 'csv-column'");
+                    + fileFormatStr + ") -- Must be 'json-row', 'json-column', 'csv-row', 'csv-column', 'parquet-row' or "
+                    + "'parquet-column'");
         } // catch
 
         String periodicityOfFileSeparationStr = context.getString("periodicity_of_file_separation", "none");
@@ -438,6 +473,87 @@ public class NGSIHDFSSink extends NGSISink {
         LOGGER.debug("[" + this.getName() + "] Reading configuration (backend.max_conns_per_route=" + maxConnsPerRoute
                 + ")");
 
+        String enableStreamsStr = context.getString("backend.streams", "false");
+
+        if (enableStreamsStr.equals("true") || enableStreamsStr.equals("false")) {
+            enableStreams = Boolean.valueOf(enableStreamsStr);
+
+            if (enableStreams && backendImpl != BackendImpl.BINARY) {
+                invalidConfiguration = true;
+                LOGGER.warn("[" + this.getName() + "] Invalid configuration (backend.streams="
+                        + enableStreamsStr + ") -- Can only be 'true' if backend.impl is 'binary'");
+            } else {
+                LOGGER.debug("[" + this.getName() + "] Reading configuration (backend.streams="
+                        + enableStreamsStr + ")");
+            } // if else
+        } else {
+            invalidConfiguration = true;
+            LOGGER.warn("[" + this.getName() + "] Invalid configuration (backend.streams="
+                    + enableStreamsStr + ") -- Must be 'true' or 'false'");
+        } // if else
+
+        streamsRollSize = context.getLong("backend.streams.roll_size", 134217728L);
+
+        if (streamsRollSize < 0) {
+            invalidConfiguration = true;
+            LOGGER.warn("[" + this.getName() + "] Invalid configuration (backend.streams.roll_size="
+                    + streamsRollSize + ") -- Must be greater than or equal to 0");
+        } else {
+            LOGGER.debug("[" + this.getName() + "] Reading configuration (backend.streams.roll_size="
+                    + streamsRollSize + ")");
+        } // if else
+
+        streamsRollInterval = context.getLong("backend.streams.roll_interval", 0L);
+
+        if (streamsRollInterval < 0) {
+            invalidConfiguration = true;
+            LOGGER.warn("[" + this.getName() + "] Invalid configuration (backend.streams.roll_interval="
+                    + streamsRollInterval + ") -- Must be greater than or equal to 0");
+        } else {
+            LOGGER.debug("[" + this.getName() + "] Reading configuration (backend.streams.roll_interval="
+                    + streamsRollInterval + ")");
+        } // if else
+
+        streamsIdleTimeout = context.getLong("backend.streams.idle_timeout", 300L);
+
+        if (streamsIdleTimeout <= 0) {
+            invalidConfiguration = true;
+            LOGGER.warn("[" + this.getName() + "] Invalid configuration (backend.streams.idle_timeout="
+                    + streamsIdleTimeout + ") -- Must be greater than 0");
+        } else {
+            LOGGER.debug("[" + this.getName() + "] Reading configuration (backend.streams.idle_timeout="
+                    + streamsIdleTimeout + ")");
+        } // if else
+
+        if (isParquet() && backendImpl != BackendImpl.BINARY) {
+            invalidConfiguration = true;
+            LOGGER.warn("[" + this.getName() + "] Invalid configuration (file_format=" + fileFormatStr
+                    + ") -- Can only be 'parquet-row' or 'parquet-column' if backend.impl is 'binary'");
+        } // if
+
+        parquetCompression = context.getString("parquet.compression", "snappy");
+
+        if (parquetCompression.equals("uncompressed") || parquetCompression.equals("snappy")
+                || parquetCompression.equals("gzip")) {
+            LOGGER.debug("[" + this.getName() + "] Reading configuration (parquet.compression="
+                    + parquetCompression + ")");
+        } else {
+            invalidConfiguration = true;
+            LOGGER.warn("[" + this.getName() + "] Invalid configuration (parquet.compression="
+                    + parquetCompression + ") -- Must be 'uncompressed', 'snappy' or 'gzip'");
+        } // if else
+
+        parquetRowGroupSize = context.getInteger("parquet.row_group_size", 134217728);
+
+        if (parquetRowGroupSize <= 0) {
+            invalidConfiguration = true;
+            LOGGER.warn("[" + this.getName() + "] Invalid configuration (parquet.row_group_size="
+                    + parquetRowGroupSize + ") -- Must be greater than 0");
+        } else {
+            LOGGER.debug("[" + this.getName() + "] Reading configuration (parquet.row_group_size="
+                    + parquetRowGroupSize + ")");
+        } // if else
+
         // metadata configuration
         String enableMetadata = context.getString("attr_metadata_store", "true");
 
@@ -467,6 +583,12 @@ public class NGSIHDFSSink extends NGSISink {
                     HDFSBackendImplBinary persistenceBackend = new HDFSBackendImplBinary(host, port, username, password,
                             oauth2Token, hiveServerVersion, hiveHost, hivePort, enableKrb5, krb5User, krb5Password,
                             krb5LoginConfFile, krb5ConfFile, serviceAsNamespace);
+
+                    if (enableStreams) {
+                        persistenceBackend.enableStreams(streamsRollSize, streamsRollInterval * 1000,
+                                streamsIdleTimeout * 1000);
+                    } // if
+
                     persistenceBackends.add(persistenceBackend);
                 } else if (backendImpl == BackendImpl.REST) {
                     HDFSBackendImplREST persistenceBackend = new HDFSBackendImplREST(host, port, username, password,
@@ -489,6 +611,20 @@ public class NGSIHDFSSink extends NGSISink {
         super.start();
     } // start
 
+    @Override
+    public void stop() {
+        super.stop();
+
+        // Once the batches being persisted are done, the long-lived output streams (if any) can be closed
+        if (persistenceBackends != null) {
+            for (HDFSBackend persistenceBackend : persistenceBackends) {
+                if (persistenceBackend instanceof HDFSBackendImplBinary) {
+                    ((HDFSBackendImplBinary) persistenceBackend).closeStreams();
+                } // if
+            } // for
+        } // if
+    } // stop
+
     @Override
     void persistBatch(NGSIBatch batch) throws CygnusBadConfiguration, CygnusBadContextData, CygnusPersistenceError {
         if (batch == null) {
@@ -559,6 +695,10 @@ public class NGSIHDFSSink extends NGSISink {
                 return new NGSIGenericRowAggregator();
             case CSVCOLUMN:
                 return new NGSIGenericColumnAggregator();
+            case PARQUETROW:
+                return new NGSIGenericRowAggregator();
+            case PARQUETCOLUMN:
+                return new NGSIGenericColumnAggregator();
             default:
                 return null;
         } // switch
@@ -596,6 +736,8 @@ public class NGSIHDFSSink extends NGSISink {
                             case JSONCOLUMN: field = NGSICharsets.encodeHive(entry.substring(0, entry.length() - 3)) + " array<struct<name:string,type:string,value:string>>";
                                 break;
                             case CSVROW:
+                            case PARQUETROW:
+                            case PARQUETCOLUMN:
                                 field = NGSICharsets.encodeHive(entry) + " string";
                                 break;
                         } // switch
@@ -779,8 +921,10 @@ public class NGSIHDFSSink extends NGSISink {
 
     protected void persistAggregation(NGSIGenericAggregator aggregator, String service, String servicePath)
             throws CygnusPersistenceError, CygnusBadContextData {
-        NGSIGenericAggregator genericAggregator = processCSVFields(aggregator);
-        genericAggregator.setHiveFields(getHiveFields(genericAggregator.getAggregationToPersist()));
+        // The Parquet file formats do not need the CSV fields, the metadata is persisted within the Parquet files
+        NGSIGenericAggregator genericAggregator = isParquet() ? aggregator : processCSVFields(aggregator);
+        LinkedHashMap<String, ArrayList<JsonElement>> aggregationToPersist = genericAggregator.getAggregationToPersist();
+        genericAggregator.setHiveFields(getHiveFields(aggregationToPersist));
         String aggregation = "";
         switch (fileFormat) {
             case JSONROW:
@@ -795,12 +939,24 @@ public class NGSIHDFSSink extends NGSISink {
             case CSVCOLUMN:
                 aggregation = genericAggregator.getCsvString();
                 break;
+            default:
+                break;
         }
         String hdfsFolder = genericAggregator.getHdfsFolder(enableLowercase);
         String hdfsFile = genericAggregator.getHdfsFile(enableLowercase);
-        
-        LOGGER.info("[" + this.getName() + "] Persisting data at NGSIHDFSSink. HDFS file ("
-                + hdfsFile + "), Data (" + aggregation + ")");
+        String parquetSchema = null;
+        List<Object[]> parquetRecords = null;
+
+        if (isParquet()) {
+            hdfsFile = buildParquetFilePath(hdfsFile);
+            parquetSchema = getParquetSchema(aggregationToPersist);
+            parquetRecords = getParquetRecords(aggregationToPersist);
+            LOGGER.info("[" + this.getName() + "] Persisting data at NGSIHDFSSink. HDFS file ("
+                    + hdfsFile + "), Records (" + parquetRecords.size() + ")");
+        } else {
+            LOGGER.info("[" + this.getName() + "] Persisting data at NGSIHDFSSink. HDFS file ("
+                    + hdfsFile + "), Data (" + aggregation + ")");
+        } // if else
         
         // Some variables related to persistence backends looping
         boolean persisted = false;
@@ -814,11 +970,11 @@ public class NGSIHDFSSink extends NGSISink {
             } // if
             
             try {
-                if (persistenceBackend.exists(hdfsFile)) {
-                    persistenceBackend.append(hdfsFile, aggregation);
+                if (isParquet()) {
+                    ((HDFSBackendImplBinary) persistenceBackend).createParquetFile(hdfsFile, parquetSchema,
+                            parquetRecords, parquetCompression, parquetRowGroupSize);
                 } else {
-                    persistenceBackend.createDir(hdfsFolder);
-                    persistenceBackend.createFile(hdfsFile, aggregation);
+                    write(persistenceBackend, hdfsFolder, hdfsFile, aggregation);
                 } // if else
 
                 // Set the current persistence backend as the favourite one
@@ -880,6 +1036,105 @@ public class NGSIHDFSSink extends NGSISink {
 
     } // persistAggregation
 
+    /**
+     * Writes the given data into the given HDFS file by means of the given backend. Long-lived output streams are
+     * used if enabled, otherwise the file is appended if existing or created (together with its folder) if not.
+     * @param persistenceBackend
+     * @param hdfsFolder
+     * @param hdfsFile
+     * @param data
+     * @throws CygnusPersistenceError
+     * @throws CygnusRuntimeError
+     */
+    private void write(HDFSBackend persistenceBackend, String hdfsFolder, String hdfsFile, String data)
+            throws CygnusPersistenceError, CygnusRuntimeError {
+        if (persistenceBackend instanceof HDFSBackendImplBinary
+                && ((HDFSBackendImplBinary) persistenceBackend).isStreamsEnabled()) {
+            ((HDFSBackendImplBinary) persistenceBackend).write(hdfsFile, data);
+        } else if (persistenceBackend.exists(hdfsFile)) {
+            persistenceBackend.append(hdfsFile, data);
+        } else {
+            persistenceBackend.createDir(hdfsFolder);
+            persistenceBackend.createFile(hdfsFile, data);
+        } // if else
+    } // write
+
+    /**
+     * Gets if the configured file format is a Parquet one.
+     * @return True if the configured file format is a Parquet one, otherwise false
+     */
+    private boolean isParquet() {
+        return fileFormat == FileFormat.PARQUETROW || fileFormat == FileFormat.PARQUETCOLUMN;
+    } // isParquet
+
+    /**
+     * Builds a Parquet file path given the file path the text formats would append to. Parquet files cannot be
+     * appended, thus each aggregation is persisted in a new file within the same folder; the Hive table on top of the
+     * folder reads all of them.
+     * @param filePath
+     * @return The Parquet file path
+     */
+    protected String buildParquetFilePath(String filePath) {
+        return filePath.substring(0, filePath.length() - ".txt".length()) + "_" + System.currentTimeMillis() + "_"
+                + UUID.randomUUID().toString().substring(0, 8) + ".parquet";
+    } // buildParquetFilePath
+
+    /**
+     * Gets the Parquet schema for the given aggregation. All the fields are strings but the reception timestamp,
+     * and their names are the ones of the Hive fields, since Hive maps the Parquet fields by name.
+     * @param aggregation
+     * @return The Parquet schema
+     */
+    protected String getParquetSchema(LinkedHashMap<String, ArrayList<JsonElement>> aggregation) {
+        StringBuilder schema = new StringBuilder("message ngsi {");
+
+        for (String entry : aggregation.keySet()) {
+            if (entry.equals(NGSIConstants.RECV_TIME_TS)) {
+                schema.append(" optional int64 ").append(NGSICharsets.encodeHive(entry)).append(";");
+            } else {
+                schema.append(" optional binary ").append(NGSICharsets.encodeHive(entry)).append(" (UTF8);");
+            } // if else
+        } // for
+
+        return schema.append(" }").toString();
+    } // getParquetSchema
+
+    /**
+     * Gets the Parquet records for the given aggregation, each one containing the values of the fields of the
+     * Parquet schema in the same order.
+     * @param aggregation
+     * @return The Parquet records
+     */
+    protected List<Object[]> getParquetRecords(LinkedHashMap<String, ArrayList<JsonElement>> aggregation) {
+        int numEvents = NGSIUtils.collectionSizeOnLinkedHashMap(aggregation);
+        List<Object[]> records = new ArrayList<>(numEvents);
+
+        for (int i = 0; i < numEvents; i++) {
+            Object[] record = new Object[aggregation.size()];
+            int j = 0;
+
+            for (Map.Entry<String, ArrayList<JsonElement>> entry : aggregation.entrySet()) {
+                JsonElement value = entry.getValue().get(i);
+
+                if (value == null || value.isJsonNull()) {
+                    record[j] = null;
+                } else if (entry.getKey().equals(NGSIConstants.RECV_TIME_TS)) {
+                    record[j] = Long.parseLong(value.getAsString());
+                } else if (value.isJsonPrimitive()) {
+                    record[j] = value.getAsString();
+                } else {
+                    record[j] = value.toString();
+                } // if else
+
+                j++;
+            } // for
+
+            records.add(record);
+        } // for
+
+        return records;
+    } // getParquetRecords
+
     protected void persistMDAggregations(NGSIGenericAggregator aggregator) throws CygnusPersistenceError {
         Set<String> attrMDFiles = aggregator.getMdAggregations().keySet();
 
@@ -892,12 +1147,7 @@ public class NGSIHDFSSink extends NGSISink {
 
             for (HDFSBackend persistenceBackend: persistenceBackends) {
                 try {
-                    if (persistenceBackend.exists(hdfsMDFile)) {
-                        persistenceBackend.append(hdfsMDFile, mdAggregation);
-                    } else {
-                        persistenceBackend.createDir(hdfsMdFolder);
-                        persistenceBackend.createFile(hdfsMDFile, mdAggregation);
-                    } // if else
+                    write(persistenceBackend, hdfsMdFolder, hdfsMDFile, mdAggregation);
                     
                     if (!persistenceBackends.getFirst().equals(persistenceBackend)) {
                         persistenceBackends.remove(persistenceBackend);
@@ -923,10 +1173,12 @@ public class NGSIHDFSSink extends NGSISink {
         switch (fileFormat) {
             case JSONROW:
             case CSVROW:
+            case PARQUETROW:
                 tag = "_row";
                 break;
             case JSONCOLUMN:
             case CSVCOLUMN:
+            case PARQUETCOLUMN:
                 tag = "_column";
                 break;
             default:
@@ -958,6 +1210,12 @@ public class NGSIHDFSSink extends NGSISink {
                         + ") row format " + "delimited fields terminated by ',' location '/user/"
                         + (serviceAsNamespace ? "" : (username + "/")) + dirPath + "'";
                 break;
+            case PARQUETCOLUMN:
+            case PARQUETROW:
+                query = "create external table if not exists " + dbName + "." + tableName + " (" + fields
+                        + ") stored as parquet location '/user/"
+                        + (serviceAsNamespace ? "" : (username + "/")) + dirPath + "'";
+                break;
             default:
                 query = "";
         } // switch
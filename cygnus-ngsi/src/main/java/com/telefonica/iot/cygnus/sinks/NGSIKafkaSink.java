@@ -32,10 +32,19 @@ import com.telefonica.iot.cygnus.utils.CommonConstants;
 import com.telefonica.iot.cygnus.utils.NGSICharsets;
 import com.telefonica.iot.cygnus.management.PatternTypeAdapter;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Pattern;
 import org.I0Itec.zkclient.ZkClient;
 import org.apache.flume.Context;
+import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
 
 /**
  *
@@ -50,6 +59,11 @@ public class NGSIKafkaSink extends NGSISink {
     private ZkClient zookeeperClient;
     private int partitions;
     private int replicationFactor;
+    private boolean acknowledgedMode;
+    private long producerLingerMs;
+    private int producerBatchBytes;
+    private String producerCompression;
+    private long producerAckTimeout;
 
     /**
      * Gets the broker list.
@@ -67,6 +81,14 @@ public class NGSIKafkaSink extends NGSISink {
         return zookeeperEndpoint;
     } // getZookeeperEndpoint
 
+    /**
+     * Gets if the producer mode is acknowledged. It is protected since it is used by the tests.
+     * @return True if the producer mode is acknowledged, false otherwise
+     */
+    protected boolean isAcknowledgedMode() {
+        return acknowledgedMode;
+    } // isAcknowledgedMode
+
     /**
      * Gets the persistence backend.
      * @return The persistence backend
@@ -83,6 +105,15 @@ public class NGSIKafkaSink extends NGSISink {
         this.persistenceBackend = persistenceBackend;
     } // setPersistenceBackend
 
+    /**
+     * The Kafka producer and the known topics cache are thread-safe.
+     * @return True
+     */
+    @Override
+    protected boolean supportsConcurrentPersistence() {
+        return true;
+    } // supportsConcurrentPersistence
+
     @Override
     public void configure(Context context) {
         // Read NGSISink general configuration
@@ -116,13 +147,79 @@ public class NGSIKafkaSink extends NGSISink {
             LOGGER.debug("[" + this.getName() + "] Reading configuration (replication_factor="
                     + replicationFactor + ")");
         } // if else
+
+        String producerMode = context.getString("producer_mode", "fire_and_forget");
+
+        if (producerMode.equals("fire_and_forget") || producerMode.equals("acknowledged")) {
+            acknowledgedMode = producerMode.equals("acknowledged");
+            LOGGER.debug("[" + this.getName() + "] Reading configuration (producer_mode=" + producerMode + ")");
+        } else {
+            invalidConfiguration = true;
+            LOGGER.warn("[" + this.getName() + "] Invalid configuration (producer_mode=" + producerMode
+                    + ") -- Must be 'fire_and_forget' or 'acknowledged'");
+        } // if else
+
+        producerLingerMs = context.getLong("producer_linger_ms", 0L);
+
+        if (producerLingerMs < 0) {
+            invalidConfiguration = true;
+            LOGGER.warn("[" + this.getName() + "] Invalid configuration (producer_linger_ms="
+                    + producerLingerMs + ") -- Must be greater than or equal to 0");
+        } else {
+            LOGGER.debug("[" + this.getName() + "] Reading configuration (producer_linger_ms="
+                    + producerLingerMs + ")");
+        } // if else
+
+        producerBatchBytes = context.getInteger("producer_batch_bytes", 16384);
+
+        if (producerBatchBytes < 0) {
+            invalidConfiguration = true;
+            LOGGER.warn("[" + this.getName() + "] Invalid configuration (producer_batch_bytes="
+                    + producerBatchBytes + ") -- Must be greater than or equal to 0");
+        } else {
+            LOGGER.debug("[" + this.getName() + "] Reading configuration (producer_batch_bytes="
+                    + producerBatchBytes + ")");
+        } // if else
+
+        producerCompression = context.getString("producer_compression", "none");
+
+        if (producerCompression.equals("none") || producerCompression.equals("gzip")
+                || producerCompression.equals("snappy") || producerCompression.equals("lz4")) {
+            LOGGER.debug("[" + this.getName() + "] Reading configuration (producer_compression="
+                    + producerCompression + ")");
+        } else {
+            invalidConfiguration = true;
+            LOGGER.warn("[" + this.getName() + "] Invalid configuration (producer_compression="
+                    + producerCompression + ") -- Must be 'none', 'gzip', 'snappy' or 'lz4'");
+        } // if else
+
+        producerAckTimeout = context.getLong("producer_ack_timeout", 30000L);
+
+        if (producerAckTimeout <= 0) {
+            invalidConfiguration = true;
+            LOGGER.warn("[" + this.getName() + "] Invalid configuration (producer_ack_timeout="
+                    + producerAckTimeout + ") -- Must be greater than 0");
+        } else {
+            LOGGER.debug("[" + this.getName() + "] Reading configuration (producer_ack_timeout="
+                    + producerAckTimeout + ")");
+        } // if else
     } // configure
 
     @Override
     public void start() {
         // create the persistence backend
         try {
-            persistenceBackend = new KafkaBackendImpl(brokerList, zookeeperEndpoint);
+            Properties producerProperties = new Properties();
+            producerProperties.put(ProducerConfig.LINGER_MS_CONFIG, String.valueOf(producerLingerMs));
+            producerProperties.put(ProducerConfig.BATCH_SIZE_CONFIG, String.valueOf(producerBatchBytes));
+            producerProperties.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, producerCompression);
+
+            if (acknowledgedMode) {
+                // The records are acknowledged once replicated by all the in-sync replicas, not lost on failover
+                producerProperties.put(ProducerConfig.ACKS_CONFIG, "all");
+            } // if
+
+            persistenceBackend = new KafkaBackendImpl(brokerList, zookeeperEndpoint, producerProperties);
             LOGGER.debug("[" + this.getName() + "] Kafka persistence backend (KafkaProducer) created");
         } catch (Exception e) {
             LOGGER.error("Error while creating the Kafka persistence backend (KafkaProducer). Details="
@@ -151,7 +248,7 @@ public class NGSIKafkaSink extends NGSISink {
             ArrayList<NGSIEvent> events = batch.getNextEvents();
 
             // Get an aggregator for this destination and initialize it
-            KafkaAggregator aggregator = new KafkaAggregator();
+            KafkaAggregator aggregator = new KafkaAggregator(acknowledgedMode);
             aggregator.initialize(events.get(0));
 
             for (NGSIEvent event : events) {
@@ -236,22 +333,30 @@ public class NGSIKafkaSink extends NGSISink {
      */
     private class KafkaAggregator {
 
-        // string containing the data aggregation
-        protected String aggregation;
+        // string containing the data aggregation, or the data aggregations per entity id if keyed
+        protected final StringBuilder aggregation;
+        protected final LinkedHashMap<String, StringBuilder> keyedAggregations;
+        protected final boolean keyed;
         protected String service;
         protected String servicePathForData;
         protected String servicePathForNaming;
         protected String entityForNaming;
         protected String attributeForNaming;
 
-        public KafkaAggregator() {
-            aggregation = "";
+        public KafkaAggregator(boolean keyed) {
+            this.aggregation = new StringBuilder();
+            this.keyedAggregations = new LinkedHashMap<>();
+            this.keyed = keyed;
         } // KafkaAggregator
 
         public String getAggregation() {
-            return aggregation;
+            return aggregation.toString();
         } // getAggregation
 
+        public LinkedHashMap<String, StringBuilder> getKeyedAggregations() {
+            return keyedAggregations;
+        } // getKeyedAggregations
+
         public String getService() {
             return service;
         } // getServiceForNaming
@@ -283,17 +388,27 @@ public class NGSIKafkaSink extends NGSISink {
             // get the getRecvTimeTs body
             ContextElement contextElement = event.getContextElement();
 
-            if (aggregation.isEmpty()) {
-                aggregation = buildMessage(contextElement, service, servicePathForData, recvTimeTs);
-            } else {
-                aggregation += "\n" + buildMessage(contextElement, service, servicePathForData, recvTimeTs);
-            } // if else
+            StringBuilder entityAggregation = aggregation;
+
+            if (keyed) {
+                entityAggregation = keyedAggregations.get(contextElement.getId());
+
+                if (entityAggregation == null) {
+                    entityAggregation = new StringBuilder();
+                    keyedAggregations.put(contextElement.getId(), entityAggregation);
+                } // if
+            } // if
+
+            if (entityAggregation.length() > 0) {
+                entityAggregation.append('\n');
+            } // if
+
+            entityAggregation.append(buildMessage(contextElement, service, servicePathForData, recvTimeTs));
         } // aggregate
 
     } // KafkaAggregator
 
     private void persistAggregation(KafkaAggregator aggregator) throws CygnusBadConfiguration, CygnusPersistenceError {
-        String aggregation = aggregator.getAggregation();
         String topicName = buildTopicName(aggregator.getService(),
                                           aggregator.getServicePathForNaming(),
                                           aggregator.getEntityForNaming(),
@@ -317,10 +432,44 @@ public class NGSIKafkaSink extends NGSISink {
             persistenceBackend.createTopic(topicName, partitions, replicationFactor);
         } // if
 
-        LOGGER.info("[" + this.getName() + "] Persisting data at NGSIKafkaSink. Topic ("
-                + topicName + "), Data (" + aggregation + ")");
-        record = new ProducerRecord<>(topicName, aggregation);
-        persistenceBackend.send(record);
+        if (!acknowledgedMode) {
+            String aggregation = aggregator.getAggregation();
+            LOGGER.info("[" + this.getName() + "] Persisting data at NGSIKafkaSink. Topic ("
+                    + topicName + "), Data (" + aggregation + ")");
+            record = new ProducerRecord<>(topicName, aggregation);
+            persistenceBackend.send(record);
+            return;
+        } // if
+
+        // One record per entity, keyed by the entity id in order all the records about the same entity are sent to
+        // the same partition and thus consumed in order
+        ArrayList<Future<RecordMetadata>> futures = new ArrayList<>();
+
+        for (Map.Entry<String, StringBuilder> keyedAggregation : aggregator.getKeyedAggregations().entrySet()) {
+            String aggregation = keyedAggregation.getValue().toString();
+            LOGGER.info("[" + this.getName() + "] Persisting data at NGSIKafkaSink. Topic ("
+                    + topicName + "), Key (" + keyedAggregation.getKey() + "), Data (" + aggregation + ")");
+            record = new ProducerRecord<>(topicName, keyedAggregation.getKey(), aggregation);
+            futures.add(persistenceBackend.send(record));
+        } // for
+
+        // Wait for all the records to be acknowledged; otherwise the sub-batch is not persisted, and thus rolled back
+        long deadline = System.currentTimeMillis() + producerAckTimeout;
+
+        for (Future<RecordMetadata> future : futures) {
+            try {
+                future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CygnusPersistenceError("-, Interrupted while waiting for the acknowledgement of the "
+                        + "records (topic=" + topicName + ")");
+            } catch (ExecutionException e) {
+                throw new CygnusPersistenceError("-, " + e.getCause().getMessage());
+            } catch (TimeoutException e) {
+                throw new CygnusPersistenceError("-, Records not acknowledged after " + producerAckTimeout
+                        + " ms (topic=" + topicName + ")");
+            } // try catch
+        } // for
     } // persistAggregation
 
     private String buildMessage(ContextElement contextElement, String fiwareService,
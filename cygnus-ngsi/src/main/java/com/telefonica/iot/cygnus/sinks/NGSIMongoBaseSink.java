@@ -51,6 +51,8 @@ public abstract class NGSIMongoBaseSink extends NGSISink {
     protected MongoBackendImpl backend;
     protected long dataExpiration;
     protected boolean ignoreWhiteSpaces;
+    protected boolean orderedWrites;
+    protected String mongoWriteConcern;
     
     /**
      * Gets the mongo uri. It is protected since it is used by the tests.
@@ -132,6 +134,15 @@ public abstract class NGSIMongoBaseSink extends NGSISink {
         return backend;
     } // getBackend
 
+    /**
+     * The MongoDB client and the caches of the Mongo backend are thread-safe.
+     * @return True
+     */
+    @Override
+    protected boolean supportsConcurrentPersistence() {
+        return true;
+    } // supportsConcurrentPersistence
+
     @Override
     public void configure(Context context) {
         super.configure(context);
@@ -221,6 +232,30 @@ public abstract class NGSIMongoBaseSink extends NGSISink {
         sslTruststorePassword = context.getString("mongo_ssl_truststore_password", "");
         LOGGER.debug("[" + this.getName() + "] Reading configuration (mongo_ssl_truststore_password=" + sslTruststorePassword + ")");
 
+        String orderedWritesStr = context.getString("ordered_writes", "true");
+
+        if (orderedWritesStr.equals("true") || orderedWritesStr.equals("false")) {
+            orderedWrites = Boolean.valueOf(orderedWritesStr);
+            LOGGER.debug("[" + this.getName() + "] Reading configuration (ordered_writes="
+                + orderedWritesStr + ")");
+        }  else {
+            invalidConfiguration = true;
+            LOGGER.warn("[" + this.getName() + "] Invalid configuration (ordered_writes="
+                + orderedWritesStr + ") -- Must be 'true' or 'false'");
+        }  // if else
+
+        mongoWriteConcern = context.getString("mongo_write_concern", "");
+
+        if (mongoWriteConcern.isEmpty() || MongoBackendImpl.parseWriteConcern(mongoWriteConcern) != null) {
+            LOGGER.debug("[" + this.getName() + "] Reading configuration (mongo_write_concern="
+                + mongoWriteConcern + ")");
+        } else {
+            invalidConfiguration = true;
+            LOGGER.warn("[" + this.getName() + "] Invalid configuration (mongo_write_concern="
+                + mongoWriteConcern + ") -- Must be empty, a number of members or one of 'w1', 'w2', 'w3', "
+                + "'majority', 'journaled', 'acknowledged' or 'unacknowledged'");
+        } // if else
+
     } // configure
 
     @Override
@@ -231,6 +266,8 @@ public abstract class NGSIMongoBaseSink extends NGSISink {
                                            sslEnabled, sslInvalidHostNameAllowed,
                                            sslKeystorePathFile, sslKeystorePassword,
                                            sslTruststorePathFile, sslTruststorePassword);
+            backend.setOrderedWrites(orderedWrites);
+            backend.setWriteConcern(MongoBackendImpl.parseWriteConcern(mongoWriteConcern));
             LOGGER.debug("[" + this.getName() + "] MongoDB persistence backend created");
         } catch (Exception e) {
             LOGGER.error("Error while creating the MongoDB persistence backend. Details="
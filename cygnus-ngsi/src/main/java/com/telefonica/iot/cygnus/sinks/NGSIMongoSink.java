@@ -18,10 +18,6 @@
 package com.telefonica.iot.cygnus.sinks;
 
 import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.mongodb.BasicDBObject;
-import com.mongodb.DBObject;
-import com.mongodb.util.JSON;
 import com.telefonica.iot.cygnus.aggregation.NGSIGenericAggregator;
 import com.telefonica.iot.cygnus.aggregation.NGSIGenericColumnAggregator;
 import com.telefonica.iot.cygnus.aggregation.NGSIGenericRowAggregator;
@@ -210,69 +206,59 @@ public class NGSIMongoSink extends NGSIMongoBaseSink {
         return keysToCrop;
     }
 
-    protected BasicDBObject castDate (String key, BasicDBObject basicDBObject){
+    protected Document castDate (String key, Document document){
         try {
             LOGGER.debug("[" + this.getName() + "] Casting to Date att with key: " + key + " value: "
-                         + basicDBObject.get(key));
-            String str = basicDBObject.get(key).toString();
+                         + document.get(key));
+            String str = document.get(key).toString();
             Date date = new Date(CommonUtils.getTimeInstantFromString(str));
-            basicDBObject.put(key, date);
+            document.put(key, date);
         } catch (Exception e) {
             // Never reached
             LOGGER.error("[" + this.getName() + "] Casting to Date att with key: " + key + " value: "
-                         + basicDBObject.get(key) + " Details=" + e.getMessage());
+                         + document.get(key) + " Details=" + e.getMessage());
         }
-        return basicDBObject;
+        return document;
+    }
+
+    private static boolean isDateType(JsonElement attType) {
+        return attType != null && attType.isJsonPrimitive()
+                && (attType.getAsString().equals("ISO8601") || attType.getAsString().equals("DateTime"));
     }
     
     private void persistAggregation(NGSIGenericAggregator aggregator) throws CygnusPersistenceError {
         ArrayList<String> keysToCrop = getKeysToCrop(rowAttrPersistence);
         LinkedHashMap<String, ArrayList<JsonElement>> cropedAggregation = NGSIUtils.cropLinkedHashMap(aggregator.getAggregationToPersist(), keysToCrop);
-        ArrayList<JsonObject> jsonObjects = NGSIUtils.linkedHashMapToJsonList(cropedAggregation);
-        ArrayList<Document> aggregation = new ArrayList<>();
-        for (int i = 0 ; i < jsonObjects.size() ; i++) {
-            BasicDBObject basicDBObject = BasicDBObject.parse(jsonObjects.get(i).toString());
-            JsonElement attType;
+        // The documents are directly built from the aggregation, without Json strings in between
+        ArrayList<Document> aggregation = NGSIUtils.linkedHashMapToDocumentList(cropedAggregation);
+        LinkedHashMap<String, ArrayList<JsonElement>> fullAggregation = aggregator.getAggregation();
+        ArrayList<JsonElement> attrTypes = fullAggregation.get(NGSIConstants.ATTR_TYPE);
+        ArrayList<JsonElement> attrMds = fullAggregation.get(NGSIConstants.ATTR_MD);
+        ArrayList<JsonElement> recvTimeTss = fullAggregation.get(NGSIConstants.RECV_TIME_TS);
+        ArrayList<JsonElement> recvTimeTssC = fullAggregation.get(NGSIConstants.RECV_TIME_TS + "C");
+        for (int i = 0 ; i < aggregation.size() ; i++) {
+            Document document = aggregation.get(i);
             if (rowAttrPersistence) {
-                ArrayList<JsonElement> el = aggregator.getAggregation().get(NGSIConstants.ATTR_TYPE);
-                if (el != null) {
-                    attType = el.get(i);
-                    if ( (attType != null &&
-                          attType.isJsonPrimitive()) &&
-                         (attType.getAsString().equals("ISO8601") ||
-                          attType.getAsString().equals("DateTime")) ) {
-                        basicDBObject = castDate(NGSIConstants.ATTR_VALUE, basicDBObject);
-                    }
+                if (attrTypes != null && isDateType(attrTypes.get(i))) {
+                    castDate(NGSIConstants.ATTR_VALUE, document);
                 }
             } else {
-                for (String key : basicDBObject.keySet()) {
-                    ArrayList<JsonElement> el = aggregator.getAggregation().get(key + NGSIConstants.AUTOGENERATED_ATTR_TYPE);
-                    if (el != null) {
-                        attType = el.get(i);
-                        if ( (attType != null &&
-                              attType.isJsonPrimitive()) &&
-                             (attType.getAsString().equals("ISO8601") ||
-                              attType.getAsString().equals("DateTime")) ) {
-                            basicDBObject = castDate(key, basicDBObject);
-                        }
+                for (String key : document.keySet()) {
+                    ArrayList<JsonElement> el = fullAggregation.get(key + NGSIConstants.AUTOGENERATED_ATTR_TYPE);
+                    if (el != null && isDateType(el.get(i))) {
+                        castDate(key, document);
                     }
                 }
             }
-            aggregation.add(new Document(basicDBObject.toMap()));
             if (rowAttrPersistence) {
-                Long timeInstant;
-                if (aggregator.getAggregation().get(NGSIConstants.ATTR_MD).get(i).isJsonPrimitive()) {
-                    timeInstant = CommonUtils.getTimeInstant(aggregator.getAggregation().get(NGSIConstants.ATTR_MD).get(i).getAsString());
-                } else {
-                    timeInstant = CommonUtils.getTimeInstant(aggregator.getAggregation().get(NGSIConstants.ATTR_MD).get(i).toString());
-                }
+                Long timeInstant = NGSIUtils.getTimeInstant(attrMds.get(i));
                 if (timeInstant != null) {
-                    aggregation.get(i).append(NGSIConstants.RECV_TIME, new Date(timeInstant));
+                    document.append(NGSIConstants.RECV_TIME, new Date(timeInstant));
                 } else {
-                    aggregation.get(i).append(NGSIConstants.RECV_TIME, new Date(Long.parseLong(aggregator.getAggregation().get(NGSIConstants.RECV_TIME_TS).get(i).getAsString())));
+                    document.append(NGSIConstants.RECV_TIME, new Date(Long.parseLong(recvTimeTss.get(i).getAsString())));
                 }
             } else {
-                aggregation.get(i).append(NGSIConstants.RECV_TIME, new Date(Long.parseLong(aggregator.getAggregation().get(NGSIConstants.RECV_TIME_TS + "C").get(i).getAsString())));
+                document.append(NGSIConstants.RECV_TIME, new Date(Long.parseLong(recvTimeTssC.get(i).getAsString())));
             }
         }
         if (aggregation.isEmpty()) {
@@ -284,7 +270,8 @@ public class NGSIMongoSink extends NGSIMongoBaseSink {
         LOGGER.info("[" + this.getName() + "] Persisting data at NGSIMongoSink. Database: "
                 + dbName + ", Collection: " + collectionName + ", Data: " + aggregation.toString());
         try {
-            // createCollection is an idempotent operation so we can safely run it each time a new doc is going to be inserted
+            // createCollection is an idempotent operation so we can safely run it each time a new doc is going to be inserted;
+            // besides, the collections known to exist are cached by the backend, which does not reach MongoDB for them
             backend.createCollection(dbName, collectionName, collectionsSize, maxDocuments, dataExpiration);
             backend.insertContextDataRaw(dbName, collectionName, aggregation);
         } catch (Exception e) {
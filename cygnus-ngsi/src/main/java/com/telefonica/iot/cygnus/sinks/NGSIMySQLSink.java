@@ -27,6 +27,7 @@ import com.telefonica.iot.cygnus.aggregation.NGSIGenericRowAggregator;
 import com.telefonica.iot.cygnus.backends.sql.SQLQueryUtils;
 import com.telefonica.iot.cygnus.backends.sql.SQLBackendImpl;
 import com.telefonica.iot.cygnus.backends.sql.Enum.SQLInstance;
+import com.telefonica.iot.cygnus.backends.sql.Enum.SQLInsertMode;
 import com.telefonica.iot.cygnus.utils.CommonConstants;
 import com.telefonica.iot.cygnus.utils.NGSICharsets;
 import com.telefonica.iot.cygnus.utils.NGSIConstants;
@@ -70,6 +71,7 @@ public class NGSIMySQLSink extends NGSISink {
     private static final String DEFAULT_LAST_DATA_TIMESTAMP_KEY = NGSIConstants.RECV_TIME;
     private static final String DEFAULT_LAST_DATA_SQL_TS_FORMAT = "%Y-%m-%d %H:%i:%s.%f";
     private static final int DEFAULT_MAX_LATEST_ERRORS = 100;
+    private static final String DEFAULT_INSERT_MODE = "literal";
 
     private static final CygnusLogger LOGGER = new CygnusLogger(NGSIMySQLSink.class);
     private String mysqlHost;
@@ -92,6 +94,7 @@ public class NGSIMySQLSink extends NGSISink {
     private String lastDataTimeStampKey;
     private String lastDataSQLTimestampFormat;
     private int maxLatestErrors;
+    private SQLInsertMode insertMode;
 
     /**
      * Constructor.
@@ -149,6 +152,14 @@ public class NGSIMySQLSink extends NGSISink {
         return mysqlOptions;
     } // getMySQLOptions
 
+    /**
+     * Gets the insert mode. It is protected due to it is only required for testing purposes.
+     * @return The insert mode
+     */
+    protected SQLInsertMode getInsertMode() {
+        return insertMode;
+    } // getInsertMode
+
     /**
      * Returns the persistence backend. It is protected due to it is only required for testing purposes.
      * @return The persistence backend
@@ -175,6 +186,15 @@ public class NGSIMySQLSink extends NGSISink {
         return attrNativeTypes;
     } // attrNativeTypes
     
+    /**
+     * The connection pools and the cache of the SQL backend are thread-safe.
+     * @return True
+     */
+    @Override
+    protected boolean supportsConcurrentPersistence() {
+        return true;
+    } // supportsConcurrentPersistence
+
     @Override
     public void configure(Context context) {
         mysqlHost = context.getString("mysql_host", DEFAULT_HOST);
@@ -245,6 +265,18 @@ public class NGSIMySQLSink extends NGSISink {
         mysqlOptions = context.getString("mysql_options", null);
         LOGGER.debug("[" + this.getName() + "] Reading configuration (mysql_options=" + mysqlOptions + ")");
 
+        String insertModeStr = context.getString("insert_mode", DEFAULT_INSERT_MODE);
+
+        if (insertModeStr.equals("literal") || insertModeStr.equals("batch")) {
+            insertMode = SQLInsertMode.valueOf(insertModeStr.toUpperCase());
+            LOGGER.debug("[" + this.getName() + "] Reading configuration (insert_mode="
+                    + insertModeStr + ")");
+        } else {
+            invalidConfiguration = true;
+            LOGGER.debug("[" + this.getName() + "] Invalid configuration (insert_mode="
+                    + insertModeStr + ") -- Must be 'literal' or 'batch'");
+        } // if else
+
         String persistErrorsStr = context.getString("persist_errors", "true");
 
         if (persistErrorsStr.equals("true") || persistErrorsStr.equals("false")) {
@@ -318,6 +350,7 @@ public class NGSIMySQLSink extends NGSISink {
 private void createPersistenceBackend(String sqlHost, String sqlPort, String sqlUsername, String sqlPassword, int maxPoolSize, int maxPoolIdle, int minPoolIdle, int minPoolIdleTimeMillis, String sqlOptions, boolean persistErrors, int maxLatestErrors) {
         if (mySQLPersistenceBackend == null) {
             mySQLPersistenceBackend = new SQLBackendImpl(sqlHost, sqlPort, sqlUsername, sqlPassword, maxPoolSize, maxPoolIdle, minPoolIdle, minPoolIdleTimeMillis, MYSQL_INSTANCE_NAME, MYSQL_DRIVER_NAME, sqlOptions, persistErrors, maxLatestErrors);
+            mySQLPersistenceBackend.setInsertMode(insertMode);
         }
     }
 
@@ -398,7 +431,9 @@ private void createPersistenceBackend(String sqlHost, String sqlPort, String sql
                 String tableName = buildTableName(servicePathForNaming, entity, entityType, attribute);
                 LOGGER.debug("[" + this.getName() + "] Capping resource (maxRecords=" + maxRecords + ",dbName="
                         + dbName + ", tableName=" + tableName + ")");
-                mySQLPersistenceBackend.capRecords(dbName, null, tableName, maxRecords);
+                long start = System.currentTimeMillis();
+                long numDeleted = mySQLPersistenceBackend.capRecords(dbName, null, tableName, maxRecords);
+                serviceMetrics.addDeletionStats(this.getName(), numDeleted, System.currentTimeMillis() - start);
             } catch (CygnusBadConfiguration e) {
                 throw new CygnusCappingError("Data capping error", "CygnusBadConfiguration", e.getMessage());
             } catch (CygnusRuntimeError e) {
@@ -414,7 +449,9 @@ private void createPersistenceBackend(String sqlHost, String sqlPort, String sql
         LOGGER.debug("[" + this.getName() + "] Expirating records (time=" + expirationTime + ")");
         
         try {
-            mySQLPersistenceBackend.expirateRecordsCache(expirationTime);
+            long start = System.currentTimeMillis();
+            long numDeleted = mySQLPersistenceBackend.expirateRecordsCache(expirationTime);
+            serviceMetrics.addDeletionStats(this.getName(), numDeleted, System.currentTimeMillis() - start);
         } catch (CygnusRuntimeError e) {
             throw new CygnusExpiratingError("Data expiration error", "CygnusRuntimeError", e.getMessage());
         } catch (CygnusPersistenceError e) {
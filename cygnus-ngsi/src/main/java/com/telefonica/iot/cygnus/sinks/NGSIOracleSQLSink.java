@@ -196,6 +196,15 @@ public class NGSIOracleSQLSink extends NGSISink {
         return attrNativeTypes;
     } // attrNativeTypes
     
+    /**
+     * The connection pools and the cache of the SQL backend are thread-safe.
+     * @return True
+     */
+    @Override
+    protected boolean supportsConcurrentPersistence() {
+        return true;
+    } // supportsConcurrentPersistence
+
     @Override
     public void configure(Context context) {
         oracleHost = context.getString("oracle_host", DEFAULT_HOST);
@@ -452,7 +461,9 @@ public class NGSIOracleSQLSink extends NGSISink {
                 String tableName = buildTableName(servicePathForNaming, entity, entityType, attribute);
                 LOGGER.debug("[" + this.getName() + "] Capping resource (maxRecords=" + maxRecords + ",dbName="
                         + dbName + ", tableName=" + tableName + ")");
-                oracleSQLPersistenceBackend.capRecords(dbName, null, tableName, maxRecords);
+                long start = System.currentTimeMillis();
+                long numDeleted = oracleSQLPersistenceBackend.capRecords(dbName, null, tableName, maxRecords);
+                serviceMetrics.addDeletionStats(this.getName(), numDeleted, System.currentTimeMillis() - start);
             } catch (CygnusBadConfiguration e) {
                 throw new CygnusCappingError("Data capping error", "CygnusBadConfiguration", e.getMessage());
             } catch (CygnusRuntimeError e) {
@@ -468,7 +479,9 @@ public class NGSIOracleSQLSink extends NGSISink {
         LOGGER.debug("[" + this.getName() + "] Expirating records (time=" + expirationTime + ")");
         
         try {
-            oracleSQLPersistenceBackend.expirateRecordsCache(expirationTime);
+            long start = System.currentTimeMillis();
+            long numDeleted = oracleSQLPersistenceBackend.expirateRecordsCache(expirationTime);
+            serviceMetrics.addDeletionStats(this.getName(), numDeleted, System.currentTimeMillis() - start);
         } catch (CygnusRuntimeError e) {
             throw new CygnusExpiratingError("Data expiration error", "CygnusRuntimeError", e.getMessage());
         } catch (CygnusPersistenceError e) {
@@ -20,9 +20,13 @@
 package com.telefonica.iot.cygnus.sinks;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.flume.Context;
@@ -45,6 +49,7 @@ import com.telefonica.iot.cygnus.errors.CygnusRuntimeError;
 import com.telefonica.iot.cygnus.interceptors.NGSIEvent;
 import com.telefonica.iot.cygnus.log.CygnusLogger;
 import com.telefonica.iot.cygnus.utils.CommonConstants;
+import com.telefonica.iot.cygnus.utils.CommonUtils;
 import com.telefonica.iot.cygnus.utils.NGSIConstants;
 import com.telefonica.iot.cygnus.utils.auth.keystone.KeyStoneUtils;
 import com.telefonica.iot.cygnus.utils.auth.keystone.KeyStoneUtilsImpl;
@@ -70,6 +75,10 @@ public class NGSIOrionSink extends NGSISink {
     private String orionUsername;
     private String orionPassword;
     private OrionBackend orionBackend;
+    private boolean batchUpdate;
+    private int batchUpdateSize;
+    private int batchUpdateConcurrency;
+    private ExecutorService batchUpdateExecutor;
 
     private KeyStoneUtils keyStoneUtils;
 
@@ -268,6 +277,27 @@ public class NGSIOrionSink extends NGSISink {
         this.orionBackend = orionBackend;
     }
 
+    /**
+     * @return true if the entities are updated in batches through /v2/op/update
+     */
+    public boolean isBatchUpdate() {
+        return batchUpdate;
+    }
+
+    /**
+     * @return the maximum number of entities per /v2/op/update request
+     */
+    public int getBatchUpdateSize() {
+        return batchUpdateSize;
+    }
+
+    /**
+     * @return the maximum number of concurrent /v2/op/update requests
+     */
+    public int getBatchUpdateConcurrency() {
+        return batchUpdateConcurrency;
+    }
+
     /**
      * @return the keyStoneUtils
      */
@@ -330,12 +360,41 @@ public class NGSIOrionSink extends NGSISink {
         orionFiwarePath = context.getString("orion_fiware_path", "");
         LOGGER.debug("[" + this.getName() + "] Reading configuration (orion_fiware_path=" + orionFiwarePath + ")");
 
+        batchUpdate = context.getBoolean("batch_update", false);
+        LOGGER.debug("[" + this.getName() + "] Reading configuration (batch_update=" + batchUpdate + ")");
+
+        batchUpdateSize = context.getInteger("batch_update_size", 100);
+
+        if (batchUpdateSize <= 0) {
+            invalidConfiguration = true;
+            LOGGER.warn("[" + this.getName() + "] Invalid configuration (batch_update_size=" + batchUpdateSize + ") "
+                    + "must be greater than 0");
+        } else {
+            LOGGER.debug("[" + this.getName() + "] Reading configuration (batch_update_size=" + batchUpdateSize + ")");
+        } // if else
+
+        batchUpdateConcurrency = context.getInteger("batch_update_concurrency", 4);
+
+        if ((batchUpdateConcurrency <= 0) || (batchUpdateConcurrency > MAX_CONNS_PER_ROUTE)) {
+            invalidConfiguration = true;
+            LOGGER.warn("[" + this.getName() + "] Invalid configuration (batch_update_concurrency="
+                    + batchUpdateConcurrency + ") must be between 1 and " + MAX_CONNS_PER_ROUTE);
+        } else {
+            LOGGER.debug("[" + this.getName() + "] Reading configuration (batch_update_concurrency="
+                    + batchUpdateConcurrency + ")");
+        } // if else
+
         super.configure(context);
         LOGGER.info("Fin configure --> " + context);
     } // configure
 
     @Override
     public void start() {
+        // The requests are bounded by the connections per route of the backend, see configure()
+        if (batchUpdate && batchUpdateConcurrency > 1) {
+            batchUpdateExecutor = Executors.newFixedThreadPool(batchUpdateConcurrency);
+        } // if
+
         try {
             LOGGER.info("Init start()");
             keyStoneUtils = new KeyStoneUtilsImpl(getKeystoneHost(), getKeystonePort(), isKeystoneSsl(), MAX_CONNS,
@@ -355,6 +414,19 @@ public class NGSIOrionSink extends NGSISink {
         super.start();
     } // start
 
+    @Override
+    public void stop() {
+        if (batchUpdateExecutor != null) {
+            batchUpdateExecutor.shutdown();
+        } // if
+
+        if (keyStoneUtils != null) {
+            keyStoneUtils.close();
+        } // if
+
+        super.stop();
+    } // stop
+
     @Override
     void persistBatch(NGSIBatch batch)
             throws CygnusBadConfiguration, CygnusPersistenceError, CygnusRuntimeError, CygnusBadContextData {
@@ -364,6 +436,11 @@ public class NGSIOrionSink extends NGSISink {
             return;
         } // if
 
+        if (batchUpdate) {
+            persistBatchUpdate(batch);
+            return;
+        } // if
+
         // Iterate on the destinations
         batch.startIterator();
 
@@ -388,6 +465,170 @@ public class NGSIOrionSink extends NGSISink {
         } // for
     } // persistBatch
 
+    /**
+     * Persists the whole batch by means of /v2/op/update requests. The entities are grouped by service and service
+     * path (thus by token), and every update is kept, the updates regarding the same entity being consecutive and in
+     * notification order; then, each group is sent in chunks of about batch_update_size updates, up to
+     * batch_update_concurrency requests at the same time. The updates regarding the same entity are never split among
+     * concurrent requests, thus they cannot be reordered; if they do not fit a single chunk, their chunks are sent
+     * one after the other.
+     * 
+     * @param batch
+     * @throws CygnusBadContextData
+     * @throws CygnusRuntimeError
+     */
+    private void persistBatchUpdate(NGSIBatch batch) throws CygnusBadContextData, CygnusRuntimeError {
+        LinkedHashMap<String, OrionUpdateGroup> groups = new LinkedHashMap<String, OrionUpdateGroup>();
+
+        // Iterate on the destinations
+        batch.startIterator();
+
+        while (batch.hasNext()) {
+            String destination = batch.getNextDestination();
+            LOGGER.debug("[" + this.getName() + "] Processing sub-batch regarding the " + destination + " destination");
+
+            // Get the sub-batch for this destination
+            ArrayList<NGSIEvent> events = batch.getNextEvents();
+
+            // Get an aggregator for this destination and initialize it
+            OrionAggregator aggregator = new OrionAggregator();
+            aggregator.initialize(events.get(0));
+
+            for (NGSIEvent event : events) {
+                aggregator.aggregate(event);
+            } // for
+
+            for (OrionAggregatorDomain orionAggregatorDomain : aggregator.getListOrionAggregatorDomain()) {
+                if (orionAggregatorDomain.getEntityJSON() == null) {
+                    LOGGER.error("OrionSink Agregator: Error pharsing JSON body");
+                    throw new CygnusBadContextData("OrionSink Agregator: Error pharsing JSON body");
+                } // if
+
+                String serviceFiware = StringUtils.isBlank(orionAggregatorDomain.getService()) ? getOrionFiware()
+                        : orionAggregatorDomain.getService();
+                String servicePathFiware = StringUtils.isBlank(orionAggregatorDomain.getSubService())
+                        ? getOrionFiwarePath() : orionAggregatorDomain.getSubService();
+                String groupKey = serviceFiware + "\u0000" + servicePathFiware;
+                OrionUpdateGroup group = groups.get(groupKey);
+
+                if (group == null) {
+                    group = new OrionUpdateGroup(serviceFiware, servicePathFiware);
+                    groups.put(groupKey, group);
+                } // if
+
+                group.add(orionAggregatorDomain.getEntityJSON());
+            } // for
+        } // while
+
+        // Compose the requests, getting a token per group
+        List<Callable<Void>> requests = new ArrayList<Callable<Void>>();
+
+        try {
+            if (orionBackend == null) {
+                LOGGER.error("OrionBackend is null");
+                throw new Exception("OrionBackend is null");
+            } // if
+
+            for (final OrionUpdateGroup group : groups.values()) {
+                final String token = keyStoneUtils.getSessionToken(getOrionUsername(), getOrionPassword(),
+                        group.service, group.servicePath);
+                List<JSONObject> updates = new ArrayList<JSONObject>();
+
+                for (List<JSONObject> entityUpdates : group.updates.values()) {
+                    if (!updates.isEmpty() && updates.size() + entityUpdates.size() > batchUpdateSize) {
+                        requests.add(createUpdateRequest(updates, token, group));
+                        updates = new ArrayList<JSONObject>();
+                    } // if
+
+                    updates.addAll(entityUpdates);
+                } // for
+
+                if (!updates.isEmpty()) {
+                    requests.add(createUpdateRequest(updates, token, group));
+                } // if
+            } // for
+
+            // Do the requests, concurrently if possible
+            if (batchUpdateExecutor == null || requests.size() == 1) {
+                for (Callable<Void> request : requests) {
+                    request.call();
+                } // for
+            } else {
+                CommonUtils.waitForAll(batchUpdateExecutor.invokeAll(requests));
+            } // if else
+        } catch (Exception e) {
+            throw new CygnusRuntimeError("Data insertion error", "Exception", e.getMessage());
+        } // try catch
+
+        // Set the sub-batches as persisted
+        batch.startIterator();
+
+        while (batch.hasNext()) {
+            batch.getNextDestination();
+            batch.setNextPersisted(true);
+        } // while
+    } // persistBatchUpdate
+
+    /**
+     * Creates a request sending the given updates in chunks of up to batch_update_size updates, one chunk after the
+     * other.
+     * 
+     * @param updates
+     * @param token
+     * @param group
+     * @return The request
+     */
+    private Callable<Void> createUpdateRequest(final List<JSONObject> updates, final String token,
+            final OrionUpdateGroup group) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                for (int i = 0; i < updates.size(); i += batchUpdateSize) {
+                    List<JSONObject> chunk = updates.subList(i, Math.min(i + batchUpdateSize, updates.size()));
+                    LOGGER.debug("[" + getName() + "] Persisting data at NGSIOrionSink. Entities (" + chunk.size()
+                            + "), service (" + group.service + "), subservice (" + group.servicePath + ")");
+                    orionBackend.updateRemoteContexts(chunk, token, group.service, group.servicePath);
+                } // for
+
+                return null;
+            } // call
+        };
+    } // createUpdateRequest
+
+    /**
+     * Entity updates regarding the same service and service path.
+     */
+    private static class OrionUpdateGroup {
+
+        private final String service;
+        private final String servicePath;
+        private final LinkedHashMap<String, List<JSONObject>> updates;
+
+        OrionUpdateGroup(String service, String servicePath) {
+            this.service = service;
+            this.servicePath = servicePath;
+            this.updates = new LinkedHashMap<String, List<JSONObject>>();
+        } // OrionUpdateGroup
+
+        /**
+         * Adds an entity update, after the previous updates regarding the same entity.
+         * 
+         * @param entityJSON
+         */
+        void add(JSONObject entityJSON) {
+            String key = entityJSON.opt("id") + "\u0000" + entityJSON.opt("type");
+            List<JSONObject> entityUpdates = updates.get(key);
+
+            if (entityUpdates == null) {
+                entityUpdates = new ArrayList<JSONObject>();
+                updates.put(key, entityUpdates);
+            } // if
+
+            entityUpdates.add(entityJSON);
+        } // add
+
+    } // OrionUpdateGroup
+
     @Override
     public void capRecords(NGSIBatch batch, long maxRecords) throws CygnusCappingError {
     } // capRecords
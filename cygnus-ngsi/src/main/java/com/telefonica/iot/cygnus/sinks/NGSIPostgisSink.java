@@ -24,6 +24,7 @@ import com.telefonica.iot.cygnus.aggregation.NGSIGenericRowAggregator;
 import com.telefonica.iot.cygnus.backends.sql.SQLQueryUtils;
 import com.telefonica.iot.cygnus.backends.sql.SQLBackendImpl;
 import com.telefonica.iot.cygnus.backends.sql.Enum.SQLInstance;
+import com.telefonica.iot.cygnus.backends.sql.Enum.SQLInsertMode;
 import com.telefonica.iot.cygnus.errors.CygnusBadConfiguration;
 import com.telefonica.iot.cygnus.errors.CygnusBadContextData;
 import com.telefonica.iot.cygnus.errors.CygnusCappingError;
@@ -69,6 +70,7 @@ public class NGSIPostgisSink extends NGSISink {
     private static final String DEFAULT_LAST_DATA_TIMESTAMP_KEY = NGSIConstants.RECV_TIME;
     private static final String DEFAULT_LAST_DATA_SQL_TS_FORMAT = "YYYY-MM-DD HH24:MI:SS.MS";
     private static final int DEFAULT_MAX_LATEST_ERRORS = 100;
+    private static final String DEFAULT_INSERT_MODE = "literal";
 
     private static final CygnusLogger LOGGER = new CygnusLogger(NGSIPostgisSink.class);
     private String postgisHost;
@@ -94,6 +96,7 @@ public class NGSIPostgisSink extends NGSISink {
     private String lastDataTimeStampKey;
     private String lastDataSQLTimestampFormat;
     private int maxLatestErrors;
+    private SQLInsertMode insertMode;
 
     /**
      * Constructor.
@@ -167,6 +170,14 @@ public class NGSIPostgisSink extends NGSISink {
         return postgisOptions;
     } // getPostgisOptions
 
+    /**
+     * Gets the insert mode. It is protected due to it is only required for testing purposes.
+     * @return The insert mode
+     */
+    protected SQLInsertMode getInsertMode() {
+        return insertMode;
+    } // getInsertMode
+
     /**
      * Returns if the attribute value will be native or stringfy. It will be stringfy due to backward compatibility
      * purposes.
@@ -192,6 +203,15 @@ public class NGSIPostgisSink extends NGSISink {
         this.postgisPersistenceBackend = postgisPersistenceBackend;
     } // setPersistenceBackend
 
+    /**
+     * The connection pools and the cache of the SQL backend are thread-safe.
+     * @return True
+     */
+    @Override
+    protected boolean supportsConcurrentPersistence() {
+        return true;
+    } // supportsConcurrentPersistence
+
     @Override
     public void configure(Context context) {
         // Read NGSISink general configuration
@@ -285,6 +305,18 @@ public class NGSIPostgisSink extends NGSISink {
         postgisOptions = context.getString("postgis_options", null);
         LOGGER.debug("[" + this.getName() + "] Reading configuration (postgis_options=" + postgisOptions + ")");
 
+        String insertModeStr = context.getString("insert_mode", DEFAULT_INSERT_MODE);
+
+        if (insertModeStr.equals("literal") || insertModeStr.equals("batch") || insertModeStr.equals("copy")) {
+            insertMode = SQLInsertMode.valueOf(insertModeStr.toUpperCase());
+            LOGGER.debug("[" + this.getName() + "] Reading configuration (insert_mode="
+                    + insertModeStr + ")");
+        } else {
+            invalidConfiguration = true;
+            LOGGER.debug("[" + this.getName() + "] Invalid configuration (insert_mode="
+                    + insertModeStr + ") -- Must be 'literal', 'batch' or 'copy'");
+        } // if else
+
         String persistErrorsStr = context.getString("persist_errors", "true");
 
         if (persistErrorsStr.equals("true") || persistErrorsStr.equals("false")) {
@@ -360,6 +392,7 @@ public class NGSIPostgisSink extends NGSISink {
     private void createPersistenceBackend(String sqlHost, String sqlPort, String sqlUsername, String sqlPassword, int maxPoolSize, int maxPoolIdle, int minPoolIdle, int minPoolIdleTimeMillis, String sqlOptions, boolean persistErrors, int maxLatestErrors) {
         if (postgisPersistenceBackend == null) {
             postgisPersistenceBackend = new SQLBackendImpl(sqlHost, sqlPort, sqlUsername, sqlPassword, maxPoolSize, maxPoolIdle, minPoolIdle, minPoolIdleTimeMillis, POSTGIS_INSTANCE_NAME, POSTGIS_DRIVER_NAME, sqlOptions, persistErrors, maxLatestErrors);
+            postgisPersistenceBackend.setInsertMode(insertMode);
         }
     }
 
@@ -443,7 +476,9 @@ public class NGSIPostgisSink extends NGSISink {
                 String tableName = buildTableName(servicePathForNaming, entity, entityType, attribute);
                 LOGGER.debug("[" + this.getName() + "] Capping resource (maxRecords=" + maxRecords + ",dbName="
                         + dbName + ", schemaName=" + schemaName + ", tableName=" + tableName + ")");
-                postgisPersistenceBackend.capRecords(dbName, schemaName, tableName, maxRecords);
+                long start = System.currentTimeMillis();
+                long numDeleted = postgisPersistenceBackend.capRecords(dbName, schemaName, tableName, maxRecords);
+                serviceMetrics.addDeletionStats(this.getName(), numDeleted, System.currentTimeMillis() - start);
             } catch (CygnusBadConfiguration e) {
                 throw new CygnusCappingError("Data capping error", "CygnusBadConfiguration", e.getMessage());
             } catch (CygnusRuntimeError e) {
@@ -458,7 +493,9 @@ public class NGSIPostgisSink extends NGSISink {
     public void expirateRecords(long expirationTime) throws CygnusExpiratingError {
         LOGGER.debug("[" + this.getName() + "] Expirating records (time=" + expirationTime + ")");
         try {
-            postgisPersistenceBackend.expirateRecordsCache(expirationTime);
+            long start = System.currentTimeMillis();
+            long numDeleted = postgisPersistenceBackend.expirateRecordsCache(expirationTime);
+            serviceMetrics.addDeletionStats(this.getName(), numDeleted, System.currentTimeMillis() - start);
         } catch (CygnusRuntimeError e) {
             throw new CygnusExpiratingError("Data expiration error", "CygnusRuntimeError", e.getMessage());
         } catch (CygnusPersistenceError e) {
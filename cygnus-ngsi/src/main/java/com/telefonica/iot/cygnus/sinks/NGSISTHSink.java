@@ -17,6 +17,8 @@
  */
 package com.telefonica.iot.cygnus.sinks;
 
+import com.telefonica.iot.cygnus.backends.mongo.MongoBackendImpl;
+import com.telefonica.iot.cygnus.backends.mongo.STHAccumulator;
 import com.telefonica.iot.cygnus.containers.NotifyContextRequest;
 import com.telefonica.iot.cygnus.containers.NotifyContextRequest.ContextElement;
 import com.telefonica.iot.cygnus.errors.CygnusBadConfiguration;
@@ -27,7 +29,13 @@ import com.telefonica.iot.cygnus.interceptors.NGSIEvent;
 import static com.telefonica.iot.cygnus.sinks.NGSIMongoBaseSink.LOGGER;
 import com.telefonica.iot.cygnus.utils.CommonUtils;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.apache.flume.Context;
 
 /**
@@ -37,6 +45,9 @@ import org.apache.flume.Context;
 public class NGSISTHSink extends NGSIMongoBaseSink {
     
     protected final boolean[] resolutions = {false, false, false, false, false};
+    private int prepopulatedDocsCacheSize;
+    private int bulkMaxInFlight;
+    private ExecutorService bulkExecutor;
 
     /**
      * Constructor.
@@ -74,8 +85,70 @@ public class NGSISTHSink extends NGSIMongoBaseSink {
         } // for
         
         LOGGER.debug("[" + this.getName() + "] Reading configuration (resolutions=" + resolutionsStr + ")");
+        prepopulatedDocsCacheSize = context.getInteger("prepopulated_docs_cache_size",
+                MongoBackendImpl.DEFAULT_PREPOPULATED_DOCS_CACHE_SIZE);
+
+        if (prepopulatedDocsCacheSize < 0) {
+            invalidConfiguration = true;
+            LOGGER.warn("[" + this.getName() + "] Invalid configuration (prepopulated_docs_cache_size="
+                    + prepopulatedDocsCacheSize + ") -- Must be greater than or equal to 0");
+        } else {
+            LOGGER.debug("[" + this.getName() + "] Reading configuration (prepopulated_docs_cache_size="
+                    + prepopulatedDocsCacheSize + ")");
+        } // if else
+
+        bulkMaxInFlight = context.getInteger("bulk_max_in_flight", 1);
+
+        if (bulkMaxInFlight <= 0) {
+            invalidConfiguration = true;
+            LOGGER.warn("[" + this.getName() + "] Invalid configuration (bulk_max_in_flight="
+                    + bulkMaxInFlight + ") -- Must be greater than 0");
+        } else {
+            LOGGER.debug("[" + this.getName() + "] Reading configuration (bulk_max_in_flight="
+                    + bulkMaxInFlight + ")");
+        } // if else
+
         super.configure(context);
     } // configure
+
+    @Override
+    public void start() {
+        super.start();
+
+        if (backend != null) {
+            backend.setPrepopulatedDocsCacheSize(prepopulatedDocsCacheSize);
+        } // if
+
+        if (bulkMaxInFlight > 1) {
+            bulkExecutor = Executors.newFixedThreadPool(bulkMaxInFlight);
+        } // if
+    } // start
+
+    @Override
+    public void stop() {
+        if (bulkExecutor != null) {
+            bulkExecutor.shutdown();
+            bulkExecutor = null;
+        } // if
+
+        super.stop();
+    } // stop
+
+    /**
+     * Gets the maximum number of aggregated documents known as prepopulated. It is protected for testing purposes.
+     * @return The maximum number of aggregated documents known as prepopulated
+     */
+    protected int getPrepopulatedDocsCacheSize() {
+        return prepopulatedDocsCacheSize;
+    } // getPrepopulatedDocsCacheSize
+
+    /**
+     * Gets the maximum number of concurrent bulk writes. It is protected for testing purposes.
+     * @return The maximum number of concurrent bulk writes
+     */
+    protected int getBulkMaxInFlight() {
+        return bulkMaxInFlight;
+    } // getBulkMaxInFlight
     
     @Override
     public void persistBatch(NGSIBatch batch) throws CygnusBadConfiguration, CygnusPersistenceError {
@@ -83,7 +156,11 @@ public class NGSISTHSink extends NGSIMongoBaseSink {
             LOGGER.debug("[" + this.getName() + "] Null batch, nothing to do");
             return;
         } // if
- 
+
+        // All the events within the batch are aggregated in memory per aggregated collection, in order each
+        // collection is updated by means of a single bulk write instead of one per event and attribute
+        LinkedHashMap<String, STHAggregator> aggregators = new LinkedHashMap<>();
+
         // Iterate on the destinations
         batch.startIterator();
         
@@ -97,20 +174,74 @@ public class NGSISTHSink extends NGSIMongoBaseSink {
             
             // Iterate on the events within the sub-batch and aggregate them
             for (NGSIEvent event : events) {
-                // Current STH Aggregator does not allow more than one event
-                // but an STH aggregation is big enough to be persited each time
                 STHAggregator aggregator = new STHAggregator();
                 aggregator.initialize(event);
+                String key = aggregator.getDbName(false) + "." + aggregator.getCollectionName(false);
+                STHAggregator existingAggregator = aggregators.get(key);
+
+                if (existingAggregator == null) {
+                    aggregators.put(key, aggregator);
+                } else {
+                    aggregator = existingAggregator;
+                } // if else
+
                 aggregator.aggregate(event);
-                // Persist the aggregation
-                aggregator.persist(this.getName());
             } // for
-            
-            // Set the sub-batch as persisted
+        } // while
+
+        // Persist the aggregations
+        persistAggregations(aggregators.values());
+
+        // Set the sub-batches as persisted
+        batch.startIterator();
+
+        while (batch.hasNext()) {
+            batch.getNextDestination();
             batch.setNextPersisted(true);
-        } // for
+        } // while
     } // persistBatch
     
+    /**
+     * Persists the given aggregations, one bulk write per aggregated collection. If there is an executor, up to
+     * {@code bulk_max_in_flight} collections are written concurrently; the method returns once all of them end.
+     * @param aggregations
+     * @throws CygnusBadConfiguration
+     * @throws CygnusPersistenceError
+     */
+    private void persistAggregations(Collection<STHAggregator> aggregations)
+        throws CygnusBadConfiguration, CygnusPersistenceError {
+        ExecutorService executor = bulkExecutor;
+
+        if (executor == null || aggregations.size() <= 1) {
+            for (STHAggregator aggregator : aggregations) {
+                aggregator.persist(this.getName());
+            } // for
+
+            return;
+        } // if
+
+        List<Future<Void>> futures = new ArrayList<>();
+
+        for (final STHAggregator aggregator : aggregations) {
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    aggregator.persist(NGSISTHSink.this.getName());
+                    return null;
+                } // call
+            }));
+        } // for
+
+        // wait for all the bulk writes, the first error (if any) is thrown
+        try {
+            CommonUtils.waitForAll(futures);
+        } catch (CygnusBadConfiguration | CygnusPersistenceError e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CygnusPersistenceError("-, " + e.getMessage());
+        } // try catch
+    } // persistAggregations
+
     @Override
     public void capRecords(NGSIBatch batch, long maxRecords) throws CygnusCappingError {
     } // capRecords
@@ -119,144 +250,19 @@ public class NGSISTHSink extends NGSIMongoBaseSink {
     public void expirateRecords(long expirationTime) throws CygnusExpiratingError {
     } // expirateRecords
     
-    private class STHNumericAggregation {
-        
-        private final String attrName;
-        private final String attrType;
-        private double max;
-        private double min;
-        private double sum;
-        private double sum2;
-        private int numSamples;
-        
-        public STHNumericAggregation(String attrName, String attrType) {
-            this.attrName = attrName;
-            this.attrType = attrType;
-            max = Double.MIN_VALUE;
-            min = Double.MAX_VALUE;
-            sum = 0;
-            sum2 = 0;
-            numSamples = 0;
-        } // STHNumericAggregation
-        
-        public void update(double v) {
-            if (v > max) {
-                max = v;
-            } // if
-                    
-            if (v < min) {
-                min = v;
-            } // if
-
-            sum += v;
-            sum2 += (v * v);
-            numSamples++;
-        } // update
-        
-        public String getAttrName() {
-            return attrName;
-        } // getAttrName
-        
-        public String getAttrType() {
-            return attrType;
-        } // getAttrType
-        
-        public double getMax() {
-            return max;
-        } // getMax
-        
-        public double getMin() {
-            return min;
-        } // getMin
-        
-        public double getSum() {
-            return sum;
-        } // getSum
-        
-        public double getSum2() {
-            return sum2;
-        } // getSum2
-        
-        public int getNumSamples() {
-            return numSamples;
-        } // getNumSamples
-        
-    } // STHNumericAggregation
-    
-    private class STHStringAggregation {
-        
-        private final String attrName;
-        private final String attrType;
-        private HashMap<String, Integer> counts;
-        private int numSamples;
-        
-        public STHStringAggregation(String attrName, String attrType) {
-            this.attrName = attrName;
-            this.attrType = attrType;
-            counts = new HashMap<>();
-            numSamples = 0;
-        } // STHStringAggregation
-        
-        public void update(String v) {
-            Integer count = counts.get(v);
-            
-            if (count == null) {
-                count = 1;
-            } else {
-                count++;
-            } // if else
-            
-            counts.put(v, count);
-            numSamples++;
-        } // update
-        
-        public String getAttrName() {
-            return attrName;
-        } // getAttrName
-        
-        public String getAttrType() {
-            return attrType;
-        } // getAttrType
-        
-        public HashMap<String, Integer> getCounts() {
-            return counts;
-        } // getCounts
-        
-        public int getNumSamples() {
-            return numSamples;
-        } // getNumSamples
-        
-    } // STHStringAggregation
-    
     private class STHAggregator {
 
         // Aggregations
-        private long lastRecvTimeTs;
-        private final HashMap<String, STHNumericAggregation> numericAggrs;
-        private final HashMap<String, STHStringAggregation> stringAggrs;
+        private final STHAccumulator accumulator;
         
         // MongoDB names 
         private String dbName;
         private String collectionName;
         
-        // Entity info
-        private String entityId;
-        private String entityType;
-        
         public STHAggregator() {
-            lastRecvTimeTs = 0;
-            numericAggrs = new HashMap<>();
-            stringAggrs = new HashMap<>();
+            accumulator = new STHAccumulator();
         } // STHAggregator
         
-        public HashMap<String, STHNumericAggregation> getNumericAggr() {
-            return numericAggrs;
-        } // getNumericAggr
-        
-        public HashMap<String, STHStringAggregation> getStringAggr() {
-            return stringAggrs;
-        } // getStringAggr
-        
         public String getDbName(boolean enableLowercase) {
             if (enableLowercase) {
                 return dbName.toLowerCase();
@@ -273,14 +279,6 @@ public class NGSISTHSink extends NGSIMongoBaseSink {
             } // if else
         } // getCollectionName
         
-        public String getEntityId() {
-            return entityId;
-        } // getEntityId
-        
-        public String getEntityType() {
-            return entityType;
-        } // getEntityType
-        
         public void initialize(NGSIEvent event) throws CygnusBadConfiguration {
             String service = event.getServiceForNaming(enableNameMappings);
             String servicePathForData = event.getServicePathForData();
@@ -294,13 +292,14 @@ public class NGSISTHSink extends NGSIMongoBaseSink {
         public void aggregate(NGSIEvent event) {
             // Get notified reception time
             long notifiedRecvTimeTs = event.getRecvTimeTs();
+            long recvTimeTs = notifiedRecvTimeTs;
             
             // Get the event body
             ContextElement contextElement = event.getContextElement();
             
             // Get entity info
-            entityId = contextElement.getId();
-            entityType = contextElement.getType();
+            String entityId = contextElement.getId();
+            String entityType = contextElement.getType();
             LOGGER.debug("[" + getName() + "] Processing context element (id=" + entityId + ", type="
                     + entityType + ")");
             
@@ -313,93 +312,69 @@ public class NGSISTHSink extends NGSIMongoBaseSink {
                 return;
             } // if
             
+            ArrayList<NotifyContextRequest.ContextAttribute> attributesToAggregate = new ArrayList<>();
+            
             for (NotifyContextRequest.ContextAttribute contextAttribute : contextAttributes) {
-                // Get attribute info
-                String attrName = contextAttribute.getName();
-                String attrType = contextAttribute.getType();
                 String attrValue = contextAttribute.getContextValue(false);
-                String attrMetadata = contextAttribute.getContextMetadata();
                 
                 // Check if the attribute value is based on white spaces
                 if (ignoreWhiteSpaces && attrValue != null && attrValue.trim().length() == 0) {
                     continue;
                 } // if
                 
-                // Check if the metadata contains a TimeInstant value; use the notified reception time instead
-                Long timeInstant = CommonUtils.getTimeInstant(attrMetadata);
+                // Check if the metadata contains a TimeInstant value; use the notified reception time instead. As
+                // usual, the time of the last attribute is the one used for all the attributes of the entity
+                Long timeInstant = CommonUtils.getTimeInstant(contextAttribute.getContextMetadata());
 
                 if (timeInstant != null) {
-                    this.lastRecvTimeTs = timeInstant;
+                    recvTimeTs = timeInstant;
                 } else {
-                    this.lastRecvTimeTs = notifiedRecvTimeTs;
+                    recvTimeTs = notifiedRecvTimeTs;
                 } // if else
                 
+                attributesToAggregate.add(contextAttribute);
+            } // for
+            
+            for (NotifyContextRequest.ContextAttribute contextAttribute : attributesToAggregate) {
+                // Get attribute info
+                String attrName = contextAttribute.getName();
+                String attrType = contextAttribute.getType();
+                String attrValue = contextAttribute.getContextValue(false);
                 LOGGER.debug("[" + getName() + "] Processing context attribute (name=" + attrName + ", type="
                         + attrType + ")");
                 
-                // Get current aggregation for this attribute, or cerate them if not existing
                 if (attrValue != null && CommonUtils.isANumber(attrValue)) {
-                    STHNumericAggregation aggr = numericAggrs.get(attrName + "xffff" + attrType);
-                    
-                    if (aggr == null) {
-                        aggr = new STHNumericAggregation(attrName, attrType);
-                        numericAggrs.put(attrName + "xffff" + attrType, aggr);
-                    } // if
-                    
-                    aggr.update(new Double(attrValue));
+                    accumulator.add(recvTimeTs, entityId, entityType, attrName, attrType, Double.parseDouble(attrValue));
                 } else {
-                    STHStringAggregation aggr = stringAggrs.get(attrName + "xffff" + attrType);
-                    
-                    if (aggr == null) {
-                        aggr = new STHStringAggregation(attrName, attrType);
-                        stringAggrs.put(attrName + "xffff" + attrType, aggr);
-                    } // if
-                    
-                    aggr.update(attrValue);
+                    accumulator.add(recvTimeTs, entityId, entityType, attrName, attrType, attrValue);
                 } // if else
             } // for
         } // aggregate
         
         public void persist(String sinkName) throws CygnusBadConfiguration, CygnusPersistenceError {
-            for (String key : numericAggrs.keySet()) {
-                STHNumericAggregation numericAggr = numericAggrs.get(key);
-                
-                LOGGER.info("[" + sinkName + "] Persisting data at NGSISTHSink. Database: " + dbName
-                        + ", Collection: " + collectionName + ", Data: " + lastRecvTimeTs + ","
-                        + entityId + "," + entityType + "," + numericAggr.getAttrName() + ","
-                        + numericAggr.getAttrType() + ",[" + numericAggr.getMax() + ","
-                        + numericAggr.getMin() + "," + numericAggr.getSum() + "," + numericAggr.getSum2()
-                        + "," + numericAggr.getNumSamples() + "]");
-
-                try {
-                    // createCollection is an idempotent operation so we can safely run it each time a new doc is going to be inserted        
-                    backend.createCollection(dbName, collectionName, dataExpiration);
-                    backend.insertContextDataAggregated(dbName, collectionName, lastRecvTimeTs,
-                                                        entityId, entityType, numericAggr.getAttrName(), numericAggr.getAttrType(),
-                                                        numericAggr.getMax(), numericAggr.getMin(), numericAggr.getSum(),
-                                                        numericAggr.getSum2(), numericAggr.getNumSamples(), resolutions);
-                } catch (Exception e) {
-                    throw new CygnusPersistenceError("-, " + e.getMessage());
-                } // try catch
-            } // for
+            if (accumulator.isEmpty()) {
+                return;
+            } // if
 
-            for (String key : stringAggrs.keySet()) {
-                STHStringAggregation stringAggr = stringAggrs.get(key);
-                
-                LOGGER.info("[" + sinkName + "] Persisting data at NGSISTHSink. Database: " + dbName
-                        + ", Collection: " + collectionName + ", Data: " + lastRecvTimeTs + ","
-                        + entityId + "," + entityType + "," + stringAggr.getAttrName() + ","
-                        + stringAggr.getAttrType() + ",[" + stringAggr.getCounts().toString()
-                        + "," + stringAggr.getNumSamples() + "]");
-
-                try {
-                    backend.insertContextDataAggregated(dbName, collectionName, lastRecvTimeTs,
-                            entityId, entityType, stringAggr.getAttrName(), stringAggr.getAttrType(),
-                            stringAggr.getCounts(), resolutions);
-                } catch (Exception e) {
-                    throw new CygnusPersistenceError("-, " + e.getMessage());
-                } // try catch
-            } // for
+            if (LOGGER.isInfoEnabled()) {
+                for (STHAccumulator.Point point : accumulator.getPoints()) {
+                    LOGGER.info("[" + sinkName + "] Persisting data at NGSISTHSink. Database: " + dbName
+                            + ", Collection: " + collectionName + ", Data: " + point.getRecvTimeTs() + ","
+                            + point.getEntityId() + "," + point.getEntityType() + "," + point.getAttrName() + ","
+                            + point.getAttrType() + ",["
+                            + (point.isNumeric() ? point.getMax() + "," + point.getMin() + "," + point.getSum() + ","
+                            + point.getSum2() : point.getCounts().toString()) + "," + point.getNumSamples() + "]");
+                } // for
+            } // if
+
+            try {
+                // createCollection is an idempotent operation so we can safely run it each time a new doc is going to be inserted;
+                // besides, the collections known to exist are cached by the backend, which does not reach MongoDB for them
+                backend.createCollection(dbName, collectionName, dataExpiration);
+                backend.insertContextDataAggregated(dbName, collectionName, accumulator, resolutions);
+            } catch (Exception e) {
+                throw new CygnusPersistenceError("-, " + e.getMessage());
+            } // try catch
         } // persist
         
     } // STHAggregator
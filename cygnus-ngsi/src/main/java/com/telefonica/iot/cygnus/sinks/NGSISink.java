@@ -18,8 +18,6 @@
 
 package com.telefonica.iot.cygnus.sinks;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.telefonica.iot.cygnus.containers.NotifyContextRequest.ContextAttribute;
 import com.telefonica.iot.cygnus.containers.NotifyContextRequest.ContextElement;
 import com.telefonica.iot.cygnus.errors.CygnusBadConfiguration;
@@ -29,6 +27,7 @@ import com.telefonica.iot.cygnus.errors.CygnusExpiratingError;
 import com.telefonica.iot.cygnus.errors.CygnusPersistenceError;
 import com.telefonica.iot.cygnus.errors.CygnusRuntimeError;
 import com.telefonica.iot.cygnus.interceptors.NGSIEvent;
+import com.telefonica.iot.cygnus.interceptors.NGSIEventCodec;
 import com.telefonica.iot.cygnus.log.CygnusLogger;
 import com.telefonica.iot.cygnus.sinks.Enums.DataModel;
 import static com.telefonica.iot.cygnus.sinks.Enums.DataModel.DMBYATTRIBUTE;
@@ -45,12 +44,18 @@ import static com.telefonica.iot.cygnus.sinks.Enums.DataModel.DMBYFIXEDENTITYTYP
 import static com.telefonica.iot.cygnus.sinks.Enums.DataModel.DMBYFIXEDENTITYTYPEDATABASESCHEMA;
 import java.util.Map;
 import com.telefonica.iot.cygnus.utils.CommonConstants;
+import com.telefonica.iot.cygnus.utils.NGSICharsets;
 import com.telefonica.iot.cygnus.utils.NGSIConstants;
-import com.telefonica.iot.cygnus.management.PatternTypeAdapter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
-import java.util.regex.Pattern;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.flume.Channel;
 import org.apache.flume.Context;
 import org.apache.flume.Event;
@@ -88,6 +93,7 @@ public abstract class NGSISink extends CygnusSink implements Configurable {
     protected int batchTimeout;
     protected int batchTTL;
     protected int[] batchRetryIntervals;
+    protected int batchPersistenceWorkers;
     protected boolean enableLowercase;
     protected boolean invalidConfiguration;
     protected boolean enableEncoding;
@@ -103,6 +109,8 @@ public abstract class NGSISink extends CygnusSink implements Configurable {
     private int rollbackedAccumulationsIndex;
     // Expiration thread
     private ExpirationTimeChecker expirationTimeChecker;
+    // Persistence workers, only created when more than one worker is configured
+    private ExecutorService persistenceWorkers;
 
     // Rollback Metrics
     private int num_rollback_by_channel_exception;
@@ -156,6 +164,26 @@ public abstract class NGSISink extends CygnusSink implements Configurable {
         return batchTTL;
     } // getBatchTTL
     
+    /**
+     * Gets the number of workers persisting the sub-batches of a batch.
+     * @return The number of batch persistence workers
+     */
+    protected int getBatchPersistenceWorkers() {
+        return batchPersistenceWorkers;
+    } // getBatchPersistenceWorkers
+    
+    /**
+     * Gets if the sub-batches of a batch can be concurrently persisted by several batch persistence workers. If so,
+     * {@code persistBatch} and {@code capRecords} may be called at the same time from different workers, each call
+     * with the sub-batch of a different destination, thus the sink and its persistence backend must be thread-safe.
+     * The results of the sub-batches are always processed by the sink thread, once all of them have finished. By
+     * default the sub-batches are persisted one after the other, whatever the configured number of workers.
+     * @return True if the sub-batches can be concurrently persisted, false otherwise
+     */
+    protected boolean supportsConcurrentPersistence() {
+        return false;
+    } // supportsConcurrentPersistence
+    
     /**
      * Gets the data model.
      * @return The data model
@@ -321,6 +349,17 @@ public abstract class NGSISink extends CygnusSink implements Configurable {
                     + batchRetryIntervalsStr + ")");
         } // if
         
+        batchPersistenceWorkers = context.getInteger("batch_persistence_workers", 1);
+        
+        if (batchPersistenceWorkers <= 0) {
+            invalidConfiguration = true;
+            LOGGER.warn("[" + this.getName() + "] Invalid configuration (batch_persistence_workers="
+                    + batchPersistenceWorkers + ") -- Must be greater than 0");
+        } else {
+            LOGGER.debug("[" + this.getName() + "] Reading configuration (batch_persistence_workers="
+                    + batchPersistenceWorkers + ")");
+        } // if else
+        
         persistencePolicyMaxRecords = context.getInteger("persistence_policy.max_records", -1);
         LOGGER.debug("[" + this.getName() + "] Reading configuration (persistence_policy.max_records="
                     + persistencePolicyMaxRecords + ")");
@@ -355,12 +394,42 @@ public abstract class NGSISink extends CygnusSink implements Configurable {
             expirationTimeChecker = new ExpirationTimeChecker(this.getName());
             expirationTimeChecker.start();
             
+            // Create the persistence workers, if the sub-batches must be persisted concurrently
+            if (batchPersistenceWorkers > 1) {
+                if (supportsConcurrentPersistence()) {
+                    persistenceWorkers = Executors.newFixedThreadPool(batchPersistenceWorkers,
+                            new PersistenceWorkerFactory(this.getName()));
+                    LOGGER.debug("[" + this.getName() + "] " + batchPersistenceWorkers
+                            + " persistence workers started");
+                } else {
+                    LOGGER.warn("[" + this.getName() + "] batch_persistence_workers=" + batchPersistenceWorkers
+                            + " ignored, the persistence backend of this sink does not support concurrent usage. "
+                            + "The sub-batches will be persisted one after the other");
+                } // if else
+            } // if
+            
             LOGGER.info("[" + this.getName() + "] Startup completed");
         } // if else
     } // start
 
     @Override
     public void stop() {
+        if (persistenceWorkers != null) {
+            persistenceWorkers.shutdown();
+            
+            try {
+                if (!persistenceWorkers.awaitTermination(batchTimeout, TimeUnit.SECONDS)) {
+                    persistenceWorkers.shutdownNow();
+                } // if
+            } catch (InterruptedException e) {
+                LOGGER.error("[" + this.getName() + "] Error while stopping the persistence workers. Details: "
+                        + e.getMessage());
+                persistenceWorkers.shutdownNow();
+            } // try catch
+            
+            persistenceWorkers = null;
+        } // if
+        
         super.stop();
     } // stop
 
@@ -399,8 +468,10 @@ public abstract class NGSISink extends CygnusSink implements Configurable {
                 //}
                 // force to persist a batch with just one element
                 try {
+                    long persistenceStart = System.currentTimeMillis();
                     persistBatch(batchToPersist);
                     updateServiceMetrics(batchToPersist, false);
+                    updateLatencies(batchToPersist, System.currentTimeMillis() - persistenceStart);
                     if (persistencePolicyMaxRecords > -1) {
                         try {
                             capRecords(batchToPersist, persistencePolicyMaxRecords);
@@ -539,25 +610,13 @@ public abstract class NGSISink extends CygnusSink implements Configurable {
                     ngsiEvent = (NGSIEvent)event;
                 } else {
                     // Event comes from file... original and mapped context elements must be re-created
-                    String[] contextElementsStr = (new String(event.getBody())).split(CommonConstants.CONCATENATOR);
-                    Gson gson = new GsonBuilder()
-                        .registerTypeAdapter(Pattern.class, new PatternTypeAdapter())
-                        .create();
-                    ContextElement originalCE = null;
-                    ContextElement mappedCE = null;
-                
-                    if (contextElementsStr.length == 1) {
-                        originalCE = gson.fromJson(contextElementsStr[0], ContextElement.class);
-                    } else if (contextElementsStr.length == 2) {
-                        originalCE = gson.fromJson(contextElementsStr[0], ContextElement.class);
-                        mappedCE = gson.fromJson(contextElementsStr[1], ContextElement.class);
-                    } // if else
-                
-                    // Re-create the NGSI event
-                    ngsiEvent = new NGSIEvent(event.getHeaders(), event.getBody(), originalCE, mappedCE);
-                    LOGGER.debug("Re-creating NGSI event from raw bytes in file channel, original context element: "
-                                 + (originalCE == null ? null : originalCE.toString()) + ", mapped context element: "
-                                 + (mappedCE == null ? null : mappedCE.toString()));
+                    ngsiEvent = NGSIEventCodec.decode(event);
+                    
+                    if (LOGGER.isDebugEnabled()) {
+                        LOGGER.debug("Re-creating NGSI event from raw bytes in file channel, original context "
+                                + "element: " + ngsiEvent.getOriginalCE() + ", mapped context element: "
+                                + ngsiEvent.getMappedCE());
+                    } // if
                 } // if else
 
                 // Set the correlation ID, transaction ID, service and service path in MDC
@@ -584,46 +643,39 @@ public abstract class NGSISink extends CygnusSink implements Configurable {
                 NGSIBatch batch = accumulator.getBatch();
                 NGSIBatch rollbackBatch = new NGSIBatch();
                 StringBuffer transactionIds = new StringBuffer();
-                batch.startIterator();
-                while (batch.hasNext()) {
-                    NGSIBatch batchToPersist = new NGSIBatch();
-                    String destination = batch.getNextDestination();
-                    ArrayList<NGSIEvent> events = batch.getNextEvents();
+                
+                // Sub-batches may be persisted concurrently, but their results are always processed by this thread
+                for (SubBatchPersistence persistence : persistSubBatches(batch)) {
+                    String destination = persistence.getDestination();
+                    NGSIBatch batchToPersist = persistence.getBatch();
+                    ArrayList<NGSIEvent> events = persistence.getEvents();
                     for (NGSIEvent event : events) {
-                        batchToPersist.addEvent(destination, event);
                         transactionIds.append(event.getHeaders().get(CommonConstants.HEADER_CORRELATOR_ID)).append(", ");
                     }
-                    try {
-                        persistBatch(batchToPersist);
+                    Exception e = persistence.getError();
+                    if (e == null) {
                         updateServiceMetrics(batchToPersist, false);
-                        if (persistencePolicyMaxRecords > -1) {
-                            try {
-                                capRecords(batchToPersist, persistencePolicyMaxRecords);
-                            } catch (CygnusCappingError e) {
-                                LOGGER.error(e.getMessage() + " Sink: " + this.getName() + " Destination: " + destination + " Stack trace: " + Arrays.toString(e.getStackTrace()));
-                            } // try
-                        } // if
+                        updateLatencies(batchToPersist, persistence.getPersistenceTime());
                         numPersistedEvents += batchToPersist.getNumEvents();
                         LOGGER.info("Finishing internal transaction (" + transactionIds + ")" + " Sink: " + this.getName() + " Destination: " + destination );
-                    } catch (CygnusBadConfiguration | CygnusBadContextData | CygnusRuntimeError e) {
+                    } else if (e instanceof CygnusBadConfiguration || e instanceof CygnusBadContextData
+                            || e instanceof CygnusRuntimeError) {
                         updateServiceMetrics(batchToPersist, true);
                         LOGGER.error(e.getMessage() + " Sink: " + this.getName() + " Destination: " + destination + " Stack trace: " + Arrays.toString(e.getStackTrace()));
                         if (batchToPersist.getNumEvents() > 1) {
                             // Maybe there are other events int batch that could finally get inserted
-                            for (NGSIEvent event : batchToPersist.getNextEvents()) {
+                            for (NGSIEvent event : events) {
                                 rollbackBatch.addEvent(destination, event);
                             }
                         }
-                    } catch (Exception e) {
+                    } else {
                         updateServiceMetrics(batchToPersist, true);
                         LOGGER.error(e.getMessage() + " Sink: " + this.getName() + " Destination: " + destination + " Stack trace: " + Arrays.toString(e.getStackTrace()));
-                        for (NGSIEvent event : batchToPersist.getNextEvents()) {
+                        for (NGSIEvent event : events) {
                             rollbackBatch.addEvent(destination, event);
                         }
-                    } finally {
-                        batch.setNextPersisted(true);
-                    }
-                } // while (batch.hasNext())
+                    } // if else
+                } // for
                 if (rollbackBatch.getNumEvents() > 0) {
                     Accumulator rollbackAccumulator = new Accumulator();
                     rollbackAccumulator.initialize(accumulator.getAccStartDate());
@@ -672,6 +724,52 @@ public abstract class NGSISink extends CygnusSink implements Configurable {
         return Status.READY;
     } // processNewBatches
     
+    /**
+     * Persists all the sub-batches of the given batch, one sub-batch per destination. If several persistence workers
+     * are configured, the sub-batches are concurrently persisted by the workers and this method waits for all of them
+     * to finish; otherwise they are serially persisted by the calling thread.
+     * @param batch
+     * @return The persistence result of each sub-batch, in the same order the sub-batches were iterated
+     * @throws InterruptedException
+     * @throws ExecutionException
+     */
+    private ArrayList<SubBatchPersistence> persistSubBatches(NGSIBatch batch)
+        throws InterruptedException, ExecutionException {
+        ArrayList<SubBatchPersistence> persistences = new ArrayList<>();
+        batch.startIterator();
+        
+        while (batch.hasNext()) {
+            persistences.add(new SubBatchPersistence(batch.getNextDestination(), batch.getNextEvents()));
+            batch.setNextPersisted(true);
+        } // while
+        
+        if (persistenceWorkers == null || persistences.size() == 1) {
+            for (SubBatchPersistence persistence : persistences) {
+                persistence.run();
+            } // for
+        } else {
+            ArrayList<Future<?>> futures = new ArrayList<>();
+            
+            for (SubBatchPersistence persistence : persistences) {
+                futures.add(persistenceWorkers.submit(persistence));
+            } // for
+            
+            try {
+                for (Future<?> future : futures) {
+                    future.get();
+                } // for
+            } catch (InterruptedException | ExecutionException e) {
+                for (Future<?> future : futures) {
+                    future.cancel(true);
+                } // for
+                
+                throw e;
+            } // try catch
+        } // if else
+        
+        return persistences;
+    } // persistSubBatches
+    
     /**
      * Sets some MDC logging fields to 'N/A' for this thread. Value for the component field is inherited from main
      * thread (CygnusApplication.java).
@@ -718,7 +816,35 @@ public abstract class NGSISink extends CygnusSink implements Configurable {
             long time = (new Date().getTime() - event.getRecvTimeTs()) * events.size();
             serviceMetrics.add(service, servicePath, 0, 0, 0, 0, time, events.size(), 0, 0, error ? events.size() : 0);
         } // while
+        
+        // The names encodings cache is shared by all the sinks, thus each sink adds the stats since the last addition
+        // by any sink, so that the metrics of all the sinks sum the whole stats; hits and misses are taken at once,
+        // so that a sink never adds the hits of an interval together with the misses of another one
+        long[] cacheStats = NGSICharsets.getAndResetCacheStats();
+        serviceMetrics.addCacheStats(NGSICharsets.CACHE_NAME, cacheStats[0], cacheStats[1]);
     } // updateServiceMetrics
+    
+    /**
+     * Updates the latency histograms of each destination within the given successfully persisted batch.
+     * @param batch
+     * @param persistenceTime
+     */
+    private void updateLatencies(NGSIBatch batch, long persistenceTime) {
+        long now = System.currentTimeMillis();
+        batch.startIterator();
+        
+        while (batch.hasNext()) {
+            ArrayList<NGSIEvent> events = batch.getNextEvents();
+            long[] endToEndLatencies = new long[events.size()];
+            
+            for (int i = 0; i < endToEndLatencies.length; i++) {
+                endToEndLatencies[i] = now - events.get(i).getRecvTimeTs();
+            } // for
+            
+            serviceMetrics.addLatencies(this.getName(), batch.getNextDestination(), persistenceTime,
+                    endToEndLatencies);
+        } // while
+    } // updateLatencies
 
     /**
      * Utility class for batch-like getRecvTimeTs accumulation purposes.
@@ -988,6 +1114,109 @@ public abstract class NGSISink extends CygnusSink implements Configurable {
 
     } // Accumulator
     
+    /**
+     * Persistence of a single destination sub-batch. The result of the persistence is kept in order to be processed
+     * (metrics, rollbacks, etc.) by the sink thread once the persistence has finished.
+     */
+    private class SubBatchPersistence implements Runnable {
+        
+        private final String destination;
+        private final ArrayList<NGSIEvent> events;
+        private final NGSIBatch batch;
+        private final Map<String, String> loggingContext;
+        private Exception error;
+        private long persistenceTime;
+        
+        /**
+         * Constructor.
+         * @param destination
+         * @param events
+         */
+        public SubBatchPersistence(String destination, ArrayList<NGSIEvent> events) {
+            this.destination = destination;
+            this.events = events;
+            this.batch = new NGSIBatch();
+            
+            for (NGSIEvent event : events) {
+                batch.addEvent(destination, event);
+            } // for
+            
+            this.loggingContext = ThreadContext.getImmutableContext();
+            this.error = null;
+            this.persistenceTime = 0;
+        } // SubBatchPersistence
+        
+        public String getDestination() {
+            return destination;
+        } // getDestination
+        
+        public NGSIBatch getBatch() {
+            return batch;
+        } // getBatch
+        
+        public ArrayList<NGSIEvent> getEvents() {
+            return events;
+        } // getEvents
+        
+        public Exception getError() {
+            return error;
+        } // getError
+        
+        public long getPersistenceTime() {
+            return persistenceTime;
+        } // getPersistenceTime
+        
+        @Override
+        public void run() {
+            // Workers log with the same MDC fields than the sink thread
+            ThreadContext.putAll(loggingContext);
+            
+            try {
+                long persistenceStart = System.currentTimeMillis();
+                persistBatch(batch);
+                persistenceTime = System.currentTimeMillis() - persistenceStart;
+                
+                if (persistencePolicyMaxRecords > -1) {
+                    try {
+                        capRecords(batch, persistencePolicyMaxRecords);
+                    } catch (CygnusCappingError e) {
+                        LOGGER.error(e.getMessage() + " Sink: " + NGSISink.this.getName() + " Destination: "
+                                + destination + " Stack trace: " + Arrays.toString(e.getStackTrace()));
+                    } // try
+                } // if
+            } catch (Exception e) {
+                error = e;
+            } // try catch
+        } // run
+        
+    } // SubBatchPersistence
+    
+    /**
+     * Factory for the persistence worker threads, naming them after the sink.
+     */
+    private static class PersistenceWorkerFactory implements ThreadFactory {
+        
+        private final String sinkName;
+        private final AtomicInteger numWorkers;
+        
+        /**
+         * Constructor.
+         * @param sinkName
+         */
+        public PersistenceWorkerFactory(String sinkName) {
+            this.sinkName = sinkName;
+            this.numWorkers = new AtomicInteger(0);
+        } // PersistenceWorkerFactory
+        
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread worker = new Thread(r, sinkName + "-persistence-worker-" + numWorkers.incrementAndGet());
+            worker.setDaemon(true);
+            return worker;
+        } // newThread
+        
+    } // PersistenceWorkerFactory
+    
     /**
      * Class for checking about expired records.
      */
@@ -18,13 +18,18 @@
 
 package com.telefonica.iot.cygnus.utils;
 
+import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
 import com.telefonica.iot.cygnus.log.CygnusLogger;
 
 import java.util.*;
 import java.util.regex.Pattern;
 import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.bson.Document;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
@@ -257,6 +262,144 @@ public final class NGSIUtils {
         return jsonStrings;
     }
 
+    /**
+     * Linked hash map to BSON documents list. The documents are the same than parsing the Json objects given by
+     * linkedHashMapToJsonList, but they are directly built from the Json elements, without serializing and parsing
+     * them back.
+     *
+     * @param aggregation the aggregation
+     * @return an ArrayList of Documents which contain all entities on a LinkedHashMap
+     */
+    public static ArrayList<Document> linkedHashMapToDocumentList(
+            LinkedHashMap<String, ArrayList<JsonElement>> aggregation) {
+        int numEvents = collectionSizeOnLinkedHashMap(aggregation);
+        ArrayList<Document> documents = new ArrayList<>(numEvents);
+
+        for (int i = 0; i < numEvents; i++) {
+            Document document = new Document();
+
+            for (Map.Entry<String, ArrayList<JsonElement>> entry : aggregation.entrySet()) {
+                JsonElement value = entry.getValue().get(i);
+
+                if (value != null) {
+                    document.put(entry.getKey(), jsonElementToBson(value));
+                } // if
+            } // for
+
+            documents.add(document);
+        } // for
+
+        return documents;
+    } // linkedHashMapToDocumentList
+
+    /**
+     * Gets the BSON value of a Json element, the same the MongoDB driver gets when parsing it: Json objects and
+     * arrays are BasicDBObjects and BasicDBLists, integer numbers are Integers (or Longs, if not fitting) and the
+     * rest of numbers are Doubles.
+     *
+     * @param element
+     * @return The BSON value of the Json element
+     */
+    private static Object jsonElementToBson(JsonElement element) {
+        if (element.isJsonNull()) {
+            return null;
+        } else if (element.isJsonPrimitive()) {
+            JsonPrimitive primitive = element.getAsJsonPrimitive();
+
+            if (primitive.isString()) {
+                return primitive.getAsString();
+            } else if (primitive.isBoolean()) {
+                return primitive.getAsBoolean();
+            } else {
+                return jsonNumberToBson(primitive.getAsString());
+            } // if else
+        } else if (element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            BasicDBList list = new BasicDBList();
+
+            for (JsonElement item : array) {
+                list.add(jsonElementToBson(item));
+            } // for
+
+            return list;
+        } else {
+            JsonObject object = element.getAsJsonObject();
+            BasicDBObject dbObject = new BasicDBObject();
+
+            for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+                if (entry.getKey().startsWith("$")) {
+                    // MongoDB extended Json (e.g. {"$date": ...}), let the driver interpret it as it always did
+                    return BasicDBObject.parse("{\"v\":" + object.toString() + "}").get("v");
+                } // if
+
+                dbObject.put(entry.getKey(), jsonElementToBson(entry.getValue()));
+            } // for
+
+            return dbObject;
+        } // if else
+    } // jsonElementToBson
+
+    private static Object jsonNumberToBson(String number) {
+        for (int i = 0; i < number.length(); i++) {
+            char c = number.charAt(i);
+
+            if (c == '.' || c == 'e' || c == 'E' || c == 'I' || c == 'N') {
+                return Double.parseDouble(number);
+            } // if
+        } // for
+
+        try {
+            long value = Long.parseLong(number);
+
+            if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                return (int) value;
+            } else {
+                return value;
+            } // if else
+        } catch (NumberFormatException e) {
+            return Double.parseDouble(number);
+        } // try catch
+    } // jsonNumberToBson
+
+    /**
+     * Gets the TimeInstant metadata value, in milliseconds, from the metadata of an attribute, without serializing
+     * and parsing it again when it is already a Json array.
+     *
+     * @param metadata
+     * @return The TimeInstant metadata value, in milliseconds, or null if there is no TimeInstant metadata
+     */
+    public static Long getTimeInstant(JsonElement metadata) {
+        if (metadata == null || metadata.isJsonNull()) {
+            return null;
+        } else if (metadata.isJsonPrimitive()) {
+            return CommonUtils.getTimeInstant(metadata.getAsString());
+        } else if (!metadata.isJsonArray()) {
+            return CommonUtils.getTimeInstant(metadata.toString());
+        } // if else
+
+        for (JsonElement md : metadata.getAsJsonArray()) {
+            if (!md.isJsonObject()) {
+                continue;
+            } // if
+
+            JsonElement mdName = md.getAsJsonObject().get("name");
+
+            if (mdName != null && mdName.isJsonPrimitive() && mdName.getAsString().equals("TimeInstant")) {
+                JsonElement mdValue = md.getAsJsonObject().get("value");
+
+                if (mdValue == null || !mdValue.isJsonPrimitive()) {
+                    return null;
+                } else if (CommonUtils.isANumber(mdValue.getAsString())) {
+                    return Long.valueOf(mdValue.getAsString());
+                } else {
+                    return CommonUtils.getTimeInstantFromString(mdValue.getAsString());
+                } // if else
+            } // if
+        } // for
+
+        return null;
+    } // getTimeInstant
+
     /**
      * Linked hash map to json list with out empty md array list.
      *
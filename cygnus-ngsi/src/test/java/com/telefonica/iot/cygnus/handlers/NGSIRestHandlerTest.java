@@ -23,6 +23,7 @@ import static com.telefonica.iot.cygnus.utils.CommonUtilsForTests.getTestTraceHe
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.InputStreamReader;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -31,6 +32,7 @@ import java.util.Map;
 import javax.servlet.http.HttpServletRequest;
 import org.apache.flume.Context;
 import org.apache.flume.Event;
+import org.apache.flume.source.http.HTTPBadRequestException;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.core.LoggerContext;
@@ -42,6 +44,7 @@ import org.junit.runner.RunWith;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.junit.Test;
 import org.mockito.Mock;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import com.telefonica.iot.cygnus.utils.CommonUtils;
 import com.telefonica.iot.cygnus.utils.NGSIConstants;
@@ -765,6 +768,74 @@ public class NGSIRestHandlerTest {
         } // try catch
     } // testGetEventsMultiValuedServicePath
 
+    /**
+     * [NGSIRestHandler.getEvents] -------- When a notification has no content, a bad request is answered.
+     */
+    @Test
+    public void testGetEventsNoContent() {
+        System.out.println(getTestTraceHead("[NGSIRestHandler.getEvents]")
+                + "-------- When a notification has no content, a bad request is answered");
+        NGSIRestHandler handler = new NGSIRestHandler();
+        handler.configure(createContext(null, null, null)); // default configuration
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        String[] headerNames = {"Content-Type", "fiware-service", "fiware-servicePath"};
+        when(request.getMethod()).thenReturn("POST");
+        when(request.getRequestURI()).thenReturn("/notify");
+        when(request.getHeaderNames()).thenReturn(Collections.enumeration(new ArrayList(Arrays.asList(headerNames))));
+        when(request.getHeader("content-type")).thenReturn("application/json; charset=utf-8");
+        when(request.getHeader("fiware-service")).thenReturn("myservice");
+        when(request.getHeader("fiware-servicepath")).thenReturn("/myservicepath");
+        
+        try {
+            when(request.getReader()).thenReturn(new BufferedReader(new StringReader("")));
+            handler.getEvents(request);
+            System.out.println(getTestTraceHead("[NGSIRestHandler.getEvents]")
+                    + "- FAIL - A notification with no content was accepted");
+            fail();
+        } catch (HTTPBadRequestException e) {
+            System.out.println(getTestTraceHead("[NGSIRestHandler.getEvents]")
+                    + "-  OK  - A notification with no content was answered with a bad request");
+        } catch (Exception e) {
+            System.out.println(getTestTraceHead("[NGSIRestHandler.getEvents]")
+                    + "- FAIL - There was some problem while processing the events");
+            throw new AssertionError(e.getMessage());
+        } // try catch
+    } // testGetEventsNoContent
+
+    /**
+     * [NGSIRestHandler.readPrefix] -------- Only a prefix of a long notification is traced, without consuming it.
+     */
+    @Test
+    public void testReadPrefix() throws Exception {
+        System.out.println(getTestTraceHead("[NGSIRestHandler.readPrefix]")
+                + "-------- Only a prefix of a long notification is traced, without consuming it");
+        StringBuilder longData = new StringBuilder();
+        
+        for (int i = 0; i < NGSIRestHandler.MAX_TRACED_DATA_LENGTH; i++) {
+            longData.append('a');
+        } // for
+        
+        longData.append("bcd");
+        BufferedReader shortReader = new BufferedReader(new StringReader("{\n\"data\": []\n}"));
+        BufferedReader longReader = new BufferedReader(new StringReader(longData.toString()));
+        
+        try {
+            assertEquals("{\"data\": []}",
+                    NGSIRestHandler.readPrefix(shortReader, NGSIRestHandler.MAX_TRACED_DATA_LENGTH));
+            assertEquals("{", shortReader.readLine());
+            String prefix = NGSIRestHandler.readPrefix(longReader, NGSIRestHandler.MAX_TRACED_DATA_LENGTH);
+            assertEquals(NGSIRestHandler.MAX_TRACED_DATA_LENGTH + 3, prefix.length());
+            assertTrue(prefix.endsWith("a..."));
+            assertEquals(longData.toString(), longReader.readLine());
+            System.out.println(getTestTraceHead("[NGSIRestHandler.readPrefix]")
+                    + "-  OK  - The notification was truncated and not consumed");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[NGSIRestHandler.readPrefix]")
+                    + "- FAIL - The notification was not truncated or it was consumed");
+            throw e;
+        } // try catch
+    } // testReadPrefix
+
     /**
      * [NGSIRestHandler.generateUniqueId] -------- An internal transaction ID is generated.
      */
@@ -30,6 +30,7 @@ import org.apache.logging.log4j.core.config.Configuration;
 import org.apache.logging.log4j.core.config.LoggerConfig;
 import org.junit.Assert;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 
 /**
@@ -580,4 +581,83 @@ public class NGSIEventTest {
         } // try catch
     } // testSetBody
     
+    /**
+     * [NGSIEvent.getBody] -------- When not given, the body is lazily encoded in Json format from the context elements.
+     */
+    @Test
+    public void testGetBodyLazilyEncoded() {
+        System.out.println(getTestTraceHead("[NGSIEvent.getBody]")
+                + "-------- When not given, the body is lazily encoded in Json format from the context elements");
+        HashMap<String, String> headers = null; // irrelevant for this test
+        ContextElement originalCE;
+        ContextElement mappedCE;
+        
+        try {
+            originalCE = NGSIUtilsForTests.createJsonContextElement(originalCEStr);
+            mappedCE = NGSIUtilsForTests.createJsonContextElement(mappedCEStr);
+        } catch (Exception e) {
+            System.out.println(getTestTraceHead("[NGSIEvent.getBody]")
+                    + "- FAIL - There was some problem when setting up the test");
+            throw new AssertionError(e.getMessage());
+        } // try catch
+        
+        NGSIEvent event = new NGSIEvent(headers, null, originalCE, mappedCE);
+        
+        try {
+            Assert.assertArrayEquals((originalCE.toString() + CommonConstants.CONCATENATOR + mappedCE.toString())
+                    .getBytes(), event.getBody());
+            System.out.println(getTestTraceHead("[NGSIEvent.getBody]")
+                    + "-  OK  - The body has been lazily encoded in Json format");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[NGSIEvent.getBody]")
+                    + "- FAIL - The body has not been lazily encoded in Json format");
+            throw e;
+        } // try catch
+    } // testGetBodyLazilyEncoded
+    
+    /**
+     * [NGSIEventCodec.decode] -------- Both binary and Json bodies are decoded into the same context elements.
+     */
+    @Test
+    public void testDecodeBinaryAndJsonBodies() {
+        System.out.println(getTestTraceHead("[NGSIEventCodec.decode]")
+                + "-------- Both binary and Json bodies are decoded into the same context elements");
+        HashMap<String, String> headers = new HashMap<>();
+        ContextElement originalCE;
+        ContextElement mappedCE;
+        
+        try {
+            originalCE = NGSIUtilsForTests.createJsonContextElement(originalCEStr);
+            mappedCE = NGSIUtilsForTests.createJsonContextElement(mappedCEStr);
+        } catch (Exception e) {
+            System.out.println(getTestTraceHead("[NGSIEventCodec.decode]")
+                    + "- FAIL - There was some problem when setting up the test");
+            throw new AssertionError(e.getMessage());
+        } // try catch
+        
+        NGSIEvent binaryEvent = new NGSIEvent(headers, null, originalCE, mappedCE);
+        binaryEvent.setBinaryBody(true);
+        NGSIEvent jsonEvent = new NGSIEvent(headers, null, originalCE, null);
+        
+        try {
+            NGSIEvent decodedBinaryEvent = NGSIEventCodec.decode(binaryEvent);
+            NGSIEvent decodedJsonEvent = NGSIEventCodec.decode(jsonEvent);
+            assertTrue(NGSIEventCodec.isBinary(binaryEvent.getBody()));
+            assertEquals(originalCE.toString(), decodedBinaryEvent.getOriginalCE().toString());
+            assertEquals(mappedCE.toString(), decodedBinaryEvent.getMappedCE().toString());
+            assertEquals(originalCE.toString(), decodedJsonEvent.getOriginalCE().toString());
+            assertEquals(null, decodedJsonEvent.getMappedCE());
+            System.out.println(getTestTraceHead("[NGSIEventCodec.decode]")
+                    + "-  OK  - Both binary and Json bodies have been decoded into the same context elements");
+        } catch (Exception e) {
+            System.out.println(getTestTraceHead("[NGSIEventCodec.decode]")
+                    + "- FAIL - There was some problem when decoding the bodies");
+            throw new AssertionError(e.getMessage());
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[NGSIEventCodec.decode]")
+                    + "- FAIL - Binary and Json bodies have not been decoded into the same context elements");
+            throw e;
+        } // try catch
+    } // testDecodeBinaryAndJsonBodies
+    
 } // NGSIEventTest
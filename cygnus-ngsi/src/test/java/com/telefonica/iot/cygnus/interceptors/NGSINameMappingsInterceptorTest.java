@@ -31,6 +31,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.core.LoggerContext;
 import org.apache.logging.log4j.core.config.Configuration;
 import org.apache.logging.log4j.core.config.LoggerConfig;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 
@@ -764,6 +765,69 @@ public class NGSINameMappingsInterceptorTest {
     } // testDoMapConfig4
 
 
+    /**
+     * [NGSINameMappingInterceptor.doMapCached] -------- Cached resolutions give the same mapped ContextElement and
+     * are invalidated when the Name Mappings are reloaded.
+     */
+    @Test
+    public void testDoMapCached() {
+        System.out.println(getTestTraceHead("[NGSINameMappingInterceptor.doMapCached]")
+                + "-------- Cached resolutions give the same mapped ContextElement and are invalidated when the Name "
+                + "Mappings are reloaded");
+        NGSINameMappingsInterceptor nameMappingsInterceptor = new NGSINameMappingsInterceptor(null, false);
+        nameMappingsInterceptor.loadNameMappings(nameMappingsStr);
+        ContextElement originalCE;
+
+        try {
+            originalCE = NGSIUtilsForTests.createJsonContextElement(originalCEStr);
+        } catch (Exception e) {
+            System.out.println(getTestTraceHead("[NGSINameMappingInterceptor.doMapCached]")
+                    + "- FAIL - There was some problem when parsing the ContextElements");
+            throw new AssertionError(e.getMessage());
+        } // try catch
+
+        ImmutableTriple<String, String, ContextElement> map1 = nameMappingsInterceptor.doMap(originalService,
+                originalServicePath, originalCE);
+        ImmutableTriple<String, String, ContextElement> map2 = nameMappingsInterceptor.doMap(originalService,
+                originalServicePath, originalCE);
+
+        try {
+            assertEquals(1, nameMappingsInterceptor.getCachedResolutions());
+            assertEquals(map1.getLeft(), map2.getLeft());
+            assertEquals(map1.getMiddle(), map2.getMiddle());
+            assertEquals(map1.getRight().toString(), map2.getRight().toString());
+            assertTrue(map1.getRight() != map2.getRight());
+            assertEquals("new_Room1", map2.getRight().getId());
+            assertEquals("new_temperature", map2.getRight().getAttributes().get(0).getName());
+            assertEquals("temperature", originalCE.getAttributes().get(0).getName());
+            System.out.println(getTestTraceHead("[NGSINameMappingInterceptor.doMapCached]")
+                    + "-  OK  - The cached mapped ContextElement is equals to the computed one");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[NGSINameMappingInterceptor.doMapCached]")
+                    + "- FAIL - The cached mapped ContextElement is not equals to the computed one");
+            throw e;
+        } // try catch
+
+        nameMappingsInterceptor.loadNameMappings(nameMappingsRegexStr);
+        ImmutableTriple<String, String, ContextElement> map3 = nameMappingsInterceptor.doMap(originalService,
+                originalServicePath, originalCE);
+
+        try {
+            assertEquals("new_Room1", map3.getRight().getId());
+            assertEquals(1, nameMappingsInterceptor.getCachedResolutions());
+            nameMappingsInterceptor.loadNameMappings(null);
+            assertEquals(0, nameMappingsInterceptor.getCachedResolutions());
+            assertEquals("Room1", nameMappingsInterceptor.doMap(originalService, originalServicePath, originalCE)
+                    .getRight().getId());
+            System.out.println(getTestTraceHead("[NGSINameMappingInterceptor.doMapCached]")
+                    + "-  OK  - The cached resolutions are invalidated when reloading the Name Mappings");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[NGSINameMappingInterceptor.doMapCached]")
+                    + "- FAIL - The cached resolutions are not invalidated when reloading the Name Mappings");
+            throw e;
+        } // try catch
+    } // testDoMapCached
+
     /*
      * [NGSINameMappingsInterceptorTest.loadNameMappingsError] -------- Load a name mappings with error.
      * @throws java.lang.Exception
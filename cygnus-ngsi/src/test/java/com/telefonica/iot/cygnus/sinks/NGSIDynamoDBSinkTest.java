@@ -128,8 +128,52 @@ public class NGSIDynamoDBSinkTest {
                     + "- FAIL - 'region=eu-west-1' not configured by default");
             throw e;
         } // try catch
+
+        try {
+            assertEquals(1, sink.getWriteMaxInFlight());
+            System.out.println(getTestTraceHead("[NGSIDynamoDBSink.configure]")
+                    + "-  OK  - 'write_max_in_flight=1' configured by default");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[NGSIDynamoDBSink.configure]")
+                    + "- FAIL - 'write_max_in_flight=1' not configured by default");
+            throw e;
+        } // try catch
     } // testConfigureDefaults
     
+    /**
+     * [NGSIDynamoDBSink.configure] -------- Invalid 'write_max_in_flight', 'write_max_retries' and
+     * 'write_retry_interval' are detected.
+     */
+    @Test
+    public void testConfigureInvalidWriteOptions() {
+        System.out.println(getTestTraceHead("[NGSIDynamoDBSink.configure]")
+                + "-------- Invalid 'write_max_in_flight', 'write_max_retries' and 'write_retry_interval' are "
+                + "detected");
+        String[][] invalidParameters = {
+            {"write_max_in_flight", "0"},
+            {"write_max_retries", "-1"},
+            {"write_retry_interval", "0"}
+        };
+        
+        for (String[] invalidParameter : invalidParameters) {
+            NGSIDynamoDBSink sink = new NGSIDynamoDBSink();
+            Context context = createContext("my_access_key", null, null, null, null, null, null, null,
+                    "my_secret_access_key");
+            context.put(invalidParameter[0], invalidParameter[1]);
+            sink.configure(context);
+            
+            try {
+                assertTrue(sink.getInvalidConfiguration());
+                System.out.println(getTestTraceHead("[NGSIDynamoDBSink.configure]")
+                        + "-  OK  - Invalid '" + invalidParameter[0] + "' has been detected");
+            } catch (AssertionError e) {
+                System.out.println(getTestTraceHead("[NGSIDynamoDBSink.configure]")
+                        + "- FAIL - Invalid '" + invalidParameter[0] + "' has not been detected");
+                throw e;
+            } // try catch
+        } // for
+    } // testConfigureInvalidWriteOptions
+    
     private Context createContext(String accessKeyId, String attrPersistence, String batchSize, String batchTimeout,
             String batchTTL, String dataModel, String enableLowercase, String region,
             String secretAccessKey) {
@@ -22,6 +22,7 @@ package com.telefonica.iot.cygnus.sinks;
 
 import com.telefonica.iot.cygnus.backends.elasticsearch.ElasticsearchBackend;
 import com.telefonica.iot.cygnus.containers.NotifyContextRequest.ContextElement;
+import com.telefonica.iot.cygnus.errors.CygnusPersistenceError;
 import com.telefonica.iot.cygnus.interceptors.NGSIEvent;
 import com.telefonica.iot.cygnus.sinks.NGSISink.Accumulator;
 import com.telefonica.iot.cygnus.utils.CommonConstants;
@@ -36,7 +37,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
-import java.util.concurrent.TimeUnit;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
@@ -280,8 +280,8 @@ public class NGSIElasticsearchSinkTest {
                              new Data<String, String>(null, "UTC"),
                              new Data<String, Boolean>(null, Boolean.valueOf(false)),
                              new Data<String, Integer>("-2147483649", Integer.valueOf(0)),
-                             new Data<String, String>(null, null),
-                             false, java.lang.NumberFormatException.class)},
+                             new Data<String, String>(null, "UTF-8"),
+                             false, null)},
                 {new Fixture(new Data<String, String>(null, "localhost"),
                              new Data<String, String>(null, "9200"),
                              new Data<String, Boolean>(null, Boolean.valueOf(false)),
@@ -294,8 +294,8 @@ public class NGSIElasticsearchSinkTest {
                              new Data<String, String>(null, "UTC"),
                              new Data<String, Boolean>(null, Boolean.valueOf(false)),
                              new Data<String, Integer>("", Integer.valueOf(0)),
-                             new Data<String, String>(null, null),
-                             false, java.lang.NumberFormatException.class)},
+                             new Data<String, String>(null, "UTF-8"),
+                             false, null)},
                 {new Fixture(new Data<String, String>(null, "localhost"),
                              new Data<String, String>(null, "9200"),
                              new Data<String, Boolean>(null, Boolean.valueOf(false)),
@@ -362,193 +362,11 @@ public class NGSIElasticsearchSinkTest {
             assertEquals(fixture.rowAttrPersistence.expected, sink.getRowAttrPersistence());
             assertEquals(fixture.timezone.expected, sink.getTimezone());
             assertEquals(fixture.castValue.expected, sink.getCastValue());
-            assertEquals(fixture.cacheFlashIntervalSec.expected.intValue(), sink.getCacheFlashIntervalSec());
             assertEquals(fixture.charSet.expected, sink.getCharSet());
             assertEquals(fixture.invalidConfiguration, sink.getInvalidConfiguration());
         } // testConfigure
     } // ConfigureTest
 
-    public static class StartAndStopInternalTest {
-        /**
-         * setup test class
-         */
-        @BeforeClass
-        public static void setUpClass() {
-            LoggerContext ctx = (LoggerContext) LogManager.getContext(false);
-            Configuration config = ctx.getConfiguration();
-            LoggerConfig loggerConfig = config.getLoggerConfig(LogManager.ROOT_LOGGER_NAME);
-            loggerConfig.setLevel(Level.FATAL);
-            ctx.updateLoggers();
-        } // setUpClass
-
-        @Mock
-        private ElasticsearchBackend mockBackend;
-
-        private Fixture fixture;
-        private Map<String, List<Map<String, String>>> aggregations;
-        private List<Map<String, String>> data1;
-        private List<Map<String, String>> data2;
-        private List<Map<String, String>> data3;
-        /**
-         * setup test case
-         */
-        @Before
-        public void setUp() throws Exception {
-            fixture = new Fixture(new Data<String, String>(null, "localhost"),
-                                  new Data<String, String>(null, "9200"),
-                                  new Data<String, Boolean>(null, Boolean.valueOf(false)),
-                                  new Data<String, String>(null, "cygnus"),
-                                  new Data<String, String>(null, "cygnus_type"),
-                                  new Data<String, Integer>(null, Integer.valueOf(500)),
-                                  new Data<String, Integer>(null, Integer.valueOf(100)),
-                                  new Data<String, Boolean>(null, Boolean.valueOf(true)),
-                                  new Data<String, Boolean>(null, Boolean.valueOf(true)),
-                                  new Data<String, String>(null, "UTC"),
-                                  new Data<String, Boolean>(null, Boolean.valueOf(false)),
-                                  new Data<String, Integer>(null, Integer.valueOf(0)),
-                                  new Data<String, String>(null, "UTF-8"),
-                                  false, null);
-
-            aggregations = new TreeMap<>();
-
-            data1 = new ArrayList<>();
-            data1.add(new TreeMap<String, String>(){
-                {
-                    put("data", "{\"message\": \"test data 1-1\"}");
-                    put("recvTimeTs", "test_recvTimeTs_1-1");
-                }
-            });
-            data1.add(new TreeMap<String, String>(){
-                {
-                    put("data", "{\"message\": \"test data 1-2\"}");
-                    put("recvTimeTs", "test_recvTimeTs_1-2");
-                }
-            });
-            aggregations.put("idx1", data1);
-
-            data2 = new ArrayList<>();
-            data2.add(new TreeMap<String, String>(){
-                {
-                    put("data", "{\"message\": \"test data 2-1\"}");
-                    put("recvTimeTs", "test_recvTimeTs_2-1");
-                }
-            });
-            aggregations.put("idx2", data2);
-
-            data3 = new ArrayList<>();
-            data3.add(new TreeMap<String, String>(){
-                {
-                    put("data", "{\"message\": \"test data 3-1\"}");
-                    put("recvTimeTs", "test_recvTimeTs_3-1");
-                }
-            });
-
-            MockitoAnnotations.initMocks(this);
-            when(mockBackend.bulkInsert(anyString(), anyString(), ArgumentMatchers.<List<Map<String, String>>>any())).thenReturn(null);
-        }
-
-        /**
-         * [NGSIElasticsearchSinkTest$StartAndStopInternalTest.testStartAndStopInternalWithoutCache]
-         * Test startInternal() : cacheFlashIntervalSec = 0
-         *
-         */
-        @Test
-        public void testStartAndStopInternalWithoutCache() {
-            System.out.println(getTestTraceHead("[NGSIElasticsearchSinkTest.testStartAndStopInternal] - cacheFlashIntervalSec = 0"));
-
-            NGSIElasticsearchSink sink = new NGSIElasticsearchSink();
-            sink.setPersistenceBackend(mockBackend);
-
-            fixture.cacheFlashIntervalSec.value = "0";
-            sink.configure(fixture.createContext());
-
-            sink.setAggregations(aggregations);
-            assertEquals(2, sink.getAggregations().size());
-            sink.startInternal();
-
-            try {
-                verify(mockBackend, times(0)).bulkInsert(anyString(), anyString(), ArgumentMatchers.<List<Map<String, String>>>any());
-            } catch (Exception e) {
-                fail(e.getMessage());
-            }
-            assertEquals(2, sink.getAggregations().size());
-            assertNull(sink.getScheduler());
-
-            sink.stopInternal();
-            try {
-                verify(mockBackend, times(1)).bulkInsert("idx1", "cygnus_type", data1);
-                verify(mockBackend, times(1)).bulkInsert("idx2", "cygnus_type", data2);
-            } catch (Exception e) {
-                fail(e.getMessage());
-            }
-            assertEquals(0, sink.getAggregations().size());
-        } // testStartAndStopInternalWithoutCache
-
-        /**
-         * [NGSIElasticsearchSinkTest$StartAndStopInternalTest.testStartAndStopInternalWithCache]
-         * Test startInternal() : cacheFlashIntervalSec = 3
-         *
-         */
-        @Test
-        public void testStartAndStopInternalWithCache() {
-            System.out.println(getTestTraceHead("[NGSIElasticsearchSinkTest.testStartAndStopInternal] - cacheFlashIntervalSec = 1"));
-
-            NGSIElasticsearchSink sink = new NGSIElasticsearchSink();
-            sink.setPersistenceBackend(mockBackend);
-
-            fixture.cacheFlashIntervalSec.value = "1";
-            sink.configure(fixture.createContext());
-
-            assertEquals(0, sink.getAggregations().size());
-            sink.startInternal();
-
-            try {
-                verify(mockBackend, times(0)).bulkInsert(anyString(), anyString(), ArgumentMatchers.<List<Map<String, String>>>any());
-            } catch (Exception e) {
-                fail(e.getMessage());
-            }
-            assertNotNull(sink.getScheduler());
-
-            // after 200 ms (the scheduler has been started but the persistentTask has not been called yet)
-            try {
-                TimeUnit.MILLISECONDS.sleep(200);
-            } catch (InterruptedException e) {
-            }
-            sink.setAggregations(aggregations);
-            try {
-                verify(mockBackend, times(0)).bulkInsert(anyString(), anyString(), ArgumentMatchers.<List<Map<String, String>>>any());
-            } catch (Exception e) {
-                fail(e.getMessage());
-            }
-            assertEquals(2, sink.getAggregations().size());
-
-            // after 1000 ms (the persistentTask has been called once)
-            try {
-                TimeUnit.MILLISECONDS.sleep(1000);
-            } catch (InterruptedException e) {
-            }
-            try {
-                verify(mockBackend, times(1)).bulkInsert("idx1", "cygnus_type", data1);
-                verify(mockBackend, times(1)).bulkInsert("idx2", "cygnus_type", data2);
-            } catch (Exception e) {
-                fail(e.getMessage());
-            }
-            assertEquals(0, sink.getAggregations().size());
-
-            aggregations.put("idx1", data3);
-            sink.stopInternal();
-            try {
-                verify(mockBackend, times(1)).bulkInsert("idx1", "cygnus_type", data3);
-            } catch (Exception e) {
-                fail(e.getMessage());
-            }
-            assertEquals(0, sink.getAggregations().size());
-
-            assertTrue(sink.getScheduler().isShutdown());
-            assertTrue(sink.getScheduler().isTerminated());
-        } // testStartAndStopInternalWithCache
-    } // StartAndStopInternalTest
-
     @RunWith(Parameterized.class)
     public static class PersistBatchTest {
         /**
@@ -772,7 +590,6 @@ public class NGSIElasticsearchSinkTest {
                 fail(e.getMessage());
             }
             assertEquals(0, sink.getAggregations().size());
-            assertNull(sink.getScheduler());
         } // testPersistBatchWithoutData
 
         /**
@@ -825,9 +642,39 @@ public class NGSIElasticsearchSinkTest {
             assertEquals(0, ((JSONArray)jdata.get("attrMetadata")).size());
             assertNull(jdata.get("temperature"));
             assertEquals(0, sink.getAggregations().size());
-            assertNull(sink.getScheduler());
         } // testPersistBatchWithOneAttributeRow
 
+        /**
+         * [NGSIElasticsearchSinkTest$PersistBatchTest.testPersistBatchNotAcknowledged]
+         * Test persistBatch(contextElement with one attribute) - the batch is not persisted if not acknowledged
+         *
+         */
+        @Test
+        public void testPersistBatchNotAcknowledged() throws Exception {
+            System.out.println(getTestTraceHead("[NGSIElasticsearchSinkTest.testPersistBatchNotAcknowledged] - castValue=" + castValue + ", timezone=" + timezone));
+
+            NGSIElasticsearchSink sink = new NGSIElasticsearchSink();
+            sink.setPersistenceBackend(mockBackend);
+            when(mockBackend.bulkInsert(anyString(), anyString(), ArgumentMatchers.<List<Map<String, String>>>any()))
+                    .thenThrow(new CygnusPersistenceError("Could not insert 1 documents"));
+
+            fixture.rowAttrPersistence.value = "row";
+            fixture.castValue.value = castValue;
+            fixture.timezone.value = timezone;
+            sink.configure(fixture.createContext());
+
+            NGSIBatch batch = createBatch(sink, contextElementStr1);
+
+            try {
+                sink.persistBatch(batch);
+                fail("The batch was persisted although not acknowledged");
+            } catch (CygnusPersistenceError e) {
+                assertEquals("CygnusPersistenceError. Could not insert 1 documents. ", e.getMessage());
+            } // try catch
+
+            assertEquals(0, sink.getAggregations().size());
+        } // testPersistBatchNotAcknowledged
+
         /**
          * [NGSIElasticsearchSinkTest$PersistBatchTest.testPersistBatchWithOneAttributeColumn]
          * Test persistBatch(contextElement with one attribute) - column style
@@ -880,7 +727,6 @@ public class NGSIElasticsearchSinkTest {
             assertNull(jdata.get("attrValue"));
             assertNull(jdata.get("attrMetadata"));
             assertEquals(0, sink.getAggregations().size());
-            assertNull(sink.getScheduler());
         } // testPersistBatchWithOneAttributeColumn
 
         /**
@@ -934,7 +780,6 @@ public class NGSIElasticsearchSinkTest {
             assertEquals(0, ((JSONArray)jdata.get("attrMetadata")).size());
             assertNull(jdata.get("temperature"));
             assertEquals(0, sink.getAggregations().size());
-            assertNull(sink.getScheduler());
         } // testPersistBatchWithTwoAttributesIgnoreEmptyRow
 
         /**
@@ -1006,7 +851,6 @@ public class NGSIElasticsearchSinkTest {
             assertEquals(0, ((JSONArray)jdata.get("attrMetadata")).size());
             assertNull(jdata.get("roomtype"));
             assertEquals(0, sink.getAggregations().size());
-            assertNull(sink.getScheduler());
         } // testPersistBatchWithTwoAttributesWithEmptyRow
 
         /**
@@ -1062,7 +906,6 @@ public class NGSIElasticsearchSinkTest {
             assertNull(jdata.get("attrValue"));
             assertNull(jdata.get("attrMetadata"));
             assertEquals(0, sink.getAggregations().size());
-            assertNull(sink.getScheduler());
         } // testPersistBatchWithTwoAttributesIgnoreEmptyColumn
 
         /**
@@ -1120,7 +963,6 @@ public class NGSIElasticsearchSinkTest {
             assertNull(jdata.get("attrValue"));
             assertNull(jdata.get("attrMetadata"));
             assertEquals(0, sink.getAggregations().size());
-            assertNull(sink.getScheduler());
         } // testPersistBatchWithTwoAttributesWithEmptyColumn
 
         /**
@@ -1203,7 +1045,6 @@ public class NGSIElasticsearchSinkTest {
             assertEquals("2018-01-02T03:04:05.678+0900", metadata.get("value"));
             assertNull(jdata.get("roomtype"));
             assertEquals(0, sink.getAggregations().size());
-            assertNull(sink.getScheduler());
             assertEquals(2, requestedData.get(2).size());
             assertEquals("1514829845678", requestedData.get(2).get("recvTimeTs"));
             assertNotNull(requestedData.get(2).get("data"));
@@ -1298,7 +1139,6 @@ public class NGSIElasticsearchSinkTest {
             assertNull(jdata.get("attrValue"));
             assertNull(jdata.get("attrMetadata"));
             assertEquals(0, sink.getAggregations().size());
-            assertNull(sink.getScheduler());
         } // testPersistBatchWithThreeAttributesWithMetadataColumn
 
         /**
@@ -1346,7 +1186,6 @@ public class NGSIElasticsearchSinkTest {
             assertEquals(0, ((JSONArray)jdata.get("attrMetadata")).size());
             assertNull(jdata.get("temperature"));
             assertEquals(0, sink.getAggregations().size());
-            assertNull(sink.getScheduler());
         } // testPersistBatchWithOneNullAttributeRow
 
         /**
@@ -1394,7 +1233,6 @@ public class NGSIElasticsearchSinkTest {
             assertEquals(0, ((JSONArray)jdata.get("attrMetadata")).size());
             assertNull(jdata.get("temperature"));
             assertEquals(0, sink.getAggregations().size());
-            assertNull(sink.getScheduler());
         } // testPersistBatchWithOneNullAttributeIgnoreWhiteSpacesRow
 
         /**
@@ -1444,7 +1282,6 @@ public class NGSIElasticsearchSinkTest {
             assertNull(jdata.get("attrValue"));
             assertNull(jdata.get("attrMetadata"));
             assertEquals(0, sink.getAggregations().size());
-            assertNull(sink.getScheduler());
         } // testPersistBatchWithOneNullAttributeColumn
 
         /**
@@ -1494,7 +1331,6 @@ public class NGSIElasticsearchSinkTest {
             assertNull(jdata.get("attrValue"));
             assertNull(jdata.get("attrMetadata"));
             assertEquals(0, sink.getAggregations().size());
-            assertNull(sink.getScheduler());
         } // testPersistBatchWithOneNullAttributeIgnoreWhiteSpacesColumn
 
         /**
@@ -1559,7 +1395,6 @@ public class NGSIElasticsearchSinkTest {
             assertEquals(0, ((JSONArray)jdata.get("attrMetadata")).size());
             assertNull(jdata.get("roomtype"));
             assertEquals(0, sink.getAggregations().size());
-            assertNull(sink.getScheduler());
         } // testPersistBatchWithTwoNullAttributesIgnoreWhiteSpacesRow
 
         /**
@@ -1624,7 +1459,6 @@ public class NGSIElasticsearchSinkTest {
             assertEquals(0, ((JSONArray)jdata.get("attrMetadata")).size());
             assertNull(jdata.get("roomtype"));
             assertEquals(0, sink.getAggregations().size());
-            assertNull(sink.getScheduler());
         } // testPersistBatchWithTwoNullAttributesIgnoreWhiteSpacesRow
 
         /**
@@ -1673,7 +1507,6 @@ public class NGSIElasticsearchSinkTest {
             assertNull(jdata.get("attrValue"));
             assertNull(jdata.get("attrMetadata"));
             assertEquals(0, sink.getAggregations().size());
-            assertNull(sink.getScheduler());
         } // testPersistBatchWithTwoNullAttributesColumn
 
         /**
@@ -1722,7 +1555,6 @@ public class NGSIElasticsearchSinkTest {
             assertNull(jdata.get("attrValue"));
             assertNull(jdata.get("attrMetadata"));
             assertEquals(0, sink.getAggregations().size());
-            assertNull(sink.getScheduler());
         } // testPersistBatchWithTwoNullAttributesIgnoreWhiteSpacesColumn
 
     } // PersistBatchTest
@@ -34,6 +34,7 @@ import com.telefonica.iot.cygnus.sinks.NGSIHDFSSink.BackendImpl;
 import static com.telefonica.iot.cygnus.utils.CommonUtilsForTests.getTestTraceHead;
 
 import com.telefonica.iot.cygnus.utils.CommonConstants;
+import com.telefonica.iot.cygnus.utils.NGSICharsets;
 import com.telefonica.iot.cygnus.utils.NGSIConstants;
 import com.telefonica.iot.cygnus.utils.NGSIUtils;
 import org.apache.flume.Context;
@@ -1932,4 +1933,88 @@ public class NGSIHDFSSinkTest {
             fail();
         }
     } // testNativeTypeRowBatchJsonNotMetadata
+
+    /**
+     * [NGSIHDFSSinkTest.configure] -------- file_format can only be 'parquet-row' or 'parquet-column' if backend.impl
+     * is 'binary'.
+     */
+    @Test
+    public void testConfigureParquetFileFormat() {
+        System.out.println(getTestTraceHead("[NGSIHDFSSinkTest.configure]")
+                + "-------- file_format can only be 'parquet-row' or 'parquet-column' if backend.impl is 'binary'");
+        String backendImpl = "rest";
+        String fileFormat = "parquet-row";
+        NGSIHDFSSink sink = new NGSIHDFSSink();
+        sink.configure(createContext(backendImpl, null, null, null, null, null, null, null, "true", null, fileFormat,
+                null, "mypassword", null, "myuser", "false", "false", "mytoken", null, null));
+
+        try {
+            assertTrue(sink.getInvalidConfiguration());
+            System.out.println(getTestTraceHead("[NGSIHDFSSinkTest.configure]")
+                    + "-  OK  - 'file_format=parquet-row' together with 'backend.impl=rest' was detected");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[NGSIHDFSSinkTest.configure]")
+                    + "- FAIL - 'file_format=parquet-row' together with 'backend.impl=rest' was not detected");
+            throw e;
+        } // try catch
+    } // testConfigureParquetFileFormat
+
+    /**
+     * [NGSIHDFSSinkTest.getParquetRecords] -------- The Parquet records contain a typed value per Parquet schema
+     * field and aggregated attribute.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testParquetRowBatch() throws Exception {
+        System.out.println(getTestTraceHead("[NGSIHDFSSinkTest.getParquetRecords]")
+                + "-------- The Parquet records contain a typed value per Parquet schema field and aggregated "
+                + "attribute");
+        NGSIBatch batch = prepaireBatch();
+        NGSIHDFSSink ngsihdfsSink = new NGSIHDFSSink();
+        ngsihdfsSink.configure(createContextforNativeTypes("binary", null, null, null, null, null, null, null, null,
+                null, "parquet-row", null, null, null, null, null, null, null, null, null, null));
+        batch.startIterator();
+        NGSIGenericAggregator aggregator = new NGSIGenericRowAggregator();
+        GregorianCalendar calendar = new GregorianCalendar();
+        calendar.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        while (batch.hasNext()) {
+            batch.getNextDestination();
+            ArrayList<NGSIEvent> events = batch.getNextEvents();
+            aggregator.setService(events.get(0).getServiceForNaming(false));
+            aggregator.setServicePathForData(events.get(0).getServicePathForData());
+            aggregator.setServicePathForNaming(events.get(0).getServicePathForNaming(false));
+            aggregator.setEntityForNaming(events.get(0).getEntityForNaming(false, false));
+            aggregator.setHdfsFolder(ngsihdfsSink.buildFolderPath(aggregator.getService(),
+                    aggregator.getServicePathForNaming(), aggregator.getEntityForNaming()));
+            aggregator.setHdfsFile(ngsihdfsSink.buildFilePath(aggregator.getService(),
+                    aggregator.getServicePathForNaming(), aggregator.getEntityForNaming(), calendar));
+            aggregator.setAttrMetadataStore(true);
+            aggregator.initialize(events.get(0));
+
+            for (NGSIEvent event : events) {
+                aggregator.aggregate(event);
+            } // for
+        } // while
+
+        LinkedHashMap<String, ArrayList<JsonElement>> aggregation = aggregator.getAggregationToPersist();
+        String schema = ngsihdfsSink.getParquetSchema(aggregation);
+        List<Object[]> records = ngsihdfsSink.getParquetRecords(aggregation);
+        String filePath = ngsihdfsSink.buildParquetFilePath(aggregator.getHdfsFile(false));
+
+        try {
+            assertTrue(schema.startsWith("message ngsi { optional int64 "
+                    + NGSICharsets.encodeHive(NGSIConstants.RECV_TIME_TS) + ";"));
+            assertEquals(NGSIUtils.collectionSizeOnLinkedHashMap(aggregation), records.size());
+            assertEquals(aggregation.size(), records.get(0).length);
+            assertTrue(records.get(0)[0] instanceof Long);
+            assertTrue(filePath.endsWith(".parquet"));
+            System.out.println(getTestTraceHead("[NGSIHDFSSinkTest.getParquetRecords]")
+                    + "-  OK  - " + records.size() + " Parquet records were got for schema '" + schema + "'");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[NGSIHDFSSinkTest.getParquetRecords]")
+                    + "- FAIL - The Parquet records were not properly got for schema '" + schema + "'");
+            throw e;
+        } // try catch
+    } // testParquetRowBatch
 } // NGSIHDFSSinkTest
@@ -25,6 +25,8 @@ import org.apache.logging.log4j.core.LoggerContext;
 import org.apache.logging.log4j.core.config.Configuration;
 import org.apache.logging.log4j.core.config.LoggerConfig;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 
 /**
@@ -261,6 +263,67 @@ public class NGSIKafkaSinkTest {
         } // try catch
     } // testBuildTopicNameDmByAttributeWithSlashServicePath
     
+    /**
+     * [NGSIKafkaSink.configure] -------- The producer mode is fire and forget by default, and acknowledged if
+     * configured.
+     */
+    @Test
+    public void testConfigureProducerMode() {
+        System.out.println(getTestTraceHead("[NGSIKafkaSink.configure]")
+                + "-------- The producer mode is fire and forget by default, and acknowledged if configured");
+        NGSIKafkaSink sink1 = new NGSIKafkaSink();
+        sink1.configure(createContext("false", "dm-by-entity"));
+        NGSIKafkaSink sink2 = new NGSIKafkaSink();
+        Context context = createContext("false", "dm-by-entity");
+        context.put("producer_mode", "acknowledged");
+        sink2.configure(context);
+        
+        try {
+            assertFalse(sink1.isAcknowledgedMode());
+            assertFalse(sink1.getInvalidConfiguration());
+            assertTrue(sink2.isAcknowledgedMode());
+            assertFalse(sink2.getInvalidConfiguration());
+            System.out.println(getTestTraceHead("[NGSIKafkaSink.configure]")
+                    + "-  OK  - The producer mode is fire and forget by default, and acknowledged if configured");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[NGSIKafkaSink.configure]")
+                    + "- FAIL - The producer mode is not the expected one");
+            throw e;
+        } // try catch
+    } // testConfigureProducerMode
+    
+    /**
+     * [NGSIKafkaSink.configure] -------- Invalid 'producer_mode', 'producer_linger_ms' and 'producer_compression'
+     * are detected.
+     */
+    @Test
+    public void testConfigureInvalidProducerParameters() {
+        System.out.println(getTestTraceHead("[NGSIKafkaSink.configure]")
+                + "-------- Invalid 'producer_mode', 'producer_linger_ms' and 'producer_compression' are detected");
+        String[][] invalidParameters = {
+            {"producer_mode", "sync"},
+            {"producer_linger_ms", "-1"},
+            {"producer_compression", "zstd"}
+        };
+        
+        for (String[] invalidParameter : invalidParameters) {
+            NGSIKafkaSink sink = new NGSIKafkaSink();
+            Context context = createContext("false", "dm-by-entity");
+            context.put(invalidParameter[0], invalidParameter[1]);
+            sink.configure(context);
+            
+            try {
+                assertTrue(sink.getInvalidConfiguration());
+                System.out.println(getTestTraceHead("[NGSIKafkaSink.configure]")
+                        + "-  OK  - Invalid '" + invalidParameter[0] + "' has been detected");
+            } catch (AssertionError e) {
+                System.out.println(getTestTraceHead("[NGSIKafkaSink.configure]")
+                        + "- FAIL - Invalid '" + invalidParameter[0] + "' has not been detected");
+                throw e;
+            } // try catch
+        } // for
+    } // testConfigureInvalidProducerParameters
+    
     private Context createContext(String lowerCase, String dataModel) {
         Context context = new Context();
         context.put("enable_lowercase", lowerCase);
@@ -0,0 +1,414 @@
+/**
+ * Copyright 2026 Telefonica Investigación y Desarrollo, S.A.U
+ *
+ * This file is part of fiware-cygnus (FIWARE project).
+ *
+ * fiware-cygnus is free software: you can redistribute it and/or modify it under the terms of the GNU Affero
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ * fiware-cygnus is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with fiware-cygnus. If not, see
+ * http://www.gnu.org/licenses/.
+ *
+ * For those usages not covered by the GNU Affero General Public License please contact with iot_support at tid dot es
+ */
+
+package com.telefonica.iot.cygnus.sinks;
+
+import static com.telefonica.iot.cygnus.utils.CommonUtilsForTests.getTestTraceHead;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.flume.Context;
+import org.apache.flume.channel.MemoryChannel;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.config.LoggerConfig;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import com.telefonica.iot.cygnus.backends.orion.OrionBackend;
+import com.telefonica.iot.cygnus.containers.NotifyContextRequest.ContextElement;
+import com.telefonica.iot.cygnus.errors.CygnusPersistenceError;
+import com.telefonica.iot.cygnus.errors.CygnusRuntimeError;
+import com.telefonica.iot.cygnus.interceptors.NGSIEvent;
+import com.telefonica.iot.cygnus.utils.CommonConstants;
+import com.telefonica.iot.cygnus.utils.NGSIConstants;
+import com.telefonica.iot.cygnus.utils.NGSIUtilsForTests;
+import com.telefonica.iot.cygnus.utils.auth.keystone.KeyStoneUtils;
+
+/**
+ * Tests of the batch update mode (i.e. /v2/op/update requests) of NGSIOrionSink.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class NGSIOrionSinkTest {
+
+    private static final String DEFAULT_SERVICE = "default_service";
+    private static final String DEFAULT_SERVICE_PATH = "/default_path";
+
+    @Mock
+    private KeyStoneUtils mockKeyStoneUtils;
+    @Mock
+    private OrionBackend mockOrionBackend;
+
+    /**
+     * Constructor.
+     */
+    public NGSIOrionSinkTest() {
+        LoggerContext ctx = (LoggerContext) LogManager.getContext(false);
+        Configuration config = ctx.getConfiguration();
+        LoggerConfig loggerConfig = config.getLoggerConfig(LogManager.ROOT_LOGGER_NAME);
+        loggerConfig.setLevel(Level.FATAL);
+        ctx.updateLoggers();
+    } // NGSIOrionSinkTest
+
+    /**
+     * [NGSIOrionSink.persistBatch] -------- In batch update mode, the entities are grouped by service and service
+     * path, and every update regarding the same entity is kept in notification order.
+     */
+    @Test
+    public void testPersistBatchUpdateGroupsAndKeepsUpdates() throws Exception {
+        System.out.println(getTestTraceHead("[NGSIOrionSink.persistBatch]")
+                + "-------- In batch update mode, the entities are grouped by service and service path, and every "
+                + "update regarding the same entity is kept in notification order");
+        NGSIOrionSink sink = createSink(100, 1);
+        List<UpdateRequest> requests = recordRequests(0);
+        NGSIBatch batch = new NGSIBatch();
+        batch.addEvent("dest1", createEvent("srv_a", "/path_1", "Room1", "temperature", "26"));
+        batch.addEvent("dest1", createEvent("srv_a", "/path_1", "Room1", "pressure", "720"));
+        batch.addEvent("dest1", createEvent("srv_a", "/path_1", "Room1", "temperature", "27"));
+        batch.addEvent("dest2", createEvent("srv_a", "/path_2", "Room2", "temperature", "20"));
+        batch.addEvent("dest3", createEvent("srv_b", "/path_1", "Room3", "temperature", "21"));
+        batch.addEvent("dest4", createEvent(null, null, "Room4", "temperature", "22"));
+
+        try {
+            sink.persistBatch(batch);
+            assertEquals(4, requests.size());
+
+            UpdateRequest request = getRequest(requests, "srv_a", "/path_1");
+            assertEquals("token_srv_a/path_1", request.token);
+            assertEquals(3, request.entities.size());
+            assertEquals("Room1", request.entities.get(0).getString("id"));
+            assertEquals("26", request.entities.get(0).getJSONObject("temperature").get("value").toString());
+            assertEquals("720", request.entities.get(1).getJSONObject("pressure").get("value").toString());
+            assertEquals("27", request.entities.get(2).getJSONObject("temperature").get("value").toString());
+            assertEquals("Room2", getRequest(requests, "srv_a", "/path_2").entities.get(0).getString("id"));
+            assertEquals("Room3", getRequest(requests, "srv_b", "/path_1").entities.get(0).getString("id"));
+            // Not notified services and service paths are the configured ones
+            assertEquals("Room4", getRequest(requests, DEFAULT_SERVICE, DEFAULT_SERVICE_PATH).entities.get(0)
+                    .getString("id"));
+            System.out.println(getTestTraceHead("[NGSIOrionSink.persistBatch]")
+                    + "-  OK  - One request per service and service path was done, with all the updates in order");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[NGSIOrionSink.persistBatch]")
+                    + "- FAIL - The entities were not grouped or some updates were lost or reordered");
+            throw e;
+        } // try catch
+    } // testPersistBatchUpdateGroupsAndKeepsUpdates
+
+    /**
+     * [NGSIOrionSink.persistBatch] -------- In batch update mode, the entities of a group are sent in chunks of up
+     * to batch_update_size entities.
+     */
+    @Test
+    public void testPersistBatchUpdateChunks() throws Exception {
+        System.out.println(getTestTraceHead("[NGSIOrionSink.persistBatch]")
+                + "-------- In batch update mode, the entities of a group are sent in chunks of up to "
+                + "batch_update_size entities");
+        NGSIOrionSink sink = createSink(2, 1);
+        List<UpdateRequest> requests = recordRequests(0);
+        NGSIBatch batch = new NGSIBatch();
+
+        for (int i = 1; i <= 5; i++) {
+            batch.addEvent("dest", createEvent("srv_a", "/path_1", "Room" + i, "temperature", "2" + i));
+        } // for
+
+        try {
+            sink.persistBatch(batch);
+            assertEquals(3, requests.size());
+            assertEquals(2, requests.get(0).entities.size());
+            assertEquals(2, requests.get(1).entities.size());
+            assertEquals(1, requests.get(2).entities.size());
+            assertEquals("Room1", requests.get(0).entities.get(0).getString("id"));
+            assertEquals("Room5", requests.get(2).entities.get(0).getString("id"));
+            System.out.println(getTestTraceHead("[NGSIOrionSink.persistBatch]")
+                    + "-  OK  - 5 entities were sent in chunks of 2, 2 and 1 entities");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[NGSIOrionSink.persistBatch]")
+                    + "- FAIL - The entities were not chunked by batch_update_size");
+            throw e;
+        } // try catch
+    } // testPersistBatchUpdateChunks
+
+    /**
+     * [NGSIOrionSink.persistBatch] -------- In batch update mode, the updates regarding the same entity are not
+     * split among concurrent requests; if they do not fit a chunk, their chunks are sent in order.
+     */
+    @Test
+    public void testPersistBatchUpdateChunksSameEntity() throws Exception {
+        System.out.println(getTestTraceHead("[NGSIOrionSink.persistBatch]")
+                + "-------- In batch update mode, the updates regarding the same entity are not split among "
+                + "concurrent requests; if they do not fit a chunk, their chunks are sent in order");
+        NGSIOrionSink sink = createSink(2, 2);
+        List<UpdateRequest> requests = recordRequests(0);
+        NGSIBatch batch = new NGSIBatch();
+        batch.addEvent("dest", createEvent("srv_a", "/path_1", "Room1", "temperature", "21"));
+        batch.addEvent("dest", createEvent("srv_a", "/path_1", "Room2", "temperature", "30"));
+        batch.addEvent("dest", createEvent("srv_a", "/path_1", "Room1", "temperature", "22"));
+        batch.addEvent("dest", createEvent("srv_a", "/path_1", "Room1", "temperature", "23"));
+
+        try {
+            sink.persistBatch(batch);
+            assertEquals(3, requests.size());
+            List<String> room1Values = new ArrayList<String>();
+
+            for (UpdateRequest request : requests) {
+                for (JSONObject entity : request.entities) {
+                    if (entity.getString("id").equals("Room1")) {
+                        room1Values.add(entity.getJSONObject("temperature").get("value").toString());
+                    } else {
+                        assertEquals(1, request.entities.size());
+                    } // if else
+                } // for
+            } // for
+
+            assertEquals("[21, 22, 23]", room1Values.toString());
+            System.out.println(getTestTraceHead("[NGSIOrionSink.persistBatch]")
+                    + "-  OK  - The 3 updates regarding the same entity were sent in order, in 2 chunks");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[NGSIOrionSink.persistBatch]")
+                    + "- FAIL - The updates regarding the same entity were reordered or mixed");
+            throw e;
+        } // try catch
+    } // testPersistBatchUpdateChunksSameEntity
+
+    /**
+     * [NGSIOrionSink.configure] -------- batch_update_concurrency cannot be greater than the connections per route
+     * of the Orion backend.
+     */
+    @Test
+    public void testConfigureBatchUpdateConcurrencyBound() {
+        System.out.println(getTestTraceHead("[NGSIOrionSink.configure]")
+                + "-------- batch_update_concurrency cannot be greater than the connections per route of the "
+                + "Orion backend");
+        // The Orion backend is created with 10 connections per route
+        NGSIOrionSink validSink = new NGSIOrionSink();
+        validSink.configure(createContext(100, 10));
+        NGSIOrionSink invalidSink = new NGSIOrionSink();
+        invalidSink.configure(createContext(100, 11));
+
+        try {
+            assertTrue(!validSink.getInvalidConfiguration());
+            assertTrue(invalidSink.getInvalidConfiguration());
+            System.out.println(getTestTraceHead("[NGSIOrionSink.configure]")
+                    + "-  OK  - batch_update_concurrency=11 was detected as invalid");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[NGSIOrionSink.configure]")
+                    + "- FAIL - batch_update_concurrency=11 was not detected as invalid");
+            throw e;
+        } // try catch
+    } // testConfigureBatchUpdateConcurrencyBound
+
+    /**
+     * [NGSIOrionSink.persistBatch] -------- In batch update mode, no more than batch_update_concurrency requests are
+     * done at the same time.
+     */
+    @Test
+    public void testPersistBatchUpdateConcurrency() throws Exception {
+        System.out.println(getTestTraceHead("[NGSIOrionSink.persistBatch]")
+                + "-------- In batch update mode, no more than batch_update_concurrency requests are done at the "
+                + "same time");
+        NGSIOrionSink sink = createSink(1, 3);
+        // The executor is created at start, the backends are created then too, thus they are mocked afterwards
+        sink.setChannel(new MemoryChannel());
+        sink.start();
+        sink.setKeyStoneUtils(mockKeyStoneUtils);
+        sink.setOrionBackend(mockOrionBackend);
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                int current = inFlight.incrementAndGet();
+                maxInFlight.accumulateAndGet(current, Math::max);
+                TimeUnit.MILLISECONDS.sleep(50);
+                inFlight.decrementAndGet();
+                return null;
+            } // answer
+        }).when(mockOrionBackend).updateRemoteContexts(ArgumentMatchers.<JSONObject>anyList(),
+                ArgumentMatchers.anyString(), ArgumentMatchers.anyString(), ArgumentMatchers.anyString());
+        Mockito.when(mockKeyStoneUtils.getSessionToken(ArgumentMatchers.anyString(), ArgumentMatchers.anyString(),
+                ArgumentMatchers.anyString(), ArgumentMatchers.anyString())).thenReturn("token");
+        NGSIBatch batch = new NGSIBatch();
+
+        for (int i = 1; i <= 9; i++) {
+            batch.addEvent("dest", createEvent("srv_a", "/path_1", "Room" + i, "temperature", "2" + i));
+        } // for
+
+        try {
+            sink.persistBatch(batch);
+            Mockito.verify(mockOrionBackend, Mockito.times(9)).updateRemoteContexts(
+                    ArgumentMatchers.<JSONObject>anyList(), ArgumentMatchers.anyString(),
+                    ArgumentMatchers.anyString(), ArgumentMatchers.anyString());
+            assertTrue(maxInFlight.get() > 1);
+            assertTrue(maxInFlight.get() <= 3);
+            System.out.println(getTestTraceHead("[NGSIOrionSink.persistBatch]")
+                    + "-  OK  - Up to " + maxInFlight.get() + " concurrent requests were done");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[NGSIOrionSink.persistBatch]")
+                    + "- FAIL - " + maxInFlight.get() + " concurrent requests were done");
+            throw e;
+        } finally {
+            sink.stop();
+        } // try catch finally
+    } // testPersistBatchUpdateConcurrency
+
+    /**
+     * [NGSIOrionSink.persistBatch] -------- In batch update mode, a failed request makes the whole batch fail, in
+     * order it is rolled back and retried.
+     */
+    @Test
+    public void testPersistBatchUpdateError() throws Exception {
+        System.out.println(getTestTraceHead("[NGSIOrionSink.persistBatch]")
+                + "-------- In batch update mode, a failed request makes the whole batch fail, in order it is "
+                + "rolled back and retried");
+        NGSIOrionSink sink = createSink(1, 1);
+        recordRequests(2);
+        NGSIBatch batch = new NGSIBatch();
+
+        for (int i = 1; i <= 3; i++) {
+            batch.addEvent("dest", createEvent("srv_a", "/path_1", "Room" + i, "temperature", "2" + i));
+        } // for
+
+        try {
+            sink.persistBatch(batch);
+            fail("The batch was persisted although a request failed");
+        } catch (CygnusRuntimeError e) {
+            assertTrue(e.getMessage().contains("The contexts could not be updated"));
+            System.out.println(getTestTraceHead("[NGSIOrionSink.persistBatch]")
+                    + "-  OK  - The error of the second request was thrown");
+        } // try catch
+    } // testPersistBatchUpdateError
+
+    private Context createContext(int batchUpdateSize, int batchUpdateConcurrency) {
+        Context context = NGSIUtilsForTests.createContextForOrion("localhost", "1026", "localhost", "5001",
+                "user", "password", DEFAULT_SERVICE, DEFAULT_SERVICE_PATH);
+        context.put("batch_update", "true");
+        context.put("batch_update_size", String.valueOf(batchUpdateSize));
+        context.put("batch_update_concurrency", String.valueOf(batchUpdateConcurrency));
+        return context;
+    } // createContext
+
+    private NGSIOrionSink createSink(int batchUpdateSize, int batchUpdateConcurrency) {
+        NGSIOrionSink sink = new NGSIOrionSink();
+        sink.configure(createContext(batchUpdateSize, batchUpdateConcurrency));
+        sink.setKeyStoneUtils(mockKeyStoneUtils);
+        sink.setOrionBackend(mockOrionBackend);
+        return sink;
+    } // createSink
+
+    /**
+     * Records the update requests done to the mocked backend, and the tokens got per service and service path.
+     * @param failingRequest The request failing (starting at 1), 0 if none fails
+     * @return The recorded requests
+     */
+    private List<UpdateRequest> recordRequests(final int failingRequest) throws Exception {
+        final List<UpdateRequest> requests = new ArrayList<UpdateRequest>();
+        Mockito.when(mockKeyStoneUtils.getSessionToken(ArgumentMatchers.anyString(), ArgumentMatchers.anyString(),
+                ArgumentMatchers.anyString(), ArgumentMatchers.anyString())).thenAnswer(new Answer<String>() {
+                    @Override
+                    public String answer(InvocationOnMock invocation) {
+                        return "token_" + invocation.getArgument(2) + invocation.getArgument(3);
+                    } // answer
+                });
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                List<JSONObject> entities = invocation.getArgument(0);
+                requests.add(new UpdateRequest(new ArrayList<JSONObject>(entities), (String) invocation.getArgument(1),
+                        (String) invocation.getArgument(2), (String) invocation.getArgument(3)));
+
+                if (requests.size() == failingRequest) {
+                    throw new CygnusPersistenceError("The contexts could not be updated. HttpFS response: 500");
+                } // if
+
+                return null;
+            } // answer
+        }).when(mockOrionBackend).updateRemoteContexts(ArgumentMatchers.<JSONObject>anyList(),
+                ArgumentMatchers.anyString(), ArgumentMatchers.anyString(), ArgumentMatchers.anyString());
+        return requests;
+    } // recordRequests
+
+    private UpdateRequest getRequest(List<UpdateRequest> requests, String service, String servicePath) {
+        for (UpdateRequest request : requests) {
+            if (request.service.equals(service) && request.servicePath.equals(servicePath)) {
+                return request;
+            } // if
+        } // for
+
+        fail("No request for service " + service + " and service path " + servicePath);
+        return null;
+    } // getRequest
+
+    private NGSIEvent createEvent(String service, String servicePath, String entityId, String attrName,
+            String attrValue) throws Exception {
+        String contextElementStr = "{"
+                + "\"attributes\":[{\"name\":\"" + attrName + "\",\"type\":\"Number\",\"value\":\"" + attrValue
+                + "\"}],"
+                + "\"type\":\"Room\","
+                + "\"isPattern\":\"false\","
+                + "\"id\":\"" + entityId + "\""
+                + "}";
+        Map<String, String> headers = new HashMap<>();
+        headers.put(CommonConstants.HEADER_CORRELATOR_ID, "1234567891");
+        headers.put(NGSIConstants.FLUME_HEADER_TIMESTAMP, "1234567890");
+
+        if (service != null) {
+            headers.put(NGSIConstants.FLUME_HEADER_MAPPED_SERVICE, service);
+            headers.put(NGSIConstants.FLUME_HEADER_MAPPED_SERVICE_PATH, servicePath);
+        } // if
+
+        ContextElement contextElement = NGSIUtilsForTests.createJsonContextElement(contextElementStr);
+        return new NGSIEvent(headers, contextElement.toString().getBytes(), contextElement, contextElement);
+    } // createEvent
+
+    /**
+     * An update request done to the mocked backend.
+     */
+    private static class UpdateRequest {
+
+        private final List<JSONObject> entities;
+        private final String token;
+        private final String service;
+        private final String servicePath;
+
+        UpdateRequest(List<JSONObject> entities, String token, String service, String servicePath) {
+            this.entities = entities;
+            this.token = token;
+            this.service = service;
+            this.servicePath = servicePath;
+        } // UpdateRequest
+
+    } // UpdateRequest
+
+} // NGSIOrionSinkTest
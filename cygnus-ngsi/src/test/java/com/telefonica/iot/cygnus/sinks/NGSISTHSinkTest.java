@@ -17,6 +17,7 @@
  */
 package com.telefonica.iot.cygnus.sinks;
 
+import com.telefonica.iot.cygnus.backends.mongo.MongoBackendImpl;
 import static com.telefonica.iot.cygnus.utils.CommonUtilsForTests.getTestTraceHead;
 import com.telefonica.iot.cygnus.utils.NGSIUtilsForTests;
 import java.util.Arrays;
@@ -26,6 +27,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.core.LoggerContext;
 import org.apache.logging.log4j.core.config.Configuration;
 import org.apache.logging.log4j.core.config.LoggerConfig;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 
@@ -126,7 +128,116 @@ public class NGSISTHSinkTest {
             throw e;
         } // try catch
     } // testConfigureEmptyResolutions
-    
+
+    /**
+     * [NGSISTHSink.configure] -------- A negative 'prepopulated_docs_cache_size' is detected.
+     */
+    @Test
+    public void testConfigureInvalidPrepopulatedDocsCacheSize() {
+        System.out.println(getTestTraceHead("[NGSISTHSink.configure]")
+                + "-------- A negative 'prepopulated_docs_cache_size' is detected");
+        String collectionPrefix = null; // default value
+        String dbPrefix = null; // default value
+        String dataModel = null; // default value
+        String enableEncoding = null; // default value
+        String resolutions = null; // default value
+        NGSISTHSink sink = new NGSISTHSink();
+        Context context = createContext(collectionPrefix, dbPrefix, dataModel, enableEncoding, resolutions);
+        context.put("prepopulated_docs_cache_size", "-1");
+        sink.configure(context);
+
+        try {
+            assertTrue(sink.getInvalidConfiguration());
+            System.out.println(getTestTraceHead("[NGSISTHSink.configure]")
+                    + "-  OK  - A negative 'prepopulated_docs_cache_size' has been detected");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[NGSISTHSink.configure]")
+                    + "- FAIL - A negative 'prepopulated_docs_cache_size' has not been detected");
+            throw e;
+        } // try catch
+    } // testConfigureInvalidPrepopulatedDocsCacheSize
+
+    /**
+     * [NGSISTHSink.configure] -------- 'prepopulated_docs_cache_size' gets the default value when not configured, and
+     * the configured one otherwise.
+     */
+    @Test
+    public void testConfigurePrepopulatedDocsCacheSize() {
+        System.out.println(getTestTraceHead("[NGSISTHSink.configure]")
+                + "-------- 'prepopulated_docs_cache_size' gets the default value when not configured, and the "
+                + "configured one otherwise");
+        NGSISTHSink defaultSink = new NGSISTHSink();
+        defaultSink.configure(createContext(null, null, null, null, null));
+        NGSISTHSink sink = new NGSISTHSink();
+        Context context = createContext(null, null, null, null, null);
+        context.put("prepopulated_docs_cache_size", "0");
+        sink.configure(context);
+
+        try {
+            assertEquals(MongoBackendImpl.DEFAULT_PREPOPULATED_DOCS_CACHE_SIZE,
+                    defaultSink.getPrepopulatedDocsCacheSize());
+            assertEquals(0, sink.getPrepopulatedDocsCacheSize());
+            assertTrue(!sink.getInvalidConfiguration());
+            System.out.println(getTestTraceHead("[NGSISTHSink.configure]")
+                    + "-  OK  - 'prepopulated_docs_cache_size' gets the default and the configured values");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[NGSISTHSink.configure]")
+                    + "- FAIL - 'prepopulated_docs_cache_size' does not get the default or the configured values");
+            throw e;
+        } // try catch
+    } // testConfigurePrepopulatedDocsCacheSize
+
+    /**
+     * [NGSISTHSink.configure] -------- A non positive 'bulk_max_in_flight' is detected.
+     */
+    @Test
+    public void testConfigureInvalidBulkMaxInFlight() {
+        System.out.println(getTestTraceHead("[NGSISTHSink.configure]")
+                + "-------- A non positive 'bulk_max_in_flight' is detected");
+        NGSISTHSink sink = new NGSISTHSink();
+        Context context = createContext(null, null, null, null, null);
+        context.put("bulk_max_in_flight", "0");
+        sink.configure(context);
+
+        try {
+            assertTrue(sink.getInvalidConfiguration());
+            System.out.println(getTestTraceHead("[NGSISTHSink.configure]")
+                    + "-  OK  - A non positive 'bulk_max_in_flight' has been detected");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[NGSISTHSink.configure]")
+                    + "- FAIL - A non positive 'bulk_max_in_flight' has not been detected");
+            throw e;
+        } // try catch
+    } // testConfigureInvalidBulkMaxInFlight
+
+    /**
+     * [NGSISTHSink.configure] -------- Invalid 'ordered_writes' and 'mongo_write_concern' are detected.
+     */
+    @Test
+    public void testConfigureInvalidWriteOptions() {
+        System.out.println(getTestTraceHead("[NGSISTHSink.configure]")
+                + "-------- Invalid 'ordered_writes' and 'mongo_write_concern' are detected");
+        NGSISTHSink sink1 = new NGSISTHSink();
+        Context context1 = createContext(null, null, null, null, null);
+        context1.put("ordered_writes", "falso");
+        sink1.configure(context1);
+        NGSISTHSink sink2 = new NGSISTHSink();
+        Context context2 = createContext(null, null, null, null, null);
+        context2.put("mongo_write_concern", "all");
+        sink2.configure(context2);
+
+        try {
+            assertTrue(sink1.getInvalidConfiguration());
+            assertTrue(sink2.getInvalidConfiguration());
+            System.out.println(getTestTraceHead("[NGSISTHSink.configure]")
+                    + "-  OK  - Invalid 'ordered_writes' and 'mongo_write_concern' have been detected");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[NGSISTHSink.configure]")
+                    + "- FAIL - Invalid 'ordered_writes' or 'mongo_write_concern' have not been detected");
+            throw e;
+        } // try catch
+    } // testConfigureInvalidWriteOptions
+
     private Context createContext(String collectionPrefix, String dbPrefix, String dataModel, String enableEncoding,
             String resolutions) {
         Context context = NGSIUtilsForTests.createContextForMongoSTH(collectionPrefix, dbPrefix, dataModel,
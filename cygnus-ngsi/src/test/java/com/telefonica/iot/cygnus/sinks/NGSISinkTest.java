@@ -29,10 +29,18 @@ import static com.telefonica.iot.cygnus.utils.CommonUtilsForTests.getTestTraceHe
 import com.telefonica.iot.cygnus.utils.NGSIConstants;
 import com.telefonica.iot.cygnus.utils.NGSIUtilsForTests;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.flume.Channel;
 import org.apache.flume.Context;
+import org.apache.flume.Sink.Status;
+import org.apache.flume.Transaction;
+import org.apache.flume.conf.Configurables;
 import org.apache.flume.channel.MemoryChannel;
 import org.apache.flume.lifecycle.LifecycleState;
 import org.apache.logging.log4j.Level;
@@ -41,6 +49,7 @@ import org.apache.logging.log4j.core.LoggerContext;
 import org.apache.logging.log4j.core.config.Configuration;
 import org.apache.logging.log4j.core.config.LoggerConfig;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 
@@ -109,6 +118,66 @@ public class NGSISinkTest {
         
     } // NGSISinkImpl
     
+    /**
+     * This class is used to test the concurrent persistence of the sub-batches. Each sub-batch waits for all the
+     * others before being persisted, thus all of them must be persisted at the same time, and the sub-batch of the
+     * given failing entity (if any) fails, either with a persistence error or with an unexpected error.
+     */
+    private class ConcurrentNGSISinkImpl extends NGSISink {
+        
+        private final CountDownLatch persisting;
+        private final String failingEntity;
+        private final boolean unexpectedError;
+        private final List<String> persistingThreads = Collections.synchronizedList(new ArrayList<String>());
+        private final List<String> persistedEntities = Collections.synchronizedList(new ArrayList<String>());
+        
+        ConcurrentNGSISinkImpl(int numSubBatches, String failingEntity, boolean unexpectedError) {
+            this.persisting = new CountDownLatch(numSubBatches);
+            this.failingEntity = failingEntity;
+            this.unexpectedError = unexpectedError;
+        } // ConcurrentNGSISinkImpl
+
+        @Override
+        void persistBatch(NGSIBatch batch) throws CygnusPersistenceError {
+            persistingThreads.add(Thread.currentThread().getName());
+            persisting.countDown();
+            
+            try {
+                if (!persisting.await(5, TimeUnit.SECONDS)) {
+                    throw new CygnusPersistenceError("The sub-batches were not persisted concurrently");
+                } // if
+            } catch (InterruptedException e) {
+                throw new CygnusPersistenceError("Interrupted while waiting for the other sub-batches");
+            } // try catch
+            
+            batch.startIterator();
+            batch.hasNext();
+            String entity = batch.getNextEvents().get(0).getContextElement().getId();
+            
+            if (entity.equals(failingEntity) && unexpectedError) {
+                throw new Error("Unexpected error while persisting " + entity);
+            } else if (entity.equals(failingEntity)) {
+                throw new CygnusPersistenceError("Could not persist " + entity);
+            } // if
+            
+            persistedEntities.add(entity);
+        } // persistBatch
+
+        @Override
+        public void capRecords(NGSIBatch batch, long size) throws CygnusCappingError {
+        } // capRecords
+
+        @Override
+        public void expirateRecords(long time) throws CygnusExpiratingError {
+        } // expirateRecords
+        
+        @Override
+        protected boolean supportsConcurrentPersistence() {
+            return true;
+        } // supportsConcurrentPersistence
+        
+    } // ConcurrentNGSISinkImpl
+    
     /**
      * Constructor.
      */
@@ -195,6 +264,17 @@ public class NGSISinkTest {
             throw e;
         } // try catch
         
+        try {
+            assertEquals(1, sink.getBatchPersistenceWorkers());
+            System.out.println(getTestTraceHead("[NGSISink.configure]")
+                    + "-  OK  - The default configuration value for 'batch_persistence_workers' is '1'");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[NGSISink.configure]")
+                    + "- FAIL - The default configuration value for 'batch_persistence_workers' is '"
+                    + sink.getBatchPersistenceWorkers() + "'");
+            throw e;
+        } // try catch
+        
         try {
             assertEquals(DataModel.DMBYENTITY, sink.getDataModel());
             System.out.println(getTestTraceHead("[NGSISink.configure]")
@@ -1460,6 +1540,154 @@ public class NGSISinkTest {
         } // try catch
     } // testDoRollbackAgain
     
+    /**
+     * [NGSISink.process] -------- When several persistence workers are configured, the sub-batches of a batch are
+     * concurrently persisted and the Flume transaction is committed.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testProcessConcurrentSubBatches() throws Exception {
+        System.out.println(getTestTraceHead("[NGSISink.process]")
+                + "-------- When several persistence workers are configured, the sub-batches of a batch are "
+                + "concurrently persisted and the Flume transaction is committed");
+        ConcurrentNGSISinkImpl sink = new ConcurrentNGSISinkImpl(3, null, false);
+        Channel channel = startConcurrentSink(sink, "Room1", "Room2", "Room3");
+        
+        try {
+            assertEquals(Status.READY, sink.process());
+            assertEquals(3, sink.persistedEntities.size());
+            
+            for (String thread : sink.persistingThreads) {
+                assertTrue(thread.startsWith(sink.getName() + "-persistence-worker-"));
+            } // for
+            
+            assertTrue(sink.getRollbackedAccumulations().isEmpty());
+            assertNull(takeEvent(channel));
+            System.out.println(getTestTraceHead("[NGSISink.process]")
+                    + "-  OK  - The 3 sub-batches were concurrently persisted by the workers and committed");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[NGSISink.process]")
+                    + "- FAIL - The 3 sub-batches were not concurrently persisted by the workers and committed");
+            throw e;
+        } finally {
+            sink.stop();
+        } // try catch finally
+    } // testProcessConcurrentSubBatches
+    
+    /**
+     * [NGSISink.process] -------- When a persistence worker fails, only its sub-batch is rollbacked, while the rest
+     * of the sub-batches are persisted.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testProcessConcurrentSubBatchesOneFails() throws Exception {
+        System.out.println(getTestTraceHead("[NGSISink.process]")
+                + "-------- When a persistence worker fails, only its sub-batch is rollbacked, while the rest of the "
+                + "sub-batches are persisted");
+        ConcurrentNGSISinkImpl sink = new ConcurrentNGSISinkImpl(3, "Room2", false);
+        startConcurrentSink(sink, "Room1", "Room2", "Room3");
+        
+        try {
+            assertEquals(Status.BACKOFF, sink.process());
+            assertEquals(2, sink.persistedEntities.size());
+            assertTrue(sink.persistedEntities.contains("Room1"));
+            assertTrue(sink.persistedEntities.contains("Room3"));
+            assertEquals(1, sink.getRollbackedAccumulations().size());
+            NGSIBatch rollbackedBatch = sink.getRollbackedAccumulations().get(0).getBatch();
+            assertEquals(1, rollbackedBatch.getNumEvents());
+            rollbackedBatch.startIterator();
+            rollbackedBatch.hasNext();
+            assertEquals("Room2", rollbackedBatch.getNextEvents().get(0).getContextElement().getId());
+            System.out.println(getTestTraceHead("[NGSISink.process]")
+                    + "-  OK  - Only the sub-batch of the failed worker was rollbacked");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[NGSISink.process]")
+                    + "- FAIL - Not only the sub-batch of the failed worker was rollbacked");
+            throw e;
+        } finally {
+            sink.stop();
+        } // try catch finally
+    } // testProcessConcurrentSubBatchesOneFails
+    
+    /**
+     * [NGSISink.process] -------- When a persistence worker dies because of an unexpected error, the Flume
+     * transaction is rollbacked and the events are kept in the channel.
+     * @throws java.lang.Exception
+     */
+    @Test
+    public void testProcessConcurrentSubBatchesOneDies() throws Exception {
+        System.out.println(getTestTraceHead("[NGSISink.process]")
+                + "-------- When a persistence worker dies because of an unexpected error, the Flume transaction is "
+                + "rollbacked and the events are kept in the channel");
+        ConcurrentNGSISinkImpl sink = new ConcurrentNGSISinkImpl(3, "Room2", true);
+        Channel channel = startConcurrentSink(sink, "Room1", "Room2", "Room3");
+        
+        try {
+            sink.process();
+            assertTrue(sink.getRollbackedAccumulations().isEmpty());
+            
+            for (int i = 0; i < 3; i++) {
+                assertTrue(takeEvent(channel) != null);
+            } // for
+            
+            System.out.println(getTestTraceHead("[NGSISink.process]")
+                    + "-  OK  - The Flume transaction was rollbacked and the 3 events are still in the channel");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[NGSISink.process]")
+                    + "- FAIL - The Flume transaction was not rollbacked");
+            throw e;
+        } finally {
+            sink.stop();
+        } // try catch finally
+    } // testProcessConcurrentSubBatchesOneDies
+    
+    /**
+     * Configures and starts the given sink with as many persistence workers as given entities, and puts a
+     * notification about each entity within its channel.
+     * @param sink
+     * @param entities
+     * @return The channel of the sink
+     * @throws Exception
+     */
+    private Channel startConcurrentSink(NGSISink sink, String... entities) throws Exception {
+        Context context = createContext(null, String.valueOf(entities.length), null, null, null, null, null, null,
+                null, null);
+        context.put("batch_persistence_workers", String.valueOf(entities.length));
+        sink.setName("concurrent-sink");
+        sink.configure(context);
+        MemoryChannel channel = new MemoryChannel();
+        Configurables.configure(channel, new Context());
+        channel.start();
+        sink.setChannel(channel);
+        sink.start();
+        Transaction txn = channel.getTransaction();
+        txn.begin();
+        
+        for (String entity : entities) {
+            Map<String, String> headers = new HashMap<>();
+            headers.put(NGSIConstants.FLUME_HEADER_TIMESTAMP, timestamp);
+            headers.put(CommonConstants.HEADER_CORRELATOR_ID, correlatorId);
+            headers.put(CommonConstants.HEADER_FIWARE_SERVICE, originalService);
+            headers.put(CommonConstants.HEADER_FIWARE_SERVICE_PATH, originalServicePath);
+            ContextElement originalCE = NGSIUtilsForTests.createJsonContextElement(
+                    originalCEStr.replace("Room1", entity));
+            channel.put(new NGSIEvent(headers, originalCE.toString().getBytes(), originalCE, null));
+        } // for
+        
+        txn.commit();
+        txn.close();
+        return channel;
+    } // startConcurrentSink
+    
+    private NGSIEvent takeEvent(Channel channel) {
+        Transaction txn = channel.getTransaction();
+        txn.begin();
+        NGSIEvent event = (NGSIEvent) channel.take();
+        txn.commit();
+        txn.close();
+        return event;
+    } // takeEvent
+    
     private Context createContext(String batchRetryIntervals, String batchSize, String batchTimeout, String batchTTL,
             String dataModel, String enableLowercase, String enableNameMappings,
             String perisistencePolicyMaxRecords, String perisistencePolicyExpirationTime,
@@ -23,7 +23,9 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.core.LoggerContext;
 import org.apache.logging.log4j.core.config.Configuration;
 import org.apache.logging.log4j.core.config.LoggerConfig;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import org.junit.Test;
 
 /**
@@ -1846,4 +1848,33 @@ public class NGSICharsetsTest {
         } // try catch
     } // testEncodeKafkaRare
     
+    /**
+     * [NGSICharsets.encodePostgreSQL] -------- Encoded strings are memoized, and the memoization is accounted.
+     */
+    @Test
+    public void testEncodeMemoized() {
+        System.out.println(getTestTraceHead("[NGSICharsets.encodePostgreSQL]")
+                + "-------- Encoded strings are memoized, and the memoization is accounted");
+        String in = "Memoized_Room.x0001=";
+        String expected = "x004demoized_x0052oomx002exx0001xffff";
+        NGSICharsets.getAndResetCacheStats();
+        String out1 = NGSICharsets.encodePostgreSQL(in);
+        String out2 = NGSICharsets.encodePostgreSQL(in);
+        String out3 = NGSICharsets.encodeMySQL(in);
+        
+        try {
+            assertEquals(expected, out1);
+            assertSame(out1, out2);
+            assertEquals("Memoized_Roomx002exx0001xffff", out3);
+            assertArrayEquals(new long[] {1, 2}, NGSICharsets.getAndResetCacheStats());
+            assertArrayEquals(new long[] {0, 0}, NGSICharsets.getAndResetCacheStats());
+            System.out.println(getTestTraceHead("[NGSICharsets.encodePostgreSQL]")
+                    + "-  OK  - '" + in + "' has been memoized");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[NGSICharsets.encodePostgreSQL]")
+                    + "- FAIL - '" + in + "' has not been memoized");
+            throw e;
+        } // try catch
+    } // testEncodeMemoized
+    
 } // NGSICharsetsTest
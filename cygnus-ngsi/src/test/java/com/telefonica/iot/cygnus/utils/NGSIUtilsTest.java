@@ -34,6 +34,10 @@ import org.json.simple.JSONObject;
 import org.junit.Test;
 
 import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonObject;
+import com.mongodb.BasicDBObject;
+import org.bson.Document;
 
 /**
  *
@@ -171,4 +175,68 @@ public class NGSIUtilsTest {
         } // try catch // try catch
     } // testGetGeometryGeojson
 
+    /**
+     * [NGSIUtils.linkedHashMapToDocumentList] -------- The documents built from an aggregation are the same than
+     * the ones parsed from its Json objects.
+     */
+    @Test
+    public void testLinkedHashMapToDocumentList() {
+        System.out.println(getTestTraceHead("[NGSIUtils.linkedHashMapToDocumentList]")
+                + "-------- The documents built from an aggregation are the same than the ones parsed from its Json "
+                + "objects");
+        String[] values = {"\"foo\"", "\"\"", "2", "-3000000000", "21.5", "1.5E3", "true", "null",
+            "[1, \"a\", [2.0], {\"b\": null}]", "{\"type\": \"Point\", \"coordinates\": [-3.7167, 40.3833]}",
+            "{\"date\": {\"$date\": 1461136795801}}", "[{\"name\": \"TimeInstant\", \"value\": \"2019\"}]"};
+        LinkedHashMap<String, ArrayList<JsonElement>> aggregation = new LinkedHashMap<>();
+
+        for (int i = 0; i < values.length; i++) {
+            ArrayList<JsonElement> column = new ArrayList<>();
+            column.add(new JsonParser().parse(values[i]));
+            column.add(i % 2 == 0 ? null : new JsonParser().parse(values[values.length - 1 - i]));
+            aggregation.put("attr" + i, column);
+        } // for
+
+        ArrayList<Document> expected = new ArrayList<>();
+
+        for (JsonObject jsonObject : NGSIUtils.linkedHashMapToJsonList(aggregation)) {
+            expected.add(new Document(BasicDBObject.parse(jsonObject.toString()).toMap()));
+        } // for
+
+        ArrayList<Document> documents = NGSIUtils.linkedHashMapToDocumentList(aggregation);
+
+        try {
+            assertEquals(expected, documents);
+            assertEquals(expected.toString(), documents.toString());
+            System.out.println(getTestTraceHead("[NGSIUtils.linkedHashMapToDocumentList]")
+                    + "-  OK  - The built documents are the same than the parsed ones");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[NGSIUtils.linkedHashMapToDocumentList]")
+                    + "- FAIL - The built documents are not the same than the parsed ones");
+            throw e;
+        } // try catch
+    } // testLinkedHashMapToDocumentList
+
+    /**
+     * [NGSIUtils.getTimeInstant] -------- The TimeInstant metadata is got from the Json metadata of an attribute.
+     */
+    @Test
+    public void testGetTimeInstant() {
+        System.out.println(getTestTraceHead("[NGSIUtils.getTimeInstant]")
+                + "-------- The TimeInstant metadata is got from the Json metadata of an attribute");
+        String mdStr = "[{\"name\": \"other\", \"value\": \"x\"}, "
+                + "{\"name\": \"TimeInstant\", \"type\": \"recvTime\", \"value\": \"2019-09-09T09:09:09.999Z\"}]";
+
+        try {
+            assertEquals(CommonUtils.getTimeInstant(mdStr), NGSIUtils.getTimeInstant(new JsonParser().parse(mdStr)));
+            assertEquals(Long.valueOf(1568020149999L), NGSIUtils.getTimeInstant(new JsonParser().parse(mdStr)));
+            assertEquals(null, NGSIUtils.getTimeInstant(new JsonParser().parse("[]")));
+            System.out.println(getTestTraceHead("[NGSIUtils.getTimeInstant]")
+                    + "-  OK  - The TimeInstant metadata was got");
+        } catch (AssertionError e) {
+            System.out.println(getTestTraceHead("[NGSIUtils.getTimeInstant]")
+                    + "- FAIL - The TimeInstant metadata was not got");
+            throw e;
+        } // try catch
+    } // testGetTimeInstant
+
 } // NGSIUtilsTest